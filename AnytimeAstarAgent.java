@@ -0,0 +1,391 @@
+package path.agent;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import path.agent.heuristic.Heuristic;
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+
+/**
+ * An anytime agent implementing ARA* (anytime repairing A*) on the level's
+ * {@link OccupancyGrid}.  The first search runs weighted A*, ordering the fringe by g + w*h
+ * with a weight w above one, which finds a path quickly whose cost is at most w times the
+ * optimal cost.  The weight is then lowered step by step to one and each lower weight repairs
+ * the previous search instead of starting over: only the cells whose g values improved since
+ * they were expanded are queued again.  Every search that finishes improves the path, and the
+ * last one, with weight one, proves it optimal.
+ * <p>
+ * Meant to run under a time budget ({@link #setTimeBudget(long)}).  When the budget runs out
+ * the agent answers the best path found so far instead of null, {@link #wasAborted()} answers
+ * true, and {@link #getBound()} tells how far from optimal the path may be.  The search state
+ * is kept, so asking again for the same start and goal on the same layout of the level goes on
+ * improving from where the last call stopped, which spreads the search over several ticks.
+ * Clearing the path does not discard the search state; {@link #reset()} does.  The state is
+ * kept in a {@link SearchWorkspace} held for the level in the shared {@link WorkspacePool},
+ * so releasing the level frees it.
+ * <p>
+ * With a weight step of zero the agent is plain weighted A*: it stops at the first path.  The
+ * heuristic is the agent's estimator.  The start and goal must be lattice points.
+ */
+public class AnytimeAstarAgent extends PathAgent {
+
+	public static final double DEFAULT_INITIAL_WEIGHT = 3.0;
+
+	public static final double DEFAULT_WEIGHT_STEP = 0.5;
+
+	private static final int INF = Integer.MAX_VALUE;
+
+	private static final int[] DX = { 0, 0, 1, -1 };
+	private static final int[] DY = { -1, 1, 0, 0 };
+
+	private final double initialWeight;
+
+	private final double weightStep;
+
+	private OccupancyGrid grid;
+
+	private Workspace ws;		// the retained search, held for the level in the shared pool
+
+	private Level wsLevel;		// the level ws is held for
+
+	private int inconsCount;
+
+	private Heuristic h;
+
+	private int startCell = -1;		// start of the retained search, -1 if none
+
+	private int goalCell;
+
+	private long levelVersion;
+
+	private int round;		// one per weight, counted on over searches; see newRound()
+
+	private int treeGen;
+
+	private double weight;
+
+	private boolean done;		// the search with weight one has finished
+
+	private volatile List<Point> best;		// best path so far
+
+	private volatile double bound = Double.POSITIVE_INFINITY;
+
+	private volatile int solutions;
+
+
+	public AnytimeAstarAgent(Level lvl) {
+		this(lvl, DEFAULT_INITIAL_WEIGHT, DEFAULT_WEIGHT_STEP);
+	}
+
+
+	/**
+	 * @param lvl the level to plan in
+	 * @param initialWeight heuristic weight of the first search, at least one
+	 * @param weightStep amount the weight is lowered by after each path, zero to stop at the first
+	 */
+	public AnytimeAstarAgent(Level lvl, double initialWeight, double weightStep) {
+		super(lvl);
+		this.initialWeight = Math.max(1.0, initialWeight);
+		this.weightStep = Math.max(0.0, weightStep);
+	}
+
+
+	@Override
+	public List<Point> findPath() {
+		if (start == null || goal == null) {
+			return null;
+		}
+		if (!isReachable()) {
+			return null;	// walled off, known without searching
+		}
+
+		OccupancyGrid g = level.grid();
+		int s = g.cellOf(start);
+		int t = g.cellOf(goal);
+		if (s < 0 || t < 0) return null;
+
+		listener.phase("prepare");
+		if (ws == null || ws.capacity() == 0 || wsLevel != level) {	// never held, or released with its level
+			ws = WorkspacePool.shared().hold(level, new Workspace());
+			wsLevel = level;
+			startCell = -1;
+		}
+		if (g != grid || s != startCell || t != goalCell || level.version() != levelVersion)
+			initialize(g, s, t);
+		treeGen++;		// records of earlier calls were cleared with the path
+		recordRoot();
+
+		while (!done) {
+			listener.phase(solutions == 0 ? "search" : "improve");
+			if (!improvePath()) break;		// out of time or cancelled
+
+			if (g(goalCell) < INF) {
+				best = pathTo(goalCell);
+				solutions++;
+				// paths only get better, so an earlier bound still holds
+				bound = Math.min(bound, Math.min(weight, g(goalCell) / lowerBound()));
+			}
+
+			if (g(goalCell) == INF || weight <= 1.0 || weightStep == 0.0) {
+				done = true;
+			} else {
+				weight = Math.max(1.0, weight - weightStep);
+				nextRound();
+			}
+		}
+
+		listener.phase("path");
+		path = best;
+		return path;
+	}
+
+
+	/**
+	 * Discards the retained search; the next call searches from scratch.
+	 */
+	public void reset() {
+		startCell = -1;
+	}
+
+
+	/**
+	 * @return the most the cost of the current path can exceed the optimal cost by, as a factor;
+	 * one once the path is proven optimal and infinite while there is none
+	 */
+	public double getBound() {
+		return bound;
+	}
+
+
+	/**
+	 * @return the number of paths found so far for the current start and goal, each better
+	 * than the one before
+	 */
+	public int getSolutions() {
+		return solutions;
+	}
+
+
+	/**
+	 * @return the heuristic weight of the current (or last) search
+	 */
+	public double getWeight() {
+		return weight;
+	}
+
+
+	private void initialize(OccupancyGrid g, int s, int t) {
+		grid = g;
+		ws.prepare(g);		// every cell unreached, nothing queued
+		newRound();
+		inconsCount = 0;
+
+		startCell = s;
+		goalCell = t;
+		levelVersion = level.version();
+		h = estimatorFor(goal);
+		weight = initialWeight;
+		done = false;
+		best = null;
+		bound = Double.POSITIVE_INFINITY;
+		solutions = 0;
+
+		ws.gval[s] = 0;
+		ws.parent[s] = -1;
+		ws.mark[s] = ws.openMark;
+		ws.open.insert(s, key(s));
+		listener.generated(1);
+	}
+
+
+	private void recordRoot() {
+		ws.treeNode[startCell] = tree.addRoot(start.x, start.y);
+		ws.treeIn[startCell] = treeGen;
+	}
+
+
+	/*
+	 * Expands cells until no queued cell can lead to a path cheaper than the one to the goal,
+	 * weighted as the fringe is.
+	 *
+	 * @return false if it had to stop first; the fringe is left intact to resume from
+	 */
+	private boolean improvePath() {
+		int stride = grid.stride();
+		int expanded = 0;
+		IndexedBinaryHeap open = ws.open;
+
+		while (!open.isEmpty() && (g(goalCell) == INF || open.peekKey() < key(goalCell))) {
+			if (shouldStop()) return false;	// cancelled or out of time; cur stays queued
+
+			int cur = open.poll();
+			ws.closedIn[cur] = round;
+			expanded++;
+			int cx = grid.cellX(cur);
+			int cy = grid.cellY(cur);
+			listener.expanded(cx * stride, cy * stride);
+			listener.validityChecked(DX.length);
+
+			int generated = 0;
+			int reopened = 0;
+			for (int a = 0; a < DX.length; a++) {
+				int nx = cx + DX[a];
+				int ny = cy + DY[a];
+				if (!grid.isFree(nx, ny)) continue;
+				int n = grid.index(nx, ny);
+				int g = ws.gval[cur] + 1;
+				int known = g(n);
+				if (g >= known) continue;
+
+				if (known < INF) reopened++;
+				ws.gval[n] = g;
+				ws.parent[n] = cur;
+				ws.mark[n] = ws.openMark;
+				generated++;
+				if (ws.treeIn[cur] == treeGen) {
+					ws.treeNode[n] = tree.add(ws.treeNode[cur], nx * stride, ny * stride, (byte) a);
+					ws.treeIn[n] = treeGen;
+				}
+
+				if (ws.closedIn[n] != round) {
+					open.insertOrUpdate(n, key(n));
+				} else if (ws.inconsIn[n] != round) {
+					ws.inconsIn[n] = round;	// expanded already this round; wait for the next one
+					ws.inconsList[inconsCount++] = n;
+				}
+			}
+
+			listener.generated(generated);
+			if (reopened > 0) listener.reopened(reopened);
+			listener.frontierSize(open.size(), expanded);
+		}
+		return true;
+	}
+
+
+	/*
+	 * Starts a round with the lowered weight: the inconsistent cells join the fringe and every
+	 * key is recomputed.  Cells expanded in earlier rounds count as unexpanded again.
+	 */
+	private void nextRound() {
+		newRound();
+		IndexedBinaryHeap open = ws.open;
+		for (int i = 0; i < inconsCount; i++)
+			open.insertOrUpdate(ws.inconsList[i], 0);
+		inconsCount = 0;
+
+		int[] queued = new int[open.size()];
+		for (int i = 0; i < queued.length; i++)
+			queued[i] = open.itemAt(i);
+		open.clear();
+		for (int c : queued)
+			open.insert(c, key(c));
+	}
+
+
+	/*
+	 * Moves on to a round no cell has been expanded in or been found inconsistent in.  The
+	 * rounds are counted on from search to search, so this clears nothing but once in a
+	 * couple of billion rounds.
+	 */
+	private void newRound() {
+		if (++round == Integer.MAX_VALUE) {
+			Arrays.fill(ws.closedIn, 0);
+			Arrays.fill(ws.inconsIn, 0);
+			round = 1;
+		}
+	}
+
+
+	/*
+	 * The smallest unweighted g + h over the fringe and the inconsistent cells, a lower bound
+	 * on the optimal cost.
+	 */
+	private double lowerBound() {
+		double lb = g(goalCell);
+		IndexedBinaryHeap open = ws.open;
+		for (int i = 0; i < open.size(); i++)
+			lb = Math.min(lb, ws.gval[open.itemAt(i)] + estimate(open.itemAt(i)));
+		for (int i = 0; i < inconsCount; i++)
+			lb = Math.min(lb, ws.gval[ws.inconsList[i]] + estimate(ws.inconsList[i]));
+		return Math.max(lb, 1e-9);
+	}
+
+
+	/*
+	 * The cost so far of a cell, INF until the search reaches it.
+	 */
+	private int g(int cell) {
+		return ws.mark[cell] == ws.openMark ? ws.gval[cell] : INF;
+	}
+
+
+	private double estimate(int cell) {
+		int stride = grid.stride();
+		return h.h(grid.cellX(cell) * stride, grid.cellY(cell) * stride) / stride;
+	}
+
+
+	/*
+	 * Non-negative doubles order the same way as their bit patterns.
+	 */
+	private long key(int cell) {
+		return Double.doubleToLongBits(ws.gval[cell] + weight * estimate(cell));
+	}
+
+
+	private List<Point> pathTo(int cell) {
+		List<Point> pth = new ArrayList<>();
+		for (int c = cell; c >= 0; c = ws.parent[c])
+			pth.add(grid.pointOf(c));
+		Collections.reverse(pth);
+		return pth;
+	}
+
+
+	/*
+	 * The search's arrays: those of any grid search, with the cells reached since the search
+	 * began marked open in the base class's sense, and the rounds' bookkeeping.
+	 */
+	private static final class Workspace extends SearchWorkspace {
+
+		int[] closedIn;		// round in which a cell was last expanded
+
+		int[] inconsIn;		// round in which a cell improved after being expanded
+
+		int[] inconsList;
+
+		int[] treeIn;		// tree generation a cell's tree node belongs to
+
+
+		@Override
+		protected void allocate(int n) {
+			super.allocate(n);
+			closedIn = new int[n];
+			inconsIn = new int[n];
+			inconsList = new int[n];
+			treeIn = new int[n];
+		}
+
+
+		@Override
+		public void release() {
+			super.release();
+			closedIn = null;
+			inconsIn = null;
+			inconsList = null;
+			treeIn = null;
+		}
+	}
+
+
+	public String toString() {
+		if (weightStep == 0.0)
+			return "Weighted A-Star Agent (w=" + initialWeight + ")";
+		return estimator == null ? "Anytime A-Star Agent" : "Anytime A-Star Agent (" + estimator + ")";
+	}
+}
@@ -1,10 +1,13 @@
 package path.agent;
 import path.PathFinderApp;
+import path.agent.heuristic.Heuristic;
 import path.level.Level;
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.Map;
 import java.util.Set;
 
 public class AstarAgent extends PathAgent{
@@ -17,13 +20,30 @@ public class AstarAgent extends PathAgent{
         if(start == null || goal == null){
             return null;
         }
-        PriorityQueue<Node> queue = new PriorityQueue<>();
-        Set<Point> visited = new HashSet<>();
-        queue.add(new Node(start,null,null)); // Starting with initial node
-        visited.add(start);
+        if(!isReachable()){
+            return null; // walled off, known without searching
+        }
+        Heuristic hx = estimatorFor(goal);
+        OpenList queue = openList();
+        List<Node> queued = new ArrayList<>();     // the items of the open list
+        Set<Point> visited = new HashSet<>();       // states already expanded
+        Map<Point, Double> bestCost = new HashMap<>(); // cheapest cost found so far per state
+        root = record(new Node(start,null,null));
+        enqueue(queue, queued, root); // Starting with initial node
+        listener.generated(1);
+        bestCost.put(start, 0.0);
 
         while(!queue.isEmpty()){
-            Node curNode = queue.poll();
+            Node curNode = queued.get(queue.poll());
+
+            // a state is closed when expanded; later copies in the queue are stale
+            if(!visited.add(curNode.getState())){
+                continue;
+            }
+            if(shouldStop()){
+                return null; // cancelled or out of time
+            }
+            listener.expanded(curNode.getState().x, curNode.getState().y);
 
             // checking to see if the goal was reached
             if(curNode.getState().equals(goal)){
@@ -34,17 +54,33 @@ public class AstarAgent extends PathAgent{
             // Add neighbors to the queue
             for(Action action : Action.values()){
                 Point nextState = getNextState(curNode.getState(),action);
-                if(level.isValid(nextState) && !visited.contains(nextState)){
+                if(isValid(nextState) && !visited.contains(nextState)){
                     Node child = new Node(nextState,curNode,action);
-                    child.setFval(curNode.getCost() + heuristic(nextState));
-                    queue.add(child);
-                    visited.add(nextState);
+                    Double known = bestCost.get(nextState);
+                    if(known == null || child.getCost() < known){
+                        child.setFval(child.getCost() + hx.h(nextState));
+                        enqueue(queue, queued, record(child));
+                        bestCost.put(nextState, child.getCost());
+                        listener.generated(1);
+                        if(known != null){
+                            listener.reopened(1);
+                        }
+                    }
                 }
             }
+            listener.frontierSize(queue.size(), visited.size());
         }
         return null; // if null returned, no path is found
     }
 
+    // Keys count steps; rounding the estimate up keeps it admissible since step costs are whole
+    private static void enqueue(OpenList queue, List<Node> queued, Node n){
+        int g = (int) Math.round(n.getCost() / PathFinderApp.STRIDE);
+        int h = (int) Math.ceil((n.getFval() - n.getCost()) / PathFinderApp.STRIDE);
+        queue.add(queued.size(), g + h, g);
+        queued.add(n);
+    }
+
     //Helper same as Breadth First and Greedy
     private Point getNextState(Point current, Action action){
         switch (action){
@@ -56,13 +92,9 @@ public class AstarAgent extends PathAgent{
         return current;
     }
 
-    //Helper for heuristic
-    private double heuristic(Point p){
-        return Math.abs(goal.x - p.x) + Math.abs(goal.y - p.y);
-    }
 
 
     public String toString() {
-        return "A-Star Agent";
+        return label("A-Star Agent");
     }
 }
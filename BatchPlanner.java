@@ -0,0 +1,102 @@
+package path.agent;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+
+/**
+ * An instance of this class solves many start/goal queries against one level at once.  Unlike
+ * a {@link PathAgent}, which holds a single start and goal, a planner is reentrant: it works on
+ * a private snapshot of the level's {@link OccupancyGrid} taken when it is created, and every
+ * worker thread searches with its own {@link SearchWorkspace} for the level from the shared
+ * {@link WorkspacePool}, which it keeps from query to query and batch to batch.  Queries of a
+ * batch are spread over a {@link ForkJoinPool}, so a batch scales with the number of cores.
+ * <p>
+ * Queries are answered with {@link GridAstar}, so every path found is a shortest path.  Changes
+ * made to the level after the snapshot was taken are not seen; create a new planner for the new
+ * layout.
+ */
+public class BatchPlanner {
+
+	private final OccupancyGrid grid;
+
+	private final ForkJoinPool pool;
+
+	private final Level level;		// only to find the workspaces
+
+
+	/**
+	 * Creates a planner for the current layout of a level that runs on the common pool.
+	 */
+	public BatchPlanner(Level lvl) {
+		this(lvl, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	 * @param lvl the level, whose grid is copied
+	 * @param pool the pool the queries of a batch run on
+	 */
+	public BatchPlanner(Level lvl, ForkJoinPool pool) {
+		this.grid = new OccupancyGrid(lvl.grid());
+		this.level = lvl;
+		this.pool = pool;
+	}
+
+
+	/**
+	 * Solves every request of a batch.
+	 *
+	 * @return one result per request, in the order of the requests
+	 */
+	public List<PlanResult> plan(List<PlanRequest> requests) {
+		PlanRequest[] todo = requests.toArray(new PlanRequest[0]);
+		PlanResult[] done = new PlanResult[todo.length];
+
+		// a parallel stream started from inside a pool runs its tasks in that pool
+		pool.submit(() -> IntStream.range(0, todo.length).parallel().forEach(i -> done[i] = solve(todo[i]))).join();
+
+		return Arrays.asList(done);
+	}
+
+
+	/**
+	 * Solves one request on the calling thread.
+	 */
+	public PlanResult plan(PlanRequest request) {
+		return solve(request);
+	}
+
+
+	private PlanResult solve(PlanRequest request) {
+		long begin = System.nanoTime();
+		int s = grid.cellOf(request.getStart());
+		int t = grid.cellOf(request.getGoal());
+		if (s < 0 || t < 0)
+			return new PlanResult(request, null, 0, 0, System.nanoTime() - begin);
+
+		SearchWorkspace ws = WorkspacePool.shared().get(level);
+		ws.prepare(grid);
+		boolean found = GridAstar.search(grid, s, t, ws);
+		return new PlanResult(request, found ? ws.pathTo(grid, t) : null,
+				ws.getExpanded(), ws.getGenerated(), System.nanoTime() - begin);
+	}
+
+
+	/**
+	 * @return the snapshot the planner searches
+	 */
+	public OccupancyGrid grid() {
+		return grid;
+	}
+
+	@Override
+	public String toString() {
+		return "Batch Planner (parallelism " + pool.getParallelism() + ")";
+	}
+
+}
@@ -0,0 +1,373 @@
+package path.agent;
+import java.awt.Point;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+
+/**
+ * The common machinery of agents that search forward from the start and backward from the goal
+ * at the same time on the level's {@link OccupancyGrid} until the two frontiers meet.
+ * <p>
+ * Every time a side finds a cheaper route to a cell it records its cost and then looks at the
+ * other side's cost for the same cell; the cheapest sum seen so far (mu) and the cell where it
+ * was seen are kept in one atomic word.  The search stops once a side can prove nothing cheaper
+ * than mu is left to find, which subclasses decide by {@link #isInformed()}:
+ * <ul>
+ * <li>uninformed (breadth first) sides stop when the costs at the heads of both frontiers
+ * add up to at least mu;</li>
+ * <li>informed (A*) sides stop when their own smallest f value reaches mu.</li>
+ * </ul>
+ * A side that runs out of cells also ends the search, since its costs are then exact.
+ * <p>
+ * In the concurrent mode the backward side is expanded on a pool thread while the caller
+ * expands the forward side.  The per-cell costs are read and written with volatile access and
+ * each side writes its own cost before reading the other's, so at least one side always sees a
+ * meeting.
+ * <p>
+ * The arrays of each side are kept between queries in a {@link SearchWorkspace} held for the
+ * level in the shared {@link WorkspacePool}, so releasing the level frees them, and since a
+ * workspace's marks are stamped with a generation, starting a search clears nothing.
+ * <p>
+ * Each side records its own search tree; when the search is over both are merged into the
+ * agent's tree, which then has a root at each end.
+ */
+public abstract class BidirectionalAgent extends PathAgent {
+
+	private static final int INF = Integer.MAX_VALUE;
+
+	private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+	private static final int[] DX = { 0, 0, 1, -1 };
+	private static final int[] DY = { -1, 1, 0, 0 };
+
+	private final boolean concurrent;
+
+	private OccupancyGrid grid;
+
+	private Frontier forward;
+
+	private Frontier backward;
+
+	private Level held;		// the level the frontiers are held for
+
+	private final AtomicLong best = new AtomicLong();	// mu in the high word, meeting cell in the low word
+
+	private volatile boolean done;
+
+
+	/**
+	 * @param lvl the level to plan in
+	 * @param concurrent true to expand the two frontiers on two threads
+	 */
+	protected BidirectionalAgent(Level lvl, boolean concurrent) {
+		super(lvl);
+		this.concurrent = concurrent;
+	}
+
+
+	/**
+	 * @return true to order each frontier by f = g + h (A*), false for first in first out order
+	 */
+	protected abstract boolean isInformed();
+
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+
+	@Override
+	public List<Point> findPath() {
+		if (start == null || goal == null) {
+			return null;
+		}
+		if (!isReachable()) {
+			return null;	// walled off, known without searching
+		}
+
+		listener.phase("prepare");
+		grid = level.grid();
+
+		int s = grid.cellOf(start);
+		int t = grid.cellOf(goal);
+		if (s < 0 || t < 0) return null;
+		if (s == t) {
+			path = new ArrayList<>(List.of(start));
+			return path;
+		}
+		hold();
+
+		best.set(pack(INF, -1));
+		done = false;
+		forward.begin(s, t);
+		backward.begin(t, s);
+		listener.generated(2);
+		listener.phase("search");
+
+		if (concurrent) {
+			CompletableFuture<Void> other = CompletableFuture.runAsync(() -> run(backward, forward), ForkJoinPool.commonPool());
+			run(forward, backward);
+			other.join();
+		} else {
+			while (!done) {
+				Frontier side = forward.size() <= backward.size() ? forward : backward;
+				if (!step(side, side == forward ? backward : forward))
+					done = true;
+			}
+		}
+
+		tree.append(forward.tree);
+		tree.append(backward.tree);
+
+		int meet = (int) best.get();
+		if (meet < 0 || wasAborted()) return null;
+
+		listener.phase("path");   // if null returned, no path is found
+
+		path = pathThrough(meet);
+		return path;
+	}
+
+
+	/*
+	 * Expands one side until the search is over.
+	 */
+	private void run(Frontier me, Frontier other) {
+		while (!done) {
+			if (!step(me, other))
+				done = true;
+		}
+	}
+
+
+	/*
+	 * Expands one cell of a side.  Answers false when the search is over.
+	 */
+	private boolean step(Frontier me, Frontier other) {
+
+		if (me.isEmpty() || other.exhausted) {
+			me.exhausted = true;
+			return false;
+		}
+
+		int mu = (int) (best.get() >>> 32);
+		if (isInformed()) {
+			if (me.minF() >= mu) return false;
+		} else {
+			if ((long) me.headG() + other.published >= mu) return false;
+		}
+
+		if (shouldStop()) return false;	// cancelled or out of time
+
+		int cur = me.poll();
+		int cx = grid.cellX(cur);
+		int cy = grid.cellY(cur);
+		listener.expanded(cx * grid.stride(), cy * grid.stride());
+		int g = me.g(cur) + 1;
+		int generated = 0;
+		int reopened = 0;
+
+		for (int a = 0; a < DX.length; a++) {
+			int nx = cx + DX[a];
+			int ny = cy + DY[a];
+			if (!grid.isFree(nx, ny)) continue;
+
+			int next = grid.index(nx, ny);
+			int known = me.g(next);
+			if (me.isClosed(next) || known <= g) continue;
+
+			me.relax(next, cur, g);
+			generated++;
+			if (known != INF) reopened++;
+
+			int og = other.g(next);
+			if (og != INF)
+				offer(g + og, next);
+		}
+
+		listener.validityChecked(DX.length);
+		listener.generated(generated);
+		if (reopened > 0) listener.reopened(reopened);
+		listener.frontierSize(me.size() + other.size(), me.expanded + other.expanded);
+
+		if (!isInformed())
+			me.published = me.headG();
+		return true;
+	}
+
+
+	/*
+	 * Lowers mu if the candidate meeting is cheaper.
+	 */
+	private void offer(int cost, int meet) {
+		long candidate = pack(cost, meet);
+		long current;
+		do {
+			current = best.get();
+			if ((int) (current >>> 32) <= cost) return;
+		} while (!best.compareAndSet(current, candidate));
+	}
+
+
+	private static long pack(int cost, int cell) {
+		return ((long) cost << 32) | (cell & 0xffffffffL);
+	}
+
+
+	/*
+	 * Holds a workspace for each side unless both are still held for the level.
+	 */
+	private void hold() {
+		if (held != level || forward.capacity() == 0 || backward.capacity() == 0) {	// never held, or released with the level
+			forward = WorkspacePool.shared().hold(level, new Frontier());
+			backward = WorkspacePool.shared().hold(level, new Frontier());
+			held = level;
+		}
+	}
+
+
+	/*
+	 * Start to meeting cell along the forward parents, then on to the goal along the
+	 * backward parents.
+	 */
+	private List<Point> pathThrough(int meet) {
+		List<Point> pth = new ArrayList<>();
+		for (int c = meet; c >= 0; c = forward.parent[c])
+			pth.add(grid.pointOf(c));
+		Collections.reverse(pth);
+		for (int c = backward.parent[meet]; c >= 0; c = backward.parent[c])
+			pth.add(grid.pointOf(c));
+		return pth;
+	}
+
+
+	/**
+	 * One direction of the search.  Only the owning side writes to its arrays; the other side
+	 * only reads the costs.  A cell is marked open when the side reaches it and closed when the
+	 * side expands it, so a cost is only read for a cell of either mark.
+	 */
+	private final class Frontier extends SearchWorkspace {
+
+		int[] fifo;			// uninformed order, each cell is queued at most once
+
+		final SearchTree tree = new SearchTree();	// this side's own tree, merged when the search is over
+
+		int head;
+		int tail;
+
+		int targetX;
+		int targetY;
+
+		volatile int published;		// cost at the head of an uninformed frontier as of the last expansion
+
+		volatile boolean exhausted;
+
+
+		@Override
+		protected void allocate(int n) {
+			super.allocate(n);
+			fifo = new int[n];
+		}
+
+
+		@Override
+		public void release() {
+			super.release();
+			fifo = null;
+		}
+
+
+		void begin(int from, int to) {
+			prepare(grid);
+			tree.clear();
+			head = 0;
+			tail = 0;
+			targetX = grid.cellX(to);
+			targetY = grid.cellY(to);
+			exhausted = false;
+
+			relax(from, -1, 0);
+			published = 0;
+		}
+
+
+		/*
+		 * The cost of a cell, INF if this side has not reached it.  The mark is read first,
+		 * and written last when a cell is reached.
+		 */
+		int g(int cell) {
+			if (!concurrent) return status(cell) == UNSEEN ? INF : gval[cell];
+			int m = (int) INTS.getVolatile(mark, cell);
+			return m == openMark || m == openMark + 1 ? (int) INTS.getVolatile(gval, cell) : INF;
+		}
+
+
+		boolean isClosed(int cell) {
+			return mark[cell] == openMark + 1;
+		}
+
+
+		void relax(int cell, int from, int g) {
+			parent[cell] = from;
+			int x = grid.cellX(cell) * grid.stride();
+			int y = grid.cellY(cell) * grid.stride();
+			treeNode[cell] = from < 0 ? tree.addRoot(x, y) : tree.add(treeNode[from], x, y, SearchTree.NO_ACTION);
+			if (concurrent) {
+				INTS.setVolatile(gval, cell, g);
+				INTS.setVolatile(mark, cell, openMark);
+			} else {
+				gval[cell] = g;
+				mark[cell] = openMark;
+			}
+
+			if (isInformed()) {
+				int h = Math.abs(targetX - grid.cellX(cell)) + Math.abs(targetY - grid.cellY(cell));
+				open.insertOrUpdate(cell, ((long) (g + h) << 32) | (Integer.MAX_VALUE - g));
+			} else {
+				fifo[tail++] = cell;
+			}
+		}
+
+
+		int poll() {
+			int cell = isInformed() ? open.poll() : fifo[head++];
+			if (concurrent) {
+				INTS.setVolatile(mark, cell, openMark + 1);
+			} else {
+				mark[cell] = openMark + 1;
+			}
+			expanded++;
+			return cell;
+		}
+
+
+		boolean isEmpty() {
+			return isInformed() ? open.isEmpty() : head == tail;
+		}
+
+
+		int size() {
+			return isInformed() ? open.size() : tail - head;
+		}
+
+
+		int minF() {
+			return (int) (open.peekKey() >>> 32);
+		}
+
+
+		int headG() {
+			return head < tail ? gval[fifo[head]] : INF;
+		}
+	}
+
+}
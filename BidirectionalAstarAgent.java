@@ -0,0 +1,32 @@
+package path.agent;
+
+import path.level.Level;
+
+
+/**
+ * An A* agent that searches forward from the start towards the goal and backward from the goal
+ * towards the start at the same time, each side guided by the Manhattan distance to the other
+ * end.  See {@link BidirectionalAgent} for the termination rule and the concurrent mode.
+ */
+public class BidirectionalAstarAgent extends BidirectionalAgent {
+
+	public BidirectionalAstarAgent(Level lvl) {
+		this(lvl, false);
+	}
+
+	/**
+	 * @param concurrent true to expand the two frontiers on two threads
+	 */
+	public BidirectionalAstarAgent(Level lvl, boolean concurrent) {
+		super(lvl, concurrent);
+	}
+
+	@Override
+	protected boolean isInformed() {
+		return true;
+	}
+
+	public String toString() {
+		return isConcurrent() ? "Bidirectional A-Star (2 threads)" : "Bidirectional A-Star";
+	}
+}
@@ -0,0 +1,32 @@
+package path.agent;
+
+import path.level.Level;
+
+
+/**
+ * A breadth first agent that grows one frontier from the start and one from the goal until they
+ * meet, which explores roughly half the area of a one sided breadth first search on long
+ * queries.  See {@link BidirectionalAgent} for the termination rule and the concurrent mode.
+ */
+public class BidirectionalBreadthFirstAgent extends BidirectionalAgent {
+
+	public BidirectionalBreadthFirstAgent(Level lvl) {
+		this(lvl, false);
+	}
+
+	/**
+	 * @param concurrent true to expand the two frontiers on two threads
+	 */
+	public BidirectionalBreadthFirstAgent(Level lvl, boolean concurrent) {
+		super(lvl, concurrent);
+	}
+
+	@Override
+	protected boolean isInformed() {
+		return false;
+	}
+
+	public String toString() {
+		return isConcurrent() ? "Bidirectional Breadth First (2 threads)" : "Bidirectional Breadth First";
+	}
+}
@@ -0,0 +1,39 @@
+package path.agent;
+
+
+/**
+ * An {@link OpenList} kept in an {@link IndexedBinaryHeap}, with f and g packed into one key
+ * the same way as in {@link GridAstar}.  The default open list of the agents.
+ */
+public final class BinaryHeapOpenList implements OpenList {
+
+	private final IndexedBinaryHeap heap = new IndexedBinaryHeap(64);
+
+
+	@Override
+	public void add(int item, int f, int g) {
+		if (item >= heap.capacity()) heap.ensureCapacity(Math.max(item + 1, heap.capacity() * 2));
+		heap.insert(item, ((long) f << 32) | (Integer.MAX_VALUE - g));
+	}
+
+	@Override
+	public int poll() {
+		return heap.poll();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return heap.isEmpty();
+	}
+
+	@Override
+	public int size() {
+		return heap.size();
+	}
+
+	@Override
+	public void clear() {
+		heap.clear();
+	}
+
+}
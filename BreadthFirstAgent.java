@@ -17,13 +17,22 @@ public class BreadthFirstAgent extends PathAgent{
         if(start == null || goal == null){
             return null;
         }
+        if(!isReachable()){
+            return null; // walled off, known without searching
+        }
         Queue<Node> queue = new LinkedList<>();
         Set<Point> visited = new HashSet<>();
-        queue.add(new Node(start,null,null)); //start with initial node
+        root = record(new Node(start,null,null));
+        queue.add(root); //start with initial node
+        listener.generated(1);
         visited.add(start);
 
         while(!queue.isEmpty()){
             Node curNode = queue.poll();
+            if(shouldStop()){
+                return null; // cancelled or out of time
+            }
+            listener.expanded(curNode.getState().x, curNode.getState().y);
 
             // check to see if goal is reached
             if(curNode.getState().equals(goal)){
@@ -34,12 +43,14 @@ public class BreadthFirstAgent extends PathAgent{
             // Add neighbors to the queue
             for(Action action : Action.values()){
                 Point nextState = getNextState(curNode.getState(),action);
-                if(level.isValid(nextState) && !visited.contains(nextState)){
+                if(isValid(nextState) && !visited.contains(nextState)){
                     Node child = new Node(nextState, curNode, action);
-                    queue.add(child);
+                    queue.add(record(child));
                     visited.add(nextState);
+                    listener.generated(1);
                 }
             }
+            listener.frontierSize(queue.size(), visited.size() - queue.size());
         }
         return null; // null returned if no path is found
     }
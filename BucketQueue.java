@@ -0,0 +1,72 @@
+package path.agent;
+import java.util.Arrays;
+
+
+/**
+ * An {@link OpenList} kept in a bucket queue (Dial's): one bucket per f, and a cursor at the
+ * lowest bucket that may hold an item.  Adding pushes onto a bucket, and polling takes from the
+ * cursor, which moves up past empty buckets; when the step costs and the heuristic are small
+ * integers, as on uniform-cost levels, the cursor moves little and both take constant time.
+ * When a bucket comes up, its items are spread over stacks by g so the deeper ones come first.
+ * <p>
+ * Keys may also drop below the f being polled (as those of a greedy search do); the ties are
+ * then put back into their bucket.  Memory grows with the largest f and g queued.
+ */
+public final class BucketQueue extends BucketedOpenList {
+
+	private int[] head = new int[0];	// f -> first item of the bucket, NONE if empty
+
+	private int low = Integer.MAX_VALUE;	// no bucket below it holds an item
+
+	private int high = NONE;			// nor above it
+
+	private int tieF = NONE;			// the f whose items are in the stacks rather than a bucket
+
+
+	@Override
+	public void add(int item, int f, int g) {
+		remember(item, f, g);
+		if (f == tieF) {
+			pushTie(item);
+			return;
+		}
+		if (f < tieF) {
+			head[tieF] = spillTies();		// the bucket of the ties was left empty
+			tieF = NONE;
+		}
+		if (f >= head.length) {
+			int old = head.length;
+			int n = Math.max(f + 1, old * 2);
+			head = Arrays.copyOf(head, n);
+			Arrays.fill(head, old, n, NONE);
+		}
+		next[item] = head[f];
+		head[f] = item;
+		if (f < low) low = f;
+		if (f > high) high = f;
+	}
+
+
+	@Override
+	public int poll() {
+		if (!hasTies()) {
+			while (head[low] == NONE)
+				low++;
+			tieF = low;
+			pushTies(head[low]);
+			head[low] = NONE;
+		}
+		return popTie();
+	}
+
+
+	@Override
+	public void clear() {
+		super.clear();
+		if (high >= 0) Arrays.fill(head, 0, high + 1, NONE);
+		low = Integer.MAX_VALUE;
+		high = NONE;
+		tieF = NONE;
+	}
+
+}
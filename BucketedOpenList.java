@@ -0,0 +1,142 @@
+package path.agent;
+import java.util.Arrays;
+
+
+/**
+ * What the {@link BucketQueue} and the {@link RadixHeap} share.  Items are linked into lists
+ * through one array of next links, so a bucket is just the first item of a list.  The items of
+ * the f being polled, the ties, are kept apart in one stack per g and polled from the highest
+ * g down; the stacks are indexed by g, which is why keys must be small non-negative integers.
+ */
+abstract class BucketedOpenList implements OpenList {
+
+	static final int NONE = -1;
+
+	int[] next = new int[0];		// item -> next item of its list, NONE for the last
+
+	int[] fOf = new int[0];
+
+	int[] gOf = new int[0];
+
+	int size;
+
+	private int[] top = new int[0];			// g -> last tie pushed, NONE if none
+
+	private int[] bottom = new int[0];		// g -> first tie pushed, valid unless top is NONE
+
+	private int ties;
+
+	private int gHigh = NONE;				// no stack above it holds a tie
+
+	private int gLow = Integer.MAX_VALUE;	// nor below it
+
+
+	/*
+	 * Stores the keys of an item being added.
+	 */
+	void remember(int item, int f, int g) {
+		if (f < 0 || g < 0) throw new IllegalArgumentException("negative key: f=" + f + ", g=" + g);
+		if (item >= next.length) {
+			int n = Math.max(item + 1, next.length * 2);
+			next = Arrays.copyOf(next, n);
+			fOf = Arrays.copyOf(fOf, n);
+			gOf = Arrays.copyOf(gOf, n);
+		}
+		fOf[item] = f;
+		gOf[item] = g;
+		size++;
+	}
+
+
+	/*
+	 * Pushes an item onto the stack of its g.
+	 */
+	void pushTie(int item) {
+		int g = gOf[item];
+		if (g >= top.length) {
+			int old = top.length;
+			int n = Math.max(g + 1, old * 2);
+			top = Arrays.copyOf(top, n);
+			bottom = Arrays.copyOf(bottom, n);
+			Arrays.fill(top, old, n, NONE);
+		}
+		if (top[g] == NONE) bottom[g] = item;
+		next[item] = top[g];
+		top[g] = item;
+		ties++;
+		if (g > gHigh) gHigh = g;
+		if (g < gLow) gLow = g;
+	}
+
+
+	/*
+	 * Pushes every item of a list onto the stack of its g.
+	 */
+	void pushTies(int first) {
+		for (int i = first; i != NONE; ) {
+			int nx = next[i];
+			pushTie(i);
+			i = nx;
+		}
+	}
+
+
+	boolean hasTies() {
+		return ties > 0;
+	}
+
+
+	/*
+	 * Removes and answers the tie with the largest g, the last pushed of those.
+	 */
+	int popTie() {
+		while (top[gHigh] == NONE)
+			gHigh--;
+		int item = top[gHigh];
+		top[gHigh] = next[item];
+		size--;
+		if (--ties == 0) {
+			gHigh = NONE;
+			gLow = Integer.MAX_VALUE;
+		}
+		return item;
+	}
+
+
+	/*
+	 * Empties the stacks into one list.
+	 *
+	 * @return the first item of the list, NONE if there were no ties
+	 */
+	int spillTies() {
+		int first = NONE;
+		for (int g = gLow; g <= gHigh; g++) {
+			if (top[g] == NONE) continue;
+			next[bottom[g]] = first;
+			first = top[g];
+			top[g] = NONE;
+		}
+		ties = 0;
+		gHigh = NONE;
+		gLow = Integer.MAX_VALUE;
+		return first;
+	}
+
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		spillTies();
+		size = 0;
+	}
+
+}
@@ -0,0 +1,121 @@
+package path.agent;
+import java.awt.Point;
+import java.util.List;
+
+import path.level.Level;
+
+
+/**
+ * An agent that answers from a {@link PathCache} when it can and otherwise lets another agent
+ * plan and remembers the outcome.  Any agent can be wrapped; several caching agents may share
+ * one cache since entries are keyed by the wrapped agent.
+ * <p>
+ * A path answered from the cache comes without a search tree.
+ */
+public class CachingAgent extends PathAgent {
+
+	private final PathAgent delegate;
+
+	private final PathCache cache;
+
+	private final String agentKey;
+
+	private long budget;		// time budget passed on to the delegate on a miss
+
+
+	public CachingAgent(PathAgent delegate) {
+		this(delegate, new PathCache());
+	}
+
+
+	/**
+	 * @param delegate the agent that plans on a miss
+	 * @param cache where outcomes are remembered
+	 */
+	public CachingAgent(PathAgent delegate, PathCache cache) {
+		super(delegate.getLevel());
+		this.delegate = delegate;
+		this.cache = cache;
+		this.agentKey = delegate.getClass().getName() + ":" + delegate;
+	}
+
+
+	@Override
+	public List<Point> findPath() {
+		if (start == null || goal == null) {
+			return null;
+		}
+
+		listener.phase("lookup");
+		List<Point> cached = cache.lookup(agentKey, level, start, goal);
+		if (cached != null) {
+			path = cached.isEmpty() ? null : cached;
+			return path;
+		}
+
+		delegate.setLevel(level);
+		delegate.clearPath();
+		delegate.setStart(start);
+		delegate.setGoal(goal);
+		delegate.setSearchListener(listener);
+		delegate.setTimeBudget(budget);
+		if (shouldStop()) return null;
+		path = delegate.findPath();
+		root = delegate.getRoot();
+
+		if (!delegate.wasAborted())	// an unfinished search proves nothing
+			cache.store(agentKey, level, start, goal, path);
+		return path;
+	}
+
+
+	@Override
+	public void cancel() {
+		super.cancel();
+		delegate.cancel();
+	}
+
+
+	@Override
+	public void setTimeBudget(long millis) {
+		super.setTimeBudget(millis);
+		budget = millis;
+	}
+
+
+	@Override
+	public boolean wasAborted() {
+		return super.wasAborted() || delegate.wasAborted();
+	}
+
+
+	@Override
+	public void clearPath() {
+		super.clearPath();
+		delegate.clearPath();
+		budget = 0;
+	}
+
+
+	/**
+	 * @return the tree of the delegate's search, empty when the path came from the cache
+	 */
+	@Override
+	public SearchTree getSearchTree() {
+		return delegate.getSearchTree();
+	}
+
+
+	public PathCache getCache() {
+		return cache;
+	}
+
+	public PathAgent getDelegate() {
+		return delegate;
+	}
+
+
+	public String toString() {
+		return delegate + " (cached)";
+	}
+}
@@ -0,0 +1,372 @@
+package path.agent;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import path.level.Level;
+import path.level.LevelListener;
+import path.level.OccupancyGrid;
+
+
+/**
+ * An instance of this class is the abstract graph used by hierarchical path finding (HPA*).  The
+ * level's {@link OccupancyGrid} is cut into square clusters.  Along each border between two
+ * neighboring clusters every maximal run of cells that are free on both sides is an entrance; a
+ * short run gets one transition in its middle, a long run one at each end.  The cells on either
+ * side of a transition are the abstract nodes, joined by an edge of cost 1 across the border and
+ * by edges carrying the exact distance within the cluster to the other nodes of their cluster.
+ * <p>
+ * All of this is computed once per level, one cluster per task in parallel.  The graph listens
+ * to its level; when obstacles change only the clusters under the change and their neighbors
+ * are recomputed, lazily, on the next call to {@link #refresh()}.
+ * <p>
+ * Distances are measured in cells (strides).
+ */
+public class ClusterGraph implements LevelListener {
+
+	/**
+	 * Default cluster side in cells.
+	 */
+	public static final int DEFAULT_CLUSTER_SIZE = 16;
+
+	private static final int MAX_SINGLE_TRANSITION = 6;	// longer entrances get a transition at each end
+
+	private final Level level;
+
+	private final OccupancyGrid grid;
+
+	private final int size;
+
+	private final int clustersX;
+
+	private final int clustersY;
+
+	private final Cluster[] clusters;
+
+	private final int[][] east;		// per cluster, (inside, outside) cell pairs across its east border
+
+	private final int[][] south;	// per cluster, (inside, outside) cell pairs across its south border
+
+	private final BitSet dirty = new BitSet();
+
+
+	/**
+	 * One square of the level with its abstract nodes and the distances between them.
+	 */
+	static final class Cluster {
+
+		final int x0, y0, x1, y1;	// cell bounds, exclusive at x1/y1
+
+		int[] nodes = new int[0];	// abstract node cells inside this cluster
+
+		int[][] partners;		// partners[i]: cells across a border joined to nodes[i]
+
+		int[][] dist;			// dist[i][j]: distance within the cluster, -1 if none
+
+		Cluster(int x0, int y0, int x1, int y1) {
+			this.x0 = x0;
+			this.y0 = y0;
+			this.x1 = x1;
+			this.y1 = y1;
+		}
+
+		boolean contains(int cx, int cy) {
+			return cx >= x0 && cx < x1 && cy >= y0 && cy < y1;
+		}
+
+		/**
+		 * @return position of a cell in nodes or -1
+		 */
+		int indexOf(int cell) {
+			for (int i = 0; i < nodes.length; i++)
+				if (nodes[i] == cell) return i;
+			return -1;
+		}
+	}
+
+
+	public ClusterGraph(Level lvl) {
+		this(lvl, DEFAULT_CLUSTER_SIZE);
+	}
+
+
+	/**
+	 * Builds the abstract graph of a level and starts listening for changes to it.
+	 *
+	 * @param lvl the level
+	 * @param clusterSize side of a cluster in cells
+	 */
+	public ClusterGraph(Level lvl, int clusterSize) {
+		this.level = lvl;
+		this.grid = lvl.grid();
+		this.size = clusterSize;
+		this.clustersX = (grid.cols() + size - 1) / size;
+		this.clustersY = (grid.rows() + size - 1) / size;
+
+		int n = clustersX * clustersY;
+		clusters = new Cluster[n];
+		east = new int[n][0];
+		south = new int[n][0];
+		for (int k = 0; k < n; k++) {
+			int x0 = (k % clustersX) * size;
+			int y0 = (k / clustersX) * size;
+			clusters[k] = new Cluster(x0, y0, Math.min(x0 + size, grid.cols()), Math.min(y0 + size, grid.rows()));
+		}
+
+		dirty.set(0, n);
+		refresh();
+		level.addListener(this);
+	}
+
+
+	/**
+	 * Stops listening to the level.  Call when the graph is no longer used.
+	 */
+	public void dispose() {
+		level.removeListener(this);
+	}
+
+
+	@Override
+	public synchronized void levelChanged(Level lvl, Rectangle cells) {
+		if (cells.isEmpty()) return;
+		int kx0 = cells.x / size;
+		int ky0 = cells.y / size;
+		int kx1 = (cells.x + cells.width - 1) / size;
+		int ky1 = (cells.y + cells.height - 1) / size;
+		for (int ky = ky0; ky <= ky1 && ky < clustersY; ky++)
+			for (int kx = kx0; kx <= kx1 && kx < clustersX; kx++)
+				dirty.set(ky * clustersX + kx);
+	}
+
+
+	/**
+	 * Recomputes the borders of every cluster marked dirty since the last refresh, then the
+	 * nodes and distances of those clusters and their neighbors.
+	 */
+	public synchronized void refresh() {
+		if (dirty.isEmpty()) return;
+
+		BitSet affected = new BitSet();
+		for (int k = dirty.nextSetBit(0); k >= 0; k = dirty.nextSetBit(k + 1)) {
+			int kx = k % clustersX;
+			int ky = k / clustersX;
+			affected.set(k);
+			east[k] = transitions(k, true);
+			south[k] = transitions(k, false);
+			if (kx > 0) {
+				east[k - 1] = transitions(k - 1, true);
+				affected.set(k - 1);
+			}
+			if (ky > 0) {
+				south[k - clustersX] = transitions(k - clustersX, false);
+				affected.set(k - clustersX);
+			}
+			if (kx < clustersX - 1) affected.set(k + 1);
+			if (ky < clustersY - 1) affected.set(k + clustersX);
+		}
+		dirty.clear();
+
+		affected.stream().parallel().forEach(k -> rebuild(k, new LocalSearch(size)));
+	}
+
+
+	/*
+	 * Finds the transitions across the east (or south) border of a cluster.
+	 */
+	private int[] transitions(int k, boolean toEast) {
+		Cluster c = clusters[k];
+		int length = toEast ? c.y1 - c.y0 : c.x1 - c.x0;
+		int[] found = new int[8];
+		int n = 0;
+
+		if (toEast ? c.x1 >= grid.cols() : c.y1 >= grid.rows()) return new int[0];
+
+		int run = 0;
+		for (int i = 0; i <= length; i++) {
+			boolean open = i < length && (toEast
+					? grid.isFree(c.x1 - 1, c.y0 + i) && grid.isFree(c.x1, c.y0 + i)
+					: grid.isFree(c.x0 + i, c.y1 - 1) && grid.isFree(c.x0 + i, c.y1));
+			if (open) {
+				run++;
+				continue;
+			}
+			if (run > 0) {
+				int first = i - run;
+				int last = i - 1;
+				int[] at = run < MAX_SINGLE_TRANSITION ? new int[] { (first + last) / 2 } : new int[] { first, last };
+				for (int p : at) {
+					if (n + 2 > found.length) found = Arrays.copyOf(found, found.length * 2);
+					found[n++] = toEast ? grid.index(c.x1 - 1, c.y0 + p) : grid.index(c.x0 + p, c.y1 - 1);
+					found[n++] = toEast ? grid.index(c.x1, c.y0 + p) : grid.index(c.x0 + p, c.y1);
+				}
+				run = 0;
+			}
+		}
+		return Arrays.copyOf(found, n);
+	}
+
+
+	/*
+	 * Collects the nodes of a cluster from the transitions on its four borders and computes
+	 * the distances between them.
+	 */
+	private void rebuild(int k, LocalSearch search) {
+		Cluster c = clusters[k];
+		int kx = k % clustersX;
+		int ky = k / clustersX;
+
+		int[] cells = new int[16];
+		int[] across = new int[16];
+		int n = 0;
+		int[][] borders = {
+			east[k], south[k],
+			kx > 0 ? east[k - 1] : new int[0],
+			ky > 0 ? south[k - clustersX] : new int[0]
+		};
+		for (int b = 0; b < borders.length; b++) {
+			int[] pairs = borders[b];
+			boolean mine = b < 2;		// our own east/south borders list our cell first
+			for (int i = 0; i < pairs.length; i += 2) {
+				if (n == cells.length) {
+					cells = Arrays.copyOf(cells, n * 2);
+					across = Arrays.copyOf(across, n * 2);
+				}
+				cells[n] = mine ? pairs[i] : pairs[i + 1];
+				across[n] = mine ? pairs[i + 1] : pairs[i];
+				n++;
+			}
+		}
+
+		int[] nodes = Arrays.stream(cells, 0, n).distinct().toArray();
+		int[][] partners = new int[nodes.length][];
+		for (int i = 0; i < nodes.length; i++) {
+			int node = nodes[i];
+			int[] mine = new int[4];
+			int m = 0;
+			for (int j = 0; j < n; j++)
+				if (cells[j] == node) mine[m++] = across[j];
+			partners[i] = Arrays.copyOf(mine, m);
+		}
+
+		int[][] dist = new int[nodes.length][nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			search.run(grid, c, nodes[i]);
+			for (int j = 0; j < nodes.length; j++)
+				dist[i][j] = search.distance(nodes[j]);
+		}
+
+		c.nodes = nodes;
+		c.partners = partners;
+		c.dist = dist;
+	}
+
+
+	/*  --------------------------- ACCESS FOR THE AGENT --------------------------------- */
+
+	Cluster clusterOf(int cell) {
+		int kx = grid.cellX(cell) / size;
+		int ky = grid.cellY(cell) / size;
+		return clusters[ky * clustersX + kx];
+	}
+
+	OccupancyGrid grid() {
+		return grid;
+	}
+
+	int clusterSize() {
+		return size;
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return the number of abstract nodes in the graph
+	 */
+	public int nodeCount() {
+		int count = 0;
+		for (Cluster c : clusters)
+			count += c.nodes.length;
+		return count;
+	}
+
+
+	/**
+	 * Breadth first search confined to one cluster, with arrays sized for a single cluster so
+	 * one instance can be reused for every cluster.
+	 */
+	static final class LocalSearch {
+
+		private final int[] dist;
+		private final int[] parent;
+		private final int[] queue;
+		private OccupancyGrid grid;
+		private Cluster cluster;
+
+		LocalSearch(int clusterSize) {
+			int n = clusterSize * clusterSize;
+			dist = new int[n];
+			parent = new int[n];
+			queue = new int[n];
+		}
+
+		/**
+		 * Searches outward from a cell of the cluster until the cluster is exhausted.
+		 */
+		void run(OccupancyGrid g, Cluster c, int from) {
+			grid = g;
+			cluster = c;
+			int w = c.x1 - c.x0;
+			Arrays.fill(dist, 0, w * (c.y1 - c.y0), -1);
+
+			int head = 0;
+			int tail = 0;
+			int f = local(from);
+			dist[f] = 0;
+			parent[f] = -1;
+			queue[tail++] = f;
+
+			while (head < tail) {
+				int cur = queue[head++];
+				int cx = c.x0 + cur % w;
+				int cy = c.y0 + cur / w;
+				for (int a = 0; a < 4; a++) {
+					int nx = cx + (a == 2 ? 1 : a == 3 ? -1 : 0);
+					int ny = cy + (a == 0 ? -1 : a == 1 ? 1 : 0);
+					if (!c.contains(nx, ny) || !g.isFree(nx, ny)) continue;
+					int next = (ny - c.y0) * w + (nx - c.x0);
+					if (dist[next] >= 0) continue;
+					dist[next] = dist[cur] + 1;
+					parent[next] = cur;
+					queue[tail++] = next;
+				}
+			}
+		}
+
+		/**
+		 * @return distance from the last origin to a cell of the cluster, -1 if unreachable
+		 */
+		int distance(int cell) {
+			return dist[local(cell)];
+		}
+
+		/**
+		 * Appends the cells after the last origin up to and including the given cell.
+		 */
+		void appendPath(int cell, List<Integer> out) {
+			int w = cluster.x1 - cluster.x0;
+			int mark = out.size();
+			for (int c = local(cell); dist[c] > 0; c = parent[c])
+				out.add(mark, grid.index(cluster.x0 + c % w, cluster.y0 + c / w));
+		}
+
+		private int local(int cell) {
+			int w = cluster.x1 - cluster.x0;
+			return (grid.cellY(cell) - cluster.y0) * w + (grid.cellX(cell) - cluster.x0);
+		}
+	}
+
+}
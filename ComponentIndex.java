@@ -0,0 +1,467 @@
+package path.level;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+
+/**
+ * An instance of this class labels the connected components of the free cells of an
+ * {@link OccupancyGrid}, with 4 connected moves, so that whether a goal can be reached from a
+ * start is answered in constant time.  Without it an agent asked for a walled off goal has to
+ * search every cell it can reach before it gives up.
+ * <p>
+ * The labels are computed with union-find: bands of rows are joined in parallel, each band
+ * touching only its own cells, and then the seams between bands are joined.  A {@link Level}
+ * keeps its index up to date as obstacles change.  Freed cells join the components around them,
+ * the smaller component being relabeled into the larger.  Blocked cells may split a component;
+ * the free cells around them are then flooded from all at once, in turns, until all floods but
+ * one have met or run dry, so the cost is that of the pieces split off rather than of the whole
+ * component.
+ * <p>
+ * Queries may run from many threads while the level is not being changed.
+ */
+public class ComponentIndex {
+
+	private static final int BAND_ROWS = 32;	// rows joined together as one task
+
+	private static final int PARALLEL_CELLS = 1 << 16;   // below this many cells we stay on one thread
+
+	private static final int[] DX = { 0, 0, 1, -1 };
+	private static final int[] DY = { -1, 1, 0, 0 };
+
+	private final OccupancyGrid grid;
+
+	private final int[] label;		// component of each cell, -1 if blocked
+
+	private int[] size;		// cells per component label, 0 once a label is out of use
+
+	private int labels;		// labels handed out so far
+
+	private int count;		// components with cells
+
+	private int[] seenIn;		// flood stamp a cell was reached in, allocated on the first split test
+
+	private int[] seenBy;		// flood that reached the cell
+
+	private int stamp;
+
+
+	/**
+	 * Labels the components of a grid's free cells.  The index follows the grid through
+	 * {@link #update(Rectangle)}.
+	 */
+	public ComponentIndex(OccupancyGrid grid) {
+		this.grid = grid;
+		int n = grid.size();
+		int[] parent = new int[n];
+		label = new int[n];
+
+		int bands = (grid.rows() + BAND_ROWS - 1) / BAND_ROWS;
+		IntStream range = IntStream.range(0, bands);
+		if (n >= PARALLEL_CELLS) range = range.parallel();
+		range.forEach(b -> joinBand(parent, b * BAND_ROWS, Math.min((b + 1) * BAND_ROWS, grid.rows())));
+		for (int y = BAND_ROWS; y < grid.rows(); y += BAND_ROWS)
+			for (int x = 0; x < grid.cols(); x++)
+				if (grid.isFree(x, y) && grid.isFree(x, y - 1))
+					union(parent, grid.index(x, y), grid.index(x, y - 1));
+
+		IntStream cells = IntStream.range(0, n);
+		if (n >= PARALLEL_CELLS) cells = cells.parallel();
+		cells.forEach(c -> label[c] = parent[c] < 0 ? -1 : root(parent, c));
+
+		// number the roots in order, reusing the parent array
+		for (int c = 0; c < n; c++)
+			if (label[c] == c) parent[c] = labels++;
+		size = new int[Math.max(labels, 1)];
+		for (int c = 0; c < n; c++) {
+			if (label[c] < 0) continue;
+			label[c] = parent[label[c]];
+			size[label[c]]++;
+		}
+		count = labels;
+	}
+
+
+	/*
+	 * Joins the free cells of rows [y0,y1) with their left and upper neighbors in the band.
+	 */
+	private void joinBand(int[] parent, int y0, int y1) {
+		for (int y = y0; y < y1; y++) {
+			for (int x = 0; x < grid.cols(); x++) {
+				int c = grid.index(x, y);
+				if (!grid.isFree(x, y)) {
+					parent[c] = -1;
+					continue;
+				}
+				parent[c] = c;
+				if (x > 0 && grid.isFree(x - 1, y)) union(parent, c, c - 1);
+				if (y > y0 && grid.isFree(x, y - 1)) union(parent, c, c - grid.cols());
+			}
+		}
+	}
+
+
+	/*
+	 * Links the root with the larger index below the other, so a root is the first cell of its
+	 * component in row order.
+	 */
+	private static void union(int[] parent, int a, int b) {
+		int ra = find(parent, a);
+		int rb = find(parent, b);
+		if (ra < rb) parent[rb] = ra;
+		else if (rb < ra) parent[ra] = rb;
+	}
+
+
+	private static int find(int[] parent, int c) {
+		while (parent[c] != c) {
+			parent[c] = parent[parent[c]];		// path halving
+			c = parent[c];
+		}
+		return c;
+	}
+
+
+	/*
+	 * A find that writes nothing, for many threads at once.
+	 */
+	private static int root(int[] parent, int c) {
+		while (parent[c] != c)
+			c = parent[c];
+		return c;
+	}
+
+
+	/*  --------------------------- QUERIES --------------------------------- */
+
+	/**
+	 * @return the component of a cell given by index, -1 if it is blocked
+	 */
+	public int componentOf(int cell) {
+		return label[cell];
+	}
+
+
+	/**
+	 * @return the component of a lattice point, -1 if it is blocked or not a lattice point
+	 */
+	public int componentOf(Point p) {
+		int c = grid.cellOf(p);
+		return c < 0 ? -1 : label[c];
+	}
+
+
+	/**
+	 * Tells whether a path may join two points.  Free lattice points are answered exactly.  A
+	 * point off the lattice is not known to the index, nor is where a unit standing on a blocked
+	 * start may step to, so those may be reachable.
+	 *
+	 * @return false if there is certainly no path, because the goal is a blocked lattice point
+	 * or the two lie in different components
+	 */
+	public boolean reachable(Point from, Point to) {
+		if (from.equals(to)) return true;
+		int a = grid.cellOf(from);
+		int b = grid.cellOf(to);
+		if (b >= 0 && label[b] < 0) return false;
+		return a < 0 || b < 0 || label[a] < 0 || label[a] == label[b];
+	}
+
+
+	/**
+	 * Finds the free lattice point nearest a target, by Manhattan distance between cells,
+	 * among those that can be reached from a start.  Meant to move a goal out of an obstacle or
+	 * walled off area to where a path can go.
+	 *
+	 * @param from a free lattice point
+	 * @param target any point; it is rounded to the nearest cell first
+	 * @return the target's cell if it can be reached, the nearest one that can otherwise, and
+	 * null if the start is not a free lattice point
+	 */
+	public Point nearestReachable(Point from, Point target) {
+		int l = componentOf(from);
+		if (l < 0) return null;
+		int stride = grid.stride();
+		int tx = Math.max(0, Math.min(grid.cols() - 1, Math.round(target.x / (float) stride)));
+		int ty = Math.max(0, Math.min(grid.rows() - 1, Math.round(target.y / (float) stride)));
+
+		for (int d = 0; d < grid.cols() + grid.rows(); d++) {
+			for (int dx = -d; dx <= d; dx++) {
+				int dy = d - Math.abs(dx);
+				if (labelAt(tx + dx, ty - dy) == l) return new Point((tx + dx) * stride, (ty - dy) * stride);
+				if (dy != 0 && labelAt(tx + dx, ty + dy) == l) return new Point((tx + dx) * stride, (ty + dy) * stride);
+			}
+		}
+		return null;	// not reached: the start's own cell is in the component
+	}
+
+
+	private int labelAt(int cx, int cy) {
+		return grid.inBounds(cx, cy) ? label[grid.index(cx, cy)] : -1;
+	}
+
+
+	/**
+	 * @return the number of cells in a component
+	 */
+	public int size(int component) {
+		return component < 0 || component >= labels ? 0 : size[component];
+	}
+
+
+	/**
+	 * @return the number of connected components
+	 */
+	public int count() {
+		return count;
+	}
+
+
+	/*  --------------------------- UPDATES --------------------------------- */
+
+	/**
+	 * Brings the labels of a region of cells up to date with the grid, after the grid changed
+	 * there.  Called by the level; must not run during queries.
+	 *
+	 * @param cells the region that changed, in cell coordinates
+	 */
+	void update(Rectangle cells) {
+		Rectangle r = cells.intersection(new Rectangle(0, 0, grid.cols(), grid.rows()));
+		if (r.isEmpty()) return;
+
+		List<Integer> freed = new ArrayList<>();
+		List<Integer> around = new ArrayList<>();	// free cells next to newly blocked ones
+		for (int y = r.y; y < r.y + r.height; y++) {
+			for (int x = r.x; x < r.x + r.width; x++) {
+				int c = grid.index(x, y);
+				boolean free = grid.isFree(x, y);
+				if (free && label[c] < 0) {
+					freed.add(c);
+				} else if (!free && label[c] >= 0) {
+					shrink(label[c], 1);
+					label[c] = -1;
+					for (int a = 0; a < DX.length; a++)
+						if (grid.isFree(x + DX[a], y + DY[a])) around.add(grid.index(x + DX[a], y + DY[a]));
+				}
+			}
+		}
+
+		if (!around.isEmpty()) split(around);
+		for (int c : freed)
+			join(c);
+	}
+
+
+	/*
+	 * Gives a freed cell the label of the largest component next to it and merges the others
+	 * into that one.
+	 */
+	private void join(int c) {
+		int x = grid.cellX(c);
+		int y = grid.cellY(c);
+		int best = -1;
+		for (int a = 0; a < DX.length; a++) {
+			int l = labelAt(x + DX[a], y + DY[a]);
+			if (l >= 0 && (best < 0 || size[l] > size[best])) best = l;
+		}
+		if (best < 0) {
+			label[c] = newLabel(1);
+			return;
+		}
+		for (int a = 0; a < DX.length; a++) {
+			int l = labelAt(x + DX[a], y + DY[a]);
+			if (l < 0 || l == best) continue;
+			int moved = relabel(grid.index(x + DX[a], y + DY[a]), l, best);
+			size[best] += moved;
+			shrink(l, moved);
+		}
+		label[c] = best;
+		size[best]++;
+	}
+
+
+	/*
+	 * Flood fills a component from a cell with a new label.
+	 *
+	 * @return the number of cells relabeled
+	 */
+	private int relabel(int from, int oldLabel, int newLabel) {
+		int[] queue = new int[Math.max(16, size[oldLabel])];
+		int head = 0;
+		int tail = 0;
+		label[from] = newLabel;
+		queue[tail++] = from;
+		while (head < tail) {
+			int cur = queue[head++];
+			int x = grid.cellX(cur);
+			int y = grid.cellY(cur);
+			for (int a = 0; a < DX.length; a++) {
+				if (labelAt(x + DX[a], y + DY[a]) != oldLabel) continue;
+				int n = grid.index(x + DX[a], y + DY[a]);
+				label[n] = newLabel;
+				if (tail == queue.length) queue = Arrays.copyOf(queue, 2 * tail);
+				queue[tail++] = n;
+			}
+		}
+		return tail;
+	}
+
+
+	/*
+	 * Tests whether the free cells around newly blocked ones still hang together, component by
+	 * component, and gives every piece split off a label of its own.
+	 */
+	private void split(List<Integer> around) {
+		if (seenIn == null) {
+			seenIn = new int[label.length];
+			seenBy = new int[label.length];
+		}
+		around.sort(Integer::compare);
+		List<Integer> sources = new ArrayList<>();
+		for (int l : distinctLabels(around)) {
+			if (l < 0) continue;		// blocked later in the same change
+			sources.clear();
+			for (int c : around)
+				if (label[c] == l && (sources.isEmpty() || sources.get(sources.size() - 1) != c)) sources.add(c);
+			if (sources.size() > 1) race(l, sources);
+		}
+	}
+
+
+	private List<Integer> distinctLabels(List<Integer> cells) {
+		List<Integer> ls = new ArrayList<>();
+		for (int c : cells)
+			if (!ls.contains(label[c])) ls.add(label[c]);
+		return ls;
+	}
+
+
+	/*
+	 * Floods component l from every source at once, one cell per flood in turn.  Floods that
+	 * meet are merged.  Once at most one group of floods is still growing, every other group
+	 * has reached all of its piece, and those pieces are relabeled.
+	 */
+	private void race(int l, List<Integer> sources) {
+		int k = sources.size();
+		int[] group = new int[k];		// union-find over the floods
+		Flood[] floods = new Flood[k];
+		if (++stamp == 0) {		// wrapped: old stamps could match again
+			Arrays.fill(seenIn, 0);
+			stamp = 1;
+		}
+		for (int i = 0; i < k; i++) {
+			group[i] = i;
+			floods[i] = new Flood(sources.get(i));
+			seenIn[sources.get(i)] = stamp;
+			seenBy[sources.get(i)] = i;
+		}
+
+		while (true) {
+			for (int i = 0; i < k; i++) {
+				Flood f = floods[i];
+				if (f.head == f.tail) continue;
+				int cur = f.cells[f.head++];
+				int x = grid.cellX(cur);
+				int y = grid.cellY(cur);
+				for (int a = 0; a < DX.length; a++) {
+					if (labelAt(x + DX[a], y + DY[a]) != l) continue;
+					int n = grid.index(x + DX[a], y + DY[a]);
+					if (seenIn[n] != stamp) {
+						seenIn[n] = stamp;
+						seenBy[n] = i;
+						f.add(n);
+					} else {
+						union(group, i, seenBy[n]);
+					}
+				}
+			}
+
+			// groups of floods, and how many of them still grow
+			int groups = 0;
+			int growing = 0;
+			int keeper = -1;
+			for (int i = 0; i < k; i++) {
+				if (find(group, i) == i) groups++;
+				Flood f = floods[i];
+				if (f.head < f.tail && find(group, i) != keeper) {
+					if (keeper < 0) {
+						keeper = find(group, i);
+						growing = 1;
+					} else {
+						growing = 2;
+					}
+				}
+			}
+			if (groups == 1) return;		// still one piece
+			if (growing > 1) continue;
+
+			// every group but the keeper has flooded its whole piece
+			if (keeper < 0) keeper = largest(group, floods);
+			int[] newLabels = new int[k];
+			Arrays.fill(newLabels, -1);
+			for (int i = 0; i < k; i++) {
+				int g = find(group, i);
+				if (g == keeper) continue;
+				if (newLabels[g] < 0) newLabels[g] = newLabel(0);
+				int nl = newLabels[g];
+				Flood f = floods[i];
+				for (int j = 0; j < f.tail; j++)
+					label[f.cells[j]] = nl;
+				size[nl] += f.tail;
+				shrink(l, f.tail);
+			}
+			return;
+		}
+	}
+
+
+	private int largest(int[] group, Flood[] floods) {
+		int[] cells = new int[group.length];
+		int best = 0;
+		for (int i = 0; i < group.length; i++) {
+			int g = find(group, i);
+			cells[g] += floods[i].tail;
+			if (cells[g] > cells[best]) best = g;
+		}
+		return best;
+	}
+
+
+	private int newLabel(int cells) {
+		if (labels == size.length) size = Arrays.copyOf(size, 2 * labels);
+		size[labels] = cells;
+		count++;
+		return labels++;
+	}
+
+
+	private void shrink(int l, int cells) {
+		size[l] -= cells;
+		if (size[l] == 0) count--;
+	}
+
+
+	/*
+	 * The cells reached by one flood, in the order reached; those past head are still to grow.
+	 */
+	private static final class Flood {
+
+		int[] cells = new int[16];
+
+		int head;
+
+		int tail;
+
+		Flood(int source) {
+			add(source);
+		}
+
+		void add(int c) {
+			if (tail == cells.length) cells = Arrays.copyOf(cells, 2 * tail);
+			cells[tail++] = c;
+		}
+	}
+}
@@ -0,0 +1,442 @@
+package path.agent;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import path.agent.heuristic.LandmarkHeuristic;
+import path.level.ComponentIndex;
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+
+/**
+ * An instance of this class moves many units to their own goals at once without letting them
+ * collide, using windowed hierarchical cooperative A* (WHCA*).  Time advances in steps of one
+ * cell; in each step a unit moves to a neighboring cell or waits where it is.
+ * <p>
+ * Every window of {@link #getWindow()} steps the units are planned one after another in priority
+ * order (the order of the requests).  Each unit searches space and time for the best position it
+ * can reach at the end of the window, avoiding the cells and moves already claimed in the shared
+ * {@link ReservationTable} by the units planned before it, and then claims its own.  The rest of
+ * the way is estimated with a {@link LandmarkHeuristic}, so no search looks beyond the window.
+ * A unit that has made no progress for a few windows, typically caught in a dead end the
+ * estimate does not see, gets a {@link FlowField} of true distances to its goal instead; the
+ * number of such fields is bounded by their memory.
+ * Units follow the first half of their windows, then all of them are planned again from where
+ * they stand.  Waiting costs one step, except at the goal, where a unit rests for free.
+ * <p>
+ * Until it is planned, a unit holds the cell it stands in for the whole window, so it can
+ * always wait there and units planned before it go around it; no two units ever share a cell
+ * or swap cells.  Like every WHCA* planner this one is not complete: units meeting head on in
+ * a passage one cell wide, or a unit resting in one, may block others for good.  Those units
+ * are reported as not found.  A unit whose goal lies in another part of the level than its
+ * start rests where it stands.
+ * <p>
+ * Units more than two windows apart cannot meet within a window, so the units are grouped by
+ * square tiles of the level and the groups are planned in parallel on a {@link ForkJoinPool}.
+ * Units near a tile border may still compete for a cell; the table settles that with atomic
+ * claims, and the unit that loses plans again.  Priorities therefore hold within a tile but
+ * not always across tiles.
+ * <p>
+ * Starts and goals must be distinct free lattice points.  Like {@link BatchPlanner} the planner
+ * works on a snapshot of the level's {@link OccupancyGrid} taken when it is created, and its
+ * landmarks are computed on that snapshot, so changes made to the level later are not seen.
+ */
+public class CooperativePlanner {
+
+	/**
+	 * Default window length in steps.
+	 */
+	public static final int DEFAULT_WINDOW = 16;
+
+	private static final int MAX_RETRIES = 4;		// lost claims before a unit gives up and waits
+
+	private static final int MAX_STALLS = 3;		// windows without progress before a unit gets exact distances
+
+	private static final int EXACT_CELLS = 1 << 23;		// cells of exact distance fields kept at most over all units
+
+	private static final int WAIT = 4;		// move number of waiting in place
+
+	// neighbor offsets in the order of the Action enumeration (N, S, E, W), then waiting
+	private static final int[] DX = { 0, 0, 1, -1, 0 };
+	private static final int[] DY = { -1, 1, 0, 0, 0 };
+
+	private final OccupancyGrid grid;
+
+	private final int window;
+
+	private final int maxSteps;
+
+	private final ForkJoinPool pool;
+
+	private final LandmarkHeuristic landmarks;
+
+	private final ReservationTable table = new ReservationTable();
+
+	private final ThreadLocal<Window> windows;
+
+	private final ComponentIndex components;		// of the copied grid
+
+	private final AtomicInteger exactLeft = new AtomicInteger();	// exact fields that may still be built
+
+	private final LongAdder replans = new LongAdder();
+
+
+	/**
+	 * Creates a planner for the current layout of a level that runs on the common pool.
+	 */
+	public CooperativePlanner(Level lvl) {
+		this(lvl, DEFAULT_WINDOW, ForkJoinPool.commonPool());
+	}
+
+
+	/**
+	 * @param lvl the level, whose grid is copied
+	 * @param window steps planned ahead by each search
+	 * @param pool the pool the groups of units are planned on
+	 */
+	public CooperativePlanner(Level lvl, int window, ForkJoinPool pool) {
+		this.grid = new OccupancyGrid(lvl.grid());
+		this.window = Math.max(window, 2);
+		this.maxSteps = 4 * (grid.cols() + grid.rows());
+		this.components = new ComponentIndex(grid);
+		this.pool = pool;
+		this.landmarks = new LandmarkHeuristic(grid, LandmarkHeuristic.DEFAULT_LANDMARKS);
+		this.windows = ThreadLocal.withInitial(() -> new Window(this.window, landmarks.copy()));
+	}
+
+
+	/**
+	 * Moves every unit from its start to its goal.  Planning stops when all units stand on
+	 * their goals, when no unit has moved for a few windows, or after four times the level's
+	 * width plus height in steps.
+	 *
+	 * @return one result per request, in the order of the requests.  The path lists the unit's
+	 * position at every step from the start until it stopped for good, so a waiting
+	 * unit repeats a point and all paths share one clock.  A unit that did not get to its goal
+	 * has a path to where it stopped and is not {@link PlanResult#isFound() found}; one with an
+	 * invalid start or goal has no path at all.
+	 */
+	public List<PlanResult> plan(List<PlanRequest> units) {
+		int n = units.size();
+		int[] pos = new int[n];
+		int[] goal = new int[n];
+		int[][] trail = new int[n][];
+		int[] length = new int[n];
+		int[][] segment = new int[n][];
+		Unit[] unit = new Unit[n];
+
+		exactLeft.set(Math.max(1, EXACT_CELLS / Math.max(1, grid.size())));
+		for (int u = 0; u < n; u++) {
+			PlanRequest r = units.get(u);
+			pos[u] = grid.cellOf(r.getStart());
+			goal[u] = grid.cellOf(r.getGoal());
+			unit[u] = new Unit();
+			if (pos[u] < 0 || goal[u] < 0 || !grid.isFree(pos[u]) || !grid.isFree(goal[u])) {
+				pos[u] = -1;		// sits the plan out
+				continue;
+			}
+			if (components.componentOf(pos[u]) != components.componentOf(goal[u]))
+				goal[u] = pos[u];		// can't get there; rests where it is
+			trail[u] = new int[2 * window];
+			trail[u][length[u]++] = pos[u];
+		}
+
+		int still = 0;		// rounds in a row in which no unit moved
+		for (int t = 0; t < maxSteps && still <= MAX_STALLS && !arrived(pos, goal); ) {
+			table.clear();
+			for (int u = 0; u < n; u++) {
+				if (pos[u] < 0) continue;
+				// a unit holds its cell until it is planned
+				for (int k = 0; k <= window; k++)
+					table.reserve(pos[u], t + k, u);
+			}
+
+			int t0 = t;
+			List<int[]> groups = groups(pos);
+			if (groups.size() > 1 && pool.getParallelism() > 1) {
+				// a parallel stream started from inside a pool runs its tasks in that pool
+				pool.submit(() -> groups.parallelStream().forEach(g -> planGroup(g, pos, goal, t0, segment, unit))).join();
+			} else {
+				for (int[] g : groups)
+					planGroup(g, pos, goal, t0, segment, unit);
+			}
+
+			int steps = Math.min(window / 2, maxSteps - t);
+			boolean moved = false;
+			for (int u = 0; u < n; u++) {
+				if (pos[u] < 0) continue;
+				for (int k = 1; k <= steps; k++)
+					moved |= segment[u][k] != pos[u];
+				if (length[u] + steps > trail[u].length)
+					trail[u] = Arrays.copyOf(trail[u], 2 * (length[u] + steps));
+				for (int k = 1; k <= steps; k++)
+					trail[u][length[u]++] = segment[u][k];
+				pos[u] = segment[u][steps];
+			}
+			still = moved ? 0 : still + 1;
+			t += steps;
+		}
+
+		List<PlanResult> results = new ArrayList<>(n);
+		for (int u = 0; u < n; u++) {
+			PlanRequest r = units.get(u);
+			if (pos[u] < 0) {
+				results.add(new PlanResult(r, null, 0, 0, 0));
+				continue;
+			}
+			int last = length[u];
+			while (last > 1 && trail[u][last - 2] == pos[u]) last--;	// resting at the end
+			List<Point> path = new ArrayList<>(last);
+			for (int k = 0; k < last; k++)
+				path.add(grid.pointOf(trail[u][k]));
+			results.add(new PlanResult(r, path, unit[u].expanded, unit[u].generated, unit[u].nanos));
+		}
+		return results;
+	}
+
+
+	private static boolean arrived(int[] pos, int[] goal) {
+		for (int u = 0; u < pos.length; u++)
+			if (pos[u] >= 0 && pos[u] != goal[u]) return false;
+		return true;
+	}
+
+
+	/*
+	 * Buckets the units by the tile they stand in, keeping priority order within a tile.
+	 */
+	private List<int[]> groups(int[] pos) {
+		int tile = 2 * window + 1;
+		int tilesX = (grid.cols() + tile - 1) / tile;
+		Map<Integer, List<Integer>> byTile = new LinkedHashMap<>();
+		for (int u = 0; u < pos.length; u++) {
+			if (pos[u] < 0) continue;
+			int k = (grid.cellY(pos[u]) / tile) * tilesX + grid.cellX(pos[u]) / tile;
+			byTile.computeIfAbsent(k, x -> new ArrayList<>()).add(u);
+		}
+		List<int[]> groups = new ArrayList<>(byTile.size());
+		for (List<Integer> g : byTile.values())
+			groups.add(g.stream().mapToInt(Integer::intValue).toArray());
+		return groups;
+	}
+
+
+	private void planGroup(int[] group, int[] pos, int[] goal, int t0, int[][] segment, Unit[] unit) {
+		Window w = windows.get();
+		for (int u : group) {
+			long begin = System.nanoTime();
+			segment[u] = planUnit(w, u, pos[u], goal[u], t0, unit[u]);
+			unit[u].nanos += System.nanoTime() - begin;
+		}
+	}
+
+
+	/*
+	 * Searches a window for one unit and claims it, searching again if another thread claimed
+	 * part of it first.  A unit that finds no way through the window, or keeps losing, waits.
+	 */
+	private int[] planUnit(Window w, int u, int from, int to, int t0, Unit unit) {
+		if (unit.exact == null && from != to) {
+			int est = w.estimate(grid, from, to);
+			if (est < unit.best) {
+				unit.best = est;
+				unit.stalls = 0;
+			} else if (++unit.stalls >= MAX_STALLS && exactLeft.getAndDecrement() > 0) {
+				unit.exact = new FlowField(grid, to);
+			}
+		}
+
+		for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+			int[] seg = w.search(grid, table, u, from, to, t0, unit);
+			if (seg == null) break;
+			if (claim(seg, u, t0)) return seg;
+			replans.increment();
+		}
+
+		int[] stay = new int[window + 1];		// the unit still holds its cell for the window
+		Arrays.fill(stay, from);
+		return stay;
+	}
+
+
+	/*
+	 * Claims the cells and moves of a window, then gives back the unit's hold on its start at
+	 * the steps it is elsewhere.  On failure everything new is given back and the hold stays.
+	 */
+	private boolean claim(int[] seg, int u, int t0) {
+		int from = seg[0];
+		int k = 0;
+		while (k <= window && table.reserve(seg[k], t0 + k, u)) k++;
+		int m = 0;
+		if (k > window)
+			while (m < window && table.reserveMove(seg[m], seg[m + 1], t0 + m)) m++;
+
+		if (m == window) {
+			for (int i = 1; i <= window; i++)
+				if (seg[i] != from) table.release(from, t0 + i, u);
+			return true;
+		}
+
+		for (int i = 0; i < m; i++)
+			table.releaseMove(seg[i], seg[i + 1], t0 + i);
+		for (int i = 0; i < k; i++)
+			if (seg[i] != from) table.release(seg[i], t0 + i, u);
+		return false;
+	}
+
+
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * @return searches repeated because another thread claimed part of a window first
+	 */
+	public long getReplans() {
+		return replans.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "Cooperative Planner (window " + window + ", parallelism " + pool.getParallelism() + ")";
+	}
+
+
+	/**
+	 * What the planner keeps of one unit from window to window.
+	 */
+	private static final class Unit {
+
+		int expanded;
+		int generated;
+		long nanos;
+
+		int best = Integer.MAX_VALUE;	// closest estimate to the goal at the start of a window so far
+
+		int stalls;		// windows since then that started no closer
+
+		FlowField exact;	// true distances to the goal, built once the unit stalls
+	}
+
+
+	/**
+	 * The space-time search of one window, with arrays covering every (cell, step) a unit can
+	 * reach in a window: the square of cells within the window length of its start times the
+	 * window's steps.  One instance is kept per thread and reused for every unit.
+	 */
+	static final class Window {
+
+		private final int length;
+		private final int side;
+		private final int[] gval;
+		private final int[] parent;
+		private final int[] seen;		// search number that last reached a state
+		private final int[] closed;		// search number that last expanded a state
+		private final IndexedBinaryHeap open;
+		private final LandmarkHeuristic h;
+		private int search;
+
+		Window(int length, LandmarkHeuristic h) {
+			this.length = length;
+			this.side = 2 * length + 1;
+			int states = side * side * (length + 1);
+			this.gval = new int[states];
+			this.parent = new int[states];
+			this.seen = new int[states];
+			this.closed = new int[states];
+			this.open = new IndexedBinaryHeap(states);
+			this.h = h;
+		}
+
+		private int state(int dt, int lx, int ly) {
+			return (dt * side + ly) * side + lx;
+		}
+
+		private static long key(int f, int dt) {
+			return ((long) f << 32) | (Integer.MAX_VALUE - dt);		// ties go to the later step
+		}
+
+		/**
+		 * @return the landmark estimate of the distance in cells between two cells
+		 */
+		int estimate(OccupancyGrid grid, int from, int to) {
+			h.initialize(grid.pointOf(to));
+			return (int) h.h(grid.cellX(from) * grid.stride(), grid.cellY(from) * grid.stride()) / grid.stride();
+		}
+
+		/**
+		 * @return the cell of unit u at each step t0..t0+length, or null if every way is blocked
+		 */
+		int[] search(OccupancyGrid grid, ReservationTable table, int u, int from, int to, int t0, Unit unit) {
+			search++;
+			open.clear();
+			int stride = grid.stride();
+			FlowField exact = unit.exact;
+			if (exact == null) h.initialize(grid.pointOf(to));
+			int x0 = grid.cellX(from);
+			int y0 = grid.cellY(from);
+
+			int s = state(0, length, length);
+			gval[s] = 0;
+			parent[s] = -1;
+			seen[s] = search;
+			open.insert(s, key(exact != null ? exact.distance(from) : (int) h.h(x0 * stride, y0 * stride) / stride, 0));
+			unit.generated++;
+
+			while (!open.isEmpty()) {
+				int cur = open.poll();
+				closed[cur] = search;
+				unit.expanded++;
+				int dt = cur / (side * side);
+				int lx = cur % side;
+				int ly = (cur / side) % side;
+				int cx = x0 + lx - length;
+				int cy = y0 + ly - length;
+				int cell = grid.index(cx, cy);
+
+				if (dt == length) return trace(grid, cur, x0, y0);
+
+				for (int a = 0; a < DX.length; a++) {
+					int nx = cx + DX[a];
+					int ny = cy + DY[a];
+					if (!grid.isFree(nx, ny)) continue;
+					int next = grid.index(nx, ny);
+					if (table.isReserved(next, t0 + dt + 1, u)) continue;
+					if (a != WAIT && table.isSwap(cell, next, t0 + dt)) continue;
+
+					int n = state(dt + 1, lx + DX[a], ly + DY[a]);
+					if (closed[n] == search) continue;
+					int g = gval[cur] + (a == WAIT && cell == to ? 0 : 1);
+					if (seen[n] == search && gval[n] <= g) continue;
+
+					seen[n] = search;
+					gval[n] = g;
+					parent[n] = cur;
+					int est = exact != null ? exact.distance(next) : (int) h.h(nx * stride, ny * stride) / stride;
+					open.insertOrUpdate(n, key(g + est, dt + 1));
+					unit.generated++;
+				}
+			}
+			return null;
+		}
+
+		private int[] trace(OccupancyGrid grid, int end, int x0, int y0) {
+			int[] seg = new int[length + 1];
+			for (int st = end; st >= 0; st = parent[st]) {
+				int dt = st / (side * side);
+				int lx = st % side;
+				int ly = (st / side) % side;
+				seg[dt] = grid.index(x0 + lx - length, y0 + ly - length);
+			}
+			return seg;
+		}
+	}
+
+}
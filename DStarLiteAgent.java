@@ -0,0 +1,298 @@
+package path.agent;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import path.level.Level;
+import path.level.LevelListener;
+import path.level.OccupancyGrid;
+
+
+/**
+ * An incremental agent implementing D* Lite on the level's {@link OccupancyGrid}.  The search
+ * runs backward from the goal and its state (g and rhs values and the priority queue) is kept
+ * between calls to {@link #findPath()}.  When the agent is asked again for the same goal it only
+ * repairs what changed:
+ * <ul>
+ * <li>the start may have moved anywhere, which is absorbed by the key modifier km rather than
+ * by reordering the queue;</li>
+ * <li>obstacles added to or removed from the level are reported to the agent as a
+ * {@link LevelListener}, and only the cells under the change are updated.</li>
+ * </ul>
+ * A new goal or a different level starts a fresh search.  Clearing the path does not discard
+ * the search state; {@link #reset()} does.  No search tree is recorded, since the search is
+ * repaired rather than grown.  The start and goal must be lattice points.
+ */
+public class DStarLiteAgent extends PathAgent implements LevelListener {
+
+	private static final int INF = Integer.MAX_VALUE / 4;
+
+	private static final int[] DX = { 0, 0, 1, -1 };
+	private static final int[] DY = { -1, 1, 0, 0 };
+
+	private OccupancyGrid grid;
+
+	private Level listening;		// the level we are registered with
+
+	private int[] gval;
+
+	private int[] rhs;
+
+	private IndexedBinaryHeap queue;
+
+	private int goalCell = -1;		// goal of the retained search, -1 if none
+
+	private int lastStart;		// start at the time km was last adjusted
+
+	private int km;
+
+	private final List<Rectangle> pending = new LinkedList<>();	// changed cell regions not yet repaired
+
+	private int expansions;		// cells expanded by the last call
+
+
+	public DStarLiteAgent(Level lvl) {
+		super(lvl);
+	}
+
+
+	@Override
+	public List<Point> findPath() {
+		if (start == null || goal == null) {
+			return null;
+		}
+		if (!isReachable()) {
+			return null;	// walled off, known without searching
+		}
+
+		listenTo(level);
+		OccupancyGrid g = level.grid();
+		int s = g.cellOf(start);
+		int t = g.cellOf(goal);
+		if (s < 0 || t < 0) return null;
+
+		expansions = 0;
+		listener.phase("repair");
+		if (g != grid || gval == null || gval.length != g.size() || t != goalCell) {
+			initialize(g, s, t);
+		} else {
+			km += heuristic(lastStart, s);
+			lastStart = s;
+			repairChanges();
+		}
+
+		listener.phase("search");
+		computeShortestPath(s);
+		if (wasAborted()) {
+			goalCell = -1;		// the queue is half done; start over next time
+			return null;
+		}
+
+		if (gval[s] >= INF) return null;   // if null returned, no path is found
+		listener.phase("path");
+		path = extractPath(s);
+		return path;
+	}
+
+
+	/**
+	 * Discards the retained search; the next call searches from scratch.
+	 */
+	public void reset() {
+		goalCell = -1;
+		synchronized (pending) {
+			pending.clear();
+		}
+	}
+
+
+	/**
+	 * @return the number of cells expanded by the last call to findPath
+	 */
+	public int getExpansions() {
+		return expansions;
+	}
+
+
+	/**
+	 * Remembers the changed region; it is repaired on the next call to findPath.
+	 */
+	@Override
+	public void levelChanged(Level lvl, Rectangle cells) {
+		synchronized (pending) {
+			pending.add(cells);
+		}
+	}
+
+
+	private void listenTo(Level lvl) {
+		if (listening == lvl) return;
+		if (listening != null) listening.removeListener(this);
+		lvl.addListener(this);
+		listening = lvl;
+		goalCell = -1;
+	}
+
+
+	private void initialize(OccupancyGrid g, int s, int t) {
+		if (g != grid || gval == null || gval.length != g.size()) {
+			grid = g;
+			gval = new int[g.size()];
+			rhs = new int[g.size()];
+			queue = new IndexedBinaryHeap(g.size());
+		}
+		synchronized (pending) {
+			pending.clear();
+		}
+		Arrays.fill(gval, INF);
+		Arrays.fill(rhs, INF);
+		queue.clear();
+		km = 0;
+		goalCell = t;
+		lastStart = s;
+		rhs[t] = 0;
+		queue.insert(t, key(t, s));
+	}
+
+
+	/*
+	 * Every cell in or next to a changed region may have different edge costs now.
+	 */
+	private void repairChanges() {
+		List<Rectangle> regions;
+		synchronized (pending) {
+			regions = new ArrayList<>(pending);
+			pending.clear();
+		}
+		for (Rectangle r : regions) {
+			int x0 = Math.max(0, r.x - 1);
+			int y0 = Math.max(0, r.y - 1);
+			int x1 = Math.min(grid.cols(), r.x + r.width + 1);
+			int y1 = Math.min(grid.rows(), r.y + r.height + 1);
+			for (int y = y0; y < y1; y++)
+				for (int x = x0; x < x1; x++)
+					updateVertex(grid.index(x, y), lastStart);
+		}
+	}
+
+
+	private int heuristic(int a, int b) {
+		return Math.abs(grid.cellX(a) - grid.cellX(b)) + Math.abs(grid.cellY(a) - grid.cellY(b));
+	}
+
+
+	/*
+	 * The two part D* Lite key packed into one long, compared lexicographically.
+	 */
+	private long key(int u, int s) {
+		int m = Math.min(gval[u], rhs[u]);
+		int k1 = m >= INF ? INF : m + heuristic(s, u) + km;
+		return ((long) k1 << 32) | m;
+	}
+
+
+	private void updateVertex(int u, int s) {
+		if (u != goalCell) {
+			int best = INF;
+			listener.validityChecked(1);
+			if (grid.isFree(u)) {
+				listener.validityChecked(DX.length);
+				int ux = grid.cellX(u);
+				int uy = grid.cellY(u);
+				for (int a = 0; a < DX.length; a++) {
+					int nx = ux + DX[a];
+					int ny = uy + DY[a];
+					if (!grid.isFree(nx, ny)) continue;
+					int g = gval[grid.index(nx, ny)];
+					if (g < INF && g + 1 < best) best = g + 1;
+				}
+			}
+			rhs[u] = best;
+		}
+
+		if (gval[u] != rhs[u]) {
+			if (!queue.contains(u)) {
+				listener.generated(1);
+				if (gval[u] < INF) listener.reopened(1);	// consistent before, now it is not
+			}
+			queue.insertOrUpdate(u, key(u, s));
+		} else {
+			queue.remove(u);
+		}
+	}
+
+
+	private void computeShortestPath(int s) {
+		while (!queue.isEmpty() && (queue.peekKey() < key(s, s) || rhs[s] != gval[s])) {
+			int u = queue.peek();
+			long kold = queue.peekKey();
+			long knew = key(u, s);
+			expansions++;
+			if (shouldStop()) return;	// cancelled or out of time
+			listener.expanded(grid.cellX(u) * grid.stride(), grid.cellY(u) * grid.stride());
+
+			if (kold < knew) {
+				queue.update(u, knew);
+			} else if (gval[u] > rhs[u]) {
+				gval[u] = rhs[u];
+				queue.remove(u);
+				updateNeighbors(u, s);
+			} else {
+				gval[u] = INF;
+				updateVertex(u, s);
+				updateNeighbors(u, s);
+			}
+			listener.frontierSize(queue.size(), expansions);
+		}
+	}
+
+
+	private void updateNeighbors(int u, int s) {
+		int ux = grid.cellX(u);
+		int uy = grid.cellY(u);
+		for (int a = 0; a < DX.length; a++) {
+			int nx = ux + DX[a];
+			int ny = uy + DY[a];
+			if (grid.inBounds(nx, ny))
+				updateVertex(grid.index(nx, ny), s);
+		}
+	}
+
+
+	/*
+	 * Walks downhill on g from the start to the goal.
+	 */
+	private List<Point> extractPath(int s) {
+		List<Point> pth = new ArrayList<>();
+		pth.add(grid.pointOf(s));
+		int cur = s;
+		for (int steps = 0; cur != goalCell && steps < grid.size(); steps++) {
+			int cx = grid.cellX(cur);
+			int cy = grid.cellY(cur);
+			int next = -1;
+			int best = INF;
+			for (int a = 0; a < DX.length; a++) {
+				int nx = cx + DX[a];
+				int ny = cy + DY[a];
+				if (!grid.isFree(nx, ny)) continue;
+				int n = grid.index(nx, ny);
+				if (gval[n] < best) {
+					best = gval[n];
+					next = n;
+				}
+			}
+			if (next < 0) return null;
+			cur = next;
+			pth.add(grid.pointOf(cur));
+		}
+		return cur == goalCell ? pth : null;
+	}
+
+
+	public String toString() {
+		return "D* Lite Agent";
+	}
+}
@@ -0,0 +1,277 @@
+package path.agent;
+import java.awt.Point;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import path.level.OccupancyGrid;
+
+
+/**
+ * An instance of this class is the distance field of one goal: the 4 connected distance from
+ * every cell of an {@link OccupancyGrid} to the goal, and for every cell the move that leads one
+ * step closer.  It is computed once by a breadth first search outward from the goal, after which
+ * the path from any start is found by following the moves, in time proportional to its length.
+ * Many units bound for the same goal therefore share the cost of one search.
+ * <p>
+ * On large grids the search advances a whole wavefront at a time and each wavefront is expanded
+ * in parallel; cells are claimed with a compare and set on their distance, so every cell gets
+ * its exact distance no matter which thread reaches it first.
+ * <p>
+ * A field costs five bytes per cell and describes the grid as it was when the field was built.
+ * Once built a field is read only and may be shared between threads.
+ */
+public class FlowField {
+
+	/**
+	 * Distance of a cell the goal can not be reached from.
+	 */
+	public static final int UNREACHABLE = -1;
+
+	private static final int PARALLEL_CELLS = 1 << 16;	// smaller grids are searched on one thread
+
+	private static final int PARALLEL_FRONT = 1 << 10;	// smaller wavefronts are expanded on one thread
+
+	private static final int CHUNK = 256;		// wavefront cells per parallel task
+
+	private static final VarHandle DIST = MethodHandles.arrayElementVarHandle(int[].class);
+
+	// moves in the order of the Action enumeration (N, S, E, W)
+	private static final int[] DX = { 0, 0, 1, -1 };
+	private static final int[] DY = { -1, 1, 0, 0 };
+
+	private final OccupancyGrid grid;
+
+	private final int goal;
+
+	private final int[] dist;		// distance in cells to the goal, UNREACHABLE if none
+
+	private final byte[] move;		// Action ordinal of the step toward the goal, -1 at the goal or if unreachable
+
+	private boolean stopped;		// the agent stopped the build, so the field is unfinished
+
+
+	/**
+	 * Builds the field of a goal cell.
+	 *
+	 * @param grid the grid, which must not change while the field is built
+	 * @param goal the goal cell index
+	 */
+	public FlowField(OccupancyGrid grid, int goal) {
+		this(grid, goal, SearchListener.NONE);
+	}
+
+
+	/**
+	 * Builds the field of a goal cell and reports the search to a listener: every cell of a
+	 * wavefront is expanded and the cells of the next one are generated.  Parallel wavefronts
+	 * report from the threads that expand them.
+	 *
+	 * @param grid the grid, which must not change while the field is built
+	 * @param goal the goal cell index
+	 * @param listener told about the breadth first search
+	 */
+	public FlowField(OccupancyGrid grid, int goal, SearchListener listener) {
+		this(grid, goal, listener, null);
+	}
+
+
+	/*
+	 * Builds the field unless the agent, asked once per wavefront, stops the search first.
+	 */
+	private FlowField(OccupancyGrid grid, int goal, SearchListener listener, PathAgent agent) {
+		this.grid = grid;
+		this.goal = goal;
+		this.dist = new int[grid.size()];
+		this.move = new byte[grid.size()];
+		Arrays.fill(dist, UNREACHABLE);
+
+		if (grid.isFree(goal)) {
+			stopped = !wavefront(listener, agent);
+			if (stopped) return;
+			IntStream cells = IntStream.range(0, grid.size());
+			if (grid.size() >= PARALLEL_CELLS) cells = cells.parallel();
+			cells.forEach(this::pointDownhill);
+		}
+	}
+
+
+	/**
+	 * Builds the field of a goal cell for an agent, which may stop the search: its
+	 * {@link PathAgent#shouldStop()} is asked once per wavefront.
+	 *
+	 * @param agent the agent the field is built for, null for none
+	 * @return the field, or null if the agent stopped the search before it was done
+	 */
+	static FlowField build(OccupancyGrid grid, int goal, SearchListener listener, PathAgent agent) {
+		FlowField field = new FlowField(grid, goal, listener, agent);
+		return field.stopped ? null : field;
+	}
+
+
+	/*
+	 * Breadth first search from the goal, one wavefront at a time.
+	 *
+	 * @return false if the agent stopped it
+	 */
+	private boolean wavefront(SearchListener listener, PathAgent agent) {
+		int[] front = { goal };
+		int size = 1;
+		int closed = 0;
+		dist[goal] = 0;
+		listener.generated(1);
+		boolean parallel = grid.size() >= PARALLEL_CELLS;
+		int stride = grid.stride();
+
+		for (int d = 1; size > 0; d++) {
+			if (agent != null && agent.shouldStop()) return false;	// cancelled or out of time
+			closed += size;
+			if (parallel && size >= PARALLEL_FRONT) {
+				front = expandParallel(front, size, d, listener);
+				size = front.length;
+			} else {
+				int[] next = new int[Math.max(16, size * 2 + 4)];
+				int n = 0;
+				for (int i = 0; i < size; i++) {
+					int cur = front[i];
+					int cx = grid.cellX(cur);
+					int cy = grid.cellY(cur);
+					listener.expanded(cx * stride, cy * stride);
+					for (int a = 0; a < DX.length; a++) {
+						int nx = cx + DX[a];
+						int ny = cy + DY[a];
+						if (!grid.isFree(nx, ny)) continue;
+						int c = grid.index(nx, ny);
+						if (dist[c] != UNREACHABLE) continue;
+						dist[c] = d;
+						if (n == next.length) next = Arrays.copyOf(next, n * 2);
+						next[n++] = c;
+					}
+				}
+				front = next;
+				size = n;
+				listener.generated(n);
+			}
+			listener.frontierSize(size, closed);
+		}
+		return true;
+	}
+
+
+	/*
+	 * Expands a wavefront in chunks on the common pool.  A cell joins the next wavefront in the
+	 * chunk whose thread wins the race to set its distance.
+	 */
+	private int[] expandParallel(int[] front, int size, int d, SearchListener listener) {
+		int chunks = (size + CHUNK - 1) / CHUNK;
+		int[][] found = new int[chunks][];
+		int stride = grid.stride();
+		IntStream.range(0, chunks).parallel().forEach(k -> {
+			int from = k * CHUNK;
+			int to = Math.min(size, from + CHUNK);
+			int[] out = new int[(to - from) * DX.length];
+			int n = 0;
+			for (int i = from; i < to; i++) {
+				int cur = front[i];
+				int cx = grid.cellX(cur);
+				int cy = grid.cellY(cur);
+				listener.expanded(cx * stride, cy * stride);
+				for (int a = 0; a < DX.length; a++) {
+					int nx = cx + DX[a];
+					int ny = cy + DY[a];
+					if (!grid.isFree(nx, ny)) continue;
+					int c = grid.index(nx, ny);
+					if ((int) DIST.getOpaque(dist, c) == UNREACHABLE && DIST.compareAndSet(dist, c, UNREACHABLE, d))
+						out[n++] = c;
+				}
+			}
+			found[k] = Arrays.copyOf(out, n);
+			listener.generated(n);
+		});
+
+		int total = 0;
+		for (int[] f : found)
+			total += f.length;
+		int[] next = new int[total];
+		int at = 0;
+		for (int[] f : found) {
+			System.arraycopy(f, 0, next, at, f.length);
+			at += f.length;
+		}
+		return next;
+	}
+
+
+	/*
+	 * Records the first move (in N, S, E, W order) that leads one step closer to the goal.
+	 */
+	private void pointDownhill(int cell) {
+		move[cell] = -1;
+		int d = dist[cell];
+		if (d <= 0) return;
+		int cx = grid.cellX(cell);
+		int cy = grid.cellY(cell);
+		for (int a = 0; a < DX.length; a++) {
+			int nx = cx + DX[a];
+			int ny = cy + DY[a];
+			if (grid.inBounds(nx, ny) && dist[grid.index(nx, ny)] == d - 1) {
+				move[cell] = (byte) a;
+				return;
+			}
+		}
+	}
+
+
+	/*  --------------------------- QUERIES --------------------------------- */
+
+	/**
+	 * @return the distance in cells from a cell to the goal, or {@link #UNREACHABLE}
+	 */
+	public int distance(int cell) {
+		return dist[cell];
+	}
+
+
+	/**
+	 * @return the move from a cell toward the goal, null at the goal or where it can't be reached
+	 */
+	public Action move(int cell) {
+		byte a = move[cell];
+		return a < 0 ? null : Action.values()[a];
+	}
+
+
+	/**
+	 * Follows the field from a start to the goal.
+	 *
+	 * @param start a lattice point
+	 * @return the points from the start to the goal, same format as pathFromNode, or null if
+	 * the start is not a lattice point of the grid or the goal can't be reached from it
+	 */
+	public List<Point> pathFrom(Point start) {
+		int cell = grid.cellOf(start);
+		if (cell < 0 || dist[cell] == UNREACHABLE) return null;
+
+		List<Point> pth = new ArrayList<>(dist[cell] + 1);
+		pth.add(grid.pointOf(cell));
+		while (cell != goal) {
+			int a = move[cell];
+			cell = grid.index(grid.cellX(cell) + DX[a], grid.cellY(cell) + DY[a]);
+			pth.add(grid.pointOf(cell));
+		}
+		return pth;
+	}
+
+
+	public int goal() {
+		return goal;
+	}
+
+	public OccupancyGrid grid() {
+		return grid;
+	}
+
+}
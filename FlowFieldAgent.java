@@ -0,0 +1,70 @@
+package path.agent;
+import java.awt.Point;
+import java.util.List;
+
+import path.level.Level;
+
+
+/**
+ * An agent that answers from the {@link FlowField} of its goal.  The first query for a goal
+ * builds the field with one breadth first search from the goal; every later query for the same
+ * goal, from any start, only follows the field.  Agents that share a {@link FlowFieldCache}
+ * share the fields, which is how a group of units sent to one destination should be planned.
+ * <p>
+ * Paths are shortest paths.  No search tree is recorded, but the search listener is told about
+ * the breadth first search of a field built for a query; a query answered from a cached field
+ * expands nothing.  Cancelling or running out of time while a field is built gives up the
+ * field, which is not cached.  The start and goal must be lattice points.
+ */
+public class FlowFieldAgent extends PathAgent {
+
+	private FlowFieldCache cache;
+
+
+	public FlowFieldAgent(Level lvl) {
+		this(new FlowFieldCache(lvl));
+	}
+
+
+	/**
+	 * @param cache the fields to answer from, shared with other agents on the same level
+	 */
+	public FlowFieldAgent(FlowFieldCache cache) {
+		super(cache.getLevel());
+		this.cache = cache;
+	}
+
+
+	@Override
+	public List<Point> findPath() {
+		if (start == null || goal == null) {
+			return null;
+		}
+		if (!isReachable()) {
+			return null;	// walled off, known without searching
+		}
+
+		if (cache.getLevel() != level) {
+			cache.dispose();
+			cache = new FlowFieldCache(level);
+		}
+
+		listener.phase("field");
+		FlowField field = cache.field(goal, listener, this);
+		if (field == null) return null;		// not a lattice point, or cancelled or out of time
+
+		listener.phase("path");
+		path = field.pathFrom(start);
+		return path;   // if null returned, no path is found
+	}
+
+
+	public FlowFieldCache getCache() {
+		return cache;
+	}
+
+
+	public String toString() {
+		return "Flow Field Agent";
+	}
+}
@@ -0,0 +1,162 @@
+package path.agent;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.LinkedHashMap;
+
+import path.level.Level;
+import path.level.LevelListener;
+import path.level.OccupancyGrid;
+
+
+/**
+ * An instance of this class keeps the {@link FlowField}s of one level's most recently used
+ * goals.  It is bounded by the number of fields (each costs five bytes per cell) and evicts
+ * the least recently used field first.  Every field is dropped as soon as the level's obstacles
+ * change.
+ * <p>
+ * All methods are thread safe.  A field is built outside the lock, so two threads asking for
+ * the same new goal at once may both build it; the first one stored wins.
+ */
+public class FlowFieldCache implements LevelListener {
+
+	public static final int DEFAULT_MAX_FIELDS = 16;
+
+	private final Level level;
+
+	private final int maxFields;
+
+	private final LinkedHashMap<Integer, FlowField> fields = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long version;		// level version the cached fields belong to
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+
+	public FlowFieldCache(Level lvl) {
+		this(lvl, DEFAULT_MAX_FIELDS);
+	}
+
+
+	/**
+	 * @param lvl the level whose goals are cached; the cache listens to it
+	 * @param maxFields most fields kept
+	 */
+	public FlowFieldCache(Level lvl, int maxFields) {
+		this.level = lvl;
+		this.maxFields = maxFields;
+		this.version = lvl.version();
+		lvl.addListener(this);
+	}
+
+
+	/**
+	 * Answers the field of a goal, building it if it is not cached.
+	 *
+	 * @param goal a lattice point of the level
+	 * @return the field or null if the goal is not a lattice point
+	 */
+	public FlowField field(Point goal) {
+		return field(goal, SearchListener.NONE);
+	}
+
+
+	/**
+	 * Answers the field of a goal, building it if it is not cached.
+	 *
+	 * @param goal a lattice point of the level
+	 * @param listener told about the search if the field is built, nothing otherwise
+	 * @return the field or null if the goal is not a lattice point
+	 */
+	public FlowField field(Point goal, SearchListener listener) {
+		return field(goal, listener, null);
+	}
+
+
+	/*
+	 * Answers the field of a goal for an agent, which may stop building it.
+	 *
+	 * @return the field, or null if the goal is not a lattice point or the agent stopped the
+	 * build; an unfinished field is not kept
+	 */
+	FlowField field(Point goal, SearchListener listener, PathAgent agent) {
+		OccupancyGrid grid = level.grid();
+		int cell = grid.cellOf(goal);
+		if (cell < 0) return null;
+
+		long v;
+		synchronized (this) {
+			FlowField f = fields.get(cell);
+			if (f != null) {
+				hits++;
+				return f;
+			}
+			misses++;
+			v = version;
+		}
+
+		FlowField built = FlowField.build(grid, cell, listener, agent);
+		if (built == null) return null;
+
+		synchronized (this) {
+			if (v != version) return built;		// the level changed meanwhile; don't keep it
+			FlowField first = fields.putIfAbsent(cell, built);
+			if (first != null) return first;
+			if (fields.size() > maxFields) {
+				Integer eldest = fields.keySet().iterator().next();
+				fields.remove(eldest);
+				evictions++;
+			}
+			return built;
+		}
+	}
+
+
+	/**
+	 * Drops every field.
+	 */
+	@Override
+	public synchronized void levelChanged(Level lvl, Rectangle cells) {
+		fields.clear();
+		version = lvl.version();
+	}
+
+
+	/**
+	 * Stops listening to the level.  Call when the cache is no longer used.
+	 */
+	public void dispose() {
+		level.removeListener(this);
+	}
+
+
+	public Level getLevel() {
+		return level;
+	}
+
+
+	/*  --------------------------- STATISTICS --------------------------------- */
+
+	public synchronized int size() {
+		return fields.size();
+	}
+
+	public synchronized long hits() {
+		return hits;
+	}
+
+	public synchronized long misses() {
+		return misses;
+	}
+
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("FlowFieldCache[fields=%d, hits=%d, misses=%d, evictions=%d]", fields.size(), hits, misses, evictions);
+	}
+
+}
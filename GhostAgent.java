@@ -29,7 +29,7 @@ public class GhostAgent extends PathAgent {
 		assert start != null;
 		assert goal != null;
 		
-		// this.setEstimator(new ManhattenDistance(goal));  // ignored by this agent
+		// this.setEstimator(new ManhattanDistance(goal));  // ignored by this agent
 		
 		path = new LinkedList<Point>();
 		
@@ -1,10 +1,11 @@
 package path.agent;
 import path.PathFinderApp;
+import path.agent.heuristic.Heuristic;
 import path.level.Level;
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.PriorityQueue;
 import java.util.Set;
 
 public class GreedyBestFirst extends PathAgent{
@@ -17,13 +18,24 @@ public class GreedyBestFirst extends PathAgent{
         if(start == null || goal == null){
             return null;
         }
-        PriorityQueue<Node> queue = new PriorityQueue<>();
+        if(!isReachable()){
+            return null; // walled off, known without searching
+        }
+        Heuristic hx = estimatorFor(goal);
+        OpenList queue = openList();
+        List<Node> queued = new ArrayList<>();     // the items of the open list
         Set<Point> visited = new HashSet<>();
-        queue.add(new Node(start,null,null)); //start with initial node
+        root = record(new Node(start,null,null));
+        enqueue(queue, queued, root); //start with initial node
+        listener.generated(1);
         visited.add(start);
 
         while(!queue.isEmpty()){
-            Node curNode = queue.poll();
+            Node curNode = queued.get(queue.poll());
+            if(shouldStop()){
+                return null; // cancelled or out of time
+            }
+            listener.expanded(curNode.getState().x, curNode.getState().y);
 
             // check to see if goal is reached
             if(curNode.getState().equals(goal)){
@@ -34,17 +46,39 @@ public class GreedyBestFirst extends PathAgent{
             // Add neighbors to the queue
             for(Action action : Action.values()){
                 Point nextState = getNextState(curNode.getState(), action);
-                if(level.isValid(nextState) && !visited.contains(nextState)){
+                if(isValid(nextState) && !visited.contains(nextState)){
                     Node child = new Node(nextState,curNode,action);
-                    child.setFval(heuristic(nextState));
-                    queue.add(child);
+                    child.setFval(hx.h(nextState));
+                    enqueue(queue, queued, record(child));
                     visited.add(nextState);
+                    listener.generated(1);
                 }
             }
+            listener.frontierSize(queue.size(), visited.size() - queue.size());
         }
         return null; //null if no path is found
     }
 
+    // Orders by the estimate alone, in steps; among equal estimates the deeper node goes first
+    private static void enqueue(OpenList queue, List<Node> queued, Node n){
+        int g = (int) Math.round(n.getCost() / PathFinderApp.STRIDE);
+        queue.add(queued.size(), (int) Math.ceil(n.getFval() / PathFinderApp.STRIDE), g);
+        queued.add(n);
+    }
+
+    /**
+     * The estimate goes up as well as down along a path, which a radix heap cannot take.
+     *
+     * @throws IllegalArgumentException if the open list needs keys that never drop
+     */
+    @Override
+    public void setOpenListKind(OpenList.Kind kind) {
+        if(kind != null && kind.needsMonotoneKeys()){
+            throw new IllegalArgumentException("greedy search keys are not monotone: " + kind);
+        }
+        super.setOpenListKind(kind);
+    }
+
     // Same as Breadth first
     private Point getNextState(Point current, Action action){
         switch(action){
@@ -56,12 +90,8 @@ public class GreedyBestFirst extends PathAgent{
         return current;
     }
 
-    //Helper for heuristic
-    private double heuristic(Point p){
-        return Math.abs(goal.x - p.x) + Math.abs(goal.y - p.y);
-    }
 
     public String toString() {
-        return "Greedy Agent";
+        return label("Greedy Agent");
     }
 }
@@ -0,0 +1,171 @@
+package path.agent;
+
+import path.agent.heuristic.Heuristic;
+import path.level.OccupancyGrid;
+
+
+/**
+ * The A* search used by the indexed agents, written against an {@link OccupancyGrid} and a
+ * {@link SearchWorkspace} only.  It keeps no state of its own, so any number of threads can
+ * run it at once on the same grid as long as each brings its own workspace.
+ * <p>
+ * States are cell indices, moves are 4 connected with a cost of one stride, the heuristic is
+ * the agent's estimator when it has one and the Manhattan distance otherwise, cells are closed
+ * when expanded and a cheaper route to a queued cell lowers its key in place.  Ties on f go to
+ * the larger g.
+ * <p>
+ * A search may also be run a slice at a time, a number of expansions per call, with the fringe
+ * and the cell arrays kept in the workspace between calls; see {@link SlicedSearch}.
+ * <p>
+ * When an agent runs the search, every cell queued (or queued again, more cheaply) is recorded
+ * in the agent's {@link SearchTree}.
+ */
+public final class GridAstar {
+
+	// neighbor offsets in the order of the Action enumeration (N, S, E, W)
+	private static final int[] DX = { 0, 0, 1, -1 };
+	private static final int[] DY = { -1, 1, 0, 0 };
+
+	// outcomes of run
+	static final int PAUSED = 0;
+	static final int FOUND = 1;
+	static final int FAILED = 2;
+
+	private GridAstar() {
+	}
+
+
+	/**
+	 * Searches from cell s to cell t.  The workspace must have been prepared for the grid.
+	 *
+	 * @return true if t was reached; the path is then available from
+	 * {@link SearchWorkspace#pathTo(OccupancyGrid, int)}
+	 */
+	public static boolean search(OccupancyGrid grid, int s, int t, SearchWorkspace ws) {
+		return search(grid, s, t, ws, SearchListener.NONE, null);
+	}
+
+
+	/**
+	 * Searches from cell s to cell t, reporting each expansion to a listener and giving up
+	 * as soon as an agent asks to stop.
+	 *
+	 * @param agent whose {@link PathAgent#shouldStop()} is checked once per expansion and whose
+	 * search tree is recorded, or null
+	 * @return true if t was reached, false if it cannot be reached or the agent stopped the search
+	 */
+	static boolean search(OccupancyGrid grid, int s, int t, SearchWorkspace ws, SearchListener listener, PathAgent agent) {
+		begin(grid, s, t, ws, listener, agent);
+		return run(grid, t, ws, listener, agent, Integer.MAX_VALUE) == FOUND;
+	}
+
+
+	/**
+	 * Queues the start of a search from cell s to cell t, to be carried on by
+	 * {@link #run(OccupancyGrid, int, SearchWorkspace, SearchListener, PathAgent, int)}.
+	 * The workspace must have been prepared for the grid.
+	 */
+	static void begin(OccupancyGrid grid, int s, int t, SearchWorkspace ws, SearchListener listener, PathAgent agent) {
+		int stride = grid.stride();
+		int gx = grid.cellX(t);
+		int gy = grid.cellY(t);
+		Heuristic hx = agent == null ? null : agent.getEstimator();	// initialized by the agent
+
+		ws.gval[s] = 0;
+		ws.parent[s] = -1;
+		ws.mark[s] = ws.openMark;
+		ws.open.insert(s, key(hx == null
+				? (Math.abs(gx - grid.cellX(s)) + Math.abs(gy - grid.cellY(s))) * stride
+				: (int) hx.h(grid.cellX(s) * stride, grid.cellY(s) * stride), 0));
+		ws.generated++;
+		listener.generated(1);
+		if (agent != null) ws.treeNode[s] = agent.tree.addRoot(grid.cellX(s) * stride, grid.cellY(s) * stride);
+	}
+
+
+	/**
+	 * Goes on with a search begun by {@link #begin(OccupancyGrid, int, int, SearchWorkspace,
+	 * SearchListener, PathAgent)} for at most a number of expansions.  Everything the search
+	 * needs to resume lives in the workspace, so it may be run again later for more.
+	 *
+	 * @param maxExpansions the most cells to expand in this call
+	 * @return {@link #FOUND} if t was reached, {@link #FAILED} if it cannot be reached or the
+	 * agent stopped the search, and {@link #PAUSED} if the expansions ran out first
+	 */
+	static int run(OccupancyGrid grid, int t, SearchWorkspace ws, SearchListener listener, PathAgent agent, int maxExpansions) {
+
+		int stride = grid.stride();
+		int gx = grid.cellX(t);
+		int gy = grid.cellY(t);
+		int[] gval = ws.gval;
+		int[] parent = ws.parent;
+		int[] mark = ws.mark;
+		int openMark = ws.openMark;
+		int closedMark = openMark + 1;
+		IndexedBinaryHeap open = ws.open;
+		int[] treeNode = ws.treeNode;
+		SearchTree tree = agent == null ? null : agent.tree;
+		Heuristic hx = agent == null ? null : agent.getEstimator();	// initialized by the agent
+		int budget = maxExpansions;
+
+		while (!open.isEmpty()) {
+			if (budget-- == 0) return PAUSED;	// the fringe is left intact to resume from
+			int cur = open.poll();
+			mark[cur] = closedMark;
+			ws.expanded++;
+
+			if (agent != null && agent.shouldStop()) return FAILED;
+
+			int cx = grid.cellX(cur);
+			int cy = grid.cellY(cur);
+			listener.expanded(cx * stride, cy * stride);
+
+			if (cur == t) return FOUND;
+
+			int g = gval[cur] + stride;
+			int generated = 0;
+			int reopened = 0;
+
+			for (int a = 0; a < DX.length; a++) {
+				int nx = cx + DX[a];
+				int ny = cy + DY[a];
+				if (!grid.isFree(nx, ny)) continue;
+
+				int next = grid.index(nx, ny);
+				int st = mark[next];
+				if (st == closedMark) continue;
+				if (st == openMark && gval[next] <= g) continue;
+
+				gval[next] = g;
+				parent[next] = cur;
+				ws.generated++;
+				generated++;
+				if (tree != null) treeNode[next] = tree.add(treeNode[cur], nx * stride, ny * stride, (byte) a);
+				int h = hx == null ? (Math.abs(gx - nx) + Math.abs(gy - ny)) * stride : (int) hx.h(nx * stride, ny * stride);
+				long k = key(g + h, g);
+				if (st == openMark) {
+					open.update(next, k);
+					reopened++;
+				} else {
+					mark[next] = openMark;
+					open.insert(next, k);
+				}
+			}
+
+			listener.validityChecked(DX.length);
+			listener.generated(generated);
+			if (reopened > 0) listener.reopened(reopened);
+			listener.frontierSize(open.size(), ws.expanded);
+		}
+		return FAILED;
+	}
+
+
+	/*
+	 * Orders the fringe by f and breaks ties in favor of the larger g (deeper node).
+	 */
+	private static long key(int f, int g) {
+		return ((long) f << 32) | (Integer.MAX_VALUE - g);
+	}
+
+}
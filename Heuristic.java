@@ -41,5 +41,18 @@ public abstract class Heuristic {
 	 * @return
 	 */
 	public abstract double h(Point nodeState);
+
+
+	/**
+	 * Answers the distance from a location given by its coordinates to the goal state.  Grid
+	 * based agents call this one to avoid creating points; concrete subclasses should override
+	 * it when they can answer without a point.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public double h(int x, int y) {
+		return h(new Point(x, y));
+	}
 	
 }
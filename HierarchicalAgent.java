@@ -0,0 +1,220 @@
+package path.agent;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import path.level.Level;
+
+
+/**
+ * A hierarchical (HPA*) agent.  Instead of searching the whole grid it searches the small
+ * abstract graph of cluster entrances kept by a {@link ClusterGraph}, after temporarily joining
+ * the start and goal to the entrances of their clusters, and then refines only the abstract
+ * edges actually used into stride steps by searching inside one cluster at a time.
+ * <p>
+ * The cluster graph is built the first time the agent plans on a level and is reused (and
+ * repaired cluster by cluster when obstacles change) afterwards.  Paths are near optimal: a
+ * route may be slightly longer than the shortest one because it has to pass through entrance
+ * transitions.  The search tree holds the abstract search only.  The start and goal must be
+ * lattice points.
+ */
+public class HierarchicalAgent extends PathAgent {
+
+	private final int clusterSize;
+
+	private ClusterGraph graph;
+
+	private ClusterGraph.LocalSearch local;
+
+	private final Map<Integer, Integer> treeNode = new HashMap<>();	// search tree node of an abstract node's latest record
+
+
+	public HierarchicalAgent(Level lvl) {
+		this(lvl, ClusterGraph.DEFAULT_CLUSTER_SIZE);
+	}
+
+
+	/**
+	 * @param clusterSize side of a cluster in cells
+	 */
+	public HierarchicalAgent(Level lvl, int clusterSize) {
+		super(lvl);
+		this.clusterSize = clusterSize;
+	}
+
+
+	/**
+	 * @return the abstract graph for the current level, building it if needed
+	 */
+	public ClusterGraph getGraph() {
+		if (graph == null || graph.getLevel() != level) {
+			if (graph != null) graph.dispose();
+			graph = new ClusterGraph(level, clusterSize);
+			local = new ClusterGraph.LocalSearch(clusterSize);
+		}
+		return graph;
+	}
+
+
+	@Override
+	public List<Point> findPath() {
+		if (start == null || goal == null) {
+			return null;
+		}
+		if (!isReachable()) {
+			return null;	// walled off, known without searching
+		}
+
+		listener.phase("refresh");
+		ClusterGraph g = getGraph();
+		g.refresh();
+
+		int s = g.grid().cellOf(start);
+		int t = g.grid().cellOf(goal);
+		if (s < 0 || t < 0 || !g.grid().isFree(s) || !g.grid().isFree(t)) return null;
+		if (s == t) {
+			path = new ArrayList<>(List.of(start));
+			return path;
+		}
+
+		List<Integer> abstractPath = searchAbstract(g, s, t);
+		if (abstractPath == null) return null;   // if null returned, no path is found
+
+		listener.phase("refine");
+		path = refine(g, abstractPath);
+		return path;
+	}
+
+
+	/*
+	 * A* over the entrance nodes, with the start joined to the nodes of its cluster and the
+	 * nodes of the goal's cluster joined to the goal.
+	 */
+	private List<Integer> searchAbstract(ClusterGraph g, int s, int t) {
+
+		ClusterGraph.Cluster sc = g.clusterOf(s);
+		ClusterGraph.Cluster tc = g.clusterOf(t);
+
+		listener.phase("connect");
+		local.run(g.grid(), sc, s);
+		int[] fromStart = new int[sc.nodes.length];
+		for (int i = 0; i < sc.nodes.length; i++)
+			fromStart[i] = local.distance(sc.nodes[i]);
+		int direct = sc == tc ? local.distance(t) : -1;
+
+		local.run(g.grid(), tc, t);
+		int[] toGoal = new int[tc.nodes.length];
+		for (int i = 0; i < tc.nodes.length; i++)
+			toGoal[i] = local.distance(tc.nodes[i]);
+
+		int gx = g.grid().cellX(t);
+		int gy = g.grid().cellY(t);
+
+		Map<Integer, Integer> cost = new HashMap<>();
+		Map<Integer, Integer> parent = new HashMap<>();
+		PriorityQueue<long[]> open = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+
+		cost.put(s, 0);
+		open.add(new long[] { 0, s });
+		treeNode.clear();
+		treeNode.put(s, tree.addRoot(start.x, start.y));
+		listener.generated(1);
+		listener.phase("abstract");
+		int closed = 0;
+
+		while (!open.isEmpty()) {
+			long[] top = open.poll();
+			int cur = (int) top[1];
+			int gcur = cost.get(cur);
+			if (top[0] > gcur + manhattan(g, cur, gx, gy)) continue;   // stale entry
+			if (shouldStop()) return null;	// cancelled or out of time
+			closed++;
+			listener.expanded(g.grid().cellX(cur) * g.grid().stride(), g.grid().cellY(cur) * g.grid().stride());
+
+			if (cur == t) {
+				List<Integer> result = new ArrayList<>();
+				for (Integer c = t; c != null; c = parent.get(c))
+					result.add(c);
+				Collections.reverse(result);
+				return result;
+			}
+
+			if (cur == s) {
+				for (int i = 0; i < sc.nodes.length; i++)
+					if (fromStart[i] >= 0)
+						relax(g, cost, parent, open, cur, sc.nodes[i], gcur + fromStart[i], gx, gy);
+				if (direct >= 0)
+					relax(g, cost, parent, open, cur, t, gcur + direct, gx, gy);
+			}
+
+			ClusterGraph.Cluster c = g.clusterOf(cur);
+			int i = c.indexOf(cur);
+			if (i < 0) continue;	// the start, when it is not an entrance itself
+			for (int j = 0; j < c.nodes.length; j++)
+				if (j != i && c.dist[i][j] >= 0)
+					relax(g, cost, parent, open, cur, c.nodes[j], gcur + c.dist[i][j], gx, gy);
+			for (int across : c.partners[i])
+				relax(g, cost, parent, open, cur, across, gcur + 1, gx, gy);
+			if (c == tc && toGoal[i] >= 0)
+				relax(g, cost, parent, open, cur, t, gcur + toGoal[i], gx, gy);
+			listener.frontierSize(open.size(), closed);
+		}
+		return null;
+	}
+
+
+	private void relax(ClusterGraph g, Map<Integer, Integer> cost, Map<Integer, Integer> parent,
+			PriorityQueue<long[]> open, int from, int to, int gval, int gx, int gy) {
+		Integer known = cost.get(to);
+		if (known != null && known <= gval) return;
+		cost.put(to, gval);
+		parent.put(to, from);
+		open.add(new long[] { gval + manhattan(g, to, gx, gy), to });
+		Point p = g.grid().pointOf(to);
+		treeNode.put(to, tree.add(treeNode.get(from), p.x, p.y, SearchTree.NO_ACTION));
+		listener.generated(1);
+		if (known != null) listener.reopened(1);
+	}
+
+
+	private static int manhattan(ClusterGraph g, int cell, int gx, int gy) {
+		return Math.abs(g.grid().cellX(cell) - gx) + Math.abs(g.grid().cellY(cell) - gy);
+	}
+
+
+	/*
+	 * Turns the abstract path into stride steps.  Edges across a border are single steps,
+	 * every other edge lies inside one cluster and is searched there.
+	 */
+	private List<Point> refine(ClusterGraph g, List<Integer> abstractPath) {
+
+		List<Integer> cells = new ArrayList<>();
+		cells.add(abstractPath.get(0));
+
+		for (int k = 1; k < abstractPath.size(); k++) {
+			int from = abstractPath.get(k - 1);
+			int to = abstractPath.get(k);
+			ClusterGraph.Cluster c = g.clusterOf(from);
+			if (c != g.clusterOf(to)) {
+				cells.add(to);
+			} else {
+				local.run(g.grid(), c, from);
+				local.appendPath(to, cells);
+			}
+		}
+
+		List<Point> pth = new ArrayList<>(cells.size());
+		for (int c : cells)
+			pth.add(g.grid().pointOf(c));
+		return pth;
+	}
+
+
+	public String toString() {
+		return "Hierarchical (HPA*) Agent";
+	}
+}
@@ -0,0 +1,268 @@
+package path.agent;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+
+import path.agent.heuristic.Heuristic;
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+
+/**
+ * A memory-bounded agent implementing IDA* (iterative deepening A*) on the level's
+ * {@link OccupancyGrid}.  Each iteration is a depth first search that cuts off every branch
+ * whose f = g + h exceeds a threshold; the threshold starts at the start's estimate and is
+ * raised to the smallest f cut off, so the first path found is a shortest one.  The search
+ * keeps only the current branch, on a stack of fixed size, and a {@link TranspositionTable} of
+ * fixed size that prunes cells already reached as cheaply in the same iteration.  Without that
+ * table a grid's many equally short routes to a cell would be searched over and over.
+ * <p>
+ * Memory is capped in nodes, a node being one stack entry or one table entry: the table takes
+ * half the cap, rounded down to a power of two, and the stack the rest.  A path longer than the
+ * stack can't be found, in which case {@link #wasCapped()} answers true.  Nothing grows with
+ * the search, so unlike {@link AstarAgent} the agent can't run out of memory however large the
+ * level, at the price of expanding cells many times.  For the same reason the search tree only
+ * records the path found.
+ * <p>
+ * The heuristic is the agent's estimator.  The start and goal must be lattice points.
+ */
+public class IdaStarAgent extends PathAgent {
+
+	public static final int DEFAULT_MAX_NODES = 1 << 20;
+
+	/** Bytes a node takes, to turn a cap in bytes into one in nodes. */
+	public static final int BYTES_PER_NODE = 16;
+
+	private static final int INF = Integer.MAX_VALUE;
+
+	private static final int[] DX = { 0, 0, 1, -1 };
+	private static final int[] DY = { -1, 1, 0, 0 };
+
+	private final int maxNodes;
+
+	private final TranspositionTable table;
+
+	private final int[] stackCell;
+
+	private final int[] stackG;
+
+	private final byte[] stackNext;		// next action to try from an entry
+
+	private int stackDepth;		// depth of the branch to the goal once found
+
+	private OccupancyGrid grid;
+
+	private Heuristic h;
+
+	private int iterations;
+
+	private long expanded;
+
+	private int peakNodes;
+
+	private boolean capped;
+
+
+	public IdaStarAgent(Level lvl) {
+		this(lvl, DEFAULT_MAX_NODES);
+	}
+
+
+	/**
+	 * @param lvl the level to plan in
+	 * @param maxNodes the most nodes the search may hold at once, at least two
+	 */
+	public IdaStarAgent(Level lvl, int maxNodes) {
+		super(lvl);
+		this.maxNodes = Math.max(2, maxNodes);
+		table = new TranspositionTable(this.maxNodes / 2);
+		int depth = this.maxNodes - table.capacity();
+		stackCell = new int[depth];
+		stackG = new int[depth];
+		stackNext = new byte[depth];
+	}
+
+
+	/**
+	 * @return the node cap that fits a number of bytes
+	 */
+	public static int nodesFor(long bytes) {
+		return (int) Math.min(Integer.MAX_VALUE, bytes / BYTES_PER_NODE);
+	}
+
+
+	@Override
+	public List<Point> findPath() {
+		if (start == null || goal == null) {
+			return null;
+		}
+		if (!isReachable()) {
+			return null;	// walled off, known without searching
+		}
+
+		grid = level.grid();
+		int s = grid.cellOf(start);
+		int t = grid.cellOf(goal);
+		if (s < 0 || t < 0 || !grid.isFree(s) || !grid.isFree(t)) return null;
+
+		listener.phase("prepare");
+		h = estimatorFor(goal);
+		iterations = 0;
+		expanded = 0;
+		peakNodes = 0;
+		capped = false;
+
+		int threshold = estimate(s);
+		while (threshold < INF) {
+			iterations++;
+			listener.phase("search");
+			int next = iterate(s, t, threshold);
+			if (next < 0) {
+				if (wasAborted()) return null;
+				listener.phase("path");
+				path = pathOnStack();
+				recordPath();
+				return path;
+			}
+			threshold = next;
+		}
+		return null; // if null returned, no path is found within the cap
+	}
+
+
+	/*
+	 * One depth first search bounded by a threshold on f.
+	 *
+	 * @return -1 if the goal was reached (or the search stopped), with the branch to it on the
+	 * stack, and the smallest f above the threshold otherwise, INF if there is none
+	 */
+	private int iterate(int s, int t, int threshold) {
+		int stride = grid.stride();
+		int next = INF;
+		table.clear();
+		table.put(s, 0, 0);
+		int depth = push(0, s, 0);
+		listener.generated(1);
+
+		while (depth > 0) {
+			int top = depth - 1;
+			int cur = stackCell[top];
+			int cx = grid.cellX(cur);
+			int cy = grid.cellY(cur);
+
+			if (stackNext[top] == 0) {		// first visit
+				if (shouldStop()) return -1;	// cancelled or out of time
+				expanded++;
+				listener.expanded(cx * stride, cy * stride);
+				listener.validityChecked(DX.length);
+				listener.frontierSize(depth, (int) Math.min(Integer.MAX_VALUE, expanded));
+				if (cur == t) {
+					stackDepth = depth;
+					return -1;
+				}
+			}
+
+			int a = stackNext[top]++;
+			if (a == DX.length) {
+				depth--;
+				continue;
+			}
+
+			int nx = cx + DX[a];
+			int ny = cy + DY[a];
+			if (!grid.isFree(nx, ny)) continue;
+			int n = grid.index(nx, ny);
+			int g = stackG[top] + 1;
+			int f = g + estimate(n);
+			if (f > threshold) {
+				next = Math.min(next, f);
+				continue;
+			}
+			int seen = table.get(n);
+			if (seen != TranspositionTable.MISSING && seen <= g) continue;
+			if (depth == stackCell.length) {
+				capped = true;
+				continue;
+			}
+
+			table.put(n, g, g);
+			depth = push(depth, n, g);
+			listener.generated(1);
+			peakNodes = Math.max(peakNodes, depth + table.size());
+		}
+		return next;
+	}
+
+
+	private int push(int depth, int cell, int g) {
+		stackCell[depth] = cell;
+		stackG[depth] = g;
+		stackNext[depth] = 0;
+		return depth + 1;
+	}
+
+
+	private List<Point> pathOnStack() {
+		List<Point> pth = new ArrayList<>(stackDepth);
+		for (int i = 0; i < stackDepth; i++)
+			pth.add(grid.pointOf(stackCell[i]));
+		return pth;
+	}
+
+
+	private void recordPath() {
+		int node = tree.addRoot(path.get(0).x, path.get(0).y);
+		for (int i = 1; i < stackDepth; i++) {
+			// the action taken from an entry is the one before its next
+			node = tree.add(node, path.get(i).x, path.get(i).y, (byte) (stackNext[i - 1] - 1));
+		}
+	}
+
+
+	private int estimate(int cell) {
+		int stride = grid.stride();
+		return (int) (h.h(grid.cellX(cell) * stride, grid.cellY(cell) * stride) / stride);
+	}
+
+
+	/**
+	 * @return the node cap
+	 */
+	public int getMaxNodes() {
+		return maxNodes;
+	}
+
+	/**
+	 * @return the most nodes the last search held at once, stack and table together
+	 */
+	public int getPeakNodes() {
+		return peakNodes;
+	}
+
+	/**
+	 * @return true if the last search had to cut branches short because the stack was full, in
+	 * which case a missing path may exist after all
+	 */
+	public boolean wasCapped() {
+		return capped;
+	}
+
+	/**
+	 * @return the number of iterations of the last search
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return the cells expanded by the last search over all iterations, counting repeats
+	 */
+	public long getExpanded() {
+		return expanded;
+	}
+
+
+	public String toString() {
+		return estimator == null ? "IDA* Agent" : "IDA* Agent (" + estimator + ")";
+	}
+}
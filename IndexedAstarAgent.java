@@ -0,0 +1,56 @@
+package path.agent;
+import java.awt.Point;
+import java.util.List;
+
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+
+/**
+ * An A* agent that searches the level's {@link OccupancyGrid} directly.  States are encoded as
+ * integer cell indices and the g values, parent links and open/closed status live in primitive
+ * arrays indexed by cell, with an {@link IndexedBinaryHeap} as the fringe.  The arrays are kept
+ * between queries in the calling thread's {@link SearchWorkspace} for the level, taken from the
+ * shared {@link WorkspacePool}, so a search allocates nothing but the returned path.  See
+ * {@link GridAstar} for the search itself.
+ * <p>
+ * A cell is closed when it is expanded, not when it is generated, and a cheaper route to a cell
+ * still on the fringe lowers its key in place.
+ * <p>
+ * The start and goal must be lattice points (multiples of the stride), as set by the GUI.
+ */
+public class IndexedAstarAgent extends PathAgent {
+
+	public IndexedAstarAgent(Level lvl) {
+		super(lvl);
+	}
+
+
+	@Override
+	public List<Point> findPath() {
+		if (start == null || goal == null) {
+			return null;
+		}
+
+		OccupancyGrid grid = level.grid();
+		int s = grid.cellOf(start);
+		int t = grid.cellOf(goal);
+		if (s < 0 || t < 0 || !isReachable()) return null;
+
+		listener.phase("prepare");
+		SearchWorkspace workspace = WorkspacePool.shared().get(level);
+		workspace.prepare(grid);
+		if (estimator != null) estimator.initialize(goal);
+		listener.phase("search");
+		if (!GridAstar.search(grid, s, t, workspace, listener, this)) return null; // if null returned, no path is found
+
+		listener.phase("path");
+		path = workspace.pathTo(grid, t);
+		return path;
+	}
+
+
+	public String toString() {
+		return estimator == null ? "Indexed A-Star Agent" : "Indexed A-Star Agent (" + estimator + ")";
+	}
+}
@@ -0,0 +1,210 @@
+package path.agent;
+import java.util.Arrays;
+
+
+/**
+ * An instance of this class is a binary min-heap over small integer items (typically cell
+ * indices) with a primitive long key per item.  Unlike {@link java.util.PriorityQueue} it knows
+ * where every item sits in the heap, so the key of a queued item can be changed in place
+ * (decrease-key) instead of queueing a duplicate.
+ * <p>
+ * Nothing is allocated after construction unless {@link #ensureCapacity(int)} has to grow the
+ * item universe.
+ */
+public class IndexedBinaryHeap {
+
+	private int[] heap;		// heap slot -> item
+
+	private int[] slot;		// item -> heap slot, -1 if the item is not queued
+
+	private long[] keys;	// item -> key, only meaningful while queued
+
+	private int size;
+
+
+	/**
+	 * @param capacity items must lie in [0, capacity)
+	 */
+	public IndexedBinaryHeap(int capacity) {
+		heap = new int[capacity];
+		slot = new int[capacity];
+		keys = new long[capacity];
+		Arrays.fill(slot, -1);
+	}
+
+
+	/**
+	 * Grows the item universe to at least the given capacity.  Queued items are kept.
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity <= slot.length) return;
+		int old = slot.length;
+		heap = Arrays.copyOf(heap, capacity);
+		slot = Arrays.copyOf(slot, capacity);
+		keys = Arrays.copyOf(keys, capacity);
+		Arrays.fill(slot, old, capacity, -1);
+	}
+
+
+	/**
+	 * Empties the heap.  Costs time proportional to the number of queued items, not
+	 * the capacity.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++)
+			slot[heap[i]] = -1;
+		size = 0;
+	}
+
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return slot.length;
+	}
+
+	public boolean contains(int item) {
+		return slot[item] >= 0;
+	}
+
+	/**
+	 * @return the key of a queued item
+	 */
+	public long key(int item) {
+		return keys[item];
+	}
+
+
+	/**
+	 * Queues an item, or changes its key if it is already queued.
+	 */
+	public void insertOrUpdate(int item, long key) {
+		if (slot[item] < 0) {
+			insert(item, key);
+		} else {
+			update(item, key);
+		}
+	}
+
+
+	/**
+	 * Queues an item that is not already queued.
+	 */
+	public void insert(int item, long key) {
+		keys[item] = key;
+		heap[size] = item;
+		slot[item] = size;
+		siftUp(size++);
+	}
+
+
+	/**
+	 * Changes the key of a queued item in either direction.
+	 */
+	public void update(int item, long key) {
+		long old = keys[item];
+		keys[item] = key;
+		if (key < old) {
+			siftUp(slot[item]);
+		} else {
+			siftDown(slot[item]);
+		}
+	}
+
+
+	/**
+	 * @return the item with the smallest key without removing it
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	public long peekKey() {
+		return keys[heap[0]];
+	}
+
+
+	/**
+	 * Visits the queued items in no particular order: slots 0 to size()-1 hold one each.
+	 *
+	 * @return the item in a heap slot
+	 */
+	public int itemAt(int i) {
+		return heap[i];
+	}
+
+
+	/**
+	 * Removes and answers the item with the smallest key.
+	 */
+	public int poll() {
+		int top = heap[0];
+		removeAt(0);
+		return top;
+	}
+
+
+	/**
+	 * Removes a queued item.  Does nothing if the item is not queued.
+	 */
+	public void remove(int item) {
+		int i = slot[item];
+		if (i >= 0) removeAt(i);
+	}
+
+
+	private void removeAt(int i) {
+		int item = heap[i];
+		slot[item] = -1;
+		size--;
+		if (i == size) return;
+
+		int last = heap[size];
+		heap[i] = last;
+		slot[last] = i;
+		siftDown(i);
+		if (heap[i] == last) siftUp(i);
+	}
+
+
+	private void siftUp(int i) {
+		int item = heap[i];
+		long key = keys[item];
+		while (i > 0) {
+			int p = (i - 1) >>> 1;
+			int parent = heap[p];
+			if (keys[parent] <= key) break;
+			heap[i] = parent;
+			slot[parent] = i;
+			i = p;
+		}
+		heap[i] = item;
+		slot[item] = i;
+	}
+
+
+	private void siftDown(int i) {
+		int item = heap[i];
+		long key = keys[item];
+		int half = size >>> 1;
+		while (i < half) {
+			int c = 2 * i + 1;
+			int r = c + 1;
+			if (r < size && keys[heap[r]] < keys[heap[c]]) c = r;
+			int child = heap[c];
+			if (key <= keys[child]) break;
+			heap[i] = child;
+			slot[child] = i;
+			i = c;
+		}
+		heap[i] = item;
+		slot[item] = i;
+	}
+
+}
@@ -0,0 +1,308 @@
+package path.agent;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+
+/**
+ * An agent that plans with Jump Point Search on the level's {@link OccupancyGrid}.  Rather than
+ * queueing every neighbor, the agent scans in straight lines and only queues the cells where an
+ * optimal path may have to turn (jump points), so symmetric paths through open space cost a scan
+ * rather than a pile of fringe operations.
+ * <p>
+ * By default the agent moves in the 4 connected manner of the other agents.  In the 8 connected
+ * mode diagonal moves are permitted as long as they do not cut the corner of a blocked cell.
+ * <p>
+ * The resulting path lists every stride step, in the same format as {@link #pathFromNode(Node)},
+ * not just the jump points; the search tree holds only the jump points.  The per-cell arrays are
+ * kept in the calling thread's {@link SearchWorkspace} for the level, taken from the shared
+ * {@link WorkspacePool}.  The start and goal must be lattice points.
+ */
+public class JumpPointAgent extends PathAgent {
+
+	private static final double SQRT2 = Math.sqrt(2.0);
+
+	private final boolean diagonal;		// 8 connected when true
+
+	private OccupancyGrid grid;
+
+	private SearchWorkspace ws;		// the thread's workspace for the level; parents are jump points
+
+	private int tests;		// grid tests since they were last reported
+
+	private int goalX;
+	private int goalY;
+
+	private final int[] dirs = new int[16];		// scratch space for pruned directions (dx,dy pairs)
+
+
+	/**
+	 * Creates a 4 connected jump point agent.
+	 */
+	public JumpPointAgent(Level lvl) {
+		this(lvl, false);
+	}
+
+
+	/**
+	 * @param lvl the level to plan in
+	 * @param diagonal true to permit diagonal moves (8 connected)
+	 */
+	public JumpPointAgent(Level lvl, boolean diagonal) {
+		super(lvl);
+		this.diagonal = diagonal;
+	}
+
+
+	@Override
+	public List<Point> findPath() {
+		if (start == null || goal == null) {
+			return null;
+		}
+		if (!isReachable()) {
+			return null;	// walled off, known without searching
+		}
+
+		listener.phase("prepare");
+		grid = level.grid();
+		ws = WorkspacePool.shared().get(level);
+		ws.prepare(grid);
+		ws.costs();		// the real valued costs, allocated on first use
+
+		int s = grid.cellOf(start);
+		int t = grid.cellOf(goal);
+		if (s < 0 || t < 0) return null;
+
+		goalX = grid.cellX(t);
+		goalY = grid.cellY(t);
+
+		ws.cost[s] = 0;
+		ws.parent[s] = -1;
+		ws.mark[s] = ws.openMark;
+		ws.treeNode[s] = tree.addRoot(start.x, start.y);
+		ws.open.insert(s, key(heuristic(grid.cellX(s), grid.cellY(s))));
+		listener.generated(1);
+		listener.phase("search");
+		tests = 0;
+		int closed = 0;
+
+		while (!ws.open.isEmpty()) {
+			int cur = ws.open.poll();
+			ws.mark[cur] = ws.openMark + 1;
+			closed++;
+			if (shouldStop()) return null;	// cancelled or out of time
+			listener.expanded(grid.cellX(cur) * grid.stride(), grid.cellY(cur) * grid.stride());
+
+			if (cur == t) {
+				listener.phase("path");
+				path = pathFromJumpPoints(t);
+				return path;
+			}
+
+			int cx = grid.cellX(cur);
+			int cy = grid.cellY(cur);
+			int n = prunedDirections(cur, cx, cy);
+			int generated = 0;
+			int reopened = 0;
+
+			for (int i = 0; i < n; i += 2) {
+				int dx = dirs[i];
+				int dy = dirs[i + 1];
+				int jp = diagonal ? jump8(cx, cy, dx, dy) : jump4(cx, cy, dx, dy);
+				if (jp < 0 || ws.status(jp) == SearchWorkspace.CLOSED) continue;
+
+				int steps = Math.max(Math.abs(grid.cellX(jp) - cx), Math.abs(grid.cellY(jp) - cy));
+				double g = ws.cost[cur] + steps * (dx != 0 && dy != 0 ? SQRT2 : 1.0);
+				if (ws.status(jp) == SearchWorkspace.OPEN && ws.cost[jp] <= g) continue;
+
+				ws.cost[jp] = g;
+				ws.parent[jp] = cur;
+				ws.treeNode[jp] = tree.add(ws.treeNode[cur], grid.cellX(jp) * grid.stride(), grid.cellY(jp) * grid.stride(), SearchTree.NO_ACTION);
+				generated++;
+				long k = key(g + heuristic(grid.cellX(jp), grid.cellY(jp)));
+				if (ws.status(jp) == SearchWorkspace.OPEN) {
+					ws.open.update(jp, k);
+					reopened++;
+				} else {
+					ws.mark[jp] = ws.openMark;
+					ws.open.insert(jp, k);
+				}
+			}
+
+			listener.validityChecked(tests);
+			tests = 0;
+			listener.generated(generated);
+			if (reopened > 0) listener.reopened(reopened);
+			listener.frontierSize(ws.open.size(), closed);
+		}
+		return null; // if null returned, no path is found
+	}
+
+
+	/*
+	 * Non-negative doubles order the same way as their bit patterns.
+	 */
+	private static long key(double f) {
+		return Double.doubleToLongBits(f);
+	}
+
+
+	/*
+	 * Manhattan distance in the 4 connected mode, octile distance otherwise, in cells.
+	 */
+	private double heuristic(int x, int y) {
+		int dx = Math.abs(goalX - x);
+		int dy = Math.abs(goalY - y);
+		if (!diagonal) return dx + dy;
+		return Math.max(dx, dy) + (SQRT2 - 1.0) * Math.min(dx, dy);
+	}
+
+
+	private boolean free(int x, int y) {
+		tests++;
+		return grid.isFree(x, y);
+	}
+
+
+	/*
+	 * Fills dirs with the directions worth scanning from a jump point given the direction
+	 * we arrived from and answers the number of ints written.
+	 */
+	private int prunedDirections(int cell, int x, int y) {
+		int n = 0;
+		int p = ws.parent[cell];
+
+		if (p < 0) {
+			for (int dy = -1; dy <= 1; dy++) {
+				for (int dx = -1; dx <= 1; dx++) {
+					if (dx == 0 && dy == 0) continue;
+					if (dx != 0 && dy != 0 && (!diagonal || !free(x + dx, y) || !free(x, y + dy))) continue;
+					dirs[n++] = dx;
+					dirs[n++] = dy;
+				}
+			}
+			return n;
+		}
+
+		int dx = Integer.signum(x - grid.cellX(p));
+		int dy = Integer.signum(y - grid.cellY(p));
+
+		if (dx != 0 && dy != 0) {
+			boolean walkX = free(x + dx, y);
+			boolean walkY = free(x, y + dy);
+			if (walkY) { dirs[n++] = 0; dirs[n++] = dy; }
+			if (walkX) { dirs[n++] = dx; dirs[n++] = 0; }
+			if (walkX && walkY) { dirs[n++] = dx; dirs[n++] = dy; }
+		}
+		else if (dx != 0) {
+			boolean ahead = free(x + dx, y);
+			boolean up = free(x, y - 1);
+			boolean down = free(x, y + 1);
+			if (ahead) { dirs[n++] = dx; dirs[n++] = 0; }
+			if (up) { dirs[n++] = 0; dirs[n++] = -1; }
+			if (down) { dirs[n++] = 0; dirs[n++] = 1; }
+			if (diagonal && ahead && up) { dirs[n++] = dx; dirs[n++] = -1; }
+			if (diagonal && ahead && down) { dirs[n++] = dx; dirs[n++] = 1; }
+		}
+		else {
+			boolean ahead = free(x, y + dy);
+			boolean left = free(x - 1, y);
+			boolean right = free(x + 1, y);
+			if (ahead) { dirs[n++] = 0; dirs[n++] = dy; }
+			if (left) { dirs[n++] = -1; dirs[n++] = 0; }
+			if (right) { dirs[n++] = 1; dirs[n++] = 0; }
+			if (diagonal && ahead && left) { dirs[n++] = -1; dirs[n++] = dy; }
+			if (diagonal && ahead && right) { dirs[n++] = 1; dirs[n++] = dy; }
+		}
+		return n;
+	}
+
+
+	/*
+	 * Scans horizontally or vertically from (x,y) and answers the first jump point or -1.
+	 * A horizontal scan stops where a wall beside it ends (a forced neighbor).  A vertical scan
+	 * also stops at any cell from which a horizontal scan finds a jump point.
+	 */
+	private int jump4(int x, int y, int dx, int dy) {
+		while (true) {
+			x += dx;
+			y += dy;
+			if (!free(x, y)) return -1;
+			if (x == goalX && y == goalY) return grid.index(x, y);
+
+			if (dx != 0) {
+				if ((free(x, y - 1) && !free(x - dx, y - 1)) || (free(x, y + 1) && !free(x - dx, y + 1)))
+					return grid.index(x, y);
+			} else {
+				if ((free(x - 1, y) && !free(x - 1, y - dy)) || (free(x + 1, y) && !free(x + 1, y - dy)))
+					return grid.index(x, y);
+				if (jump4(x, y, 1, 0) >= 0 || jump4(x, y, -1, 0) >= 0)
+					return grid.index(x, y);
+			}
+		}
+	}
+
+
+	/*
+	 * The 8 connected scan.  Straight scans stop at forced neighbors; a diagonal scan stops at
+	 * any cell from which one of its two straight component scans finds a jump point, and
+	 * ends when the next diagonal step would cut a corner.
+	 */
+	private int jump8(int x, int y, int dx, int dy) {
+		while (true) {
+			x += dx;
+			y += dy;
+			if (!free(x, y)) return -1;
+			if (x == goalX && y == goalY) return grid.index(x, y);
+
+			if (dx != 0 && dy != 0) {
+				if (jump8(x, y, dx, 0) >= 0 || jump8(x, y, 0, dy) >= 0)
+					return grid.index(x, y);
+				if (!free(x + dx, y) || !free(x, y + dy))
+					return -1;
+			} else if (dx != 0) {
+				if ((free(x, y - 1) && !free(x - dx, y - 1)) || (free(x, y + 1) && !free(x - dx, y + 1)))
+					return grid.index(x, y);
+			} else {
+				if ((free(x - 1, y) && !free(x - 1, y - dy)) || (free(x + 1, y) && !free(x + 1, y - dy)))
+					return grid.index(x, y);
+			}
+		}
+	}
+
+
+
+	/*
+	 * Walks the jump points back to the start and fills in every stride step between them.
+	 */
+	private List<Point> pathFromJumpPoints(int cell) {
+
+		List<Point> pth = new ArrayList<>();
+		pth.add(grid.pointOf(cell));
+
+		for (int c = cell; ws.parent[c] >= 0; c = ws.parent[c]) {
+			int p = ws.parent[c];
+			int x = grid.cellX(c);
+			int y = grid.cellY(c);
+			int dx = Integer.signum(grid.cellX(p) - x);
+			int dy = Integer.signum(grid.cellY(p) - y);
+			do {
+				x += dx;
+				y += dy;
+				pth.add(grid.pointOf(grid.index(x, y)));
+			} while (grid.index(x, y) != p);
+		}
+
+		Collections.reverse(pth);
+		return pth;
+	}
+
+
+	public String toString() {
+		return diagonal ? "Jump Point Agent (8 connected)" : "Jump Point Agent";
+	}
+}
@@ -0,0 +1,290 @@
+package path.agent.heuristic;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import path.level.Level;
+import path.level.LevelListener;
+import path.level.OccupancyGrid;
+
+/**
+ * A landmark (ALT) heuristic.  A few free cells of the level are chosen as landmarks and the
+ * exact 4 connected distance from every landmark to every cell is precomputed.  By the triangle
+ * inequality, for any landmark L the difference |d(L,goal) - d(L,n)| can not exceed the true
+ * distance from n to the goal, so the largest such difference (or the Manhattan distance, if
+ * that is larger) is a lower bound that knows about walls.
+ * <p>
+ * Landmarks are picked by farthest point selection: starting from the free cell farthest from a
+ * seed, each next landmark is the reachable cell farthest from all landmarks chosen so far.  The
+ * distance tables, one breadth first search per landmark, are computed in parallel.
+ * <p>
+ * A heuristic made for a level listens to it and recomputes its tables when the obstacles
+ * change; one made for a grid, such as a planner's snapshot, never changes.  Points that are
+ * not lattice points fall back to the Manhattan distance.  The tables can be
+ * shared: {@link #copy()} answers a heuristic for another agent without recomputing them.
+ */
+public class LandmarkHeuristic extends Heuristic implements LevelListener {
+
+	/**
+	 * Default number of landmarks.
+	 */
+	public static final int DEFAULT_LANDMARKS = 8;
+
+	private static final int UNREACHED = -1;
+
+	private final Level level;		// null if made for a grid
+
+	private final int count;
+
+	private volatile Tables tables;		// shared between copies
+
+	private int[] goalDist;		// distance from each landmark to the goal, -1 if unreachable
+
+	private int goalCell;
+
+
+	/**
+	 * The landmarks and their distance tables, for one layout of the level.
+	 */
+	private static final class Tables {
+
+		final OccupancyGrid grid;
+
+		final int[] landmarks;		// landmark cells
+
+		final int[][] dist;			// dist[k][cell]: distance in cells from landmark k, -1 if unreachable
+
+		Tables(OccupancyGrid grid, int[] landmarks, int[][] dist) {
+			this.grid = grid;
+			this.landmarks = landmarks;
+			this.dist = dist;
+		}
+	}
+
+
+	public LandmarkHeuristic(Level lvl) {
+		this(lvl, DEFAULT_LANDMARKS);
+	}
+
+
+	/**
+	 * Selects the landmarks of a level, computes their tables and starts listening for changes.
+	 *
+	 * @param lvl the level
+	 * @param count number of landmarks
+	 */
+	public LandmarkHeuristic(Level lvl, int count) {
+		super();
+		this.level = lvl;
+		this.count = count;
+		this.tables = compute(lvl.grid(), count);
+		lvl.addListener(this);
+	}
+
+
+	/**
+	 * Selects the landmarks of a grid and computes their tables.  The heuristic does not listen
+	 * to any level, so the grid must not change while it is used.
+	 *
+	 * @param grid the grid
+	 * @param count number of landmarks
+	 */
+	public LandmarkHeuristic(OccupancyGrid grid, int count) {
+		super();
+		this.level = null;
+		this.count = count;
+		this.tables = compute(grid, count);
+	}
+
+
+	private LandmarkHeuristic(LandmarkHeuristic other) {
+		super();
+		this.level = other.level;
+		this.count = other.count;
+		this.tables = other.tables;
+		if (level != null) level.addListener(this);
+	}
+
+
+	/**
+	 * @return a heuristic with its own goal that shares this one's tables
+	 */
+	public LandmarkHeuristic copy() {
+		return new LandmarkHeuristic(this);
+	}
+
+
+	/**
+	 * Stops listening to the level.  Call when the heuristic is no longer used.
+	 */
+	public void dispose() {
+		if (level != null) level.removeListener(this);
+	}
+
+
+	/**
+	 * The tables are recomputed right away; copies made earlier keep the old ones until they
+	 * hear about the change themselves.
+	 */
+	@Override
+	public void levelChanged(Level lvl, Rectangle cells) {
+		tables = compute(lvl.grid(), count);
+		if (goalState != null) initialize(goalState);
+	}
+
+
+	@Override
+	public void initialize(Point goal) {
+		super.initialize(goal);
+		Tables t = tables;
+		goalCell = t.grid.cellOf(goal);
+		goalDist = new int[t.landmarks.length];
+		for (int k = 0; k < goalDist.length; k++)
+			goalDist[k] = goalCell < 0 ? UNREACHED : t.dist[k][goalCell];
+	}
+
+
+	@Override
+	public double h(Point nodeState) {
+		return h(nodeState.x, nodeState.y);
+	}
+
+
+	@Override
+	public double h(int x, int y) {
+		int manhattan = Math.abs(goalState.x - x) + Math.abs(goalState.y - y);
+		Tables t = tables;
+		int cell = t.grid.cellOf(x, y);
+		if (cell < 0 || goalCell < 0) return manhattan;
+
+		int best = 0;
+		for (int k = 0; k < goalDist.length; k++) {
+			int dg = goalDist[k];
+			int dn = t.dist[k][cell];
+			if (dg == UNREACHED || dn == UNREACHED) continue;	// not on the landmark's side of the level
+			int diff = Math.abs(dg - dn);
+			if (diff > best) best = diff;
+		}
+		return Math.max(manhattan, best * t.grid.stride());
+	}
+
+
+	/**
+	 * @return the landmark locations
+	 */
+	public Point[] landmarks() {
+		Tables t = tables;
+		Point[] result = new Point[t.landmarks.length];
+		for (int k = 0; k < result.length; k++)
+			result[k] = t.grid.pointOf(t.landmarks[k]);
+		return result;
+	}
+
+
+	/*  --------------------------- PRECOMPUTATION --------------------------------- */
+
+	private static Tables compute(OccupancyGrid grid, int count) {
+		int seed = seedCell(grid);
+		if (seed < 0) return new Tables(grid, new int[0], new int[0][]);
+
+		int[] reach = bfs(grid, seed);
+		int[] landmarks = select(grid, reach, count);
+
+		int[][] dist = new int[landmarks.length][];
+		IntStream.range(0, landmarks.length).parallel()
+				.forEach(k -> dist[k] = bfs(grid, landmarks[k]));
+		return new Tables(grid, landmarks, dist);
+	}
+
+
+	/*
+	 * The free cell nearest the middle of the level, row by row outward.
+	 */
+	private static int seedCell(OccupancyGrid grid) {
+		int cx = grid.cols() / 2;
+		int cy = grid.rows() / 2;
+		int best = -1;
+		int bestD = Integer.MAX_VALUE;
+		for (int y = 0; y < grid.rows(); y++)
+			for (int x = 0; x < grid.cols(); x++) {
+				int d = Math.abs(x - cx) + Math.abs(y - cy);
+				if (d < bestD && grid.isFree(x, y)) {
+					bestD = d;
+					best = grid.index(x, y);
+				}
+			}
+		return best;
+	}
+
+
+	/*
+	 * Farthest point selection over the cells reached from the seed.  The first landmark is the
+	 * cell farthest (in path distance) from the seed; later ones maximize the Manhattan distance
+	 * to the nearest landmark chosen so far, which needs no search per landmark and so leaves
+	 * the exact tables free to be computed in parallel.
+	 */
+	private static int[] select(OccupancyGrid grid, int[] reach, int count) {
+		int first = -1;
+		for (int c = 0; c < reach.length; c++)
+			if (reach[c] != UNREACHED && (first < 0 || reach[c] > reach[first])) first = c;
+
+		int[] chosen = new int[count];
+		int n = 0;
+		chosen[n++] = first;
+
+		int[] nearest = new int[reach.length];
+		Arrays.fill(nearest, Integer.MAX_VALUE);
+		while (n < count) {
+			int last = chosen[n - 1];
+			int lx = grid.cellX(last);
+			int ly = grid.cellY(last);
+			int next = -1;
+			for (int c = 0; c < reach.length; c++) {
+				if (reach[c] == UNREACHED) continue;
+				int d = Math.abs(grid.cellX(c) - lx) + Math.abs(grid.cellY(c) - ly);
+				if (d < nearest[c]) nearest[c] = d;
+				if (nearest[c] > 0 && (next < 0 || nearest[c] > nearest[next])) next = c;
+			}
+			if (next < 0) break;	// fewer reachable cells than landmarks
+			chosen[n++] = next;
+		}
+		return Arrays.copyOf(chosen, n);
+	}
+
+
+	/*
+	 * Distance in cells from one cell to every cell, -1 where unreachable.
+	 */
+	private static int[] bfs(OccupancyGrid grid, int from) {
+		int[] dist = new int[grid.size()];
+		Arrays.fill(dist, UNREACHED);
+		int[] queue = new int[grid.size()];
+		int head = 0;
+		int tail = 0;
+		dist[from] = 0;
+		queue[tail++] = from;
+		while (head < tail) {
+			int cur = queue[head++];
+			int cx = grid.cellX(cur);
+			int cy = grid.cellY(cur);
+			int d = dist[cur] + 1;
+			for (int a = 0; a < 4; a++) {
+				int nx = cx + (a == 2 ? 1 : a == 3 ? -1 : 0);
+				int ny = cy + (a == 0 ? -1 : a == 1 ? 1 : 0);
+				if (!grid.isFree(nx, ny)) continue;
+				int next = grid.index(nx, ny);
+				if (dist[next] != UNREACHED) continue;
+				dist[next] = d;
+				queue[tail++] = next;
+			}
+		}
+		return dist;
+	}
+
+
+	public String toString() {
+		return "ALT, " + tables.landmarks.length + " landmarks";
+	}
+
+}
@@ -1,21 +1,50 @@
 package path.level;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Shape;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import path.PathFinderApp;
 
 /**
  * An instance of this class represents a level in a 2D game and provides the environment in 
  * which our agent will search.
  * <p>
  * Our world has a polygon boundary shape and many obstacles.
+ * <p>
+ * When the level is created the boundary and obstacles are baked into an {@link OccupancyGrid}
+ * at stride resolution, so testing a lattice point is a single bit lookup.  The obstacle shapes
+ * are retained for rendering.
+ * <p>
+ * Obstacles added or removed afterwards are rasterized into the grid right away, bump the
+ * level's version and are announced to the registered {@link LevelListener}s.  Agents must not
+ * be searching while the level is being changed.
+ * <p>
+ * The connected components of the free cells are labeled when the level is created as well,
+ * and kept up to date with the grid, so agents can tell in constant time that a goal can't be
+ * reached (see {@link ComponentIndex}).
+ * <p>
+ * A level may instead be made from any {@link Occupancy}, such as a {@link MappedOccupancy} far
+ * larger than the heap.  Such a level has a rectangular boundary, no obstacle shapes and can't
+ * be changed.  Agents that test {@link #isValid(Point)} run on it unchanged; its in-heap
+ * {@link OccupancyGrid}, which the grid agents search, is only built when first asked for,
+ * and its components are only labeled once it has been.
  * 
  */
 public class Level {
 
 	private Shape boundary;
 	private List<Shape> obstacles = new LinkedList<>();
+	private final Occupancy occupancy;
+	private final boolean fromOccupancy;		// no shapes, read only
+	private volatile OccupancyGrid grid;
+	private volatile ComponentIndex components;
+	private volatile long version;
+	private List<LevelListener> listeners = new CopyOnWriteArrayList<>();
 
 	
 	/**
@@ -29,26 +58,181 @@ public class Level {
 	 * A newly created level at least has a boundary.
 	 */
 	public Level(Shape bounds) {
+		this(bounds, Collections.emptyList());
+	}
+
+
+	/**
+	 * Creates a level with a boundary and obstacle zones and rasterizes them.
+	 */
+	public Level(Shape bounds, Collection<? extends Shape> zones) {
 		boundary = bounds;
+		obstacles.addAll(zones);
+		grid = OccupancyGrid.rasterize(boundary, obstacles, PathFinderApp.STRIDE);
+		occupancy = grid;
+		fromOccupancy = false;
+		components = new ComponentIndex(grid);
+	}
+
+
+	/**
+	 * Creates a level whose free space is given by an occupancy.  Its boundary is the
+	 * rectangle the lattice spans, and it has no obstacle shapes.
+	 */
+	public Level(Occupancy occupancy) {
+		this.occupancy = occupancy;
+		fromOccupancy = true;
+		boundary = new Rectangle(occupancy.cols() * occupancy.stride(), occupancy.rows() * occupancy.stride());
+		if (occupancy instanceof OccupancyGrid) grid = (OccupancyGrid) occupancy;
 	}
 
 
 	/**
-	 * @return the list of obstacles in our level
+	 * @return the list of obstacles in our level (read only, the level is baked on creation)
 	 */
 	public List<Shape> obstacles() {
-		return this.obstacles;
+		return Collections.unmodifiableList(this.obstacles);
+	}
+
+
+	/**
+	 * Adds an obstacle zone and updates the occupancy grid beneath it.
+	 * @param s the new obstacle
+	 */
+	public void addObstacle(Shape s) {
+		requireShapes();
+		obstacles.add(s);
+		changed(s);
+	}
+
+
+	/**
+	 * Removes an obstacle zone and updates the occupancy grid beneath it.
+	 * @param s the obstacle to remove
+	 * @return true if the obstacle was part of this level
+	 */
+	public boolean removeObstacle(Shape s) {
+		requireShapes();
+		if (!obstacles.remove(s)) return false;
+		changed(s);
+		return true;
+	}
+
+
+	private void requireShapes() {
+		if (fromOccupancy)
+			throw new UnsupportedOperationException("the level was made from an occupancy and can't be changed");
+	}
+
+
+	/*
+	 * Re-rasterizes the cells under a shape and tells everyone about it.
+	 */
+	private void changed(Shape s) {
+		Rectangle cells = grid.cellsCovering(s.getBounds());
+		grid.rasterize(boundary, obstacles, cells);
+		components.update(cells);
+		version++;
+		for (LevelListener l : listeners)
+			l.levelChanged(this, cells);
+	}
+
+
+	/**
+	 * @return a counter that increases every time the obstacles change
+	 */
+	public long version() {
+		return version;
+	}
+
+
+	public void addListener(LevelListener l) {
+		listeners.add(l);
+	}
+
+
+	public void removeListener(LevelListener l) {
+		listeners.remove(l);
+	}
+
+
+	/**
+	 * @return the boundary shape of our level
+	 */
+	public Shape boundary() {
+		return this.boundary;
+	}
+
+
+	/**
+	 * @return the rasterized free space of our level.  A level made from an occupancy copies
+	 * it into a grid the first time.
+	 * @throws IllegalStateException if the level has too many cells for a grid
+	 */
+	public OccupancyGrid grid() {
+		OccupancyGrid g = grid;
+		if (g == null) {
+			synchronized (this) {
+				g = grid;
+				if (g == null) {
+					if ((long) occupancy.cols() * occupancy.rows() > Integer.MAX_VALUE)
+						throw new IllegalStateException("level of " + occupancy.cols() + "x" + occupancy.rows()
+								+ " cells is too large for an occupancy grid; use an agent that tests isValid");
+					grid = g = OccupancyGrid.copyOf(occupancy);
+				}
+			}
+		}
+		return g;
+	}
+
+
+	/**
+	 * @return the connected components of the free cells, or null for a level made from an
+	 * occupancy whose grid has not been built.  Such a level labels them the first time they
+	 * are asked for once it has a grid, so agents that only test {@link #isValid(Point)} never
+	 * copy the occupancy into the heap.
+	 */
+	public ComponentIndex components() {
+		ComponentIndex c = components;
+		OccupancyGrid g = grid;
+		if (c == null && g != null) {
+			synchronized (this) {
+				c = components;
+				if (c == null) components = c = new ComponentIndex(g);
+			}
+		}
+		return c;
+	}
+
+
+	/**
+	 * @return the free space of our level, which is its grid unless the level was made from
+	 * another occupancy
+	 */
+	public Occupancy occupancy() {
+		return this.occupancy;
 	}
 
 	
 	/**
 	 * Tests to see if a specified state/point exists inside our boundary
-	 * but not inside any of the obsacles. 
+	 * but not inside any of the obsacles.  Lattice points are answered from the
+	 * occupancy grid, any other point falls back to testing the shapes.  A level made from an
+	 * occupancy answers every point from the occupancy.
 	 * @param p a point to test
 	 * @return true if inside the boundary and outside of all obstacles.
 	 */
 	public boolean isValid(Point p) {
 
+		if (fromOccupancy) {
+			// no shapes: a point is valid when the square of the cell it falls in is free
+			int stride = occupancy.stride();
+			return occupancy.isFree(Math.floorDiv(p.x, stride), Math.floorDiv(p.y, stride));
+		}
+
+		int cell = grid.cellOf(p);
+		if (cell >= 0) return grid.isFree(cell);
+
 		if (!boundary.contains(p)) return false;
 		
 		for (Shape s : obstacles) 
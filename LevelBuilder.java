@@ -28,14 +28,12 @@ public class LevelBuilder {
 	}
 	
 	/**
-	 *  Create and configures a new level.
+	 *  Create and configures a new level.  The zones are rasterized into the
+	 *  level's occupancy grid here, once, rather than on every validity test.
 	 */
 	public Level build() {
 		
-		Level lvl = new Level(new Rectangle(width,height));
-		lvl.obstacles().clear();
-		lvl.obstacles().addAll(zones);
-		return lvl;
+		return new Level(new Rectangle(width,height), zones);
 	}
 	
 	/**
@@ -0,0 +1,18 @@
+package path.level;
+import java.awt.Rectangle;
+
+/**
+ * Implementations of this interface are told when the obstacles of a {@link Level} change so
+ * they can discard or repair whatever they derived from the level's free space.
+ */
+public interface LevelListener {
+
+	/**
+	 * Called after an obstacle was added or removed and the occupancy grid was updated.
+	 *
+	 * @param level the level that changed
+	 * @param cells the region of grid cells (in cell coordinates) whose occupancy may differ
+	 */
+	void levelChanged(Level level, Rectangle cells);
+
+}
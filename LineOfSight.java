@@ -0,0 +1,78 @@
+package path.agent;
+
+import path.level.OccupancyGrid;
+
+
+/**
+ * Line of sight tests on an {@link OccupancyGrid}.  Each cell is taken to stand for the square
+ * of side one stride whose top left corner is its lattice point, which is exact for obstacles
+ * aligned to the lattice: such an obstacle covers a square exactly when it covers the square's
+ * lattice point.  A straight segment between two lattice points is clear when every point of it
+ * lies in a free square.  Touching a blocked square's right or bottom edge or a corner is fine,
+ * just as a unit may stand on the lattice point right next to an obstacle.
+ * <p>
+ * The squares are walked column by column with integer arithmetic only, so a test costs time in
+ * proportion to the number of squares the segment crosses, like Bresenham's algorithm, but
+ * visits every square the segment touches rather than one per column.
+ */
+public final class LineOfSight {
+
+	private LineOfSight() {
+	}
+
+
+	/**
+	 * @return true if the segment from cell (x0,y0) to cell (x1,y1) only crosses free squares
+	 */
+	public static boolean clear(OccupancyGrid grid, int x0, int y0, int x1, int y1) {
+		if (x1 < x0) {		// the squares touched don't depend on the direction
+			int t = x0; x0 = x1; x1 = t;
+			t = y0; y0 = y1; y1 = t;
+		}
+		int dx = x1 - x0;
+		int dy = y1 - y0;
+
+		if (dx == 0 || dy == 0) {
+			for (int y = Math.min(y0, y1); y <= Math.max(y0, y1); y++)
+				for (int x = x0; x <= x1; x++)
+					if (!grid.isFree(x, y)) return false;
+			return true;
+		}
+
+		// the lattice points on the segment, ends included
+		int g = gcd(dx, Math.abs(dy));
+		for (int k = 0; k <= g; k++)
+			if (!grid.isFree(x0 + k * (dx / g), y0 + k * (dy / g))) return false;
+
+		// between two vertical lines the segment spans y in (lo, hi), given times dx
+		for (int c = x0; c < x1; c++) {
+			int ya = y0 * dx + dy * (c - x0);
+			int yb = ya + dy;
+			int lo = Math.min(ya, yb);
+			int hi = Math.max(ya, yb);
+			int last = -Math.floorDiv(-hi, dx) - 1;
+			for (int r = Math.floorDiv(lo, dx); r <= last; r++)
+				if (!grid.isFree(c, r)) return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * @return true if the segment between two cells, given by index, only crosses free squares
+	 */
+	public static boolean clear(OccupancyGrid grid, int from, int to) {
+		return clear(grid, grid.cellX(from), grid.cellY(from), grid.cellX(to), grid.cellY(to));
+	}
+
+
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+}
@@ -12,16 +12,26 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Path2D;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.BorderFactory;
 import javax.swing.JComboBox;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.border.Border;
 
 import path.PathFinderApp;
 import path.agent.*;
+import path.agent.heuristic.LandmarkHeuristic;
+import path.level.ComponentIndex;
 import path.level.Level;
 
 /**
@@ -35,6 +45,11 @@ import path.level.Level;
  * The operator should click on the level to establish the start state and click again for the goal
  * state and then choose the agent and click on the plan button. 
  * <p>
+ * Planning runs on a background thread so the GUI stays responsive.  The states the agent
+ * expands are streamed back and painted as the search goes, at most once per frame.  A search
+ * can be stopped with the cancel button and gives up by itself when it exceeds the time budget.
+ * The agent's {@link SearchMetrics} are printed when it is done.
+ * <p>
  * NOTE: We are reusing the swing Shape classes to represent our level, simplifying the rendering
  * and testing for point containment.
  * 
@@ -44,18 +59,43 @@ public class MainFrame extends JFrame {
 	
 	private static final long serialVersionUID = 2884588462686235542L;
 
+	private static final int FRAME_MILLIS = 1000 / 30;   // how often streamed states are painted
+
+	private static final int DEFAULT_BUDGET_SECONDS = 30;
+
 	private Level theLevel;      // the level geometry.
 	
 	private PathAgent theAgent;
 	
 	private Point start;
 	private Point goal;
-	private List<Point> searchStates;
+	private List<Point> searchStates;   // states streamed while a search runs
+	private SearchTree searchTree;   // the finished search's tree, drawn instead of searchStates
 	private List<Point> resultingPath;
 	
 	
 	private Button btnQuit = new Button("Quit");
 	private Button btnPlan = new Button("Plan");
+	private Button btnCancel = new Button("Cancel");
+	
+	private JSpinner spnBudget = new JSpinner(new SpinnerNumberModel(DEFAULT_BUDGET_SECONDS, 0, 3600, 5));
+	
+	/*
+	 * Planning happens on this thread, never on the event dispatch thread.
+	 */
+	private final ExecutorService planner = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "planner");
+		t.setDaemon(true);
+		return t;
+	});
+	
+	private boolean planning;   // a search is running on the planner thread
+	
+	private Level unloaded;   // level the running search was started on, released when it is back
+	
+	private final List<Point> streamed = new ArrayList<>();   // expanded states not yet painted, guarded by itself
+	
+	private final Timer frameTimer = new Timer(FRAME_MILLIS, e -> showStreamedStates());
 	
 	JComboBox<PathAgent> boxAgent = new JComboBox<>();
 	
@@ -85,8 +125,31 @@ public class MainFrame extends JFrame {
 		 */
 		boxAgent.addItem(new GhostAgent(theLevel));
 		boxAgent.addItem(new AstarAgent(theLevel));
+		AstarAgent bucketed = new AstarAgent(theLevel);
+		bucketed.setOpenListKind(OpenList.Kind.BUCKET_QUEUE);
+		boxAgent.addItem(bucketed);
+		boxAgent.addItem(new IndexedAstarAgent(theLevel));
+		IndexedAstarAgent landmarks = new IndexedAstarAgent(theLevel);
+		landmarks.setEstimator(new LandmarkHeuristic(theLevel));
+		boxAgent.addItem(landmarks);
+		boxAgent.addItem(new CachingAgent(new IndexedAstarAgent(theLevel)));
+		boxAgent.addItem(new AnytimeAstarAgent(theLevel));
+		boxAgent.addItem(new IdaStarAgent(theLevel));
+		boxAgent.addItem(new SmaStarAgent(theLevel));
+		boxAgent.addItem(new JumpPointAgent(theLevel));
+		boxAgent.addItem(new JumpPointAgent(theLevel, true));
+		boxAgent.addItem(new ThetaStarAgent(theLevel));
+		boxAgent.addItem(new ThetaStarAgent(theLevel, true));
+		boxAgent.addItem(new VisibilityGraphAgent(theLevel));
+		boxAgent.addItem(new NavMeshAgent(theLevel));
 		boxAgent.addItem(new GreedyBestFirst(theLevel));
 		boxAgent.addItem(new BreadthFirstAgent((theLevel)));
+		boxAgent.addItem(new BidirectionalBreadthFirstAgent(theLevel));
+		boxAgent.addItem(new BidirectionalAstarAgent(theLevel));
+		boxAgent.addItem(new BidirectionalAstarAgent(theLevel, true));
+		boxAgent.addItem(new HierarchicalAgent(theLevel));
+		boxAgent.addItem(new DStarLiteAgent(theLevel));
+		boxAgent.addItem(new FlowFieldAgent(theLevel));
 		//
 		
 		/*
@@ -112,6 +175,18 @@ public class MainFrame extends JFrame {
 			}
 		});
 
+
+		/*
+		 * The cancel button asks a running search to give up.
+		 */
+		btnCancel.setEnabled(false);
+		btnCancel.addActionListener(new ActionListener(){
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (planning) theAgent.cancel();
+			}
+		});
+
 		
 		
 		
@@ -125,6 +200,11 @@ public class MainFrame extends JFrame {
 
 		pnlButtons.add(btnPlan);	// button to initiate the path finding search
 		
+		pnlButtons.add(btnCancel);	// button to stop a running search
+		
+		pnlButtons.add(new JLabel("Budget (s)"));
+		pnlButtons.add(spnBudget);	// time budget of a search, 0 for none
+		
 		pnlButtons.add(btnQuit);	// button to quit
 		
 		
@@ -208,15 +288,26 @@ public class MainFrame extends JFrame {
 		 */
 		else 
 		{
-			goal = point;
+			/*
+			 * a goal walled off from the start is moved to the nearest cell that can be reached.
+			 */
+			ComponentIndex comps = theLevel.components();
+			Point snapped = comps == null ? null : comps.nearestReachable(start, point);
+			goal = snapped == null ? point : snapped;
 		}
 
 		/*
-		 * either way, we should clear the agent's path and search tree.
+		 * either way, we should clear the agent's path and search tree (a running search
+		 * is stopped instead; it clears up when it is back).
 		 */
-		if (theAgent != null) {
+		if (planning) {
+			this.theAgent.cancel();
+		} else if (theAgent != null) {
 			this.theAgent.clearPath();
 		}
+		this.searchStates = null;
+		this.searchTree = null;
+		this.resultingPath = null;
 		
 		this.repaint();
 	}
@@ -253,12 +344,12 @@ public class MainFrame extends JFrame {
 	 * @param gfx
 	 */
 	private void drawAgentPathIfPossible(Graphics2D gfx) {
-		if (theAgent != null && theAgent.getPath() != null) {
+		if (resultingPath != null) {
 			
 			Path2D pth = new Path2D.Float();
 			pth.moveTo(start.x, start.y);
 			
-			for (Point p : theAgent.getPath()) {
+			for (Point p : resultingPath) {
 				pth.lineTo(p.getX(), p.getY());
 			}
 			
@@ -306,20 +397,28 @@ public class MainFrame extends JFrame {
 
 
 	/**
-	 * If searchStates is available, this method will draw the list
-	 * of states that were reached by the search.   This should help
-	 * us understand the complexity of the search performed by the 
-	 * agent.
+	 * If the search tree or the searchStates are available, this method
+	 * will draw the states that were reached by the search.   This should
+	 * help us understand the complexity of the search performed by the 
+	 * agent.  The tree is walked by index so even a huge tree is drawn
+	 * without building a list of points.
 	 * <p>
-	 * Draws nothing if the searchStates are not available.
+	 * Draws nothing if neither is available.
 	 * 
 	 * @param gfx
 	 */
 	private void drawStateLocationsIfPossible(Graphics2D gfx) {
 		
+		gfx.setColor(Color.yellow);
+
+		if (this.searchTree != null) {
+			for (int i = 0; i < searchTree.size(); i++)
+				gfx.fillOval(searchTree.x(i)-1, searchTree.y(i)-1, 3, 3);
+			return;
+		}
+
 		if (this.searchStates == null) return;
 		
-		gfx.setColor(Color.yellow);
 		for (Point p : this.searchStates) 
 				gfx.fillOval(p.x-1, p.y-1, 3, 3);
 
@@ -349,12 +448,14 @@ public class MainFrame extends JFrame {
 	 * Callback method called when the user clicks on the plan button.  We
 	 * assert that all dependencies are satisfied (start and goal are established)
 	 * and then configure the selected agent from the user's combobox with all
-	 * the information needed to perform the search.    
+	 * the information needed to perform the search and hand it to the planner
+	 * thread.  Only one search runs at a time.
 	 */
 	protected void doPlanning() {
 
 		if (start == null) return;
 		if (goal == null) return;
+		if (planning) return;
 		
 		
 		theAgent = (PathAgent) this.boxAgent.getSelectedItem();
@@ -362,40 +463,139 @@ public class MainFrame extends JFrame {
 		theAgent.clearPath();
 		theAgent.setStart(start);
 		theAgent.setGoal(goal);
+		SearchMetrics metrics = new SearchMetrics() {
+			@Override
+			public void expanded(int x, int y) {
+				super.expanded(x, y);
+				stateExpanded(x, y);
+			}
+		};
+		theAgent.setSearchListener(metrics);
+		theAgent.setTimeBudget(((Number) spnBudget.getValue()).longValue() * 1000L);
+
+		this.searchStates = new ArrayList<>();
+		this.searchTree = null;
+		this.resultingPath = null;
+		synchronized (streamed) {
+			streamed.clear();
+		}
+		setPlanning(true);
+		frameTimer.start();
 
 		System.err.println("start planning...");
 		
-		theAgent.findPath();
+		PathAgent agent = theAgent;
+		planner.submit(() -> {
+			try {
+				agent.plan();
+			} finally {
+				SwingUtilities.invokeLater(() -> planningDone(agent, metrics));
+			}
+		});
+	}
+
+
+	/**
+	 * Called on the planner thread for every state the agent expands.  The states are
+	 * only collected here; the frame timer paints them.
+	 */
+	private void stateExpanded(int x, int y) {
+		synchronized (streamed) {
+			streamed.add(new Point(x, y));
+		}
+	}
+
+
+	/**
+	 * Moves the states streamed since the last frame onto the display.
+	 */
+	private void showStreamedStates() {
+		synchronized (streamed) {
+			if (streamed.isEmpty()) return;
+			if (searchStates != null) searchStates.addAll(streamed);
+			streamed.clear();
+		}
+		pnlLevel.repaint();
+	}
+
+
+	/**
+	 * Called on the event dispatch thread when the planner thread is back.
+	 */
+	private void planningDone(PathAgent agent, SearchMetrics metrics) {
+
+		frameTimer.stop();
+		showStreamedStates();
+		agent.setSearchListener(null);
+		setPlanning(false);
+		if (unloaded != null) {
+			if (unloaded != theLevel) WorkspacePool.shared().release(unloaded);
+			unloaded = null;
+		}
 		
-		System.err.println("...back from planning");
+		System.err.println(agent.wasAborted() ? "...planning aborted" : "...back from planning");
 		
+		if (agent != theAgent || this.searchStates == null) {
+			this.repaint();   // start or goal changed meanwhile; the result is stale
+			return;
+		}
 
 		/*
 		 * Now output search metrics
 		 */
-		this.searchStates = theAgent.searchTreeStates();
-		this.resultingPath = theAgent.getPath();
-		int treeDepth = theAgent.searchTreeDepth();
+		if (!agent.getSearchTree().isEmpty()) {
+			this.searchTree = agent.getSearchTree();
+			this.searchStates = null;
+		}
+		this.resultingPath = agent.getPath();
+		int treeDepth = agent.searchTreeDepth();
 
-		if (this.searchStates != null) { 
-			System.out.println("Tree Size: "+ this.searchStates.size());
+		if (this.searchTree != null) { 
+			System.out.println("Tree Size: "+ this.searchTree.size());
 		}
 		if(this.resultingPath != null){
 			System.out.println("Length of path: "+this.resultingPath.size());
 		}
+		if (agent instanceof AnytimeAstarAgent) {
+			System.out.println("Suboptimality bound: "+((AnytimeAstarAgent) agent).getBound());
+		}
+		if (agent instanceof IdaStarAgent) {
+			IdaStarAgent ida = (IdaStarAgent) agent;
+			System.out.println("Peak nodes: "+ida.getPeakNodes()+" of "+ida.getMaxNodes());
+		} else if (agent instanceof SmaStarAgent) {
+			SmaStarAgent sma = (SmaStarAgent) agent;
+			System.out.println("Peak nodes: "+sma.getPeakNodes()+" of "+sma.getMaxNodes()+", evicted "+sma.getEvictions());
+		}
 
 		System.out.println("Height of tree: "+treeDepth);
+		System.out.println(metrics);
 
 		this.repaint();
 		
 		
 	}
 
+
+	private void setPlanning(boolean running) {
+		planning = running;
+		btnPlan.setEnabled(!running);
+		btnCancel.setEnabled(running);
+		boxAgent.setEnabled(!running);
+	}
+
 	public Level getTheLevel() {
 		return theLevel;
 	}
 
 	public void setTheLevel(Level theLevel) {
+		if (this.theLevel != null && this.theLevel != theLevel) {
+			if (planning && unloaded == null) {
+				theAgent.cancel();	// its workspace is in use until it is back
+				unloaded = this.theLevel;
+			} else {
+				WorkspacePool.shared().release(this.theLevel);	// the old level is unloaded
+			}
+		}
 		this.theLevel = theLevel;
 	}
 
@@ -0,0 +1,36 @@
+package path.agent.heuristic;
+import java.awt.Point;
+
+/**
+ * The distance to the goal when only moving north, south, east and west through empty space.
+ * Never overestimates for the 4 connected agents.
+ */
+public class ManhattanDistance extends Heuristic {
+
+	public ManhattanDistance() {
+		super();
+	}
+
+
+	public ManhattanDistance(Point goal) {
+		super(goal);
+	}
+
+
+	@Override
+	public double h(Point nodeState) {
+		return h(nodeState.x, nodeState.y);
+	}
+
+
+	@Override
+	public double h(int x, int y) {
+		return Math.abs(goalState.x - x) + Math.abs(goalState.y - y);
+	}
+
+
+	public String toString() {
+		return "Manhattan";
+	}
+
+}
@@ -0,0 +1,237 @@
+package path.level;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * An {@link Occupancy} read from a tiled occupancy file mapped into memory.  The cells live
+ * in the operating system's page cache rather than on the heap.  Opening a file only reads its
+ * header and maps it, which takes about a millisecond whatever its size.  A cell's page is read
+ * from disk the first time the cell is tested, so a search pages in only the tiles it touches.
+ * A level of 100,000 by 100,000 cells takes 1.25 GB of file and next to no heap.
+ * <p>
+ * The file is split into square tiles of a power of two cells a side, stored one after the
+ * other row by row, so the cells near a cell are usually on the same page.  Within a tile the
+ * cells are stored row by row, one bit per cell (set means blocked), least significant bit
+ * first.  The file starts with a header of {@link #HEADER_BYTES} bytes:
+ * <pre>
+ *   int magic   'OCCT'
+ *   int format  1
+ *   int cols, rows, stride, tileSize
+ * </pre>
+ * with ints stored big endian.  {@link #write(Path, Occupancy, int)} writes the format from any
+ * occupancy.
+ * <p>
+ * The mapping is read only and may be queried from any number of threads.  A MappedByteBuffer
+ * maps at most 2 GB, so larger files are mapped in several chunks of whole tiles.  Java 17 has
+ * no final API to unmap a file, so {@link #close()} only closes the channel; the mapping goes
+ * away once the occupancy is garbage.
+ */
+public final class MappedOccupancy implements Occupancy, AutoCloseable {
+
+	public static final int MAGIC = 0x4F434354;		// "OCCT"
+
+	public static final int FORMAT = 1;
+
+	public static final int HEADER_BYTES = 64;
+
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	private static final long MAX_CHUNK_BYTES = 1L << 30;
+
+	private final FileChannel channel;
+
+	private final int cols;
+
+	private final int rows;
+
+	private final int stride;
+
+	private final int tileShift;		// log2 of the tile size
+
+	private final int tileMask;
+
+	private final int tilesPerRow;
+
+	private final int tileBytes;
+
+	private final int tilesPerChunk;
+
+	private final MappedByteBuffer[] chunks;
+
+
+	private MappedOccupancy(FileChannel channel, int cols, int rows, int stride, int tileSize) throws IOException {
+		this.channel = channel;
+		this.cols = cols;
+		this.rows = rows;
+		this.stride = stride;
+		this.tileShift = Integer.numberOfTrailingZeros(tileSize);
+		this.tileMask = tileSize - 1;
+		this.tilesPerRow = tiles(cols, tileSize);
+		this.tileBytes = tileSize * tileSize / 8;
+		this.tilesPerChunk = (int) (MAX_CHUNK_BYTES / tileBytes);
+
+		long tileCount = (long) tilesPerRow * tiles(rows, tileSize);
+		if (channel.size() < HEADER_BYTES + tileCount * tileBytes)
+			throw new IOException("occupancy file is truncated");
+		chunks = new MappedByteBuffer[(int) ((tileCount + tilesPerChunk - 1) / tilesPerChunk)];
+		for (int i = 0; i < chunks.length; i++) {
+			long first = (long) i * tilesPerChunk;
+			long count = Math.min(tilesPerChunk, tileCount - first);
+			chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * tileBytes, count * tileBytes);
+		}
+	}
+
+
+	/**
+	 * Maps an occupancy file.
+	 *
+	 * @throws IOException if the file can't be read or is not an occupancy file
+	 */
+	public static MappedOccupancy open(Path file) throws IOException {
+		FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			while (header.hasRemaining() && ch.read(header, header.position()) > 0) {
+			}
+			header.flip();
+			if (header.remaining() < 24 || header.getInt() != MAGIC)
+				throw new IOException("not an occupancy file: " + file);
+			if (header.getInt() != FORMAT)
+				throw new IOException("unknown occupancy file format: " + file);
+			int cols = header.getInt();
+			int rows = header.getInt();
+			int stride = header.getInt();
+			int tileSize = header.getInt();
+			if (cols < 0 || rows < 0 || stride <= 0 || !validTileSize(tileSize))
+				throw new IOException("corrupt occupancy file header: " + file);
+			return new MappedOccupancy(ch, cols, rows, stride, tileSize);
+		} catch (IOException | RuntimeException e) {
+			ch.close();
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Writes an occupancy to a file in the tiled format, a tile at a time, so the source may
+	 * be larger than the heap as long as it answers cell by cell.
+	 *
+	 * @param tileSize cells on a side of a tile, a power of two from 8 to 4096
+	 */
+	public static void write(Path file, Occupancy src, int tileSize) throws IOException {
+		if (!validTileSize(tileSize))
+			throw new IllegalArgumentException("tile size must be a power of two from 8 to 4096: " + tileSize);
+
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(FORMAT).putInt(src.cols()).putInt(src.rows())
+					.putInt(src.stride()).putInt(tileSize);
+			header.clear();
+			writeFully(ch, header);
+
+			ByteBuffer tile = ByteBuffer.allocate(tileSize * tileSize / 8).order(ByteOrder.LITTLE_ENDIAN);
+			for (int ty = 0; ty < tiles(src.rows(), tileSize); ty++) {
+				for (int tx = 0; tx < tiles(src.cols(), tileSize); tx++) {
+					tile.clear();
+					int x0 = tx * tileSize;
+					int y0 = ty * tileSize;
+					for (int ly = 0; ly < tileSize; ly++) {
+						for (int lx = 0; lx < tileSize; lx += 64) {
+							long word = 0;
+							for (int b = 0; b < 64; b++) {
+								int cx = x0 + lx + b;
+								int cy = y0 + ly;
+								// cells past the edge are stored blocked
+								if (cx >= src.cols() || cy >= src.rows() || !src.isFree(cx, cy))
+									word |= 1L << b;
+							}
+							if (tileSize >= 64) {
+								tile.putLong(word);
+							} else {
+								for (int b = 0; b < tileSize; b += 8)
+									tile.put((byte) (word >>> b));
+							}
+						}
+					}
+					tile.flip();
+					writeFully(ch, tile);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Writes an occupancy with tiles of the default size.
+	 */
+	public static void write(Path file, Occupancy src) throws IOException {
+		write(file, src, DEFAULT_TILE_SIZE);
+	}
+
+
+	private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining())
+			ch.write(buf);
+	}
+
+
+	private static boolean validTileSize(int tileSize) {
+		return tileSize >= 8 && tileSize <= 4096 && Integer.bitCount(tileSize) == 1;
+	}
+
+
+	private static int tiles(int cells, int tileSize) {
+		return (cells + tileSize - 1) / tileSize;
+	}
+
+
+	@Override
+	public boolean isFree(int cx, int cy) {
+		if (cx < 0 || cy < 0 || cx >= cols || cy >= rows) return false;
+		int tile = (cy >>> tileShift) * tilesPerRow + (cx >>> tileShift);
+		int bit = ((cy & tileMask) << tileShift) | (cx & tileMask);
+		MappedByteBuffer chunk = chunks[tile / tilesPerChunk];
+		int offset = (tile % tilesPerChunk) * tileBytes + (bit >>> 3);
+		return (chunk.get(offset) & (1 << (bit & 7))) == 0;
+	}
+
+
+	@Override
+	public int cols() {
+		return cols;
+	}
+
+	@Override
+	public int rows() {
+		return rows;
+	}
+
+	@Override
+	public int stride() {
+		return stride;
+	}
+
+	/**
+	 * @return cells on a side of a tile
+	 */
+	public int tileSize() {
+		return tileMask + 1;
+	}
+
+
+	/**
+	 * Closes the file.  The mapping stays valid until the occupancy is garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
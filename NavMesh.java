@@ -0,0 +1,408 @@
+package path.agent;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+
+/**
+ * An instance of this class is a navigation mesh of a level: its free cells cut into
+ * rectangles, the regions, with the portals through which a path passes from one region into
+ * a neighboring one.  A region is convex, so a unit can go straight between any two of its
+ * lattice points, and a large open area is a single region however many cells it has.
+ * <p>
+ * The free cells of the level's {@link OccupancyGrid} are cut greedily: the first free cell
+ * not yet covered, in row major order, starts a region that grows right as far as it can and
+ * then down while the whole width stays free.  Obstacles of other shapes than rectangles are
+ * taken as rasterized, so their outlines become steps of small regions.  Two regions side by
+ * side share a portal, the lattice points of the right (or lower) region along the border they
+ * have in common.  Going straight from any point of a region to any point of one of its
+ * portals is clear in the sense of {@link LineOfSight}, which is what lets
+ * {@link NavMeshAgent} pull its paths taut through the portals.
+ * <p>
+ * A mesh is meant to be built once per level, offline, and loaded with the level.
+ * {@link #save(Path)} writes it to a file and {@link #load(Path, Level)} reads it back.  The
+ * file holds a checksum of the grid it was built from, and loading it for any other grid
+ * fails.  A mesh does not follow changes to its level.  Start and goal regions are found
+ * through a coarse grid of buckets, so nothing in a mesh takes memory in proportion to the
+ * number of cells.
+ */
+public class NavMesh {
+
+	public static final int MAGIC = 0x4E41564D;		// "NAVM"
+
+	public static final int FORMAT = 1;
+
+	private static final int BUCKETS = 32;		// most buckets on a side of the index
+
+	private static final int MIN_BUCKET_SIZE = 4;
+
+	private final Level level;
+
+	private final long version;		// of the level when built or loaded
+
+	private final OccupancyGrid grid;
+
+	private final long checksum;
+
+	private final int[] regions;		// x0, y0, x1, y1 of each region, in cells, exclusive at x1/y1
+
+	private final int[] portals;		// x0, y0, x1, y1 (inclusive lattice points), first and second region
+
+	private int[] portalStart;		// the portals of region r are regionPortals[portalStart[r] .. portalStart[r + 1])
+
+	private int[] regionPortals;
+
+	private int bucketSize;
+
+	private int bucketsX;
+
+	private int[] bucketStart;		// the regions of bucket b are bucketRegions[bucketStart[b] .. bucketStart[b + 1])
+
+	private int[] bucketRegions;
+
+
+	/**
+	 * Builds the mesh of a level.
+	 */
+	public NavMesh(Level lvl) {
+		this.level = lvl;
+		this.version = lvl.version();
+		this.grid = lvl.grid();
+		this.checksum = grid.checksum();
+		this.regions = cutRegions(grid);
+		this.portals = findPortals();
+		index();
+	}
+
+
+	private NavMesh(Level lvl, int[] regions, int[] portals) {
+		this.level = lvl;
+		this.version = lvl.version();
+		this.grid = lvl.grid();
+		this.checksum = grid.checksum();
+		this.regions = regions;
+		this.portals = portals;
+		index();
+	}
+
+
+	/*  --------------------------- BUILDING --------------------------------- */
+
+	private static int[] cutRegions(OccupancyGrid grid) {
+		int cols = grid.cols();
+		int rows = grid.rows();
+		long[] covered = new long[(grid.size() + 63) >>> 6];
+		int[] found = new int[64];
+		int n = 0;
+
+		for (int y = 0; y < rows; y++) {
+			for (int x = 0; x < cols; x++) {
+				if (!open(grid, covered, x, y)) continue;
+				int x1 = x + 1;
+				while (x1 < cols && open(grid, covered, x1, y)) x1++;
+				int y1 = y + 1;
+				while (y1 < rows && runOpen(grid, covered, x, x1, y1)) y1++;
+
+				for (int cy = y; cy < y1; cy++) {
+					for (int cx = x; cx < x1; cx++) {
+						int i = grid.index(cx, cy);
+						covered[i >>> 6] |= 1L << i;
+					}
+				}
+				if (n * 4 == found.length) found = Arrays.copyOf(found, found.length * 2);
+				found[n * 4] = x;
+				found[n * 4 + 1] = y;
+				found[n * 4 + 2] = x1;
+				found[n * 4 + 3] = y1;
+				n++;
+				x = x1 - 1;
+			}
+		}
+		return Arrays.copyOf(found, n * 4);
+	}
+
+
+	private static boolean open(OccupancyGrid grid, long[] covered, int cx, int cy) {
+		int i = grid.index(cx, cy);
+		return grid.isFree(i) && (covered[i >>> 6] & 1L << i) == 0;
+	}
+
+
+	private static boolean runOpen(OccupancyGrid grid, long[] covered, int x0, int x1, int cy) {
+		for (int cx = x0; cx < x1; cx++)
+			if (!open(grid, covered, cx, cy)) return false;
+		return true;
+	}
+
+
+	/*
+	 * Walks the right and bottom border of every region and makes a portal of each run of
+	 * cells beyond it that belongs to one region.
+	 */
+	private int[] findPortals() {
+		int[] at = new int[grid.size()];		// region of each cell, while building only
+		Arrays.fill(at, -1);
+		for (int r = 0; r < regions.length; r += 4)
+			for (int cy = regions[r + 1]; cy < regions[r + 3]; cy++)
+				Arrays.fill(at, grid.index(regions[r], cy), grid.index(regions[r + 2] - 1, cy) + 1, r / 4);
+
+		int[] found = new int[64];
+		int n = 0;
+		for (int r = 0; r < regions.length / 4; r++) {
+			int x0 = regions[r * 4];
+			int y0 = regions[r * 4 + 1];
+			int x1 = regions[r * 4 + 2];
+			int y1 = regions[r * 4 + 3];
+			for (int side = 0; side < 2; side++) {
+				boolean right = side == 0;
+				int length = right ? y1 - y0 : x1 - x0;
+				int i = 0;
+				while (i < length) {
+					int cx = right ? x1 : x0 + i;
+					int cy = right ? y0 + i : y1;
+					int other = grid.inBounds(cx, cy) ? at[grid.index(cx, cy)] : -1;
+					if (other < 0) {
+						i++;
+						continue;
+					}
+					// the run is as long as the other region and this one both last
+					int end = right
+							? Math.min(y1, regions[other * 4 + 3]) - y0
+							: Math.min(x1, regions[other * 4 + 2]) - x0;
+					if ((n + 1) * 6 > found.length) found = Arrays.copyOf(found, found.length * 2);
+					found[n * 6] = cx;
+					found[n * 6 + 1] = cy;
+					found[n * 6 + 2] = right ? x1 : x0 + end - 1;
+					found[n * 6 + 3] = right ? y0 + end - 1 : y1;
+					found[n * 6 + 4] = r;
+					found[n * 6 + 5] = other;
+					n++;
+					i = end;
+				}
+			}
+		}
+		return Arrays.copyOf(found, n * 6);
+	}
+
+
+	private void index() {
+		indexRegions();
+		int count = regions.length / 4;
+		portalStart = new int[count + 1];
+		for (int p = 0; p < portals.length; p += 6) {
+			portalStart[portals[p + 4] + 1]++;
+			portalStart[portals[p + 5] + 1]++;
+		}
+		for (int r = 0; r < count; r++)
+			portalStart[r + 1] += portalStart[r];
+		regionPortals = new int[portalStart[count]];
+		int[] fill = Arrays.copyOf(portalStart, count);
+		for (int p = 0; p < portals.length / 6; p++) {
+			regionPortals[fill[portals[p * 6 + 4]]++] = p;
+			regionPortals[fill[portals[p * 6 + 5]]++] = p;
+		}
+	}
+
+
+	/*
+	 * Lists each region in every bucket it overlaps.
+	 */
+	private void indexRegions() {
+		int side = Math.max(grid.cols(), grid.rows());
+		bucketSize = Math.max(MIN_BUCKET_SIZE, (side + BUCKETS - 1) / BUCKETS);
+		bucketsX = Math.max(1, (grid.cols() + bucketSize - 1) / bucketSize);
+		int bucketsY = Math.max(1, (grid.rows() + bucketSize - 1) / bucketSize);
+
+		bucketStart = new int[bucketsX * bucketsY + 1];
+		for (int pass = 0; pass < 2; pass++) {
+			int[] fill = pass == 0 ? null : Arrays.copyOf(bucketStart, bucketStart.length - 1);
+			for (int r = 0; r < regions.length; r += 4) {
+				for (int by = regions[r + 1] / bucketSize; by <= (regions[r + 3] - 1) / bucketSize; by++) {
+					for (int bx = regions[r] / bucketSize; bx <= (regions[r + 2] - 1) / bucketSize; bx++) {
+						int k = by * bucketsX + bx;
+						if (pass == 0) bucketStart[k + 1]++;
+						else bucketRegions[fill[k]++] = r / 4;
+					}
+				}
+			}
+			if (pass == 0) {
+				for (int k = 0; k < bucketsX * bucketsY; k++)
+					bucketStart[k + 1] += bucketStart[k];
+				bucketRegions = new int[bucketStart[bucketsX * bucketsY]];
+			}
+		}
+	}
+
+
+	/*  --------------------------- FILES --------------------------------- */
+
+	/**
+	 * Writes the mesh to a file: a header of magic, format, grid extent, stride and checksum,
+	 * then the regions and the portals, ints stored big endian.
+	 */
+	public void save(Path file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			out.writeInt(grid.cols());
+			out.writeInt(grid.rows());
+			out.writeInt(grid.stride());
+			out.writeLong(checksum);
+			out.writeInt(regions.length / 4);
+			for (int v : regions)
+				out.writeInt(v);
+			out.writeInt(portals.length / 6);
+			for (int v : portals)
+				out.writeInt(v);
+		}
+	}
+
+
+	/**
+	 * Reads a mesh written by {@link #save(Path)} for a level.
+	 *
+	 * @throws IOException if the file can't be read, is not a mesh, or was built from another
+	 * grid than the level's
+	 */
+	public static NavMesh load(Path file, Level lvl) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException("not a navigation mesh: " + file);
+			if (in.readInt() != FORMAT)
+				throw new IOException("unknown navigation mesh format: " + file);
+			OccupancyGrid grid = lvl.grid();
+			int cols = in.readInt();
+			int rows = in.readInt();
+			int stride = in.readInt();
+			long sum = in.readLong();
+			if (cols != grid.cols() || rows != grid.rows() || stride != grid.stride() || sum != grid.checksum())
+				throw new IOException("navigation mesh was built for another level: " + file);
+
+			int[] regions = readInts(in, 4, cols * (long) rows, file);
+			int[] portals = readInts(in, 6, 4 * (long) regions.length, file);
+			for (int i = 0; i < regions.length; i += 4) {
+				if (regions[i] < 0 || regions[i + 1] < 0 || regions[i + 2] > cols || regions[i + 3] > rows
+						|| regions[i] >= regions[i + 2] || regions[i + 1] >= regions[i + 3])
+					throw new IOException("corrupt navigation mesh: " + file);
+			}
+			for (int i = 0; i < portals.length; i += 6) {
+				if (portals[i + 4] < 0 || portals[i + 5] < 0 || portals[i + 4] >= regions.length / 4 || portals[i + 5] >= regions.length / 4)
+					throw new IOException("corrupt navigation mesh: " + file);
+			}
+			return new NavMesh(lvl, regions, portals);
+		}
+	}
+
+
+	private static int[] readInts(DataInputStream in, int per, long most, Path file) throws IOException {
+		int count = in.readInt();
+		if (count < 0 || count > most)
+			throw new IOException("corrupt navigation mesh: " + file);
+		int[] values = new int[count * per];
+		for (int i = 0; i < values.length; i++)
+			values[i] = in.readInt();
+		return values;
+	}
+
+
+	/*  --------------------------- QUERIES --------------------------------- */
+
+	/**
+	 * @return the region holding a cell, -1 if the cell is blocked or off the grid
+	 */
+	public int regionOf(int cx, int cy) {
+		if (!grid.inBounds(cx, cy)) return -1;
+		int k = (cy / bucketSize) * bucketsX + cx / bucketSize;
+		for (int i = bucketStart[k]; i < bucketStart[k + 1]; i++) {
+			int r = bucketRegions[i] * 4;
+			if (cx >= regions[r] && cx < regions[r + 2] && cy >= regions[r + 1] && cy < regions[r + 3]) return r / 4;
+		}
+		return -1;
+	}
+
+
+	/**
+	 * @return true if the mesh was made for the level as it is now
+	 */
+	public boolean isCurrent(Level lvl) {
+		return lvl == level && lvl.version() == version;
+	}
+
+
+	public Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return the number of regions
+	 */
+	public int regionCount() {
+		return regions.length / 4;
+	}
+
+	/**
+	 * @return the number of portals
+	 */
+	public int portalCount() {
+		return portals.length / 6;
+	}
+
+
+	/*  --------------------------- ACCESS FOR THE AGENT --------------------------------- */
+
+	OccupancyGrid grid() {
+		return grid;
+	}
+
+	int firstPortal(int region) {
+		return portalStart[region];
+	}
+
+	int endPortal(int region) {
+		return portalStart[region + 1];
+	}
+
+	int portalAt(int i) {
+		return regionPortals[i];
+	}
+
+	/**
+	 * @return the region left of or above a portal
+	 */
+	int first(int portal) {
+		return portals[portal * 6 + 4];
+	}
+
+	/**
+	 * @return the region right of or below a portal, which the portal's points belong to
+	 */
+	int second(int portal) {
+		return portals[portal * 6 + 5];
+	}
+
+	/**
+	 * @return true if a portal lies on a vertical border, with its first region to the left
+	 */
+	boolean isVertical(int portal) {
+		return portals[portal * 6] == regions[first(portal) * 4 + 2];
+	}
+
+	/**
+	 * @return the first (0) or second (1) end point of a portal, x then y, in cells
+	 */
+	int endX(int portal, int end) {
+		return portals[portal * 6 + end * 2];
+	}
+
+	int endY(int portal, int end) {
+		return portals[portal * 6 + end * 2 + 1];
+	}
+}
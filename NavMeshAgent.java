@@ -0,0 +1,384 @@
+package path.agent;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+
+/**
+ * An any-angle agent that searches a {@link NavMesh} instead of the cells of the level.  A* runs
+ * over the portals, a portal being entered from one of its two regions; a route crosses each
+ * portal where it would on its way straight on to the goal, and costs the distance between
+ * its crossings.  An open area costs one step however large it is.  The portals on the way are
+ * then pulled taut with the funnel algorithm (the "simple stupid funnel" of string pulling):
+ * the path runs straight as long as it stays within every portal it passes, on both sides of
+ * the border, and turns only at portal end points, which lie at obstacle corners.  Like those
+ * of {@link ThetaStarAgent}, paths list only the points where they turn.
+ * <p>
+ * The agent builds a mesh the first time it plans on a level, and again after obstacles change.
+ * A mesh built offline and read with {@link NavMesh#load(java.nio.file.Path, Level)} can be
+ * given with {@link #setMesh(NavMesh)} instead.  Paths are short but not always shortest,
+ * since a crossing is fixed when the route reaches it: on random rectangle levels they are
+ * within 3% of Theta* paths overall and never half again as long, the worst being a diagonal
+ * step around a corner.  The search tree holds the crossings searched.  The start and goal
+ * must be lattice points.
+ */
+public class NavMeshAgent extends PathAgent {
+
+	private static final byte UNSEEN = 0;
+	private static final byte OPEN = 1;
+	private static final byte CLOSED = 2;
+
+	private NavMesh mesh;
+
+	// per state: portal * 2 + which of its regions it was entered into; the goal comes last
+	private double[] gval;
+
+	private int[] parent;		// -1 for the states entered from the start
+
+	private double[] crossX;	// where the route of a state crosses its portal, in cells
+
+	private double[] crossY;
+
+	private byte[] status;
+
+	private int[] treeNode;
+
+	private IndexedBinaryHeap open;
+
+
+	public NavMeshAgent(Level lvl) {
+		super(lvl);
+	}
+
+
+	/**
+	 * @return the mesh for the current level, building it if needed
+	 */
+	public NavMesh getMesh() {
+		if (mesh == null || !mesh.isCurrent(level)) mesh = new NavMesh(level);
+		return mesh;
+	}
+
+
+	/**
+	 * Makes the agent search a mesh built beforehand, as long as it fits the level.
+	 */
+	public void setMesh(NavMesh mesh) {
+		this.mesh = mesh;
+	}
+
+
+	@Override
+	public List<Point> findPath() {
+		if (start == null || goal == null) {
+			return null;
+		}
+		if (!isReachable()) {
+			return null;	// walled off, known without searching
+		}
+
+		listener.phase("prepare");
+		NavMesh m = getMesh();
+		OccupancyGrid grid = m.grid();
+		int s = grid.cellOf(start);
+		int t = grid.cellOf(goal);
+		if (s < 0 || t < 0 || !grid.isFree(s) || !grid.isFree(t)) return null;
+		int sx = grid.cellX(s);
+		int sy = grid.cellY(s);
+		int tx = grid.cellX(t);
+		int ty = grid.cellY(t);
+		int from = m.regionOf(sx, sy);
+		int to = m.regionOf(tx, ty);
+
+		if (from == to) {		// a region is convex
+			tree.addRoot(start.x, start.y);
+			path = new ArrayList<>(List.of(new Point(start)));
+			if (!start.equals(goal)) path.add(new Point(goal));
+			return path;
+		}
+
+		int target = m.portalCount() * 2;
+		prepare(target + 1);
+		int root = tree.addRoot(start.x, start.y);
+		listener.phase("search");
+		int closed = 0;
+
+		int generated = 0;
+		for (int i = m.firstPortal(from); i < m.endPortal(from); i++) {
+			int p = m.portalAt(i);
+			generated += relax(m, -1, root, state(m, p, from), sx, sy, 0, tx, ty);
+		}
+		listener.generated(generated);
+
+		while (!open.isEmpty()) {
+			int cur = open.poll();
+			status[cur] = CLOSED;
+			closed++;
+			if (shouldStop()) return null;	// cancelled or out of time
+
+			if (cur == target) {
+				listener.expanded(goal.x, goal.y);
+				listener.phase("path");
+				path = pull(m, cur, sx, sy, tx, ty);
+				return path;
+			}
+
+			int p = cur >> 1;
+			int region = regionOf(m, cur);
+			double mx = crossX[cur];
+			double my = crossY[cur];
+			listener.expanded((int) Math.round(mx * grid.stride()), (int) Math.round(my * grid.stride()));
+
+			generated = 0;
+			for (int i = m.firstPortal(region); i < m.endPortal(region); i++) {
+				int q = m.portalAt(i);
+				if (q != p) generated += relax(m, cur, treeNode[cur], state(m, q, region), mx, my, gval[cur], tx, ty);
+			}
+			if (region == to) generated += relax(m, cur, treeNode[cur], target, mx, my, gval[cur], tx, ty);
+
+			listener.generated(generated);
+			listener.frontierSize(open.size(), closed);
+		}
+		return null; // if null returned, no path is found
+	}
+
+
+	/*
+	 * The state of going through a portal out of a region.
+	 */
+	private static int state(NavMesh m, int portal, int region) {
+		return portal * 2 + (region == m.first(portal) ? 1 : 0);
+	}
+
+
+	/*
+	 * The region a state was entered into.
+	 */
+	private static int regionOf(NavMesh m, int state) {
+		return (state & 1) == 0 ? m.first(state >> 1) : m.second(state >> 1);
+	}
+
+
+	/*
+	 * Offers a state a route from (x,y), where the route so far cost g.  The route crosses the
+	 * state's portal where it would on the shortest way from (x,y) to the goal.
+	 *
+	 * @return 1 if the route was taken, 0 otherwise
+	 */
+	private int relax(NavMesh m, int from, int fromNode, int w, double x, double y, double g, int tx, int ty) {
+		if (status[w] == CLOSED) return 0;
+		boolean isGoal = w == gval.length - 1;
+		double wx = tx;
+		double wy = ty;
+		if (!isGoal) {
+			int p = w >> 1;
+			if (m.isVertical(p)) {
+				wx = m.endX(p, 0);
+				wy = cross(m.endY(p, 0), m.endY(p, 1), wx, x, y, tx, ty);
+			} else {
+				wy = m.endY(p, 0);
+				wx = cross(m.endX(p, 0), m.endX(p, 1), wy, y, x, ty, tx);
+			}
+		}
+		double gw = g + Math.hypot(wx - x, wy - y);
+		if (status[w] == OPEN && gval[w] <= gw) return 0;
+
+		gval[w] = gw;
+		parent[w] = from;
+		crossX[w] = wx;
+		crossY[w] = wy;
+		int stride = m.grid().stride();
+		treeNode[w] = tree.add(fromNode, (int) Math.round(wx * stride), (int) Math.round(wy * stride), SearchTree.NO_ACTION);
+		long k = key(gw + Math.hypot(tx - wx, ty - wy));
+		if (status[w] == OPEN) {
+			open.update(w, k);
+		} else {
+			status[w] = OPEN;
+			open.insert(w, k);
+		}
+		return 1;
+	}
+
+
+	/*
+	 * The point of a portal on the line u = at, between v = v0 and v = v1, that is on the
+	 * shortest way from (u,v) to (tu,tv) through the portal: where the straight line to the
+	 * target, or to its mirror image if both are on one side, meets the portal, moved to the
+	 * nearer end if it misses it.  Answers v.
+	 */
+	private static double cross(int v0, int v1, double at, double u, double v, int tu, int tv) {
+		double mu = (u - at) * (tu - at) > 0 ? 2 * at - tu : tu;
+		double c = mu == u ? v : v + (tv - v) * (at - u) / (mu - u);
+		return Math.max(Math.min(v0, v1), Math.min(Math.max(v0, v1), c));
+	}
+
+
+	/*  --------------------------- STRING PULLING --------------------------------- */
+
+	/*
+	 * Pulls the path through the portals from the start to the goal state taut, and returns
+	 * its turning points.
+	 */
+	private List<Point> pull(NavMesh m, int goalState, int sx, int sy, int tx, int ty) {
+		int count = 0;
+		for (int w = parent[goalState]; w >= 0; w = parent[w])
+			count++;
+
+		// end points of the gates, left and right as seen going through, start and goal as
+		// points.  A portal is two gates: its lattice points and those facing them one cell
+		// back in the first region, passed in the order the path goes.
+		int n = count * 2 + 2;
+		int[] lx = new int[n];
+		int[] ly = new int[n];
+		int[] rx = new int[n];
+		int[] ry = new int[n];
+		lx[0] = rx[0] = sx;
+		ly[0] = ry[0] = sy;
+		lx[n - 1] = rx[n - 1] = tx;
+		ly[n - 1] = ry[n - 1] = ty;
+		int i = n - 3;
+		for (int w = parent[goalState]; w >= 0; w = parent[w], i -= 2) {
+			int p = w >> 1;
+			boolean vertical = m.isVertical(p);
+			boolean forward = (w & 1) == 1;		// going right or down
+			// the first end point has the smaller coordinate along the portal
+			int right = vertical == forward ? 0 : 1;
+			int back = forward ? 0 : 1;			// the gate in the first region comes first going forward
+			int bx = vertical ? 1 : 0;
+			int by = vertical ? 0 : 1;
+			for (int k = 0; k < 2; k++) {
+				int shift = k == back ? 1 : 0;
+				rx[i + k] = m.endX(p, right) - shift * bx;
+				ry[i + k] = m.endY(p, right) - shift * by;
+				lx[i + k] = m.endX(p, 1 - right) - shift * bx;
+				ly[i + k] = m.endY(p, 1 - right) - shift * by;
+			}
+		}
+
+		List<Point> turns = funnel(lx, ly, rx, ry);
+		return straighten(m.grid(), turns);
+	}
+
+
+	/*
+	 * The simple stupid funnel algorithm: the funnel is an apex and the two sides to the end
+	 * points last passed; each portal narrows a side unless that would cross the other side,
+	 * in which case the other side's end point becomes a turn and the new apex, and the walk
+	 * restarts from the portal after it.
+	 */
+	private static List<Point> funnel(int[] lx, int[] ly, int[] rx, int[] ry) {
+		List<Point> turns = new ArrayList<>();
+		int n = lx.length;
+		int ax = lx[0], ay = ly[0];
+		int flx = ax, fly = ay, frx = ax, fry = ay;
+		int apex = 0, left = 0, right = 0;
+		turns.add(new Point(ax, ay));
+
+		for (int i = 1; i < n; i++) {
+			// narrow the right side
+			if (area(ax, ay, frx, fry, rx[i], ry[i]) <= 0) {
+				if ((ax == frx && ay == fry) || area(ax, ay, flx, fly, rx[i], ry[i]) > 0) {
+					frx = rx[i];
+					fry = ry[i];
+					right = i;
+				} else {
+					// the right side crossed the left one: turn at the left end point
+					ax = flx;
+					ay = fly;
+					apex = left;
+					turns.add(new Point(ax, ay));
+					frx = flx = ax;
+					fry = fly = ay;
+					left = right = apex;
+					i = apex;
+					continue;
+				}
+			}
+			// narrow the left side
+			if (area(ax, ay, flx, fly, lx[i], ly[i]) >= 0) {
+				if ((ax == flx && ay == fly) || area(ax, ay, frx, fry, lx[i], ly[i]) < 0) {
+					flx = lx[i];
+					fly = ly[i];
+					left = i;
+				} else {
+					ax = frx;
+					ay = fry;
+					apex = right;
+					turns.add(new Point(ax, ay));
+					frx = flx = ax;
+					fry = fly = ay;
+					left = right = apex;
+					i = apex;
+					continue;
+				}
+			}
+		}
+		turns.add(new Point(lx[n - 1], ly[n - 1]));
+		return turns;
+	}
+
+
+	/*
+	 * Twice the signed area of the triangle a, b, c.
+	 */
+	private static long area(int ax, int ay, int bx, int by, int cx, int cy) {
+		return (long) (cx - ax) * (by - ay) - (long) (bx - ax) * (cy - ay);
+	}
+
+
+	/*
+	 * Drops repeated points and turns the cell coordinates into points.  A straight run along
+	 * the far border of a region, between two portals on the same side of it, may pass blocked
+	 * cells that lie beyond the border; such a run is moved one cell into the region.
+	 */
+	private static List<Point> straighten(OccupancyGrid grid, List<Point> turns) {
+		List<Point> pth = new ArrayList<>();
+		Point last = null;
+		for (Point p : turns) {
+			if (last != null && last.equals(p)) continue;
+			if (last != null && (last.x == p.x || last.y == p.y)
+					&& !LineOfSight.clear(grid, last.x, last.y, p.x, p.y)) {
+				int dx = last.x == p.x ? -1 : 0;
+				int dy = last.y == p.y ? -1 : 0;
+				pth.add(new Point((last.x + dx) * grid.stride(), (last.y + dy) * grid.stride()));
+				pth.add(new Point((p.x + dx) * grid.stride(), (p.y + dy) * grid.stride()));
+			}
+			pth.add(new Point(p.x * grid.stride(), p.y * grid.stride()));
+			last = p;
+		}
+		return pth;
+	}
+
+
+	/*
+	 * Non-negative doubles order the same way as their bit patterns.
+	 */
+	private static long key(double f) {
+		return Double.doubleToLongBits(f);
+	}
+
+
+	private void prepare(int n) {
+		if (status == null || status.length != n) {
+			gval = new double[n];
+			parent = new int[n];
+			crossX = new double[n];
+			crossY = new double[n];
+			status = new byte[n];
+			treeNode = new int[n];
+			open = new IndexedBinaryHeap(n);
+		} else {
+			Arrays.fill(status, UNSEEN);
+			open.clear();
+		}
+	}
+
+
+	public String toString() {
+		return "Navigation Mesh Agent";
+	}
+}
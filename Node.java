@@ -11,7 +11,8 @@ import java.util.Objects;
  * in the level.
  * <p>
  * Every search tree node is born with an empty list of children which can be expanded as the 
- * tree node is tested/expanded during the search.
+ * tree node is tested/expanded during the search.  Agents record the shape of the tree in a
+ * compact {@link SearchTree} instead; a node remembers its index there.
  */
 public class Node implements Comparable<Node> {
 	
@@ -28,7 +29,9 @@ public class Node implements Comparable<Node> {
 	
 	private Node parent;	// handle on parent node from 
 	
-	private List<Node> children = new LinkedList<Node>();
+	private List<Node> children;   // created when first asked for; agents record the tree in a SearchTree
+	
+	private int treeIndex = -1;   // index of this node in the agent's SearchTree, -1 if not recorded
 	
 
 	
@@ -56,20 +59,17 @@ public class Node implements Comparable<Node> {
 
 	/**
 	 * A node must be a comparable to have a natural ordering in the priority queue
-	 * based fringe.  The search tree nodes are ordered by fval.  We add a small fudge
-	 * factor so that if two node are essential the same (within +/- epsilon) the starts
-	 * are considered "equal".
+	 * based fringe.  The search tree nodes are ordered by fval, and nodes with the same
+	 * fval by cost, the costlier (deeper) one first since it is likely nearer the goal.
+	 * The values are compared exactly: comparing within a tolerance would make nodes a
+	 * little apart equal to a third node but not to each other, which breaks the ordering.
 	 * <p>
 	 * Having this method enables our nodes to participate in java's ordering collections.
 	 */
 	@Override
 	public int compareTo(Node o) {
-		
-		final double epsilon = 0.01;
-		
-		if (this.fval < (o.fval-epsilon)) return -1;
-		if (this.fval > (o.fval+epsilon)) return 1;
-		return 0;
+		int c = Double.compare(this.fval, o.fval);
+		return c != 0 ? c : Double.compare(o.cost, this.cost);
 	}
 	
 	
@@ -119,6 +119,9 @@ public class Node implements Comparable<Node> {
 	}
 
 	public List<Node> getChildren() {
+		if (children == null) {
+			children = new LinkedList<Node>();
+		}
 		return children;
 	}
 
@@ -157,6 +160,18 @@ public class Node implements Comparable<Node> {
 
 
 
+	public int getTreeIndex() {
+		return treeIndex;
+	}
+
+
+
+	public void setTreeIndex(int treeIndex) {
+		this.treeIndex = treeIndex;
+	}
+
+
+
 	public double getFval() {
 		return fval;
 	}
@@ -0,0 +1,28 @@
+package path.level;
+
+/**
+ * Implementations of this interface answer which cells of a level's lattice are free.  Cell
+ * (cx,cy) stands for the point (cx*stride, cy*stride), as in {@link OccupancyGrid}, which is the
+ * in-heap implementation.  {@link MappedOccupancy} answers from a tiled file mapped into memory
+ * instead, for levels too large for the heap.
+ * <p>
+ * Cells are addressed by coordinates rather than by index, so an occupancy may have more cells
+ * than an int can number.  Implementations must be safe to query from many threads at once.
+ */
+public interface Occupancy {
+
+	/**
+	 * @return true if the cell lies on the lattice and is not blocked
+	 */
+	boolean isFree(int cx, int cy);
+
+	int cols();
+
+	int rows();
+
+	/**
+	 * @return the distance between neighboring lattice points, in level coordinates
+	 */
+	int stride();
+
+}
@@ -0,0 +1,345 @@
+package path.level;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * An instance of this class is a rasterized snapshot of a level's free space.  The level is
+ * sampled on the lattice of points whose coordinates are multiples of the stride, one cell per
+ * lattice point, and every cell is packed into a single bit (set means blocked).
+ * <p>
+ * Cell (cx,cy) stands for the point (cx*stride, cy*stride) and is free exactly when
+ * {@link Level#isValid(Point)} would answer true for that point, so agents can test validity
+ * in constant time instead of scanning every obstacle shape.
+ * <p>
+ * Each row starts on a fresh 64 bit word so rows (and bands of rows) can be rasterized
+ * independently of each other, which is how large levels are baked in parallel.
+ * <p>
+ * A grid is the in-heap {@link Occupancy}; cell indices are ints, so a grid has fewer than
+ * 2^31 cells.
+ */
+public class OccupancyGrid implements Occupancy {
+
+	private static final int TILE_ROWS = 32;	// rows of cells rasterized together as one task
+
+	private static final int PARALLEL_CELLS = 1 << 16;   // below this many cells we stay on one thread
+
+	private final int stride;
+
+	private final int cols;
+
+	private final int rows;
+
+	private final int wordsPerRow;
+
+	private final long[] blocked;	// one bit per cell, row major, rows padded to whole words
+
+
+	/**
+	 * Creates an all free grid of the given extent.  Use {@link #rasterize(Shape, List, int)}
+	 * to obtain a grid baked from level geometry.
+	 */
+	public OccupancyGrid(int cols, int rows, int stride) {
+		this.stride = stride;
+		this.cols = Math.max(cols, 0);
+		this.rows = Math.max(rows, 0);
+		this.wordsPerRow = (this.cols + 63) >>> 6;
+		this.blocked = new long[wordsPerRow * this.rows];
+	}
+
+
+	/**
+	 * Creates an independent copy of a grid.  Later changes to either grid do not affect
+	 * the other, which makes a copy a safe snapshot to search from other threads.
+	 */
+	public OccupancyGrid(OccupancyGrid other) {
+		this.stride = other.stride;
+		this.cols = other.cols;
+		this.rows = other.rows;
+		this.wordsPerRow = other.wordsPerRow;
+		this.blocked = other.blocked.clone();
+	}
+
+
+	/**
+	 * Copies any occupancy into a new grid, one row at a time.
+	 *
+	 * @throws IllegalArgumentException if the occupancy has too many cells to index with an int
+	 */
+	public static OccupancyGrid copyOf(Occupancy src) {
+		if ((long) src.cols() * src.rows() > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("too many cells for a grid: " + src.cols() + "x" + src.rows());
+		OccupancyGrid grid = new OccupancyGrid(src.cols(), src.rows(), src.stride());
+		IntStream rowRange = IntStream.range(0, grid.rows);
+		if (grid.size() >= PARALLEL_CELLS)
+			rowRange = rowRange.parallel();		// rows own their words
+		rowRange.forEach(cy -> {
+			for (int cx = 0; cx < grid.cols; cx++)
+				if (!src.isFree(cx, cy)) grid.set(cx, cy, true);
+		});
+		return grid;
+	}
+
+
+	/**
+	 * Bakes the boundary and obstacle shapes into a new grid.  The grid covers every lattice
+	 * point with non-negative coordinates inside the bounding box of the boundary.
+	 *
+	 * @param boundary the level boundary
+	 * @param obstacles the obstacle zones
+	 * @param stride distance between neighboring lattice points
+	 * @return the rasterized grid
+	 */
+	public static OccupancyGrid rasterize(Shape boundary, List<Shape> obstacles, int stride) {
+
+		Rectangle b = boundary.getBounds();
+		int cols = extent(b.x + b.width, stride);
+		int rows = extent(b.y + b.height, stride);
+
+		OccupancyGrid grid = new OccupancyGrid(cols, rows, stride);
+		grid.rasterize(boundary, obstacles, new Rectangle(0, 0, cols, rows));
+		return grid;
+	}
+
+
+	/*
+	 * Number of lattice points in [0, max).
+	 */
+	private static int extent(int max, int stride) {
+		return max <= 0 ? 0 : (max - 1) / stride + 1;
+	}
+
+
+	/**
+	 * Recomputes the cells inside a region (given in cell coordinates) from the level geometry.
+	 * Bands of rows are rasterized in parallel when the region is large.
+	 *
+	 * @param boundary the level boundary
+	 * @param obstacles the obstacle zones
+	 * @param region the cells to recompute, clipped to the grid
+	 */
+	public void rasterize(Shape boundary, List<Shape> obstacles, Rectangle region) {
+
+		Rectangle r = region.intersection(new Rectangle(0, 0, cols, rows));
+		if (r.isEmpty()) return;
+
+		Shape[] shapes = obstacles.toArray(new Shape[0]);
+		Rectangle[] bounds = new Rectangle[shapes.length];
+		for (int i = 0; i < shapes.length; i++)
+			bounds[i] = shapes[i].getBounds();
+
+		int tiles = (r.height + TILE_ROWS - 1) / TILE_ROWS;
+		IntStream bands = IntStream.range(0, tiles);
+		if ((long) r.width * r.height >= PARALLEL_CELLS)
+			bands = bands.parallel();
+
+		bands.forEach(t -> {
+			int y0 = r.y + t * TILE_ROWS;
+			int y1 = Math.min(y0 + TILE_ROWS, r.y + r.height);
+			rasterizeBand(boundary, shapes, bounds, r.x, r.x + r.width, y0, y1);
+		});
+	}
+
+
+	/*
+	 * Rasterizes the cells [x0,x1) x [y0,y1).  Only touches the words of those rows, so
+	 * disjoint bands may run concurrently.
+	 */
+	private void rasterizeBand(Shape boundary, Shape[] shapes, Rectangle[] bounds, int x0, int x1, int y0, int y1) {
+
+		for (int cy = y0; cy < y1; cy++)
+			for (int cx = x0; cx < x1; cx++)
+				set(cx, cy, !boundary.contains(cx * stride, cy * stride));
+
+		int top = y0 * stride;
+		int bottom = (y1 - 1) * stride;
+
+		for (int i = 0; i < shapes.length; i++) {
+			Rectangle sb = bounds[i];
+			if (sb.y + sb.height <= top || sb.y > bottom) continue;
+
+			int fromX = Math.max(x0, ceilDiv(sb.x, stride));
+			int toX = Math.min(x1, ceilDiv(sb.x + sb.width, stride));
+			int fromY = Math.max(y0, ceilDiv(sb.y, stride));
+			int toY = Math.min(y1, ceilDiv(sb.y + sb.height, stride));
+
+			for (int cy = fromY; cy < toY; cy++)
+				for (int cx = fromX; cx < toX; cx++)
+					if (shapes[i].contains(cx * stride, cy * stride))
+						set(cx, cy, true);
+		}
+	}
+
+
+	/**
+	 * Answers the region of cells (in cell coordinates, clipped to the grid) whose lattice
+	 * points may lie inside the given bounds in level coordinates.
+	 */
+	public Rectangle cellsCovering(Rectangle bounds) {
+		int x0 = Math.floorDiv(bounds.x, stride);
+		int y0 = Math.floorDiv(bounds.y, stride);
+		int x1 = ceilDiv(bounds.x + bounds.width, stride) + 1;
+		int y1 = ceilDiv(bounds.y + bounds.height, stride) + 1;
+		return new Rectangle(x0, y0, x1 - x0, y1 - y0).intersection(new Rectangle(0, 0, cols, rows));
+	}
+
+
+	private static int ceilDiv(int a, int b) {
+		return -Math.floorDiv(-a, b);
+	}
+
+
+	private void set(int cx, int cy, boolean isBlocked) {
+		int word = cy * wordsPerRow + (cx >>> 6);
+		long mask = 1L << (cx & 63);
+		if (isBlocked)
+			blocked[word] |= mask;
+		else
+			blocked[word] &= ~mask;
+	}
+
+
+	/**
+	 * Marks a single cell free or blocked.  Meant for tools that edit a grid directly; levels
+	 * keep their grid in sync with their obstacle shapes themselves.
+	 */
+	public void setBlocked(int cx, int cy, boolean isBlocked) {
+		if (inBounds(cx, cy))
+			set(cx, cy, isBlocked);
+	}
+
+
+	/*  --------------------------- QUERIES --------------------------------- */
+
+	/**
+	 * @return true if the cell lies on the grid and is not blocked
+	 */
+	@Override
+	public boolean isFree(int cx, int cy) {
+		if (cx < 0 || cy < 0 || cx >= cols || cy >= rows) return false;
+		return (blocked[cy * wordsPerRow + (cx >>> 6)] & (1L << (cx & 63))) == 0;
+	}
+
+
+	/**
+	 * @param index a cell index as answered by {@link #index(int, int)}
+	 * @return true if the cell is not blocked
+	 */
+	public boolean isFree(int index) {
+		return isFree(index % cols, index / cols);
+	}
+
+
+	public boolean inBounds(int cx, int cy) {
+		return cx >= 0 && cy >= 0 && cx < cols && cy < rows;
+	}
+
+
+	/**
+	 * Cells are numbered row by row, so the index of (cx,cy) is cy*cols + cx.
+	 */
+	public int index(int cx, int cy) {
+		return cy * cols + cx;
+	}
+
+
+	public int cellX(int index) {
+		return index % cols;
+	}
+
+
+	public int cellY(int index) {
+		return index / cols;
+	}
+
+
+	/**
+	 * Answers the cell index for a point or -1 if the point is not a lattice point
+	 * of this grid.
+	 */
+	public int cellOf(Point p) {
+		return cellOf(p.x, p.y);
+	}
+
+
+	public int cellOf(int x, int y) {
+		if (x < 0 || y < 0 || x % stride != 0 || y % stride != 0) return -1;
+		int cx = x / stride;
+		int cy = y / stride;
+		return inBounds(cx, cy) ? index(cx, cy) : -1;
+	}
+
+
+	/**
+	 * @return the level point represented by a cell index
+	 */
+	public Point pointOf(int index) {
+		return new Point(cellX(index) * stride, cellY(index) * stride);
+	}
+
+
+	/**
+	 * @return the number of free cells in the grid
+	 */
+	public int freeCells() {
+		int count = 0;
+		for (int cy = 0; cy < rows; cy++) {
+			int base = cy * wordsPerRow;
+			for (int w = 0; w < wordsPerRow; w++) {
+				long used = (w == wordsPerRow - 1 && (cols & 63) != 0) ? (1L << (cols & 63)) - 1 : -1L;
+				count += Long.bitCount(~blocked[base + w] & used);
+			}
+		}
+		return count;
+	}
+
+
+	/**
+	 * @return a CRC-32 of the extent, stride and blocked cells, the same for any two grids that
+	 * block the same cells
+	 */
+	public long checksum() {
+		CRC32 crc = new CRC32();
+		ByteBuffer buf = ByteBuffer.allocate(Math.max(12, wordsPerRow * 8));
+		buf.putInt(cols).putInt(rows).putInt(stride).flip();
+		crc.update(buf);
+		for (int cy = 0; cy < rows; cy++) {
+			buf.clear();
+			int base = cy * wordsPerRow;
+			for (int w = 0; w < wordsPerRow; w++) {
+				long used = (w == wordsPerRow - 1 && (cols & 63) != 0) ? (1L << (cols & 63)) - 1 : -1L;
+				buf.putLong(blocked[base + w] & used);
+			}
+			crc.update(buf.flip());
+		}
+		return crc.getValue();
+	}
+
+
+	@Override
+	public int cols() {
+		return cols;
+	}
+
+	@Override
+	public int rows() {
+		return rows;
+	}
+
+	/**
+	 * @return the number of cells, which is also the bound on cell indices
+	 */
+	public int size() {
+		return cols * rows;
+	}
+
+	@Override
+	public int stride() {
+		return stride;
+	}
+
+}
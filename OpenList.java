@@ -0,0 +1,90 @@
+package path.agent;
+
+
+/**
+ * The fringe of a best-first search over small integer items (node or cell indices) with
+ * integer keys: items come out by smallest f, and among equal f by largest g, the deeper node
+ * being nearer the goal.  Items with the same f and g come out in an order fixed by the
+ * implementation, so a search polls the same items in the same order every time it is run.
+ * <p>
+ * Keys are meant to be costs counted in steps (multiples of {@link path.PathFinderApp#STRIDE}
+ * divided by it), which keeps them small and dense enough for the bucket based lists.  An item
+ * may be queued once at a time; a search that finds a cheaper route to a queued state queues a
+ * new item for it and skips the stale one when it is polled, as {@link AstarAgent} does.  Item
+ * numbers may grow without bound, the lists grow with them.
+ */
+public interface OpenList {
+
+	/**
+	 * Queues an item that is not queued.
+	 *
+	 * @param f the estimated cost of a path through the item, not negative
+	 * @param g the cost so far, not negative
+	 */
+	void add(int item, int f, int g);
+
+	/**
+	 * Removes and answers the item with the smallest f, and the largest g among those.  The
+	 * list must not be empty.
+	 */
+	int poll();
+
+	boolean isEmpty();
+
+	int size();
+
+	/**
+	 * Empties the list, keeping its storage for the next search.
+	 */
+	void clear();
+
+
+	/**
+	 * The open lists an agent may be set to search with.
+	 */
+	enum Kind {
+
+		/** An {@link IndexedBinaryHeap}: O(log n) add and poll, any keys. */
+		BINARY_HEAP("binary heap"),
+
+		/** A {@link PairingHeap}: O(1) add, O(log n) amortized poll, any keys. */
+		PAIRING_HEAP("pairing heap"),
+
+		/** A {@link BucketQueue} (Dial's): O(1) add and poll when the keys span a small range. */
+		BUCKET_QUEUE("bucket queue"),
+
+		/** A {@link RadixHeap}: O(log C) amortized, but f must never drop below the last f polled. */
+		RADIX_HEAP("radix heap");
+
+		private final String label;
+
+		Kind(String label) {
+			this.label = label;
+		}
+
+
+		public OpenList create() {
+			switch (this) {
+				case PAIRING_HEAP: return new PairingHeap();
+				case BUCKET_QUEUE: return new BucketQueue();
+				case RADIX_HEAP: return new RadixHeap();
+				default: return new BinaryHeapOpenList();
+			}
+		}
+
+
+		/**
+		 * @return true if the list only works for searches whose f never decreases, such as A*
+		 * with a consistent heuristic
+		 */
+		public boolean needsMonotoneKeys() {
+			return this == RADIX_HEAP;
+		}
+
+
+		public String toString() {
+			return label;
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package path.agent;
+import java.util.Arrays;
+
+
+/**
+ * An {@link OpenList} kept in a pairing heap: a tree whose root is the first item, built by
+ * linking trees under the root with the better key.  Adding links one more tree under the root
+ * in constant time; polling pairs up the children of the root left to right and links the pairs
+ * right to left, which costs O(log n) amortized.  The tree lives in arrays over the items
+ * (first child and next sibling), so nothing is allocated once they are large enough.
+ */
+public final class PairingHeap implements OpenList {
+
+	private static final int NONE = -1;
+
+	private int[] child = new int[0];		// item -> first child, NONE for a leaf
+
+	private int[] sibling = new int[0];		// item -> next child of its parent, NONE for the last
+
+	private int[] fOf = new int[0];
+
+	private int[] gOf = new int[0];
+
+	private int[] pending = new int[16];	// the trees being paired while polling
+
+	private int root = NONE;
+
+	private int size;
+
+
+	@Override
+	public void add(int item, int f, int g) {
+		if (item >= fOf.length) grow(item + 1);
+		fOf[item] = f;
+		gOf[item] = g;
+		child[item] = NONE;
+		sibling[item] = NONE;
+		root = root == NONE ? item : link(root, item);
+		size++;
+	}
+
+
+	@Override
+	public int poll() {
+		int top = root;
+		root = pair(child[top]);
+		size--;
+		return top;
+	}
+
+
+	/*
+	 * Links two trees under the root with the better key, the first one on a tie.
+	 */
+	private int link(int a, int b) {
+		if (fOf[b] < fOf[a] || (fOf[b] == fOf[a] && gOf[b] > gOf[a])) {
+			int t = a;
+			a = b;
+			b = t;
+		}
+		sibling[b] = child[a];
+		child[a] = b;
+		return a;
+	}
+
+
+	/*
+	 * Makes one tree out of a list of siblings: links them in pairs from the left, then links
+	 * the pairs into one from the right.
+	 */
+	private int pair(int first) {
+		int n = 0;
+		int i = first;
+		while (i != NONE) {
+			int a = i;
+			int b = sibling[a];
+			i = b == NONE ? NONE : sibling[b];
+			sibling[a] = NONE;
+			if (b != NONE) {
+				sibling[b] = NONE;
+				a = link(a, b);
+			}
+			if (n == pending.length) pending = Arrays.copyOf(pending, n * 2);
+			pending[n++] = a;
+		}
+		if (n == 0) return NONE;
+		int tree = pending[n - 1];
+		for (int k = n - 2; k >= 0; k--)
+			tree = link(pending[k], tree);
+		return tree;
+	}
+
+
+	private void grow(int capacity) {
+		int n = Math.max(capacity, fOf.length * 2);
+		child = Arrays.copyOf(child, n);
+		sibling = Arrays.copyOf(sibling, n);
+		fOf = Arrays.copyOf(fOf, n);
+		gOf = Arrays.copyOf(gOf, n);
+	}
+
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		root = NONE;
+		size = 0;
+	}
+
+}
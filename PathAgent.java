@@ -1,11 +1,14 @@
 package path.agent;
 
 import java.awt.Point;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
 import path.agent.heuristic.Heuristic;
+import path.agent.heuristic.ManhattanDistance;
+import path.level.ComponentIndex;
 import path.level.Level;
 
 
@@ -13,10 +16,10 @@ import path.level.Level;
  * All search agents for this program will extend this class.  The agents will be aware (have 
  * a handle on the level) as well as the start state and goal state.  Here the states are way points
  * in the level geometry.   After fully configuring the agent, we can ask the agent to plan, which
- * results in a path and a search tree rooted at root.
+ * results in a path and a search tree.
  * <p>
- * After an agent plans, we will retain the tree rooted by the root handle and the path so we can
- * interrogate the agent about the results of search.
+ * After an agent plans, we will retain the search tree (see {@link SearchTree}) and the path so we
+ * can interrogate the agent about the results of search.
  * <p>
  * NOTE:  The programmer must clear/reset the agent to return to initial configuration/before planning.
  * 
@@ -31,7 +34,33 @@ public abstract class PathAgent {
 
 	protected List<Point> path = null;   // a path resulting from planning; null means path not available
 
-	protected Node root;   // a handle on the resulting search tree after planning.  null means no plan yet.
+	protected Node root;   // a handle on the root node for agents that search with Nodes.  null means no plan yet.
+
+	protected final SearchTree tree = new SearchTree();   // the search tree, recorded as the agent searches
+
+	protected SearchListener listener = SearchListener.NONE;   // told about each expanded state
+
+	protected Heuristic estimator;   // estimates the distance to the goal; null means the agent's default
+
+	protected OpenList.Kind openListKind;   // the fringe of agents that keep one in an OpenList; null means the agent's default
+
+	private final Heuristic manhattan = new ManhattanDistance();
+
+	private OpenList fringe;   // kept from search to search
+
+	private OpenList.Kind fringeKind;   // the kind the fringe was made as
+
+	private static final int CLOCK_INTERVAL = 16;   // stop checks between looks at the clock
+
+	private volatile boolean cancelled;   // set from any thread to abandon the search
+
+	private volatile long deadline;   // System.nanoTime() after which the search gives up
+
+	private volatile boolean hasDeadline;
+
+	private volatile boolean aborted;   // the last search gave up before it was finished
+
+	private int checks;
 
 
 	/**
@@ -63,6 +92,136 @@ public abstract class PathAgent {
 	public List<Point> getPath() {
 		return path;
 	}
+
+
+	public Heuristic getEstimator() {
+		return estimator;
+	}
+
+	/**
+	 * Chooses the heuristic of the informed agents.  Agents that do not estimate ignore it.
+	 * 
+	 * @param estimator the heuristic, null for the agent's default (the Manhattan distance)
+	 */
+	public void setEstimator(Heuristic estimator) {
+		this.estimator = estimator;
+	}
+
+
+	/**
+	 * Initializes the heuristic for a goal and returns it.  Informed agents call this at the
+	 * start of a search.
+	 * 
+	 * @param goal the goal of the search
+	 * @return the chosen heuristic or the Manhattan distance if none was chosen
+	 */
+	protected Heuristic estimatorFor(Point goal) {
+		Heuristic h = estimator != null ? estimator : manhattan;
+		h.initialize(goal);
+		return h;
+	}
+
+
+	public OpenList.Kind getOpenListKind() {
+		return openListKind;
+	}
+
+	/**
+	 * Chooses the open list of the agents that keep their fringe in an {@link OpenList}.  Other
+	 * agents ignore it.
+	 * 
+	 * @param kind the open list, null for the agent's default (a binary heap)
+	 */
+	public void setOpenListKind(OpenList.Kind kind) {
+		this.openListKind = kind;
+	}
+
+
+	/**
+	 * Answers the chosen open list, empty.  Agents that keep their fringe in one call this at the
+	 * start of a search; the list is kept for the next search, so its storage is reused.
+	 */
+	protected OpenList openList() {
+		OpenList.Kind kind = openListKind != null ? openListKind : OpenList.Kind.BINARY_HEAP;
+		if (fringe == null || fringeKind != kind) {
+			fringe = kind.create();
+			fringeKind = kind;
+		} else {
+			fringe.clear();
+		}
+		return fringe;
+	}
+
+
+	/**
+	 * The name of an agent followed by the estimator and open list it was set to, if any.
+	 */
+	protected String label(String name) {
+		if (estimator == null && openListKind == null) return name;
+		if (openListKind == null) return name + " (" + estimator + ")";
+		if (estimator == null) return name + " (" + openListKind + ")";
+		return name + " (" + estimator + ", " + openListKind + ")";
+	}
+
+
+	public SearchListener getSearchListener() {
+		return listener;
+	}
+
+	/**
+	 * @param listener told about the progress of every search, null to stop listening
+	 */
+	public void setSearchListener(SearchListener listener) {
+		this.listener = listener == null ? SearchListener.NONE : listener;
+	}
+
+
+	/**
+	 * Asks a running search to give up.  Safe to call from any thread; the search returns null
+	 * soon after and {@link #wasAborted()} answers true.  Cleared by {@link #clearPath()}.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+
+	/**
+	 * Limits the time of the next search, counted from now.  A search that runs out of time
+	 * returns null and {@link #wasAborted()} answers true.  Cleared by {@link #clearPath()}.
+	 *
+	 * @param millis the budget in milliseconds, 0 or less for no limit
+	 */
+	public void setTimeBudget(long millis) {
+		deadline = System.nanoTime() + millis * 1_000_000L;
+		hasDeadline = millis > 0;
+	}
+
+
+	/**
+	 * @return true if the last search was cancelled or ran out of time, in which case its null
+	 * path says nothing about whether a path exists
+	 */
+	public boolean wasAborted() {
+		return aborted;
+	}
+
+
+	/**
+	 * Agents call this once per expansion and give up the search when it answers true.  The
+	 * clock is only read every few calls to keep the check cheap.
+	 *
+	 * @return true if the search was cancelled or is out of time
+	 */
+	protected boolean shouldStop() {
+		if (cancelled) {
+			aborted = true;
+		} else if (hasDeadline && ++checks >= CLOCK_INTERVAL) {
+			checks = 0;
+			if (System.nanoTime() - deadline > 0)
+				aborted = true;
+		}
+		return aborted;
+	}
 	
 
 	/**
@@ -73,8 +232,71 @@ public abstract class PathAgent {
 	 * @return
 	 */
 	public abstract List<Point> findPath();
+
+
+	/**
+	 * Runs {@link #findPath()} and tells the search listener when the search starts and how
+	 * it ended, so a {@link SearchMetrics} listener can time it.
+	 *
+	 * @return the path, as answered by findPath
+	 */
+	public final List<Point> plan() {
+		SearchListener l = listener;
+		l.searchStarted(this);
+		List<Point> result = null;
+		try {
+			result = findPath();
+		} finally {
+			l.searchFinished(result != null);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Asks the level's connected components whether the goal may be reached from the start,
+	 * which takes constant time.  Agents that would otherwise search everything they can reach
+	 * before giving up call this first.  A level made from an occupancy has no components until
+	 * a grid agent has built its grid, and until then every query passes.
+	 *
+	 * @return false if there is certainly no path
+	 */
+	protected boolean isReachable() {
+		ComponentIndex c = level.components();
+		return c == null || c.reachable(start, goal);
+	}
+
+
+	/**
+	 * Asks the level whether a location is valid and counts the question for the search
+	 * listener.  Agents should test locations through this method rather than the level.
+	 */
+	protected boolean isValid(Point p) {
+		listener.validityChecked(1);
+		return level.isValid(p);
+	}
 	
 	
+	/**
+	 * Records a node in the search tree below its parent's record and remembers where.  The
+	 * parent must have been recorded first; a node without a parent becomes a root.
+	 * 
+	 * @param n the node just generated
+	 * @return the same node, for chaining
+	 */
+	protected Node record(Node n) {
+		Point s = n.getState();
+		Node p = n.getParent();
+		if (p == null) {
+			n.setTreeIndex(tree.addRoot(s.x, s.y));
+		} else {
+			Action a = n.getActionFromParent();
+			n.setTreeIndex(tree.add(p.getTreeIndex(), s.x, s.y, a == null ? SearchTree.NO_ACTION : (byte) a.ordinal()));
+		}
+		return n;
+	}
+
+
 	/**
 	 * Walks back up the search tree from the specified search node providing the list
 	 * of states (ie, way points) that will be traveled along this path.  NOTE: this is not
@@ -99,56 +321,42 @@ public abstract class PathAgent {
 
 	
 	/**
-	 * Return the states of the entire search tree. 
+	 * Return the states of the entire search tree.  This builds a list; to visit the states
+	 * of a large tree walk {@link #getSearchTree()} instead.
 	 * 
 	 * @return collection of states/points reached or null if no tree there.
 	 */
 	public List<Point> searchTreeStates()  {
-		if(root == null){
+		SearchTree t = getSearchTree();
+		if (t.isEmpty()) {
 			return null;
 		}
-		List<Point> states = new LinkedList<>();
-		collectStates(root,states); //Helper method called
+		List<Point> states = new ArrayList<>(t.size());
+		for (Point p : t)
+			states.add(p);
 		return states;
 	}
 
-	// Helper method used to collect states
-	private void collectStates(Node current, List<Point> states){
-		if(current != null){
-			for(Node child : current.getChildren()){
-				states.add(child.getState());
-				collectStates(child, states);
-			}
-		}
-	}
-
 	
 	/**
-	 * Returns the depth d of the search tree or -1 if the tree
-	 * does not exist.
+	 * Returns the depth d of the search tree (the number of levels, so a lone root
+	 * has depth 1) or -1 if the tree does not exist.
 	 * 
-	 * @return the 
+	 * @return the depth of the tree
 	 */
 	public int searchTreeDepth() {
-		if(root == null){
-			return -1;  //Calling the helper method
-		}
-		List<Point> dep = new LinkedList<>();
-		return getTreeDepth(root,dep);
+		SearchTree t = getSearchTree();
+		return t.isEmpty() ? -1 : t.maxDepth() + 1;
 	}
 
-	// Recursive helper method to get the depth
-	private int getTreeDepth(Node current, List<Point> dep){
-		if(current == null){
-			return 0;
-		}
-		int maxChildDepth = 0;
-		for(Node child : current.getChildren()){
-			dep.add(child.getState()); // each it. should add the state of child node to the depth list
-			maxChildDepth = Math.max(maxChildDepth,getTreeDepth(child,dep));
-		}
-		return maxChildDepth+1; //current node depth
+
+	/**
+	 * @return the search tree recorded by the last search, empty if there is none
+	 */
+	public SearchTree getSearchTree() {
+		return tree;
 	}
+
 	
 	/**
 	 * Returns to a pre-search state in which no path is known and
@@ -158,6 +366,11 @@ public abstract class PathAgent {
 		
 		this.root = null;
 		this.path = null;
+		this.tree.clear();
+		this.cancelled = false;
+		this.hasDeadline = false;
+		this.aborted = false;
+		this.checks = 0;
 		
 	}
 
@@ -0,0 +1,298 @@
+package path.agent;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import path.level.Level;
+import path.level.LevelListener;
+
+
+/**
+ * An instance of this class remembers the outcome of completed searches, keyed by the agent that
+ * searched, the level and its version, and the start and goal.  Both paths and failed searches
+ * (no path) are remembered.
+ * <p>
+ * The cache is bounded by the number of entries and by the total number of waypoints it holds and
+ * evicts the least recently used entries first.  It listens to every level it holds entries of
+ * and drops that level's entries as soon as an obstacle changes; once a level has no entries
+ * left the cache stops listening to it, so it does not keep unloaded levels alive.
+ * <p>
+ * A query that misses may still be answered from a cached path to the same goal that passes
+ * through the requested start: the rest of that path from the start onward is returned.
+ * <p>
+ * Cached paths are shared and read only.  All methods are thread safe.
+ */
+public class PathCache implements LevelListener {
+
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+	public static final int DEFAULT_MAX_WAYPOINTS = 1 << 20;
+
+	private final int maxEntries;
+
+	private final int maxWaypoints;
+
+	private final LinkedHashMap<Key, List<Point>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final Map<Key, List<Key>> byGoal = new HashMap<>();	// goal key (no start) -> full keys
+
+	private final Map<Level, Integer> watched = new IdentityHashMap<>();	// level -> entries held
+
+	private int waypoints;
+
+	private long hits;
+	private long subpathHits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+
+	public PathCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WAYPOINTS);
+	}
+
+
+	/**
+	 * @param maxEntries most searches remembered
+	 * @param maxWaypoints most waypoints held over all remembered paths
+	 */
+	public PathCache(int maxEntries, int maxWaypoints) {
+		this.maxEntries = maxEntries;
+		this.maxWaypoints = maxWaypoints;
+	}
+
+
+	/**
+	 * Looks up the outcome of a search.
+	 *
+	 * @return a cached path, {@link Collections#emptyList()} if the search is known to have
+	 * failed, or null on a miss
+	 */
+	public synchronized List<Point> lookup(String agent, Level lvl, Point start, Point goal) {
+
+		Key key = new Key(agent, lvl, start, goal);
+		List<Point> found = entries.get(key);
+		if (found != null) {
+			hits++;
+			return found;
+		}
+
+		List<Key> sameGoal = byGoal.get(key.withoutStart());
+		if (sameGoal != null) {
+			for (Key k : sameGoal) {
+				List<Point> p = entries.get(k);
+				int at = p.indexOf(start);
+				if (at >= 0) {
+					subpathHits++;
+					return p.subList(at, p.size());
+				}
+			}
+		}
+
+		misses++;
+		return null;
+	}
+
+
+	/**
+	 * Remembers the outcome of a search.
+	 *
+	 * @param path the path found or null if the search failed
+	 */
+	public synchronized void store(String agent, Level lvl, Point start, Point goal, List<Point> path) {
+
+		Key key = new Key(agent, lvl, start, goal);
+		List<Point> value = path == null ? Collections.emptyList() : List.copyOf(path);
+		if (value.size() > maxWaypoints) return;
+
+		List<Point> old = entries.put(key, value);
+		if (old != null)
+			waypoints -= old.size();
+		else
+			watch(lvl);
+		if ((old == null || old.isEmpty()) && !value.isEmpty())
+			byGoal.computeIfAbsent(key.withoutStart(), k -> new ArrayList<>()).add(key);
+		waypoints += value.size();
+
+		Iterator<Map.Entry<Key, List<Point>>> it = entries.entrySet().iterator();
+		while ((entries.size() > maxEntries || waypoints > maxWaypoints) && it.hasNext()) {
+			Map.Entry<Key, List<Point>> eldest = it.next();
+			if (eldest.getKey().equals(key)) continue;
+			it.remove();
+			forget(eldest.getKey(), eldest.getValue());
+			evictions++;
+		}
+	}
+
+
+	private void forget(Key key, List<Point> value) {
+		waypoints -= value.size();
+		Key goalKey = key.withoutStart();
+		List<Key> sameGoal = byGoal.get(goalKey);
+		if (sameGoal != null) {
+			sameGoal.remove(key);
+			if (sameGoal.isEmpty()) byGoal.remove(goalKey);
+		}
+		unwatch(key.level);
+	}
+
+
+	/*
+	 * Counts one more entry of a level, listening to it from the first.
+	 */
+	private void watch(Level lvl) {
+		if (watched.merge(lvl, 1, Integer::sum) == 1)
+			lvl.addListener(this);
+	}
+
+
+	/*
+	 * Counts one entry of a level less, no longer listening to it after the last.
+	 */
+	private void unwatch(Level lvl) {
+		if (watched.merge(lvl, -1, Integer::sum) == 0) {
+			watched.remove(lvl);
+			lvl.removeListener(this);
+		}
+	}
+
+
+	/**
+	 * Drops every entry of a level whose obstacles changed.
+	 */
+	@Override
+	public synchronized void levelChanged(Level lvl, Rectangle cells) {
+		Iterator<Map.Entry<Key, List<Point>>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Key, List<Point>> e = it.next();
+			if (e.getKey().level == lvl) {
+				it.remove();
+				forget(e.getKey(), e.getValue());
+				invalidations++;
+			}
+		}
+	}
+
+
+	/**
+	 * Forgets everything and stops listening to levels.  Statistics are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		byGoal.clear();
+		waypoints = 0;
+		for (Level lvl : watched.keySet())
+			lvl.removeListener(this);
+		watched.clear();
+	}
+
+
+	/*  --------------------------- STATISTICS --------------------------------- */
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized int waypoints() {
+		return waypoints;
+	}
+
+	/**
+	 * @return the number of levels the cache holds entries of, and listens to
+	 */
+	public synchronized int levels() {
+		return watched.size();
+	}
+
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * @return lookups answered with the rest of a cached path to the same goal
+	 */
+	public synchronized long subpathHits() {
+		return subpathHits;
+	}
+
+	public synchronized long misses() {
+		return misses;
+	}
+
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return entries dropped because their level changed
+	 */
+	public synchronized long invalidations() {
+		return invalidations;
+	}
+
+	public synchronized double hitRatio() {
+		long all = hits + subpathHits + misses;
+		return all == 0 ? 0.0 : (double) (hits + subpathHits) / all;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("PathCache[entries=%d, waypoints=%d, hits=%d, subpathHits=%d, misses=%d, evictions=%d, invalidations=%d]",
+				entries.size(), waypoints, hits, subpathHits, misses, evictions, invalidations);
+	}
+
+
+	/**
+	 * Identifies a search.  Levels are compared by identity; the version captured at creation
+	 * keeps entries of an older layout of the same level apart.
+	 */
+	private static final class Key {
+
+		final String agent;
+		final Level level;
+		final long version;
+		final Point start;		// null in goal keys
+		final Point goal;
+
+		Key(String agent, Level level, Point start, Point goal) {
+			this(agent, level, level.version(), start, goal);
+		}
+
+		private Key(String agent, Level level, long version, Point start, Point goal) {
+			this.agent = agent;
+			this.level = level;
+			this.version = version;
+			this.start = start == null ? null : new Point(start);
+			this.goal = new Point(goal);
+		}
+
+		Key withoutStart() {
+			return new Key(agent, level, version, null, goal);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(agent, System.identityHashCode(level), version, start, goal);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return level == other.level && version == other.version && agent.equals(other.agent)
+					&& Objects.equals(start, other.start) && goal.equals(other.goal);
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+package path.agent;
+import java.awt.Point;
+
+
+/**
+ * One start/goal pair submitted to a {@link BatchPlanner}.  Start and goal must be lattice
+ * points (multiples of the stride).
+ */
+public final class PlanRequest {
+
+	private final Point start;
+
+	private final Point goal;
+
+
+	public PlanRequest(Point start, Point goal) {
+		this.start = new Point(start);
+		this.goal = new Point(goal);
+	}
+
+
+	public Point getStart() {
+		return new Point(start);
+	}
+
+	public Point getGoal() {
+		return new Point(goal);
+	}
+
+	@Override
+	public String toString() {
+		return "PlanRequest[" + start.x + "," + start.y + " -> " + goal.x + "," + goal.y + "]";
+	}
+
+}
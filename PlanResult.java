@@ -0,0 +1,76 @@
+package path.agent;
+import java.awt.Point;
+import java.util.List;
+
+
+/**
+ * The answer to one {@link PlanRequest} of a batch, with the statistics of its search.
+ */
+public final class PlanResult {
+
+	private final PlanRequest request;
+
+	private final List<Point> path;
+
+	private final int expanded;
+
+	private final int generated;
+
+	private final long nanos;
+
+
+	PlanResult(PlanRequest request, List<Point> path, int expanded, int generated, long nanos) {
+		this.request = request;
+		this.path = path;
+		this.expanded = expanded;
+		this.generated = generated;
+		this.nanos = nanos;
+	}
+
+
+	public PlanRequest getRequest() {
+		return request;
+	}
+
+	/**
+	 * @return the path from start to goal, null if there is none
+	 */
+	public List<Point> getPath() {
+		return path;
+	}
+
+	/**
+	 * @return true if there is a path and it ends at the goal
+	 */
+	public boolean isFound() {
+		return path != null && !path.isEmpty() && path.get(path.size() - 1).equals(request.getGoal());
+	}
+
+	/**
+	 * @return the number of cells expanded by the search
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+
+	/**
+	 * @return the number of cells queued or requeued by the search
+	 */
+	public int getGenerated() {
+		return generated;
+	}
+
+	/**
+	 * @return wall clock time spent on this query in nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("PlanResult[%s, found=%b, length=%d, expanded=%d, generated=%d, %dus]",
+				request, isFound(), path == null ? 0 : path.size(), expanded, generated, nanos / 1000);
+	}
+
+}
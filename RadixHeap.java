@@ -0,0 +1,84 @@
+package path.agent;
+import java.util.Arrays;
+
+
+/**
+ * An {@link OpenList} kept in a radix heap, for searches whose f never drops below the last f
+ * polled (A* with a consistent heuristic).  Items whose f equals the last one polled are the
+ * ties; any other item sits in the bucket of the highest bit in which its f differs from the
+ * last one, so 32 buckets do whatever the range of the keys.  When the ties run out, the
+ * lowest bucket that holds an item is emptied: its least f becomes the last one, and its items
+ * move to lower buckets or to the ties.  An item moves down at most 31 times, so add and poll
+ * take amortized time logarithmic in the largest f rather than in the number of items.
+ */
+public final class RadixHeap extends BucketedOpenList {
+
+	private final int[] head = new int[32];		// bucket -> first item, NONE if empty
+
+	private int last;		// f of the ties, no f queued is below it
+
+
+	public RadixHeap() {
+		Arrays.fill(head, NONE);
+	}
+
+
+	/**
+	 * @throws IllegalArgumentException if f is below the last f polled
+	 */
+	@Override
+	public void add(int item, int f, int g) {
+		if (f < last) throw new IllegalArgumentException("f=" + f + " is below the last f polled, " + last);
+		remember(item, f, g);
+		if (f == last) {
+			pushTie(item);
+		} else {
+			int b = bucket(f);
+			next[item] = head[b];
+			head[b] = item;
+		}
+	}
+
+
+	@Override
+	public int poll() {
+		if (!hasTies()) {
+			int b = 1;
+			while (head[b] == NONE)
+				b++;
+			int min = Integer.MAX_VALUE;
+			for (int i = head[b]; i != NONE; i = next[i])
+				min = Math.min(min, fOf[i]);
+			last = min;
+
+			int i = head[b];
+			head[b] = NONE;
+			while (i != NONE) {
+				int nx = next[i];
+				if (fOf[i] == last) {
+					pushTie(i);
+				} else {
+					int c = bucket(fOf[i]);
+					next[i] = head[c];
+					head[c] = i;
+				}
+				i = nx;
+			}
+		}
+		return popTie();
+	}
+
+
+	private int bucket(int f) {
+		return 32 - Integer.numberOfLeadingZeros(f ^ last);
+	}
+
+
+	@Override
+	public void clear() {
+		super.clear();
+		Arrays.fill(head, NONE);
+		last = 0;
+	}
+
+}
@@ -0,0 +1,106 @@
+package path.agent;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * An instance of this class records which unit occupies which cell of a grid at which time step,
+ * for cooperative planning.  Two kinds of conflict are ruled out:
+ * <ul>
+ * <li>vertex conflicts, two units in the same cell at the same time, by reserving (cell, time);</li>
+ * <li>swap conflicts, two units trading cells between t and t+1, by also recording each move
+ * (from, time) -&gt; to and refusing the opposite move.</li>
+ * </ul>
+ * Reservations are made with atomic put-if-absent operations on concurrent maps, so units can be
+ * planned on several threads at once: a thread that loses a race is told so and plans again.
+ */
+public class ReservationTable {
+
+	private final ConcurrentHashMap<Long, Integer> cells = new ConcurrentHashMap<>();	// (time, cell) -> unit
+
+	private final ConcurrentHashMap<Long, Integer> moves = new ConcurrentHashMap<>();	// (time, from) -> to
+
+
+	private static long key(int cell, int time) {
+		return ((long) time << 32) | (cell & 0xffffffffL);
+	}
+
+
+	/**
+	 * @return true if a unit other than the given one holds the cell at that time
+	 */
+	public boolean isReserved(int cell, int time, int unit) {
+		Integer owner = cells.get(key(cell, time));
+		return owner != null && owner != unit;
+	}
+
+
+	/**
+	 * @return true if some unit moves from {@code to} into {@code from} between time and time+1,
+	 * so moving from {@code from} to {@code to} at that time would swap with it
+	 */
+	public boolean isSwap(int from, int to, int time) {
+		Integer other = moves.get(key(to, time));
+		return other != null && other == from;
+	}
+
+
+	/**
+	 * Claims a cell at a time for a unit.
+	 *
+	 * @return false if another unit already holds it
+	 */
+	public boolean reserve(int cell, int time, int unit) {
+		Integer owner = cells.putIfAbsent(key(cell, time), unit);
+		return owner == null || owner == unit;
+	}
+
+
+	/**
+	 * Records a move from one cell to another between time and time+1.
+	 *
+	 * @return false if the opposite move is already recorded
+	 */
+	public boolean reserveMove(int from, int to, int time) {
+		if (from == to) return true;
+		moves.put(key(from, time), to);
+		if (isSwap(from, to, time)) {
+			moves.remove(key(from, time), to);
+			return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * Gives up a cell claimed by a unit.
+	 */
+	public void release(int cell, int time, int unit) {
+		cells.remove(key(cell, time), unit);
+	}
+
+
+	/**
+	 * Forgets a recorded move.
+	 */
+	public void releaseMove(int from, int to, int time) {
+		moves.remove(key(from, time), to);
+	}
+
+
+	/**
+	 * Forgets every reservation.
+	 */
+	public void clear() {
+		cells.clear();
+		moves.clear();
+	}
+
+
+	/**
+	 * @return the number of (cell, time) reservations
+	 */
+	public int size() {
+		return cells.size();
+	}
+
+}
@@ -0,0 +1,94 @@
+package path.agent;
+
+
+/**
+ * Receives the progress of a search as it happens.  Agents report to the listener set with
+ * {@link PathAgent#setSearchListener(SearchListener)}, on the thread that runs the search (a
+ * concurrent agent may report from several threads at once).
+ * <p>
+ * A search reported through {@link PathAgent#plan()} is framed by {@link #searchStarted(PathAgent)}
+ * and {@link #searchFinished(boolean)}; in between the agent announces the phases it goes
+ * through and counts what it does.  Counts may be reported one at a time or in small batches.
+ * Every method except {@link #expanded(int, int)} does nothing by default.
+ * <p>
+ * Reports come from the agent's inner loop, so implementations must be quick; anything slow,
+ * such as painting, belongs on another thread fed by the listener.  {@link #NONE} costs next
+ * to nothing and is what agents report to unless told otherwise.  See {@link SearchMetrics}
+ * for a listener that adds the reports up.
+ */
+public interface SearchListener {
+
+	/**
+	 * The listener agents report to when nobody is listening.
+	 */
+	SearchListener NONE = new SearchListener() {
+		@Override
+		public void expanded(int x, int y) {
+		}
+	};
+
+
+	/**
+	 * A search is about to begin.
+	 */
+	default void searchStarted(PathAgent agent) {
+	}
+
+
+	/**
+	 * The search enters a new phase (such as "prepare", "search" or "path"), which ends the
+	 * previous one.  Agents with a single phase need not report it.
+	 */
+	default void phase(String name) {
+	}
+
+
+	/**
+	 * A state was taken from the fringe and expanded.
+	 *
+	 * @param x the state's x coordinate in the level
+	 * @param y the state's y coordinate in the level
+	 */
+	void expanded(int x, int y);
+
+
+	/**
+	 * States were put on the fringe.
+	 */
+	default void generated(int count) {
+	}
+
+
+	/**
+	 * States already reached were reached again more cheaply and put back on the fringe, or
+	 * moved up in it.
+	 */
+	default void reopened(int count) {
+	}
+
+
+	/**
+	 * Locations were tested for validity, with {@code Level.isValid} or an equivalent test
+	 * on the level's grid.
+	 */
+	default void validityChecked(int count) {
+	}
+
+
+	/**
+	 * The current size of the open list (fringe) and of the closed set.  Reported after an
+	 * expansion.
+	 */
+	default void frontierSize(int open, int closed) {
+	}
+
+
+	/**
+	 * The search is over.
+	 *
+	 * @param found true if a path was found
+	 */
+	default void searchFinished(boolean found) {
+	}
+
+}
@@ -0,0 +1,189 @@
+package path.agent;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A {@link SearchListener} that adds up what an agent reports: states generated, expanded and
+ * reopened, validity tests, the peak sizes of the open list and closed set, and the wall time
+ * of the whole search and of each phase.  A search whose agent announces no phases is timed as
+ * a single "search" phase.
+ * <p>
+ * The counters start over with each search.  Reports may come from several threads at once
+ * (concurrent agents); the phase timings assume phases are announced by one thread.
+ */
+public class SearchMetrics implements SearchListener {
+
+	private String agent = "";
+
+	private final LongAdder generated = new LongAdder();
+
+	private final LongAdder expanded = new LongAdder();
+
+	private final LongAdder reopened = new LongAdder();
+
+	private final LongAdder validityChecks = new LongAdder();
+
+	private final AtomicInteger peakOpen = new AtomicInteger();
+
+	private final AtomicInteger peakClosed = new AtomicInteger();
+
+	private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+
+	private String phase;		// current phase, null outside a search
+
+	private long phaseStart;
+
+	private long searchStart;
+
+	private long totalNanos;
+
+	private boolean found;
+
+
+	@Override
+	public void searchStarted(PathAgent a) {
+		agent = String.valueOf(a);
+		generated.reset();
+		expanded.reset();
+		reopened.reset();
+		validityChecks.reset();
+		peakOpen.set(0);
+		peakClosed.set(0);
+		synchronized (phaseNanos) {
+			phaseNanos.clear();
+		}
+		found = false;
+		totalNanos = 0;
+		phase = null;
+		searchStart = System.nanoTime();
+	}
+
+
+	@Override
+	public void phase(String name) {
+		long now = System.nanoTime();
+		endPhase(now);
+		phase = name;
+		phaseStart = now;
+	}
+
+
+	private void endPhase(long now) {
+		if (phase == null) return;
+		synchronized (phaseNanos) {
+			phaseNanos.merge(phase, now - phaseStart, Long::sum);
+		}
+	}
+
+
+	@Override
+	public void expanded(int x, int y) {
+		expanded.increment();
+	}
+
+
+	@Override
+	public void generated(int count) {
+		generated.add(count);
+	}
+
+
+	@Override
+	public void reopened(int count) {
+		reopened.add(count);
+	}
+
+
+	@Override
+	public void validityChecked(int count) {
+		validityChecks.add(count);
+	}
+
+
+	@Override
+	public void frontierSize(int open, int closed) {
+		if (open > peakOpen.get()) peakOpen.accumulateAndGet(open, Math::max);
+		if (closed > peakClosed.get()) peakClosed.accumulateAndGet(closed, Math::max);
+	}
+
+
+	@Override
+	public void searchFinished(boolean found) {
+		long now = System.nanoTime();
+		endPhase(now);
+		phase = null;
+		totalNanos = now - searchStart;
+		this.found = found;
+		synchronized (phaseNanos) {
+			if (phaseNanos.isEmpty()) phaseNanos.put("search", totalNanos);
+		}
+	}
+
+
+	/*  --------------------------- RESULTS --------------------------------- */
+
+	public String getAgent() {
+		return agent;
+	}
+
+	public long getGenerated() {
+		return generated.sum();
+	}
+
+	public long getExpanded() {
+		return expanded.sum();
+	}
+
+	public long getReopened() {
+		return reopened.sum();
+	}
+
+	public long getValidityChecks() {
+		return validityChecks.sum();
+	}
+
+	public int getPeakOpen() {
+		return peakOpen.get();
+	}
+
+	public int getPeakClosed() {
+		return peakClosed.get();
+	}
+
+	/**
+	 * @return wall time of the last search in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return wall time per phase in nanoseconds, in the order the phases were entered
+	 */
+	public Map<String, Long> getPhaseNanos() {
+		synchronized (phaseNanos) {
+			return Collections.unmodifiableMap(new LinkedHashMap<>(phaseNanos));
+		}
+	}
+
+	public boolean isFound() {
+		return found;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder phases = new StringBuilder();
+		for (Map.Entry<String, Long> e : getPhaseNanos().entrySet()) {
+			if (phases.length() > 0) phases.append(", ");
+			phases.append(e.getKey()).append('=').append(e.getValue() / 1000).append("us");
+		}
+		return String.format("SearchMetrics[%s, found=%b, generated=%d, expanded=%d, reopened=%d, validityChecks=%d, peakOpen=%d, peakClosed=%d, total=%dus, phases={%s}]",
+				agent, found, getGenerated(), getExpanded(), getReopened(), getValidityChecks(),
+				getPeakOpen(), getPeakClosed(), totalNanos / 1000, phases);
+	}
+
+}
@@ -0,0 +1,184 @@
+package path.agent;
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * An instance of this class records the search tree an agent builds while it plans.  Tree nodes
+ * live in parallel arrays (an arena) and are known by their index, so a node costs a few bytes
+ * instead of an object with a list of children: the state's coordinates, the index of the parent
+ * node, the depth and the action taken from the parent.
+ * <p>
+ * The size and the greatest depth are kept up to date as nodes are added, so asking for them
+ * is constant time.  The states can be walked with {@link #iterator()} or, without creating any
+ * objects, with {@link #x(int)} and {@link #y(int)} over the indices 0 to size()-1.
+ * <p>
+ * A tree may have several roots (a bidirectional search grows one from each end).  Clearing
+ * the tree keeps its arrays for the next search.  A tree is not thread safe.
+ */
+public class SearchTree implements Iterable<Point> {
+
+	/**
+	 * The parent index of a root.
+	 */
+	public static final int NO_PARENT = -1;
+
+	/**
+	 * The action of a root, or of a node reached by something other than a single {@link Action}.
+	 */
+	public static final byte NO_ACTION = -1;
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private int[] x = new int[INITIAL_CAPACITY];
+
+	private int[] y = new int[INITIAL_CAPACITY];
+
+	private int[] parent = new int[INITIAL_CAPACITY];
+
+	private int[] depth = new int[INITIAL_CAPACITY];
+
+	private byte[] action = new byte[INITIAL_CAPACITY];
+
+	private int size;
+
+	private int maxDepth = -1;
+
+
+	/**
+	 * Adds a root node.
+	 * @return the index of the new node
+	 */
+	public int addRoot(int sx, int sy) {
+		return add(NO_PARENT, sx, sy, NO_ACTION);
+	}
+
+
+	/**
+	 * Adds a node below a parent.
+	 *
+	 * @param parentIndex index of the parent node, or {@link #NO_PARENT} for a root
+	 * @param sx the state's x coordinate in the level
+	 * @param sy the state's y coordinate in the level
+	 * @param act the ordinal of the {@link Action} taken from the parent, or {@link #NO_ACTION}
+	 * @return the index of the new node
+	 */
+	public int add(int parentIndex, int sx, int sy, byte act) {
+		if (size == x.length) grow();
+		int d = parentIndex == NO_PARENT ? 0 : depth[parentIndex] + 1;
+		x[size] = sx;
+		y[size] = sy;
+		parent[size] = parentIndex;
+		depth[size] = d;
+		action[size] = act;
+		if (d > maxDepth) maxDepth = d;
+		return size++;
+	}
+
+
+	/**
+	 * Adds every node of another tree to this one, keeping their shape.
+	 */
+	public void append(SearchTree other) {
+		int offset = size;
+		for (int i = 0; i < other.size; i++) {
+			int p = other.parent[i];
+			add(p == NO_PARENT ? NO_PARENT : p + offset, other.x[i], other.y[i], other.action[i]);
+		}
+	}
+
+
+	private void grow() {
+		int n = x.length * 2;
+		x = Arrays.copyOf(x, n);
+		y = Arrays.copyOf(y, n);
+		parent = Arrays.copyOf(parent, n);
+		depth = Arrays.copyOf(depth, n);
+		action = Arrays.copyOf(action, n);
+	}
+
+
+	/**
+	 * Forgets every node.  The arrays are kept.
+	 */
+	public void clear() {
+		size = 0;
+		maxDepth = -1;
+	}
+
+
+	/*  --------------------------- QUERIES --------------------------------- */
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the depth of the deepest node (a root has depth 0), -1 for an empty tree
+	 */
+	public int maxDepth() {
+		return maxDepth;
+	}
+
+	public int x(int index) {
+		return x[index];
+	}
+
+	public int y(int index) {
+		return y[index];
+	}
+
+	public int parent(int index) {
+		return parent[index];
+	}
+
+	public int depth(int index) {
+		return depth[index];
+	}
+
+	/**
+	 * @return the ordinal of the action taken from the parent, or {@link #NO_ACTION}
+	 */
+	public byte action(int index) {
+		return action[index];
+	}
+
+	public Point state(int index) {
+		return new Point(x[index], y[index]);
+	}
+
+
+	/**
+	 * Walks the states in the order the nodes were added.  Each point is created as it is
+	 * visited; nothing else is allocated.
+	 */
+	@Override
+	public Iterator<Point> iterator() {
+		return new Iterator<Point>() {
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public Point next() {
+				if (next >= size) throw new NoSuchElementException();
+				return state(next++);
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return "SearchTree[size=" + size + ", maxDepth=" + maxDepth + "]";
+	}
+
+}
@@ -0,0 +1,149 @@
+package path.agent;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import path.level.OccupancyGrid;
+
+
+/**
+ * An instance of this class holds the per-cell arrays a grid search needs (cost so far, parent
+ * link, open/closed status) and its fringe.  A workspace is sized for one grid and reused from
+ * query to query, so a search allocates nothing but its result.  A workspace may only be used
+ * by one search at a time; concurrent searches each need their own, see {@link WorkspacePool}.
+ * <p>
+ * The status of a cell is a generation stamp rather than a flag: a cell is open when its mark
+ * equals the generation of the current search and closed when it is one more, and every other
+ * mark means unseen.  Preparing for the next search moves the generation on, which leaves all
+ * the cells unseen at once without touching the arrays; they are only cleared when the stamps
+ * run out, once every billion searches.
+ * <p>
+ * A search that needs more per-cell arrays extends the class, and a search that keeps its
+ * workspace to itself can still have it freed with the level, see {@link WorkspacePool#hold}.
+ */
+public class SearchWorkspace {
+
+	public static final byte UNSEEN = 0;
+	public static final byte OPEN = 1;
+	public static final byte CLOSED = 2;
+
+	int[] gval;			// cost so far, valid unless UNSEEN
+
+	int[] parent;		// parent cell, -1 for the start
+
+	int[] mark;			// openMark if open, openMark + 1 if closed, anything else if unseen
+
+	int openMark;		// the generation of the current search
+
+	int[] treeNode;		// search tree node of a cell's latest record, valid unless UNSEEN
+
+	double[] cost;		// real valued cost so far for the any-angle searches, see costs()
+
+	IndexedBinaryHeap open;
+
+	int expanded;		// cells expanded by the last search
+
+	int generated;		// cells queued or requeued by the last search
+
+
+	/**
+	 * Makes the workspace ready for a search on a grid: allocates if it has never been used
+	 * on a grid this large, and starts a new generation otherwise, which costs nothing but
+	 * emptying the fringe.
+	 */
+	public void prepare(OccupancyGrid grid) {
+		int n = grid.size();
+		if (mark == null || mark.length < n) {
+			allocate(n);
+			openMark = 1;
+		} else {
+			open.clear();
+			openMark += 2;
+			if (openMark >= Integer.MAX_VALUE - 1) {
+				Arrays.fill(mark, 0);
+				openMark = 1;
+			}
+		}
+		expanded = 0;
+		generated = 0;
+	}
+
+
+	/**
+	 * Allocates the arrays for a number of cells, all of them unseen.  A subclass that needs
+	 * more per-cell arrays allocates them here too and drops them in {@link #release()}.
+	 */
+	protected void allocate(int n) {
+		gval = new int[n];
+		parent = new int[n];
+		mark = new int[n];
+		treeNode = new int[n];
+		open = new IndexedBinaryHeap(n);
+		cost = null;
+	}
+
+
+	/**
+	 * Drops the arrays, to be allocated again by the next {@link #prepare(OccupancyGrid)}.
+	 */
+	public void release() {
+		gval = null;
+		parent = null;
+		mark = null;
+		treeNode = null;
+		open = null;
+		cost = null;
+	}
+
+
+	/*
+	 * The real valued costs, allocated the first time a search asks for them so that the
+	 * integer searches don't pay for them.  Valid unless UNSEEN, like gval.
+	 */
+	double[] costs() {
+		if (cost == null) cost = new double[mark.length];
+		return cost;
+	}
+
+
+	/**
+	 * @return {@link #UNSEEN}, {@link #OPEN} or {@link #CLOSED}
+	 */
+	public byte status(int cell) {
+		int m = mark[cell];
+		return m == openMark ? OPEN : m == openMark + 1 ? CLOSED : UNSEEN;
+	}
+
+
+	/**
+	 * @return the cells the arrays have room for, 0 if they are not allocated
+	 */
+	public int capacity() {
+		return mark == null ? 0 : mark.length;
+	}
+
+
+	/**
+	 * Follows the parent links from a cell back to the start.
+	 * @return the points from the start to the cell, same format as pathFromNode
+	 */
+	public List<Point> pathTo(OccupancyGrid grid, int cell) {
+		List<Point> pth = new ArrayList<>();
+		for (int c = cell; c >= 0; c = parent[c])
+			pth.add(grid.pointOf(c));
+		Collections.reverse(pth);
+		return pth;
+	}
+
+
+	public int getExpanded() {
+		return expanded;
+	}
+
+	public int getGenerated() {
+		return generated;
+	}
+
+}
@@ -0,0 +1,167 @@
+package path.agent;
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+
+/**
+ * Runs many {@link SlicedSearch}es within a fixed time budget per frame.  Each frame the
+ * searches take turns in round robin order, each turn expanding a fixed number of cells (the
+ * quantum), until the budget is spent or every search is done.  The next frame carries on with
+ * the search whose turn was next, so a long query holds up no frame and can't starve the short
+ * ones queued behind it: it merely takes more frames.
+ * <p>
+ * A frame runs at least one turn, so searches progress even with a budget of zero, and may run
+ * over its budget by at most the time one turn takes.  The scheduler is meant to be driven from
+ * the game loop's thread and is not thread safe.
+ * <p>
+ * The scheduler lends its searches workspaces from a pool of its own, one per search under way,
+ * and takes them back as the searches finish, so that searches after the first few allocate
+ * nothing.  Searches submitted after they have been stepped elsewhere keep their own.
+ */
+public class SliceScheduler {
+
+	public static final int DEFAULT_QUANTUM = 256;
+
+	private final int quantum;
+
+	private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+
+	private final ArrayDeque<SearchWorkspace> spare = new ArrayDeque<>();
+
+	private long frames;
+
+	private long lastFrameNanos;
+
+	private long maxFrameNanos;
+
+
+	public SliceScheduler() {
+		this(DEFAULT_QUANTUM);
+	}
+
+
+	/**
+	 * @param quantum cells a search expands per turn
+	 */
+	public SliceScheduler(int quantum) {
+		this.quantum = Math.max(1, quantum);
+	}
+
+
+	/**
+	 * Queues a search behind the others.
+	 *
+	 * @return the search
+	 */
+	public SlicedSearch submit(SlicedSearch search) {
+		return submit(search, null);
+	}
+
+
+	/**
+	 * Queues a search behind the others.
+	 *
+	 * @param whenDone called from {@link #runFrame(long)} once the search is done, or null
+	 * @return the search
+	 */
+	public SlicedSearch submit(SlicedSearch search, Consumer<SlicedSearch> whenDone) {
+		if (search.getSlices() == 0 && !search.isDone()) {
+			SearchWorkspace ws = spare.poll();
+			search.lend(ws == null ? new SearchWorkspace() : ws);
+		}
+		queue.add(new Entry(search, whenDone));
+		return search;
+	}
+
+
+	/**
+	 * Gives the queued searches turns until a time budget is spent or all are done.
+	 *
+	 * @param budgetMicros time the frame may spend searching, in microseconds
+	 * @return the number of searches that were done in this frame
+	 */
+	public int runFrame(long budgetMicros) {
+		long t0 = System.nanoTime();
+		long deadline = t0 + budgetMicros * 1000;
+		int finished = 0;
+
+		while (!queue.isEmpty()) {
+			Entry e = queue.poll();
+			if (e.search.step(quantum) == SlicedSearch.Status.IN_PROGRESS) {
+				queue.add(e);
+			} else {
+				finished++;
+				reclaim(e.search);
+				if (e.whenDone != null) e.whenDone.accept(e.search);
+			}
+			if (System.nanoTime() >= deadline) break;
+		}
+
+		frames++;
+		lastFrameNanos = System.nanoTime() - t0;
+		maxFrameNanos = Math.max(maxFrameNanos, lastFrameNanos);
+		return finished;
+	}
+
+
+	/**
+	 * @return the number of searches queued and not done yet
+	 */
+	public int pending() {
+		return queue.size();
+	}
+
+
+	/**
+	 * Cancels every queued search and empties the queue.  Their callbacks are not called.
+	 */
+	public void cancelAll() {
+		for (Entry e : queue) {
+			e.search.cancel();
+			reclaim(e.search);
+		}
+		queue.clear();
+	}
+
+
+	private void reclaim(SlicedSearch search) {
+		SearchWorkspace ws = search.giveBack();
+		if (ws != null) spare.add(ws);
+	}
+
+
+	public int getQuantum() {
+		return quantum;
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return the time the last frame took, in nanoseconds
+	 */
+	public long getLastFrameNanos() {
+		return lastFrameNanos;
+	}
+
+	/**
+	 * @return the time the longest frame so far took, in nanoseconds
+	 */
+	public long getMaxFrameNanos() {
+		return maxFrameNanos;
+	}
+
+
+	private static final class Entry {
+
+		final SlicedSearch search;
+
+		final Consumer<SlicedSearch> whenDone;
+
+		Entry(SlicedSearch search, Consumer<SlicedSearch> whenDone) {
+			this.search = search;
+			this.whenDone = whenDone;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package path.agent;
+import java.awt.Point;
+import java.util.List;
+
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+
+/**
+ * A grid A* search that is carried out a slice at a time instead of in one call, so that a long
+ * query can be spread over several frames of a game loop.  Each call to {@link #step(int)} or
+ * {@link #stepFor(long)} expands a bounded number of cells, or for a bounded time, and returns;
+ * the fringe and the per-cell arrays are kept in the search's own {@link SearchWorkspace} in
+ * between, so no work is repeated.  The search is the one of {@link GridAstar}, so a sliced
+ * search finds the same path as an {@link IndexedAstarAgent} with no estimator.
+ * <p>
+ * If the obstacles of the level change between two slices, the search starts over on the new
+ * layout with the next slice.  The workspace is let go as soon as the search is over, or handed
+ * back to the scheduler that lent it.
+ * <p>
+ * A sliced search may be stepped from one thread at a time.  Many of them are best run by a
+ * {@link SliceScheduler}.  The start and goal must be lattice points.
+ */
+public class SlicedSearch {
+
+	/**
+	 * The state of a sliced search.
+	 */
+	public enum Status { IN_PROGRESS, FOUND, FAILED, CANCELLED }
+
+	// expansions between two looks at the clock when stepping for a time
+	private static final int CHUNK = 64;
+
+	private final Level level;
+
+	private final Point start;
+
+	private final Point goal;
+
+	private OccupancyGrid grid;
+
+	private SearchWorkspace workspace;
+
+	private boolean lent;		// the workspace belongs to a scheduler
+
+	private boolean started;
+
+	private long levelVersion;
+
+	private int startCell;
+
+	private int goalCell;
+
+	private volatile Status status = Status.IN_PROGRESS;
+
+	private List<Point> path;
+
+	private int expanded;		// over all slices, restarts included
+
+	private int slices;
+
+	private int restarts;
+
+	private long nanos;
+
+
+	public SlicedSearch(Level lvl, Point start, Point goal) {
+		this.level = lvl;
+		this.start = new Point(start);
+		this.goal = new Point(goal);
+	}
+
+
+	/**
+	 * Expands at most a number of cells.
+	 *
+	 * @return the status after the slice
+	 */
+	public Status step(int expansions) {
+		if (status != Status.IN_PROGRESS) return status;
+		long t0 = System.nanoTime();
+		slices++;
+		if (begin()) advance(Math.max(1, expansions));
+		nanos += System.nanoTime() - t0;
+		return status;
+	}
+
+
+	/**
+	 * Expands cells for about a number of microseconds.  The clock is read every few dozen
+	 * expansions, so a slice may run over by the time those take, and at least that many
+	 * cells are expanded.
+	 *
+	 * @return the status after the slice
+	 */
+	public Status stepFor(long micros) {
+		if (status != Status.IN_PROGRESS) return status;
+		long t0 = System.nanoTime();
+		long deadline = t0 + micros * 1000;
+		slices++;
+		if (begin()) {
+			do {
+				advance(CHUNK);
+			} while (status == Status.IN_PROGRESS && System.nanoTime() < deadline);
+		}
+		nanos += System.nanoTime() - t0;
+		return status;
+	}
+
+
+	/**
+	 * Abandons the search; stepping it again does nothing.
+	 */
+	public void cancel() {
+		if (status == Status.IN_PROGRESS) finish(Status.CANCELLED);
+	}
+
+
+	/*
+	 * Makes sure a search on the current layout of the level is under way, starting one if
+	 * there is none yet or the level changed since the last slice.
+	 *
+	 * @return false if the search is over before it could begin
+	 */
+	private boolean begin() {
+		OccupancyGrid g = level.grid();
+		if (started && g == grid && level.version() == levelVersion) return true;
+		if (started) restarts++;
+
+		started = true;
+		grid = g;
+		levelVersion = level.version();
+		startCell = g.cellOf(start);
+		goalCell = g.cellOf(goal);
+		if (startCell < 0 || goalCell < 0) {
+			finish(Status.FAILED);
+			return false;
+		}
+		if (workspace == null) workspace = new SearchWorkspace();
+		workspace.prepare(g);
+		GridAstar.begin(g, startCell, goalCell, workspace, SearchListener.NONE, null);
+		return true;
+	}
+
+
+	private void advance(int expansions) {
+		int before = workspace.expanded;
+		int outcome = GridAstar.run(grid, goalCell, workspace, SearchListener.NONE, null, expansions);
+		expanded += workspace.expanded - before;
+		if (outcome == GridAstar.FOUND) {
+			path = workspace.pathTo(grid, goalCell);
+			finish(Status.FOUND);
+		} else if (outcome == GridAstar.FAILED) {
+			finish(Status.FAILED);
+		}
+	}
+
+
+	private void finish(Status s) {
+		status = s;
+		if (!lent) workspace = null;
+	}
+
+
+	/*
+	 * Has the search use a workspace owned by a scheduler instead of one of its own.
+	 */
+	void lend(SearchWorkspace ws) {
+		workspace = ws;
+		lent = true;
+	}
+
+
+	/*
+	 * @return the lent workspace, once the search is over, or null
+	 */
+	SearchWorkspace giveBack() {
+		if (!lent || status == Status.IN_PROGRESS) return null;
+		SearchWorkspace ws = workspace;
+		workspace = null;
+		lent = false;
+		return ws;
+	}
+
+
+	public Status getStatus() {
+		return status;
+	}
+
+
+	/**
+	 * @return true once the search has found a path, failed or been cancelled
+	 */
+	public boolean isDone() {
+		return status != Status.IN_PROGRESS;
+	}
+
+
+	/**
+	 * @return the path found, from start to goal, or null unless the status is FOUND
+	 */
+	public List<Point> getPath() {
+		return path;
+	}
+
+
+	public Point getStart() {
+		return start;
+	}
+
+	public Point getGoal() {
+		return goal;
+	}
+
+
+	/**
+	 * @return the cells expanded over all slices so far
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+
+	/**
+	 * @return the number of slices run so far
+	 */
+	public int getSlices() {
+		return slices;
+	}
+
+	/**
+	 * @return how many times the search started over because the level changed
+	 */
+	public int getRestarts() {
+		return restarts;
+	}
+
+	/**
+	 * @return the time spent in slices so far, in nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+
+	public String toString() {
+		return "Sliced search " + start.x + "," + start.y + " -> " + goal.x + "," + goal.y + " (" + status + ")";
+	}
+}
@@ -0,0 +1,369 @@
+package path.agent;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import path.agent.heuristic.Heuristic;
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+
+/**
+ * A memory-bounded agent implementing SMA* (simplified memory-bounded A*) on the level's
+ * {@link OccupancyGrid}.  It runs like A*, one successor at a time, until its node pool is full;
+ * from then on every new node first evicts the shallowest of the leaves with the highest f.
+ * The parent of an evicted leaf remembers the best f among its forgotten children, and when
+ * that f is again the best on the fringe the parent regenerates them.  Every node's f is raised
+ * to the best f below it once all its successors have been seen, so a subtree dropped for
+ * memory is only searched again when nothing else looks better.  With enough memory for the
+ * shortest path the path found is a shortest one.
+ * <p>
+ * Memory is capped in nodes.  The pool, the two heaps over it and a {@link TranspositionTable}
+ * from cells to their cheapest node in the pool are all sized for the cap when the agent is
+ * made and nothing grows with the search.  The table prunes a successor when its cell is already
+ * held as cheaply elsewhere; without it a grid's many equally short routes would fill the pool
+ * with duplicates.  A path with more nodes than the cap can't be found, in which case
+ * {@link #wasCapped()} answers true.  The search tree only records the path found.
+ * <p>
+ * The heuristic is the agent's estimator.  The start and goal must be lattice points.
+ */
+public class SmaStarAgent extends PathAgent {
+
+	public static final int DEFAULT_MAX_NODES = 1 << 18;
+
+	/** Bytes a node takes, its share of the heaps and table included, to turn a cap in bytes into one in nodes. */
+	public static final int BYTES_PER_NODE = 92;
+
+	private static final int INF = Integer.MAX_VALUE;
+
+	private static final int[] DX = { 0, 0, 1, -1 };
+	private static final int[] DY = { -1, 1, 0, 0 };
+
+	private final int maxNodes;
+
+	// the node pool, indexed by slot
+	private final int[] cell;
+	private final int[] gval;
+	private final int[] fval;		// raised to the best f below once all successors were seen
+	private final int[] parent;		// -1 for the root
+	private final int[] forgotten;		// best f of evicted children, INF if none
+	private final int[] child;		// slot * 4 + action -> child slot in the pool, -1 if none
+	private final byte[] action;		// action from the parent
+	private final byte[] next;		// next action to try, DX.length once all were
+
+	private final int[] free;		// stack of unused slots
+	private int freeCount;
+
+	private final IndexedBinaryHeap open;		// slots with successors to (re)generate, best f first, then deepest
+
+	private final IndexedBinaryHeap leaves;		// childless slots but the root, highest f first, then shallowest
+
+	private final TranspositionTable table;		// cell -> cheapest slot holding it
+
+	private OccupancyGrid grid;
+
+	private Heuristic h;
+
+	private int peakNodes;
+
+	private long expanded;
+
+	private long evictions;
+
+	private boolean capped;
+
+
+	public SmaStarAgent(Level lvl) {
+		this(lvl, DEFAULT_MAX_NODES);
+	}
+
+
+	/**
+	 * @param lvl the level to plan in
+	 * @param maxNodes the most nodes the search may hold at once, at least three
+	 */
+	public SmaStarAgent(Level lvl, int maxNodes) {
+		super(lvl);
+		this.maxNodes = Math.max(3, maxNodes);
+		int n = this.maxNodes;
+		cell = new int[n];
+		gval = new int[n];
+		fval = new int[n];
+		parent = new int[n];
+		forgotten = new int[n];
+		child = new int[n * DX.length];
+		action = new byte[n];
+		next = new byte[n];
+		free = new int[n];
+		open = new IndexedBinaryHeap(n);
+		leaves = new IndexedBinaryHeap(n);
+		table = new TranspositionTable(n);
+	}
+
+
+	/**
+	 * @return the node cap that fits a number of bytes
+	 */
+	public static int nodesFor(long bytes) {
+		return (int) Math.min(Integer.MAX_VALUE, bytes / BYTES_PER_NODE);
+	}
+
+
+	@Override
+	public List<Point> findPath() {
+		if (start == null || goal == null) {
+			return null;
+		}
+		if (!isReachable()) {
+			return null;	// walled off, known without searching
+		}
+
+		grid = level.grid();
+		int s = grid.cellOf(start);
+		int t = grid.cellOf(goal);
+		if (s < 0 || t < 0 || !grid.isFree(s) || !grid.isFree(t)) return null;
+
+		listener.phase("prepare");
+		h = estimatorFor(goal);
+		reset();
+		int root = allocate(s, 0, estimate(s), -1, -1);
+		open.insert(root, openKey(root));
+		listener.generated(1);
+
+		listener.phase("search");
+		int stride = grid.stride();
+		while (!open.isEmpty()) {
+			int n = open.peek();
+			if (fval[n] == INF) break;		// nothing left fits in memory
+			if (shouldStop()) return null;	// cancelled or out of time
+
+			if (cell[n] == t) {
+				listener.phase("path");
+				path = pathTo(n);
+				recordPath();
+				return path;
+			}
+
+			if (next[n] == DX.length) {
+				// all seen before, some forgotten since: go through them again
+				next[n] = 0;
+				forgotten[n] = INF;
+			}
+			if (next[n] == 0) {
+				expanded++;
+				listener.expanded(grid.cellX(cell[n]) * stride, grid.cellY(cell[n]) * stride);
+				listener.frontierSize(open.size(), (int) Math.min(Integer.MAX_VALUE, expanded));
+			}
+			generateOne(n, t);
+			if (next[n] == DX.length) {
+				backUp(n);
+				if (forgotten[n] == INF) open.remove(n);
+			}
+		}
+		return null; // if null returned, no path is found within the cap
+	}
+
+
+	/*
+	 * Adds the next successor of n not held yet, if there is one, evicting a leaf first if
+	 * the pool is full.
+	 */
+	private void generateOne(int n, int t) {
+		int cx = grid.cellX(cell[n]);
+		int cy = grid.cellY(cell[n]);
+		int p = parent[n];
+		while (next[n] < DX.length) {
+			int a = next[n]++;
+			int nx = cx + DX[a];
+			int ny = cy + DY[a];
+			listener.validityChecked(1);
+			if (!grid.isFree(nx, ny)) continue;
+			int c = grid.index(nx, ny);
+			if (p >= 0 && c == cell[p]) continue;		// straight back
+			if (child[n * DX.length + a] >= 0) continue;	// still held
+			int g = gval[n] + 1;
+			int seen = table.get(c);
+			if (seen != TranspositionTable.MISSING && gval[seen] <= g) continue;
+
+			// depth equals g with unit moves; a node the pool can't extend is a dead end
+			int f = c == t ? g : g >= maxNodes - 1 ? INF : Math.max(fval[n], g + estimate(c));
+			if (f == INF) capped = true;
+
+			if (freeCount == 0) {
+				if (leaves.contains(n)) leaves.remove(n);		// about to get a child
+				evict();
+			}
+			int k = allocate(c, g, f, n, a);
+			if (leaves.contains(n)) leaves.remove(n);	// the eviction may have made it one
+			leaves.insertOrUpdate(k, leafKey(k));
+			open.insert(k, openKey(k));
+			listener.generated(1);
+			return;
+		}
+	}
+
+
+	/*
+	 * Once n has seen all its successors, its f becomes the best f of its children and its
+	 * forgotten children, and the change is passed up.
+	 */
+	private void backUp(int n) {
+		while (n >= 0 && next[n] == DX.length) {
+			int best = forgotten[n];
+			for (int a = 0; a < DX.length; a++) {
+				int k = child[n * DX.length + a];
+				if (k >= 0) best = Math.min(best, fval[k]);
+			}
+			if (best <= fval[n]) return;
+			fval[n] = best;
+			if (open.contains(n)) open.update(n, openKey(n));
+			if (leaves.contains(n)) leaves.update(n, leafKey(n));
+			n = parent[n];
+		}
+	}
+
+
+	/*
+	 * Drops the shallowest leaf with the highest f; its parent remembers its f.
+	 */
+	private void evict() {
+		int l = leaves.poll();
+		int p = parent[l];
+		child[p * DX.length + action[l]] = -1;
+		forgotten[p] = Math.min(forgotten[p], fval[l]);
+		if (open.contains(l)) open.remove(l);
+		if (table.get(cell[l]) == l) table.remove(cell[l]);
+		free[freeCount++] = l;
+		evictions++;
+
+		if (parent[p] >= 0 && !hasChildren(p)) leaves.insert(p, leafKey(p));
+		open.insertOrUpdate(p, openKey(p));
+	}
+
+
+	private int allocate(int c, int g, int f, int p, int a) {
+		int k = free[--freeCount];
+		cell[k] = c;
+		gval[k] = g;
+		fval[k] = f;
+		parent[k] = p;
+		action[k] = (byte) a;
+		next[k] = 0;
+		forgotten[k] = INF;
+		Arrays.fill(child, k * DX.length, (k + 1) * DX.length, -1);
+		if (p >= 0) child[p * DX.length + a] = k;
+		int seen = table.get(c);
+		if (seen == TranspositionTable.MISSING || gval[seen] > g) table.put(c, k, g);
+		peakNodes = Math.max(peakNodes, maxNodes - freeCount);
+		return k;
+	}
+
+
+	private boolean hasChildren(int n) {
+		for (int a = 0; a < DX.length; a++)
+			if (child[n * DX.length + a] >= 0) return true;
+		return false;
+	}
+
+
+	private void reset() {
+		for (int i = 0; i < maxNodes; i++)
+			free[i] = maxNodes - 1 - i;
+		freeCount = maxNodes;
+		open.clear();
+		leaves.clear();
+		table.clear();
+		peakNodes = 0;
+		expanded = 0;
+		evictions = 0;
+		capped = false;
+	}
+
+
+	/*
+	 * Best f first, ties to the deeper node.
+	 */
+	private long openKey(int n) {
+		return ((long) fval[n] << 32) | (INF - gval[n]);
+	}
+
+
+	/*
+	 * Highest f first, ties to the shallower node.
+	 */
+	private long leafKey(int n) {
+		return ((long) (INF - fval[n]) << 32) | gval[n];
+	}
+
+
+	private int estimate(int c) {
+		int stride = grid.stride();
+		return (int) (h.h(grid.cellX(c) * stride, grid.cellY(c) * stride) / stride);
+	}
+
+
+	private List<Point> pathTo(int n) {
+		List<Point> pth = new ArrayList<>();
+		for (int k = n; k >= 0; k = parent[k])
+			pth.add(grid.pointOf(cell[k]));
+		Collections.reverse(pth);
+		return pth;
+	}
+
+
+	private void recordPath() {
+		int node = tree.addRoot(path.get(0).x, path.get(0).y);
+		for (int i = 1; i < path.size(); i++) {
+			Point p = path.get(i);
+			Point q = path.get(i - 1);
+			byte act = SearchTree.NO_ACTION;
+			for (int a = 0; a < DX.length; a++)
+				if (q.x + DX[a] * grid.stride() == p.x && q.y + DY[a] * grid.stride() == p.y) act = (byte) a;
+			node = tree.add(node, p.x, p.y, act);
+		}
+	}
+
+
+	/**
+	 * @return the node cap
+	 */
+	public int getMaxNodes() {
+		return maxNodes;
+	}
+
+	/**
+	 * @return the most nodes the last search held at once
+	 */
+	public int getPeakNodes() {
+		return peakNodes;
+	}
+
+	/**
+	 * @return the number of nodes the last search evicted to stay under the cap
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return true if the last search met branches too long for the cap, in which case a
+	 * missing path may exist after all
+	 */
+	public boolean wasCapped() {
+		return capped;
+	}
+
+	/**
+	 * @return the cells the last search expanded, counting each regeneration
+	 */
+	public long getExpanded() {
+		return expanded;
+	}
+
+
+	public String toString() {
+		return estimator == null ? "SMA* Agent" : "SMA* Agent (" + estimator + ")";
+	}
+}
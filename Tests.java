@@ -2,10 +2,68 @@ package path.test;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Ellipse2D;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
-import org.junit.Test;
-//import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Test;
+
+import path.agent.Action;
+import path.agent.AnytimeAstarAgent;
+import path.agent.AstarAgent;
+import path.agent.BatchPlanner;
+import path.agent.BidirectionalAstarAgent;
+import path.agent.BidirectionalBreadthFirstAgent;
+import path.agent.BreadthFirstAgent;
+import path.agent.CachingAgent;
+import path.agent.ClusterGraph;
+import path.agent.CooperativePlanner;
+import path.agent.DStarLiteAgent;
+import path.agent.FlowField;
+import path.agent.FlowFieldAgent;
+import path.agent.FlowFieldCache;
+import path.agent.GridAstar;
+import path.agent.IdaStarAgent;
+import path.agent.HierarchicalAgent;
+import path.agent.IndexedAstarAgent;
+import path.agent.JumpPointAgent;
+import path.agent.LineOfSight;
+import path.agent.NavMesh;
+import path.agent.NavMeshAgent;
+import path.agent.Node;
+import path.agent.OpenList;
+import path.agent.PathAgent;
+import path.agent.PathCache;
+import path.agent.PlanRequest;
+import path.agent.PlanResult;
+import path.agent.SearchMetrics;
+import path.agent.SearchTree;
+import path.agent.SearchWorkspace;
+import path.agent.SliceScheduler;
+import path.agent.SmaStarAgent;
+import path.agent.SlicedSearch;
+import path.agent.ThetaStarAgent;
+import path.agent.TranspositionTable;
+import path.agent.VisibilityGraphAgent;
+import path.agent.WorkspacePool;
+import path.agent.heuristic.LandmarkHeuristic;
+import path.level.ComponentIndex;
+import path.level.Level;
+import path.level.LevelBuilder;
+import path.level.MappedOccupancy;
+import path.level.OccupancyGrid;
 
 class Tests {
 
@@ -24,7 +82,1268 @@ class Tests {
 	
 	@Test
 	void test_PriorityQueue_with_TreeNode() {
-		fail("not implemented yet");
+
+		PriorityQueue<Node> queue = new PriorityQueue<>();
+		double[] fvals = { 30.0, 10.0, 50.0, 20.0, 40.0 };
+		for (double f : fvals) {
+			Node n = new Node(new Point((int) f, 0), null, null);
+			n.setFval(f);
+			queue.add(n);
+		}
+
+		double last = Double.NEGATIVE_INFINITY;
+		while (!queue.isEmpty()) {
+			double f = queue.poll().getFval();
+			assertTrue(f >= last);
+			last = f;
+		}
+	}
+
+	@Test
+	void test_OccupancyGrid_agrees_with_shapes() {
+
+		Rectangle box = new Rectangle(200,80,100,50);
+		Ellipse2D blob = new Ellipse2D.Double(500,300,120,90);
+		Level lvl = Level.builder().size(800,600).addZone(box).addZone(blob).build();
+
+		for (int x = -10; x <= 810; x += 5) {
+			for (int y = -10; y <= 610; y += 5) {
+				Point p = new Point(x,y);
+				boolean expected = new Rectangle(800,600).contains(p) && !box.contains(p) && !blob.contains(p);
+				assertEquals(expected, lvl.isValid(p), p.toString());
+			}
+		}
+	}
+
+	@Test
+	void test_IndexedAstar_finds_shortest_path() {
+
+		Level lvl = twoWalls();
+
+		PathAgent bfs = new BreadthFirstAgent(lvl);
+		PathAgent astar = new IndexedAstarAgent(lvl);
+		for (PathAgent agent : new PathAgent[] { bfs, astar }) {
+			agent.setStart(new Point(20,20));
+			agent.setGoal(new Point(350,20));
+		}
+
+		List<Point> expected = bfs.findPath();
+		List<Point> actual = astar.findPath();
+
+		assertNotNull(actual);
+		assertEquals(expected.size(), actual.size());
+		assertEquals(new Point(350,20), actual.get(actual.size()-1));
+	}
+
+	@Test
+	void test_Landmark_heuristic_is_admissible() {
+
+		Level lvl = twoWalls();
+		LandmarkHeuristic alt = new LandmarkHeuristic(lvl, 4);
+		Point goal = new Point(350,20);
+		alt.initialize(goal);
+
+		PathAgent bfs = new BreadthFirstAgent(lvl);
+		for (Point start : new Point[] { new Point(20,20), new Point(150,280), new Point(380,290) }) {
+			bfs.clearPath();
+			bfs.setStart(start);
+			bfs.setGoal(goal);
+			double exact = (bfs.findPath().size() - 1) * 10.0;
+			assertTrue(alt.h(start) <= exact, start.toString());
+		}
+
+		// the walls hide a long detour from the Manhattan distance but not from the landmarks
+		assertTrue(alt.h(new Point(20,20)) > 330);
+	}
+
+	@Test
+	void test_Anytime_agent_improves_to_optimal() {
+
+		Level lvl = twoWalls();
+		PathAgent bfs = new BreadthFirstAgent(lvl);
+		AnytimeAstarAgent weighted = new AnytimeAstarAgent(lvl, 3.0, 0.0);
+		AnytimeAstarAgent anytime = new AnytimeAstarAgent(lvl);
+		for (PathAgent agent : new PathAgent[] { bfs, weighted, anytime }) {
+			agent.setStart(new Point(20,280));
+			agent.setGoal(new Point(380,20));
+			agent.findPath();
+		}
+
+		int optimal = bfs.getPath().size() - 1;
+		assertTrue(weighted.getPath().size() - 1 <= weighted.getBound() * optimal);
+		assertTrue(weighted.getBound() <= 3.0);
+		assertEquals(optimal, anytime.getPath().size() - 1);
+		assertEquals(1.0, anytime.getBound());
+		assertFalse(anytime.wasAborted());
+	}
+
+	@Test
+	void test_ThetaStar_path_is_short_and_clear() {
+
+		Level lvl = twoWalls();
+
+		PathAgent grid = new IndexedAstarAgent(lvl);
+		for (PathAgent agent : new PathAgent[] { grid, new ThetaStarAgent(lvl), new ThetaStarAgent(lvl, true) }) {
+			agent.setStart(new Point(20,20));
+			agent.setGoal(new Point(350,20));
+			List<Point> path = agent.findPath();
+			assertNotNull(path, agent.toString());
+			if (agent == grid) continue;
+
+			double length = 0;
+			for (int i = 1; i < path.size(); i++) {
+				Point a = path.get(i-1);
+				Point b = path.get(i);
+				length += a.distance(b);
+				assertTrue(LineOfSight.clear(lvl.grid(), lvl.grid().cellOf(a), lvl.grid().cellOf(b)));
+			}
+			assertTrue(path.size() < 8, agent.toString());
+			assertTrue(length < (grid.getPath().size() - 1) * 10.0, agent.toString());
+		}
+		assertFalse(LineOfSight.clear(lvl.grid(), 5, 5, 15, 5));		// through the first wall
+	}
+
+	@Test
+	void test_Cooperative_units_never_collide() {
+
+		// two rows of units trade places through a gap in a wall
+		Level lvl = Level.builder().size(200,200)
+				.addZone(new Rectangle(0,95,80,10))
+				.addZone(new Rectangle(120,95,80,10))
+				.build();
+		List<PlanRequest> units = new ArrayList<>();
+		for (int x = 40; x <= 160; x += 20) {
+			units.add(new PlanRequest(new Point(x,20), new Point(x,180)));
+			units.add(new PlanRequest(new Point(x,180), new Point(x,20)));
+		}
+
+		CooperativePlanner planner = new CooperativePlanner(lvl);
+		lvl.addObstacle(new Rectangle(80,95,40,10));		// the planner and its landmarks keep the gap
+		List<PlanResult> results = planner.plan(units);
+
+		int steps = 0;
+		for (PlanResult r : results) {
+			assertTrue(r.isFound(), r.toString());
+			steps = Math.max(steps, r.getPath().size());
+		}
+		for (int t = 0; t + 1 < steps; t++) {
+			Set<Point> now = new HashSet<>();
+			for (PlanResult r : results) {
+				Point here = at(r.getPath(), t);
+				Point next = at(r.getPath(), t + 1);
+				assertTrue(now.add(here), "two units at " + here);
+				assertTrue(Math.abs(here.x - next.x) + Math.abs(here.y - next.y) <= 10);
+				for (PlanResult o : results)
+					assertFalse(o != r && !here.equals(next) && at(o.getPath(), t).equals(next) && at(o.getPath(), t + 1).equals(here));
+			}
+		}
+	}
+
+	@Test
+	void test_Sliced_search_matches_whole_search() {
+
+		Level lvl = twoWalls();
+		PathAgent whole = new IndexedAstarAgent(lvl);
+		whole.setStart(new Point(20,280));
+		whole.setGoal(new Point(380,20));
+		whole.findPath();
+
+		SlicedSearch sliced = new SlicedSearch(lvl, new Point(20,280), new Point(380,20));
+		while (sliced.step(10) == SlicedSearch.Status.IN_PROGRESS)
+			assertNull(sliced.getPath());
+		assertEquals(SlicedSearch.Status.FOUND, sliced.getStatus());
+		assertEquals(whole.getPath(), sliced.getPath());
+		assertTrue(sliced.getSlices() > 1);
+
+		// a scheduler with a tiny quantum finishes them all, including one that can't succeed
+		SliceScheduler scheduler = new SliceScheduler(4);
+		List<SlicedSearch> done = new ArrayList<>();
+		for (int y = 20; y < 300; y += 40)
+			scheduler.submit(new SlicedSearch(lvl, new Point(20,y), new Point(380,300 - y)), done::add);
+		scheduler.submit(new SlicedSearch(lvl, new Point(20,20), new Point(110,20)), done::add);
+		for (int frame = 0; frame < 10000 && scheduler.pending() > 0; frame++)
+			scheduler.runFrame(0);
+		assertEquals(0, scheduler.pending());
+		assertEquals(8, done.size());
+		for (SlicedSearch s : done)
+			assertEquals(s.getGoal().x == 110 ? SlicedSearch.Status.FAILED : SlicedSearch.Status.FOUND, s.getStatus(), s.toString());
+	}
+
+	@Test
+	void test_Memory_bounded_agents_stay_under_cap() {
+
+		Level lvl = twoWalls();
+		PathAgent bfs = new BreadthFirstAgent(lvl);
+		IdaStarAgent ida = new IdaStarAgent(lvl, 256);
+		SmaStarAgent sma = new SmaStarAgent(lvl, 256);
+		for (PathAgent agent : new PathAgent[] { bfs, ida, sma }) {
+			agent.setStart(new Point(20,280));
+			agent.setGoal(new Point(380,20));
+			assertNotNull(agent.findPath(), agent.toString());
+		}
+
+		assertEquals(bfs.getPath().size(), ida.getPath().size());
+		assertEquals(bfs.getPath().size(), sma.getPath().size());
+		assertTrue(ida.getPeakNodes() <= 256);
+		assertTrue(sma.getPeakNodes() <= 256);
+		assertTrue(sma.getEvictions() > 0);
+	}
+
+	@Test
+	void test_Mapped_level_agrees_with_shapes() throws IOException {
+
+		Level lvl = wall().addZone(new Ellipse2D.Double(200,100,90,120)).build();
+		Path file = Files.createTempFile("level", ".occ");
+		try {
+			MappedOccupancy.write(file, lvl.grid(), 16);
+			try (MappedOccupancy occ = MappedOccupancy.open(file)) {
+				OccupancyGrid grid = lvl.grid();
+				assertEquals(grid.cols(), occ.cols());
+				assertEquals(grid.rows(), occ.rows());
+				for (int cy = -1; cy <= grid.rows(); cy++)
+					for (int cx = -1; cx <= grid.cols(); cx++)
+						assertEquals(grid.isFree(cx, cy), occ.isFree(cx, cy), cx + "," + cy);
+
+				Level mapped = new Level(occ);
+				PathAgent shapes = new AstarAgent(lvl);
+				PathAgent tiles = new AstarAgent(mapped);
+				for (PathAgent agent : new PathAgent[] { shapes, tiles }) {
+					agent.setStart(new Point(20,280));
+					agent.setGoal(new Point(380,20));
+					assertNotNull(agent.findPath(), agent.toString());
+				}
+				assertEquals(shapes.getPath().size(), tiles.getPath().size());
+				assertNull(mapped.components());		// the tiles agent left the file off the heap
+				assertEquals(grid.freeCells(), mapped.grid().freeCells());
+				assertEquals(lvl.components().count(), mapped.components().count());
+				assertThrows(UnsupportedOperationException.class, () -> mapped.addObstacle(new Rectangle(0,0,10,10)));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void test_Every_agent_rejects_a_walled_off_goal_without_searching() {
+
+		Level lvl = Level.builder().size(1000,1000)
+				.addZone(new Rectangle(800,800,200,20))
+				.addZone(new Rectangle(800,800,20,200))
+				.build();
+		PathAgent[] agents = {
+				new BreadthFirstAgent(lvl), new AstarAgent(lvl), new IndexedAstarAgent(lvl),
+				new IdaStarAgent(lvl), new SmaStarAgent(lvl), new JumpPointAgent(lvl), new ThetaStarAgent(lvl),
+				new AnytimeAstarAgent(lvl), new BidirectionalAstarAgent(lvl), new BidirectionalBreadthFirstAgent(lvl),
+				new HierarchicalAgent(lvl), new FlowFieldAgent(lvl), new DStarLiteAgent(lvl), new NavMeshAgent(lvl) };
+		for (PathAgent agent : agents) {
+			SearchMetrics metrics = new SearchMetrics();
+			agent.setSearchListener(metrics);
+			agent.setStart(new Point(20,20));
+			agent.setGoal(new Point(900,900));
+			assertNull(agent.plan(), agent.toString());
+			assertFalse(agent.wasAborted(), agent.toString());
+			assertEquals(0, metrics.getExpanded(), agent.toString());
+		}
+	}
+
+	@Test
+	void test_Component_index_rejects_walled_off_goals() {
+
+		Level lvl = Level.builder().size(400,300)
+				.addZone(new Rectangle(200,0,20,140))
+				.build();
+		ComponentIndex comps = lvl.components();
+		Point start = new Point(20,280);
+		Point goal = new Point(380,20);
+		assertEquals(1, comps.count());
+		assertTrue(comps.reachable(start, goal));
+
+		lvl.addObstacle(new Rectangle(200,140,20,160));		// wall the right half off
+		assertEquals(2, comps.count());
+		assertFalse(comps.reachable(start, goal));
+		PathAgent bfs = new BreadthFirstAgent(lvl);
+		bfs.setStart(start);
+		bfs.setGoal(goal);
+		assertNull(bfs.findPath());
+
+		Point snapped = comps.nearestReachable(start, goal);
+		assertEquals(comps.componentOf(start), comps.componentOf(snapped));
+		assertTrue(snapped.x < 200);
+
+		lvl.removeObstacle(lvl.obstacles().get(lvl.obstacles().size() - 1));
+		assertEquals(1, comps.count());
+		assertTrue(comps.reachable(start, goal));
+	}
+
+	@Test
+	void test_Visibility_graph_path_is_short_and_clear() {
+
+		Level lvl = wall().addZone(new Rectangle(200,50,60,250)).build();
+		VisibilityGraphAgent vg = new VisibilityGraphAgent(lvl);
+		ThetaStarAgent theta = new ThetaStarAgent(lvl);
+		for (PathAgent agent : new PathAgent[] { vg, theta }) {
+			agent.setStart(new Point(20,280));
+			agent.setGoal(new Point(380,20));
+			assertNotNull(agent.findPath(), agent.toString());
+		}
+		OccupancyGrid grid = lvl.grid();
+		List<Point> path = vg.getPath();
+		for (int i = 1; i < path.size(); i++)
+			assertTrue(LineOfSight.clear(grid, grid.cellOf(path.get(i - 1)), grid.cellOf(path.get(i))));
+		assertTrue(length(path) <= length(theta.getPath()) + 0.5 * grid.stride());	// see VisibilityGraph
+		assertEquals(4, path.size());		// bends round the two walls only
+
+		double before = length(path);
+		lvl.addObstacle(new Rectangle(300,0,20,200));		// a third wall across the way
+		vg.clearPath();
+		assertNotNull(vg.findPath());
+		assertTrue(length(vg.getPath()) > before);
+		for (int i = 1; i < vg.getPath().size(); i++)
+			assertTrue(LineOfSight.clear(grid, grid.cellOf(vg.getPath().get(i - 1)), grid.cellOf(vg.getPath().get(i))));
+	}
+
+	@Test
+	void test_Visibility_graph_paths_are_within_half_a_cell_of_Theta_star() {
+
+		for (long seed = 1; seed <= 10; seed++) {
+			Level lvl = randomLevel(seed, 300, 240, 20);
+			OccupancyGrid grid = lvl.grid();
+			Random rnd = new Random(seed);
+			VisibilityGraphAgent vg = new VisibilityGraphAgent(lvl);
+			ThetaStarAgent theta = new ThetaStarAgent(lvl);
+			for (int q = 0; q < 30; q++) {
+				Point s = grid.pointOf(randomFreeCell(grid, rnd));
+				Point t = grid.pointOf(randomFreeCell(grid, rnd));
+				for (PathAgent agent : new PathAgent[] { vg, theta }) {
+					agent.clearPath();
+					agent.setStart(s);
+					agent.setGoal(t);
+					agent.findPath();
+				}
+				String where = "seed " + seed + " query " + q;
+				assertEquals(theta.getPath() == null, vg.getPath() == null, where);
+				if (vg.getPath() == null) continue;
+				List<Point> path = vg.getPath();
+				for (int i = 1; i < path.size(); i++)
+					assertTrue(LineOfSight.clear(grid, grid.cellOf(path.get(i - 1)), grid.cellOf(path.get(i))), where);
+				// only bends beside blocked top left corners lose, a quarter of a cell at worst
+				assertTrue(length(path) <= length(theta.getPath()) + 0.5 * grid.stride(), where);
+			}
+		}
+	}
+
+	@Test
+	void test_NavMesh_path_is_clear_and_survives_a_file() throws IOException {
+
+		Level lvl = wall().addZone(new Ellipse2D.Double(200,100,90,120)).build();
+		NavMeshAgent nav = new NavMeshAgent(lvl);
+		Path file = Files.createTempFile("level", ".nav");
+		try {
+			nav.getMesh().save(file);
+			NavMesh loaded = NavMesh.load(file, lvl);
+			assertEquals(nav.getMesh().regionCount(), loaded.regionCount());
+			assertEquals(nav.getMesh().portalCount(), loaded.portalCount());
+			nav.setMesh(loaded);
+
+			Level other = Level.builder().size(400,300).build();
+			assertThrows(IOException.class, () -> NavMesh.load(file, other));
+		} finally {
+			Files.delete(file);
+		}
+
+		nav.setStart(new Point(20,280));
+		nav.setGoal(new Point(380,20));
+		List<Point> path = nav.findPath();
+		assertNotNull(path);
+		assertEquals(new Point(20,280), path.get(0));
+		assertEquals(new Point(380,20), path.get(path.size() - 1));
+		OccupancyGrid grid = lvl.grid();
+		for (int i = 1; i < path.size(); i++)
+			assertTrue(LineOfSight.clear(grid, grid.cellOf(path.get(i - 1)), grid.cellOf(path.get(i))));
+		assertTrue(nav.getSearchTree().size() < grid.freeCells() / 10);
+	}
+
+	@Test
+	void test_NavMesh_paths_stay_close_to_any_angle_paths() {
+
+		// a thin region between the start and the goal used to send the path around it
+		Level lvl = randomLevel(100, 300, 300, 20);
+		NavMeshAgent nav = new NavMeshAgent(lvl);
+		nav.setStart(new Point(70,150));
+		nav.setGoal(new Point(90,150));
+		assertEquals(List.of(new Point(70,150), new Point(90,150)), nav.findPath());
+
+		for (long seed = 1; seed <= 20; seed++) {
+			lvl = randomLevel(seed, 300, 300, 10 + (int) seed);
+			OccupancyGrid grid = lvl.grid();
+			Random rnd = new Random(seed);
+			nav = new NavMeshAgent(lvl);
+			ThetaStarAgent theta = new ThetaStarAgent(lvl);
+			for (int q = 0; q < 20; q++) {
+				Point s = grid.pointOf(randomFreeCell(grid, rnd));
+				Point t = grid.pointOf(randomFreeCell(grid, rnd));
+				nav.setStart(s);
+				nav.setGoal(t);
+				theta.setStart(s);
+				theta.setGoal(t);
+				List<Point> path = nav.findPath();
+				List<Point> taut = theta.findPath();
+				assertEquals(taut == null, path == null, s + " -> " + t);
+				if (path == null) continue;
+				for (int i = 1; i < path.size(); i++)
+					assertTrue(LineOfSight.clear(grid, grid.cellOf(path.get(i - 1)), grid.cellOf(path.get(i))), s + " -> " + t);
+				assertTrue(length(path) <= 1.5 * length(taut) + 1e-9, s + " -> " + t + ": " + path);
+			}
+		}
+	}
+
+	@Test
+	void test_Open_lists_poll_by_f_then_larger_g() {
+
+		for (OpenList.Kind kind : OpenList.Kind.values()) {
+			OpenList open = kind.create();
+			PriorityQueue<int[]> expected = new PriorityQueue<>((a, b) -> a[0] != b[0] ? a[0] - b[0] : b[1] - a[1]);
+			int[] fOf = new int[20000];
+			int[] gOf = new int[20000];
+			Random rnd = new Random(3);
+			int items = 0;
+			int f = 40;
+			int g = 0;
+			for (int round = 0; round < 3; round++) {
+				// searches the way A* does, children at the same f or a little above
+				while (items < (round + 1) * 6000) {
+					for (int c = rnd.nextInt(4); c >= 0; c--) {
+						int step = rnd.nextInt(3);
+						if (!kind.needsMonotoneKeys() && rnd.nextInt(5) == 0) step = -step;	// as greedy keys do
+						fOf[items] = Math.max(f + step, 0);
+						gOf[items] = g + 1 + rnd.nextInt(2);
+						open.add(items, fOf[items], gOf[items]);
+						expected.add(new int[] { fOf[items], gOf[items] });
+						items++;
+					}
+					int item = open.poll();
+					int[] key = expected.poll();
+					assertEquals(key[0], fOf[item], kind.toString());
+					assertEquals(key[1], gOf[item], kind.toString());
+					f = fOf[item];
+					g = gOf[item];
+				}
+				assertEquals(expected.size(), open.size());
+				while (!open.isEmpty()) {
+					int item = open.poll();
+					int[] key = expected.poll();
+					assertEquals(key[0], fOf[item], kind.toString());
+					assertEquals(key[1], gOf[item], kind.toString());
+				}
+				open.clear();
+				items = 0;
+				f = 40;
+				g = 0;
+			}
+		}
+
+		Level lvl = wall().addZone(new Ellipse2D.Double(200,100,90,120)).build();
+		IndexedAstarAgent reference = new IndexedAstarAgent(lvl);
+		reference.setStart(new Point(20,280));
+		reference.setGoal(new Point(380,20));
+		int shortest = reference.findPath().size();
+		for (OpenList.Kind kind : OpenList.Kind.values()) {
+			AstarAgent astar = new AstarAgent(lvl);
+			astar.setOpenListKind(kind);
+			astar.setStart(new Point(20,280));
+			astar.setGoal(new Point(380,20));
+			assertEquals(shortest, astar.findPath().size(), kind.toString());
+		}
+	}
+
+	@Test
+	void test_Workspace_pool_keeps_one_workspace_per_thread() throws InterruptedException {
+
+		Level lvl = wall().build();
+		OccupancyGrid grid = lvl.grid();
+		WorkspacePool pool = new WorkspacePool();
+		SearchWorkspace ws = pool.get(lvl);
+		assertSame(ws, pool.get(lvl));
+		assertEquals(0, ws.capacity());		// sized by the first search
+
+		int s = grid.cellOf(new Point(20,280));
+		int t = grid.cellOf(new Point(380,20));
+		ws.prepare(grid);
+		assertTrue(GridAstar.search(grid, s, t, ws));
+		List<Point> first = ws.pathTo(grid, t);
+		assertEquals(SearchWorkspace.CLOSED, ws.status(s));
+		ws.prepare(grid);		// a new generation: every cell unseen again
+		for (int c = 0; c < grid.size(); c++)
+			assertEquals(SearchWorkspace.UNSEEN, ws.status(c));
+		assertTrue(GridAstar.search(grid, s, t, ws));
+		assertEquals(first, ws.pathTo(grid, t));
+
+		SearchWorkspace[] other = new SearchWorkspace[1];
+		Thread thread = new Thread(() -> other[0] = pool.get(lvl));
+		thread.start();
+		thread.join();
+		assertNotSame(ws, other[0]);
+		assertEquals(2, pool.workspaces(lvl));
+
+		pool.release(lvl);
+		assertEquals(0, ws.capacity());
+		assertEquals(0, pool.workspaces(lvl));
+		assertNotSame(ws, pool.get(lvl));
+	}
+
+	@Test
+	void test_Agents_keep_their_arrays_in_the_level_workspaces() {
+
+		Level lvl = randomLevel(4, 300, 240, 25);
+		Random rnd = new Random(4);
+		OccupancyGrid grid = lvl.grid();
+		Point start = grid.pointOf(randomFreeCell(grid, rnd));
+		Point goal = grid.pointOf(randomFreeCell(grid, rnd));
+		PathAgent[] agents = {
+				new JumpPointAgent(lvl, true), new ThetaStarAgent(lvl), new ThetaStarAgent(lvl, true),
+				new AnytimeAstarAgent(lvl), new BidirectionalAstarAgent(lvl), new BidirectionalAstarAgent(lvl, true),
+				new BidirectionalBreadthFirstAgent(lvl) };
+		WorkspacePool pool = WorkspacePool.shared();
+		List<Integer> sizes = new ArrayList<>();
+		for (PathAgent agent : agents) {
+			agent.setStart(start);
+			agent.setGoal(goal);
+			sizes.add(agent.plan().size());
+		}
+		assertTrue(pool.workspaces(lvl) > 0);
+
+		for (int round = 0; round < 2; round++) {		// the same answers after the level is released
+			pool.release(lvl);
+			assertEquals(0, pool.workspaces(lvl));
+			for (int i = 0; i < agents.length; i++) {
+				agents[i].clearPath();
+				assertEquals(sizes.get(i).intValue(), agents[i].plan().size(), agents[i].toString());
+				assertEquals(sizes.get(i).intValue(), agents[i].plan().size(), agents[i].toString());
+			}
+		}
+		pool.release(lvl);
+	}
+
+	@Test
+	void test_Jump_point_paths_cost_the_same_as_a_full_search() {
+
+		for (long seed = 1; seed <= 6; seed++) {
+			Level lvl = randomLevel(seed, 300, 240, 25);
+			OccupancyGrid grid = lvl.grid();
+			Random rnd = new Random(seed);
+			JumpPointAgent jps4 = new JumpPointAgent(lvl);
+			JumpPointAgent jps8 = new JumpPointAgent(lvl, true);
+			for (int q = 0; q < 10; q++) {
+				int s = randomFreeCell(grid, rnd);
+				int t = randomFreeCell(grid, rnd);
+				String where = "seed " + seed + ", " + grid.pointOf(s) + " -> " + grid.pointOf(t);
+
+				jps4.clearPath();
+				jps4.setStart(grid.pointOf(s));
+				jps4.setGoal(grid.pointOf(t));
+				List<Point> four = jps4.findPath();
+				int steps = bfsSteps(grid, s, t);
+				if (steps < 0) {
+					assertNull(four, where);
+				} else {
+					assertNotNull(four, where);
+					assertEquals(steps, stepCost(grid, four, false), 1e-9, where);
+				}
+
+				jps8.clearPath();
+				jps8.setStart(grid.pointOf(s));
+				jps8.setGoal(grid.pointOf(t));
+				List<Point> eight = jps8.findPath();
+				double best = dijkstra8(grid, s, t);
+				if (best < 0) {
+					assertNull(eight, where);
+				} else {
+					assertNotNull(eight, where);
+					assertEquals(best, stepCost(grid, eight, true), 1e-9, where);
+				}
+			}
+		}
+	}
+
+	@Test
+	void test_Bidirectional_agents_find_shortest_paths_in_both_modes() {
+
+		for (long seed = 1; seed <= 5; seed++) {
+			Level lvl = randomLevel(seed, 300, 240, 30);
+			OccupancyGrid grid = lvl.grid();
+			PathAgent[] agents = {
+					new BidirectionalBreadthFirstAgent(lvl), new BidirectionalBreadthFirstAgent(lvl, true),
+					new BidirectionalAstarAgent(lvl), new BidirectionalAstarAgent(lvl, true) };
+			Random rnd = new Random(seed);
+			for (int q = 0; q < 12; q++) {
+				int s = randomFreeCell(grid, rnd);
+				int t = randomFreeCell(grid, rnd);
+				int steps = bfsSteps(grid, s, t);
+				for (PathAgent agent : agents) {
+					String where = agent + ", seed " + seed + ", " + grid.pointOf(s) + " -> " + grid.pointOf(t);
+					agent.clearPath();
+					agent.setStart(grid.pointOf(s));
+					agent.setGoal(grid.pointOf(t));
+					List<Point> path = agent.findPath();
+					if (steps < 0) {
+						assertNull(path, where);
+					} else {
+						assertNotNull(path, where);
+						assertEquals(grid.pointOf(s), path.get(0), where);
+						assertEquals(grid.pointOf(t), path.get(path.size() - 1), where);
+						assertEquals(steps, stepCost(grid, path, false), 1e-9, where);
+					}
+				}
+			}
+		}
+
+		// a goal walled in on every side
+		Level lvl = Level.builder().size(300,200)
+				.addZone(new Rectangle(200,50,60,10)).addZone(new Rectangle(200,100,60,10))
+				.addZone(new Rectangle(200,60,10,40)).addZone(new Rectangle(250,60,10,40))
+				.build();
+		for (PathAgent agent : new PathAgent[] { new BidirectionalBreadthFirstAgent(lvl, true), new BidirectionalAstarAgent(lvl, true),
+				new BidirectionalBreadthFirstAgent(lvl), new BidirectionalAstarAgent(lvl) }) {
+			agent.setStart(new Point(20,20));
+			agent.setGoal(new Point(230,80));
+			assertNull(agent.findPath(), agent.toString());
+		}
+	}
+
+	@Test
+	void test_Hierarchical_paths_are_near_shortest_and_follow_changes() {
+
+		int queries = 0;
+		int excess = 0;
+		int shortest = 0;
+		for (long seed = 1; seed <= 8; seed++) {
+			Level lvl = randomLevel(seed, 400, 320, 60);
+			OccupancyGrid grid = lvl.grid();
+			HierarchicalAgent hpa = new HierarchicalAgent(lvl);
+			assertTrue(hpa.getGraph().nodeCount() > 0);
+			Random rnd = new Random(seed);
+			for (int q = 0; q < 20; q++) {
+				int s = randomFreeCell(grid, rnd);
+				int t = randomFreeCell(grid, rnd);
+				String where = "seed " + seed + ", " + grid.pointOf(s) + " -> " + grid.pointOf(t);
+				hpa.clearPath();
+				hpa.setStart(grid.pointOf(s));
+				hpa.setGoal(grid.pointOf(t));
+				List<Point> path = hpa.findPath();
+				int steps = bfsSteps(grid, s, t);
+				if (steps < 0) {
+					assertNull(path, where);
+					continue;
+				}
+				assertNotNull(path, where);
+				assertEquals(grid.pointOf(s), path.get(0), where);
+				assertEquals(grid.pointOf(t), path.get(path.size() - 1), where);
+				int cost = (int) stepCost(grid, path, false);
+				assertTrue(cost >= steps && cost <= steps + ClusterGraph.DEFAULT_CLUSTER_SIZE, where + ": " + cost + " for " + steps);
+				queries++;
+				excess += cost - steps;
+				shortest += steps;
+			}
+		}
+		assertTrue(queries > 100);
+		assertTrue(excess < 0.05 * shortest, excess + " steps over " + shortest);
+
+		// a wall along the border between the first two clusters, crossed by one entrance
+		Level lvl = Level.builder().size(480,320)
+				.addZone(new Rectangle(160,0,10,100)).addZone(new Rectangle(160,130,10,130))
+				.build();
+		OccupancyGrid grid = lvl.grid();
+		HierarchicalAgent hpa = new HierarchicalAgent(lvl);
+		hpa.setStart(new Point(50,110));
+		hpa.setGoal(new Point(300,110));
+		List<Point> through = hpa.findPath();
+		assertNotNull(through);
+		assertEquals(25, (int) stepCost(grid, through, false));
+		int nodes = hpa.getGraph().nodeCount();
+
+		lvl.addObstacle(new Rectangle(160,100,10,30));		// close the entrance
+		hpa.clearPath();
+		List<Point> around = hpa.findPath();
+		assertTrue(hpa.getGraph().nodeCount() < nodes);
+		assertNotNull(around);
+		int steps = bfsSteps(grid, grid.cellOf(new Point(50,110)), grid.cellOf(new Point(300,110)));
+		int cost = (int) stepCost(grid, around, false);
+		assertTrue(cost >= steps && cost <= steps + ClusterGraph.DEFAULT_CLUSTER_SIZE, cost + " for " + steps);
+		assertTrue(cost > 25);
+	}
+
+	@Test
+	void test_Path_cache_hits_evicts_and_forgets_changed_levels() {
+
+		Level lvl = wall().build();
+		OccupancyGrid grid = lvl.grid();
+		PathCache cache = new PathCache(3, PathCache.DEFAULT_MAX_WAYPOINTS);
+		CachingAgent agent = new CachingAgent(new IndexedAstarAgent(lvl), cache);
+		Point start = new Point(20,20);
+		Point goal = new Point(380,20);
+
+		agent.setStart(start);
+		agent.setGoal(goal);
+		List<Point> first = agent.findPath();
+		assertNotNull(first);
+		assertEquals(1, cache.misses());
+		assertEquals(1, cache.levels());
+
+		agent.clearPath();
+		assertEquals(first, agent.findPath());
+		assertEquals(1, cache.hits());
+
+		Point midway = first.get(first.size() / 2);		// on the cached path to the same goal
+		agent.clearPath();
+		agent.setStart(midway);
+		assertEquals(first.subList(first.size() / 2, first.size()), agent.findPath());
+		assertEquals(1, cache.subpathHits());
+
+		for (int y = 100; y <= 140; y += 20) {
+			agent.clearPath();
+			agent.setStart(new Point(20,y));
+			assertNotNull(agent.findPath());
+		}
+		assertEquals(3, cache.size());
+		assertEquals(1, cache.evictions());		// the first query was the least recently used
+
+		// an obstacle across the cached paths
+		lvl.addObstacle(new Rectangle(200,0,20,280));
+		assertEquals(0, cache.size());
+		assertEquals(3, cache.invalidations());
+		assertEquals(0, cache.levels());
+
+		agent.clearPath();
+		agent.setStart(start);
+		List<Point> fresh = agent.findPath();
+		assertNotNull(fresh);
+		assertEquals(bfsSteps(grid, grid.cellOf(start), grid.cellOf(goal)), (int) stepCost(grid, fresh, false));
+		assertTrue(fresh.size() > first.size());
+		assertEquals(1, cache.levels());
+	}
+
+	@Test
+	void test_DStarLite_repairs_match_fresh_searches() {
+
+		for (long seed = 1; seed <= 4; seed++) {
+			Level lvl = randomLevel(seed, 300, 240, 20);
+			OccupancyGrid grid = lvl.grid();
+			Random rnd = new Random(seed);
+			// far corners, so the path is long enough to drop blocks on
+			int s = 0;
+			while (!grid.isFree(s)) s++;
+			int t = grid.size() - 1;
+			while (!grid.isFree(t)) t--;
+			DStarLiteAgent dstar = new DStarLiteAgent(lvl);
+			dstar.setStart(grid.pointOf(s));
+			dstar.setGoal(grid.pointOf(t));
+			assertRepairMatches(dstar, grid, s, t, "seed " + seed + ", first search");
+			int fresh = dstar.getExpansions();
+
+			List<Rectangle> added = new ArrayList<>();
+			int repaired = 0;
+			for (int change = 0; change < 12; change++) {
+				String where = "seed " + seed + ", change " + change;
+				int what = rnd.nextInt(4);
+				List<Point> path = dstar.getPath();
+				if (what == 0 && !added.isEmpty()) {
+					assertTrue(lvl.removeObstacle(added.remove(rnd.nextInt(added.size()))), where);
+				} else if (what == 1 && path != null && path.size() > 2) {
+					// the unit walks a few steps along its path
+					s = grid.cellOf(path.get(Math.min(path.size() - 2, 1 + rnd.nextInt(3))));
+					dstar.setStart(grid.pointOf(s));
+				} else if (path != null) {
+					// a block dropped on the way
+					Point p = path.get(1 + rnd.nextInt(path.size() - 2));
+					Rectangle r = new Rectangle(p.x - rnd.nextInt(2) * 10, p.y - rnd.nextInt(2) * 10, (1 + rnd.nextInt(3)) * 10, (1 + rnd.nextInt(3)) * 10);
+					if (r.contains(grid.pointOf(s)) || r.contains(grid.pointOf(t))) continue;
+					lvl.addObstacle(r);
+					added.add(r);
+				} else {
+					continue;
+				}
+				dstar.clearPath();
+				assertRepairMatches(dstar, grid, s, t, where);
+				repaired += dstar.getExpansions();
+			}
+			// the twelve repairs together cost less than two searches from scratch
+			assertTrue(repaired < 2 * fresh, "seed " + seed + ": " + repaired + " vs " + fresh);
+
+			// moving the start a step only repairs a little
+			if (dstar.getPath() != null && dstar.getPath().size() > 2) {
+				dstar.setStart(dstar.getPath().get(1));
+				dstar.clearPath();
+				assertRepairMatches(dstar, grid, grid.cellOf(dstar.getStart()), t, "seed " + seed + ", last step");
+				assertTrue(dstar.getExpansions() <= fresh);
+			}
+		}
+	}
+
+	@Test
+	void test_Batch_planner_matches_single_searches_on_its_snapshot() throws Exception {
+
+		Level lvl = randomLevel(5, 400, 300, 30);
+		OccupancyGrid before = new OccupancyGrid(lvl.grid());
+		ForkJoinPool pool = new ForkJoinPool(4);
+		ExecutorService caller = Executors.newSingleThreadExecutor();
+		try {
+			BatchPlanner planner = new BatchPlanner(lvl, pool);
+			Random rnd = new Random(5);
+			List<PlanRequest> batch = new ArrayList<>();
+			for (int i = 0; i < 200; i++)
+				batch.add(new PlanRequest(before.pointOf(randomFreeCell(before, rnd)), before.pointOf(randomFreeCell(before, rnd))));
+
+			// the level is walled off while the batch runs
+			Future<List<PlanResult>> running = caller.submit(() -> planner.plan(batch));
+			for (int x = 0; x < 400; x += 40) {
+				lvl.addObstacle(new Rectangle(x, 140, 40, 20));
+				lvl.addObstacle(new Rectangle(200, x * 3 / 4, 20, 30));
+			}
+			List<PlanResult> results = running.get();
+
+			assertEquals(batch.size(), results.size());
+			assertEquals(before.checksum(), planner.grid().checksum());
+			for (int i = 0; i < batch.size(); i++) {
+				PlanRequest q = batch.get(i);
+				PlanResult r = results.get(i);
+				assertSame(q, r.getRequest());
+				int steps = bfsSteps(before, before.cellOf(q.getStart()), before.cellOf(q.getGoal()));
+				PlanResult single = planner.plan(q);
+				assertEquals(steps >= 0, r.isFound(), q.toString());
+				assertEquals(r.isFound(), single.isFound(), q.toString());
+				if (r.isFound()) {
+					assertEquals(steps, (int) stepCost(before, r.getPath(), false), q.toString());
+					assertEquals(single.getPath().size(), r.getPath().size(), q.toString());
+				}
+			}
+
+			// a new planner sees the walls
+			BatchPlanner after = new BatchPlanner(lvl, pool);
+			PlanResult across = after.plan(new PlanRequest(new Point(100, 20), new Point(100, 280)));
+			assertFalse(across.isFound());
+		} finally {
+			caller.shutdown();
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void test_Flow_fields_hold_breadth_first_distances() {
+
+		// small levels expand one wavefront at a time on one thread
+		for (long seed = 1; seed <= 3; seed++) {
+			OccupancyGrid grid = randomLevel(seed, 400, 300, 30).grid();
+			int goal = randomFreeCell(grid, new Random(seed));
+			SearchMetrics metrics = new SearchMetrics();
+			assertFieldMatches(new FlowField(grid, goal, metrics), metrics, "seed " + seed);
+		}
+
+		// a large open grid has wavefronts of well over the 1024 cells expanded in parallel
+		OccupancyGrid big = new OccupancyGrid(800, 800, 10);
+		Random rnd = new Random(7);
+		for (int i = 0; i < 800 * 800 / 20; i++)
+			big.setBlocked(rnd.nextInt(800), rnd.nextInt(800), true);
+		int goal = big.index(400, 400);
+		big.setBlocked(400, 400, false);
+		SearchMetrics metrics = new SearchMetrics();
+		assertFieldMatches(new FlowField(big, goal, metrics), metrics, "parallel");
+		assertTrue(metrics.getPeakOpen() > 1024);
+	}
+
+	@Test
+	void test_Flow_field_cache_misses_after_an_obstacle_change() {
+
+		Level lvl = randomLevel(4, 400, 300, 20);
+		FlowFieldCache cache = new FlowFieldCache(lvl);
+		FlowFieldAgent agent = new FlowFieldAgent(cache);
+		SearchMetrics metrics = new SearchMetrics();
+		agent.setSearchListener(metrics);
+		OccupancyGrid grid = lvl.grid();
+		Random rnd = new Random(4);
+		Point goal = grid.pointOf(randomFreeCell(grid, rnd));
+		agent.setGoal(goal);
+
+		agent.setStart(grid.pointOf(randomFreeCell(grid, rnd)));
+		agent.plan();
+		FlowField first = cache.field(goal);
+		assertEquals(1, cache.misses());
+		assertEquals(1, cache.hits());
+		assertTrue(metrics.getExpanded() > 0);
+		assertEquals(metrics.getExpanded(), metrics.getGenerated());
+
+		// another unit to the same goal only follows the field
+		agent.setStart(grid.pointOf(randomFreeCell(grid, rnd)));
+		agent.plan();
+		assertEquals(0, metrics.getExpanded());
+		assertEquals(2, cache.hits());
+
+		lvl.addObstacle(new Rectangle(0, 140, 400, 20));
+		assertEquals(0, cache.size());
+		FlowField second = cache.field(goal);
+		assertEquals(2, cache.misses());
+		assertNotSame(first, second);
+		assertFieldMatches(second, null, "after the change");
+	}
+
+	/*
+	 * Checks every distance of a field against breadth first search from its goal, and that
+	 * every reachable cell was reported expanded and generated once.
+	 */
+	private static void assertFieldMatches(FlowField field, SearchMetrics metrics, String where) {
+		OccupancyGrid grid = field.grid();
+		int[] dist = bfsDistances(grid, field.goal());
+		int reachable = 0;
+		for (int c = 0; c < grid.size(); c++) {
+			assertEquals(dist[c], field.distance(c), where);
+			if (dist[c] < 0) continue;
+			reachable++;
+			if (c % 101 == 0)
+				assertEquals(dist[c] + 1, field.pathFrom(grid.pointOf(c)).size(), where);
+		}
+		if (metrics != null) {
+			assertEquals(reachable, metrics.getExpanded(), where);
+			assertEquals(reachable, metrics.getGenerated(), where);
+		}
+	}
+
+	@Test
+	void test_A_cancelled_search_returns_null_and_is_aborted() {
+
+		Level lvl = Level.builder().size(1000, 1000).build();
+		PathAgent[] agents = { new BreadthFirstAgent(lvl), new AstarAgent(lvl), new IndexedAstarAgent(lvl), new FlowFieldAgent(lvl) };
+		for (PathAgent agent : agents) {
+			agent.setStart(new Point(0, 0));
+			agent.setGoal(new Point(990, 990));
+
+			// cancelled from the listener, as the cancel button does from another thread
+			int[] expanded = { 0 };
+			agent.setSearchListener((x, y) -> {
+				if (++expanded[0] == 50) agent.cancel();
+			});
+			assertNull(agent.findPath(), agent.toString());
+			assertTrue(agent.wasAborted(), agent.toString());
+			assertTrue(expanded[0] < 100, agent.toString());
+			if (agent instanceof FlowFieldAgent)
+				assertEquals(0, ((FlowFieldAgent) agent).getCache().size());	// the unfinished field is dropped
+
+			// clearing makes the agent usable again
+			agent.clearPath();
+			agent.setSearchListener(null);
+			assertNotNull(agent.findPath(), agent.toString());
+			assertFalse(agent.wasAborted(), agent.toString());
+		}
+	}
+
+	@Test
+	void test_A_tiny_time_budget_aborts_a_large_search() {
+
+		Level lvl = Level.builder().size(1000, 1000).build();
+		BreadthFirstAgent agent = new BreadthFirstAgent(lvl);
+		agent.setStart(new Point(0, 0));
+		agent.setGoal(new Point(990, 990));
+		int[] expanded = { 0 };
+		agent.setSearchListener((x, y) -> {
+			expanded[0]++;
+			try {
+				Thread.sleep(1);	// a slow search; the budget runs out within a few expansions
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		agent.setTimeBudget(1);
+		assertNull(agent.findPath());
+		assertTrue(agent.wasAborted());
+		assertTrue(expanded[0] < 100);
+	}
+
+	@Test
+	void test_Search_metrics_count_a_corridor_search() {
+
+		// a corridor of ten cells, each generated and expanded once
+		Level lvl = Level.builder().size(100, 10).build();
+		for (PathAgent agent : new PathAgent[] { new BreadthFirstAgent(lvl), new AstarAgent(lvl), new IndexedAstarAgent(lvl) }) {
+			SearchMetrics metrics = new SearchMetrics();
+			agent.setSearchListener(metrics);
+			agent.setStart(new Point(0, 0));
+			agent.setGoal(new Point(90, 0));
+			for (int run = 0; run < 2; run++) {		// a new search starts counting from zero
+				agent.clearPath();
+				assertNotNull(agent.plan());
+				String where = metrics.toString();
+				assertTrue(metrics.isFound(), where);
+				assertEquals(agent.toString(), metrics.getAgent());
+				assertEquals(10, metrics.getExpanded(), where);
+				assertEquals(10, metrics.getGenerated(), where);
+				assertEquals(0, metrics.getReopened(), where);
+				assertEquals(36, metrics.getValidityChecks(), where);
+				assertEquals(1, metrics.getPeakOpen(), where);
+				assertEquals(9, metrics.getPeakClosed(), where);
+				assertTrue(metrics.getPhaseNanos().containsKey("search"), where);
+				assertTrue(metrics.getTotalNanos() > 0, where);
+			}
+		}
+	}
+
+	@Test
+	void test_Search_tree_tracks_size_depth_and_states() {
+
+		SearchTree tree = new SearchTree();
+		assertTrue(tree.isEmpty());
+		assertEquals(-1, tree.maxDepth());
+
+		// a long chain grows the arrays and is walked without recursion
+		int last = tree.addRoot(0, 0);
+		for (int i = 1; i < 100000; i++)
+			last = tree.add(last, i * 10, 0, (byte) Action.E.ordinal());
+		int side = tree.add(0, 0, 10, (byte) Action.S.ordinal());
+		assertEquals(100001, tree.size());
+		assertEquals(99999, tree.maxDepth());
+		assertEquals(99999, tree.depth(last));
+		assertEquals(1, tree.depth(side));
+		assertEquals(0, tree.parent(side));
+		assertEquals(SearchTree.NO_PARENT, tree.parent(0));
+		assertEquals(SearchTree.NO_ACTION, tree.action(0));
+		assertEquals(Action.S.ordinal(), tree.action(side));
+
+		int n = 0;
+		for (Point p : tree) {
+			assertEquals(tree.state(n), p);
+			n++;
+		}
+		assertEquals(tree.size(), n);
+
+		tree.clear();
+		assertTrue(tree.isEmpty());
+		assertEquals(-1, tree.maxDepth());
+		assertFalse(tree.iterator().hasNext());
+	}
+
+	@Test
+	void test_Breadth_first_tree_depth_matches_the_path() {
+
+		for (long seed = 1; seed <= 3; seed++) {
+			Level lvl = randomLevel(seed, 400, 300, 30);
+			OccupancyGrid grid = lvl.grid();
+			Random rnd = new Random(seed);
+			BreadthFirstAgent agent = new BreadthFirstAgent(lvl);
+			agent.setStart(grid.pointOf(randomFreeCell(grid, rnd)));
+			agent.setGoal(grid.pointOf(randomFreeCell(grid, rnd)));
+			List<Point> path = agent.findPath();
+			if (path == null) continue;
+
+			SearchTree tree = agent.getSearchTree();
+			assertEquals(tree.size(), agent.searchTreeStates().size());
+			assertEquals(tree.maxDepth() + 1, agent.searchTreeDepth());
+
+			// the goal sits as deep as the path is long, and breadth first generates at most
+			// one step deeper before it expands the goal
+			int at = -1;
+			for (int i = 0; i < tree.size(); i++)
+				if (tree.state(i).equals(agent.getGoal())) at = i;
+			assertTrue(at >= 0);
+			assertEquals(path.size() - 1, tree.depth(at));
+			assertTrue(tree.maxDepth() <= path.size());
+			for (int i = at; i != SearchTree.NO_PARENT; i = tree.parent(i))
+				assertEquals(path.get(tree.depth(i)), tree.state(i));
+		}
+	}
+
+	@Test
+	void test_Transposition_table_keeps_the_cells_nearest_the_root() {
+
+		TranspositionTable table = new TranspositionTable(8);
+		for (int cell = 0; cell < 100; cell++) {
+			table.put(cell, cell * 10, 100 - cell);		// later cells are nearer the root
+			assertEquals(cell * 10, table.get(cell));
+		}
+		assertEquals(8, table.size());
+		int kept = 0;
+		for (int cell = 0; cell < 100; cell++) {
+			int v = table.get(cell);
+			if (v == TranspositionTable.MISSING) continue;
+			assertEquals(cell * 10, v);
+			kept++;
+		}
+		assertEquals(8, kept);
+		for (int cell = 92; cell < 100; cell++)
+			if (table.get(cell) == TranspositionTable.MISSING)
+				fail("cell " + cell + " is cheaper than every cell kept in its set");
+	}
+
+	@Test
+	void test_IDA_star_with_a_table_smaller_than_the_level() {
+
+		for (long seed : new long[] { 1, 3 }) {
+			Level lvl = randomLevel(seed, 300, 240, 40);
+			OccupancyGrid grid = lvl.grid();
+			Random rnd = new Random(seed);
+			IdaStarAgent ida = new IdaStarAgent(lvl, 600);		// a table of 256 cells
+			assertTrue(grid.freeCells() > 256);
+			for (int q = 0; q < 10; q++) {
+				int s = randomFreeCell(grid, rnd);
+				int t = randomFreeCell(grid, rnd);
+				ida.clearPath();
+				ida.setStart(grid.pointOf(s));
+				ida.setGoal(grid.pointOf(t));
+				ida.setTimeBudget(10000);
+				List<Point> path = ida.findPath();
+				String where = "seed " + seed + ": " + grid.pointOf(s) + " -> " + grid.pointOf(t);
+				assertFalse(ida.wasAborted(), where);
+				int steps = bfsSteps(grid, s, t);
+				assertEquals(steps < 0, path == null, where);
+				if (path != null) assertEquals(steps, (int) stepCost(grid, path, false), where);
+			}
+		}
+	}
+
+	private static void assertRepairMatches(DStarLiteAgent dstar, OccupancyGrid grid, int s, int t, String where) {
+		List<Point> path = dstar.findPath();
+		int steps = bfsSteps(grid, s, t);
+		if (steps < 0) {
+			assertNull(path, where);
+		} else {
+			assertNotNull(path, where);
+			assertEquals(grid.pointOf(s), path.get(0), where);
+			assertEquals(grid.pointOf(t), path.get(path.size() - 1), where);
+			assertEquals(steps, (int) stepCost(grid, path, false), where);
+		}
+	}
+
+	/*
+	 * The level most tests plan across: a wall hanging from the top and one standing on the
+	 * bottom further right, so a path from the bottom left to the top right zigzags.
+	 */
+	private static Level twoWalls() {
+		return wall().addZone(new Rectangle(200,50,20,250)).build();
+	}
+
+	/*
+	 * A 400x300 level with the first of the two walls only, for more zones to be added to.
+	 */
+	private static LevelBuilder wall() {
+		return Level.builder().size(400,300).addZone(new Rectangle(100,0,20,250));
+	}
+
+	/*
+	 * A level of random rectangles on whole cells.
+	 */
+	private static Level randomLevel(long seed, int width, int height, int boxes) {
+		Random rnd = new Random(seed);
+		LevelBuilder b = Level.builder().size(width, height);
+		for (int i = 0; i < boxes; i++) {
+			int w = 1 + rnd.nextInt(6);
+			int h = 1 + rnd.nextInt(6);
+			b.addZone(new Rectangle(rnd.nextInt(width / 10 - w) * 10, rnd.nextInt(height / 10 - h) * 10, w * 10, h * 10));
+		}
+		return b.build();
+	}
+
+	private static int randomFreeCell(OccupancyGrid grid, Random rnd) {
+		while (true) {
+			int c = rnd.nextInt(grid.size());
+			if (grid.isFree(c)) return c;
+		}
+	}
+
+	/*
+	 * The fewest 4 connected steps from one cell to another, -1 if there is no way.
+	 */
+	private static int bfsSteps(OccupancyGrid grid, int s, int t) {
+		return bfsDistances(grid, s)[t];
+	}
+
+	/*
+	 * The 4 connected step count from a cell to every cell, -1 where there is no way.
+	 */
+	private static int[] bfsDistances(OccupancyGrid grid, int s) {
+		int[] dist = new int[grid.size()];
+		java.util.Arrays.fill(dist, -1);
+		int[] queue = new int[grid.size()];
+		int head = 0, tail = 0;
+		dist[s] = 0;
+		queue[tail++] = s;
+		while (head < tail) {
+			int c = queue[head++];
+			int x = grid.cellX(c), y = grid.cellY(c);
+			int[][] moves = { { 0, -1 }, { 0, 1 }, { 1, 0 }, { -1, 0 } };
+			for (int[] m : moves) {
+				if (!grid.isFree(x + m[0], y + m[1])) continue;
+				int n = grid.index(x + m[0], y + m[1]);
+				if (dist[n] < 0) {
+					dist[n] = dist[c] + 1;
+					queue[tail++] = n;
+				}
+			}
+		}
+		return dist;
+	}
+
+	/*
+	 * The cheapest 8 connected route in cells, a diagonal step costing sqrt(2) and not cutting
+	 * the corner of a blocked cell; -1 if there is no way.
+	 */
+	private static double dijkstra8(OccupancyGrid grid, int s, int t) {
+		double[] dist = new double[grid.size()];
+		java.util.Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		PriorityQueue<double[]> open = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+		dist[s] = 0;
+		open.add(new double[] { 0, s });
+		while (!open.isEmpty()) {
+			double[] e = open.poll();
+			int c = (int) e[1];
+			if (e[0] > dist[c]) continue;
+			if (c == t) return dist[c];
+			int x = grid.cellX(c), y = grid.cellY(c);
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					if ((dx == 0 && dy == 0) || !grid.isFree(x + dx, y + dy)) continue;
+					if (dx != 0 && dy != 0 && (!grid.isFree(x + dx, y) || !grid.isFree(x, y + dy))) continue;
+					int n = grid.index(x + dx, y + dy);
+					double d = dist[c] + (dx != 0 && dy != 0 ? Math.sqrt(2.0) : 1.0);
+					if (d < dist[n]) {
+						dist[n] = d;
+						open.add(new double[] { d, n });
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Checks that a path steps from free cell to free cell, one cell at a time (diagonally
+	 * only if allowed, and then without cutting a blocked corner), and answers its cost in cells.
+	 */
+	private static double stepCost(OccupancyGrid grid, List<Point> path, boolean diagonal) {
+		double cost = 0;
+		for (int i = 0; i < path.size(); i++) {
+			int c = grid.cellOf(path.get(i));
+			assertTrue(c >= 0 && grid.isFree(c), "step onto " + path.get(i));
+			if (i == 0) continue;
+			int x = grid.cellX(c), y = grid.cellY(c);
+			int px = grid.cellX(grid.cellOf(path.get(i - 1))), py = grid.cellY(grid.cellOf(path.get(i - 1)));
+			int dx = x - px, dy = y - py;
+			assertTrue(Math.abs(dx) <= 1 && Math.abs(dy) <= 1 && (dx != 0 || dy != 0), "step to " + path.get(i));
+			if (dx != 0 && dy != 0) {
+				assertTrue(diagonal, "diagonal step to " + path.get(i));
+				assertTrue(grid.isFree(px + dx, py) && grid.isFree(px, py + dy), "corner cut at " + path.get(i));
+				cost += Math.sqrt(2.0);
+			} else {
+				cost += 1;
+			}
+		}
+		return cost;
+	}
+
+	private static double length(List<Point> path) {
+		double d = 0;
+		for (int i = 1; i < path.size(); i++)
+			d += path.get(i - 1).distance(path.get(i));
+		return d;
+	}
+
+	private static Point at(List<Point> path, int t) {
+		return path.get(Math.min(t, path.size() - 1));
 	}
 
 }
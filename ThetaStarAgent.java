@@ -0,0 +1,229 @@
+package path.agent;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+
+/**
+ * An any-angle agent implementing Theta* on the level's {@link OccupancyGrid}.  The search runs
+ * like 8 connected A*, but a cell's parent need not be its neighbor: when the parent of the cell
+ * being expanded can see a neighbor directly, the neighbor is linked straight to that parent.
+ * Paths therefore run in straight lines between the corners of obstacles, are shorter than grid
+ * paths, and list only the points where they turn.  Sight is tested with {@link LineOfSight}.
+ * <p>
+ * Lazy Theta* defers the sight test: a neighbor is always linked to the parent of the expanded
+ * cell, and only when the neighbor is itself expanded is the link checked, and replaced by the
+ * best link to one of its expanded neighbors if the parent can't see it.  That costs one sight
+ * test per expansion instead of one per neighbor, for paths that are very slightly longer.
+ * <p>
+ * Costs and the straight line heuristic are measured in strides.  The per-cell arrays are kept
+ * in the calling thread's {@link SearchWorkspace} for the level, taken from the shared
+ * {@link WorkspacePool}.  The start and goal must be lattice points.
+ */
+public class ThetaStarAgent extends PathAgent {
+
+	private static final int[] DX = { 0, 0, 1, -1, 1, 1, -1, -1 };
+	private static final int[] DY = { -1, 1, 0, 0, -1, 1, -1, 1 };
+
+	private final boolean lazy;
+
+	private OccupancyGrid grid;
+
+	private SearchWorkspace ws;		// the thread's workspace for the level, with any-angle parents
+
+	private int goalX;
+	private int goalY;
+
+	private int sightTests;		// line of sight tests since they were last reported
+
+
+	/**
+	 * Creates a Theta* agent.
+	 */
+	public ThetaStarAgent(Level lvl) {
+		this(lvl, false);
+	}
+
+
+	/**
+	 * @param lvl the level to plan in
+	 * @param lazy true for Lazy Theta*
+	 */
+	public ThetaStarAgent(Level lvl, boolean lazy) {
+		super(lvl);
+		this.lazy = lazy;
+	}
+
+
+	@Override
+	public List<Point> findPath() {
+		if (start == null || goal == null) {
+			return null;
+		}
+		if (!isReachable()) {
+			return null;	// walled off, known without searching
+		}
+
+		listener.phase("prepare");
+		grid = level.grid();
+		ws = WorkspacePool.shared().get(level);
+		ws.prepare(grid);
+		ws.costs();		// the real valued costs, allocated on first use
+
+		int s = grid.cellOf(start);
+		int t = grid.cellOf(goal);
+		if (s < 0 || t < 0 || !grid.isFree(s)) return null;
+
+		goalX = grid.cellX(t);
+		goalY = grid.cellY(t);
+
+		ws.cost[s] = 0;
+		ws.parent[s] = -1;
+		ws.mark[s] = ws.openMark;
+		ws.treeNode[s] = tree.addRoot(start.x, start.y);
+		ws.open.insert(s, key(heuristic(s)));
+		listener.generated(1);
+		listener.phase("search");
+		sightTests = 0;
+		int closed = 0;
+
+		while (!ws.open.isEmpty()) {
+			int cur = ws.open.poll();
+			ws.mark[cur] = ws.openMark + 1;
+			closed++;
+			if (shouldStop()) return null;	// cancelled or out of time
+			int cx = grid.cellX(cur);
+			int cy = grid.cellY(cur);
+			listener.expanded(cx * grid.stride(), cy * grid.stride());
+
+			if (lazy) verifyParent(cur, cx, cy);
+
+			if (cur == t) {
+				listener.phase("path");
+				path = pathFromParents(t);
+				return path;
+			}
+
+			int generated = 0;
+			int reopened = 0;
+			for (int a = 0; a < DX.length; a++) {
+				int nx = cx + DX[a];
+				int ny = cy + DY[a];
+				if (!step(cx, cy, nx, ny)) continue;
+				int n = grid.index(nx, ny);
+				if (ws.status(n) == SearchWorkspace.CLOSED) continue;
+
+				// link to the grandparent when it can (or, being lazy, is assumed to) see n
+				int p = cur;
+				int pp = ws.parent[cur];
+				if (pp >= 0 && (lazy || sees(pp, n))) p = pp;
+
+				double g = ws.cost[p] + distance(p, n);
+				if (ws.status(n) == SearchWorkspace.OPEN && ws.cost[n] <= g) continue;
+
+				ws.cost[n] = g;
+				ws.parent[n] = p;
+				ws.treeNode[n] = tree.add(ws.treeNode[p], nx * grid.stride(), ny * grid.stride(), SearchTree.NO_ACTION);
+				generated++;
+				long k = key(g + heuristic(n));
+				if (ws.status(n) == SearchWorkspace.OPEN) {
+					ws.open.update(n, k);
+					reopened++;
+				} else {
+					ws.mark[n] = ws.openMark;
+					ws.open.insert(n, k);
+				}
+			}
+
+			listener.validityChecked(sightTests);
+			sightTests = 0;
+			listener.generated(generated);
+			if (reopened > 0) listener.reopened(reopened);
+			listener.frontierSize(ws.open.size(), closed);
+		}
+		return null; // if null returned, no path is found
+	}
+
+
+	/*
+	 * Lazy Theta* only: if the parent assumed for a cell can't see it after all, links it to
+	 * the best of its expanded neighbors instead.  There is always one, since the cell was
+	 * generated from an expanded neighbor.
+	 */
+	private void verifyParent(int cell, int cx, int cy) {
+		int p = ws.parent[cell];
+		if (p < 0 || sees(p, cell)) return;
+
+		double best = Double.POSITIVE_INFINITY;
+		for (int a = 0; a < DX.length; a++) {
+			int nx = cx + DX[a];
+			int ny = cy + DY[a];
+			if (!step(cx, cy, nx, ny)) continue;
+			int n = grid.index(nx, ny);
+			if (ws.status(n) != SearchWorkspace.CLOSED) continue;
+			double g = ws.cost[n] + distance(n, cell);
+			if (g < best) {
+				best = g;
+				p = n;
+			}
+		}
+		ws.cost[cell] = best;
+		ws.parent[cell] = p;
+		ws.treeNode[cell] = tree.add(ws.treeNode[p], cx * grid.stride(), cy * grid.stride(), SearchTree.NO_ACTION);
+	}
+
+
+	/*
+	 * A move to one of the eight neighbors; a diagonal one may not cut a blocked corner.
+	 */
+	private boolean step(int x, int y, int nx, int ny) {
+		if (!grid.isFree(nx, ny)) return false;
+		return nx == x || ny == y || (grid.isFree(nx, y) && grid.isFree(x, ny));
+	}
+
+
+	private boolean sees(int from, int to) {
+		sightTests++;
+		return LineOfSight.clear(grid, from, to);
+	}
+
+
+	private double distance(int a, int b) {
+		return Math.hypot(grid.cellX(a) - grid.cellX(b), grid.cellY(a) - grid.cellY(b));
+	}
+
+
+	private double heuristic(int cell) {
+		return Math.hypot(goalX - grid.cellX(cell), goalY - grid.cellY(cell));
+	}
+
+
+	/*
+	 * Non-negative doubles order the same way as their bit patterns.
+	 */
+	private static long key(double f) {
+		return Double.doubleToLongBits(f);
+	}
+
+
+
+	/*
+	 * The turning points from the start to a cell.
+	 */
+	private List<Point> pathFromParents(int cell) {
+		List<Point> pth = new ArrayList<>();
+		for (int c = cell; c >= 0; c = ws.parent[c])
+			pth.add(grid.pointOf(c));
+		Collections.reverse(pth);
+		return pth;
+	}
+
+
+	public String toString() {
+		return lazy ? "Lazy Theta* Agent" : "Theta* Agent";
+	}
+}
@@ -0,0 +1,144 @@
+package path.agent;
+import java.util.Arrays;
+
+
+/**
+ * An instance of this class is a fixed size, 4 way set associative table from cell indices to
+ * an int, for memory-bounded searches that want to recognize cells they have seen before
+ * without a table as large as the grid.  Each cell hashes to a set of four entries.  Every
+ * entry carries a cost, the g at which the search reached its cell; when a set is full, storing
+ * a cell evicts the entry of the highest cost.  Cells near the root, whose subtrees are the
+ * largest to search again, are thus the last to be forgotten, while the cell being stored,
+ * whose subtree is about to be searched, is always kept.  The table answers "unknown" when in
+ * doubt, never a value stored for another cell.  That is all a search may use it for: pruning
+ * a state that is known to be covered, and searching it again otherwise.
+ * <p>
+ * Clearing is done by bumping a generation number, so it costs nothing per entry.
+ */
+public class TranspositionTable {
+
+	/** Answered by {@link #get(int)} for a cell the table does not know. */
+	public static final int MISSING = Integer.MIN_VALUE;
+
+	private static final int WAYS = 4;
+
+	private final int[] cells;
+
+	private final int[] values;
+
+	private final int[] costs;
+
+	private final int[] stamps;		// generation an entry was stored in
+
+	private final int ways;
+
+	private final int mask;		// of the set number
+
+	private int generation = 1;
+
+	private int used;		// entries stored in this generation
+
+
+	/**
+	 * @param capacity the most entries to hold, rounded down to a power of two (at least one)
+	 */
+	public TranspositionTable(int capacity) {
+		int n = Integer.highestOneBit(Math.max(1, capacity));
+		cells = new int[n];
+		values = new int[n];
+		costs = new int[n];
+		stamps = new int[n];
+		ways = Math.min(WAYS, n);
+		mask = n / ways - 1;
+	}
+
+
+	/**
+	 * @return the value stored for a cell, or {@link #MISSING} if there is none (any more)
+	 */
+	public int get(int cell) {
+		int i = find(cell);
+		return i < 0 ? MISSING : values[i];
+	}
+
+
+	/**
+	 * Stores a value for a cell.  If the cell's set is full, the entry of the highest cost is
+	 * evicted to make room.
+	 *
+	 * @param cost the g of the cell, which decides what is kept
+	 */
+	public void put(int cell, int value, int cost) {
+		int i = find(cell);
+		if (i < 0) {
+			int base = set(cell);
+			for (int k = base; k < base + ways; k++) {
+				if (stamps[k] != generation) {		// a free entry
+					i = k;
+					break;
+				}
+				if (i < 0 || costs[k] > costs[i]) i = k;
+			}
+			if (stamps[i] != generation) {
+				stamps[i] = generation;
+				used++;
+			}
+		}
+		cells[i] = cell;
+		values[i] = value;
+		costs[i] = cost;
+	}
+
+
+	/**
+	 * Forgets a cell, if the table holds it.
+	 */
+	public void remove(int cell) {
+		int i = find(cell);
+		if (i >= 0) {
+			stamps[i] = 0;
+			used--;
+		}
+	}
+
+
+	/**
+	 * Forgets every cell.
+	 */
+	public void clear() {
+		if (++generation == 0) {		// wrapped: old stamps could match again
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+		used = 0;
+	}
+
+
+	public int capacity() {
+		return cells.length;
+	}
+
+	/**
+	 * @return the number of entries in use
+	 */
+	public int size() {
+		return used;
+	}
+
+
+	/*
+	 * The entry holding a cell, -1 if none.
+	 */
+	private int find(int cell) {
+		int base = set(cell);
+		for (int k = base; k < base + ways; k++)
+			if (stamps[k] == generation && cells[k] == cell) return k;
+		return -1;
+	}
+
+
+	private int set(int cell) {
+		int h = cell * 0x9E3779B9;
+		return ((h ^ h >>> 16) & mask) * ways;
+	}
+}
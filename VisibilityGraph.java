@@ -0,0 +1,428 @@
+package path.agent;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import path.level.Level;
+import path.level.LevelListener;
+import path.level.OccupancyGrid;
+
+
+/**
+ * An instance of this class is the reduced visibility graph of a level, for levels made of a
+ * modest number of axis aligned rectangles.  Its vertices are the free lattice points at the
+ * convex corners of the blocked area, and two vertices are joined when the straight segment
+ * between them is clear and could be part of a shortest path: a path only bends at a corner to
+ * wrap around the obstacle there, so a segment heading from a corner straight away from its
+ * obstacle is left out.  A level with a few hundred corners then has a graph of a few hundred
+ * vertices, however many cells it has.
+ * <p>
+ * The blocked cells of the level's {@link OccupancyGrid} are cut into boxes, maximal runs of a
+ * row merged with identical runs below, which for a rectangle level gives about one box per
+ * rectangle.  The boxes are kept in a coarse grid of buckets, and a segment is tested against
+ * the boxes of the buckets it passes only, exactly and with integer arithmetic.  A segment is
+ * clear on the same terms as {@link LineOfSight}: it may not have a point in a blocked cell's
+ * square, whose top and left edges belong to it.  A cell's square has its lattice point at the
+ * top left, so the free corner points are the obstacle corners themselves except the top left
+ * one, which is replaced by the two lattice points beside it.
+ * <p>
+ * Only the top left corners are not exact.  A path through lattice points may pass such a
+ * corner closer than either point beside it by bending farther out, at a point that depends on
+ * where the path comes from and goes to, which no fixed set of vertices captures.  A path that
+ * bends there may therefore be a little longer than the best lattice path, and than the one
+ * {@link ThetaStarAgent} finds, by about a quarter of a cell at worst on random rectangle
+ * levels.
+ * <p>
+ * The graph is built when first asked for, using all cores.  It listens to its level and is
+ * rebuilt as a whole on the next call to {@link #refresh()} after obstacles change.  Lengths are
+ * measured in cells (strides).
+ */
+public class VisibilityGraph implements LevelListener {
+
+	private static final int BUCKETS = 32;		// most buckets on a side of the index
+
+	private static final int MIN_BUCKET_SIZE = 4;
+
+	private final Level level;
+
+	private final OccupancyGrid grid;
+
+	private boolean dirty = true;
+
+	private int[] boxes;		// x0, y0, x1, y1 of each box, in cells, exclusive at x1/y1
+
+	private int bucketSize;
+
+	private int bucketsX;
+
+	private int bucketsY;
+
+	private int[] bucketStart;		// the boxes of bucket b are bucketBoxes[bucketStart[b] .. bucketStart[b + 1])
+
+	private int[] bucketBoxes;
+
+	private int[] vx;		// vertex cells
+
+	private int[] vy;
+
+	private byte[] quadrants;		// per vertex, a bit for each quadrant around it holding an obstacle corner
+
+	private int[] edgeStart;		// the edges of vertex v are edgeStart[v] .. edgeStart[v + 1]
+
+	private int[] edgeTo;
+
+	private double[] edgeLength;
+
+
+	/**
+	 * Makes the graph of a level and starts listening for changes to it.  The graph is built
+	 * on the first {@link #refresh()}.
+	 */
+	public VisibilityGraph(Level lvl) {
+		this.level = lvl;
+		this.grid = lvl.grid();
+		level.addListener(this);
+	}
+
+
+	/**
+	 * Stops listening to the level.  Call when the graph is no longer used.
+	 */
+	public void dispose() {
+		level.removeListener(this);
+	}
+
+
+	@Override
+	public synchronized void levelChanged(Level lvl, Rectangle cells) {
+		if (!cells.isEmpty()) dirty = true;
+	}
+
+
+	/**
+	 * Builds the graph if it was never built or the level changed since.
+	 */
+	public synchronized void refresh() {
+		if (!dirty) return;
+		findBoxes();
+		indexBoxes();
+		findCorners();
+		linkCorners();
+		dirty = false;
+	}
+
+
+	/*  --------------------------- BUILDING --------------------------------- */
+
+	/*
+	 * Cuts the blocked cells into boxes: each run of blocked cells in a row extends the box
+	 * of the same run in the row above, if there is one, or starts a new box.
+	 */
+	private void findBoxes() {
+		int[] found = new int[64];
+		int n = 0;
+		int[] openAt = new int[grid.cols()];		// box whose run starts at a column, if still open
+		Arrays.fill(openAt, -1);
+
+		for (int y = 0; y < grid.rows(); y++) {
+			int x = 0;
+			while (x < grid.cols()) {
+				if (grid.isFree(x, y)) {
+					x++;
+					continue;
+				}
+				int x0 = x;
+				while (x < grid.cols() && !grid.isFree(x, y)) x++;
+
+				int b = openAt[x0];
+				if (b >= 0 && found[b * 4 + 2] == x && found[b * 4 + 3] == y) {
+					found[b * 4 + 3] = y + 1;
+					continue;
+				}
+				if (n * 4 == found.length) found = Arrays.copyOf(found, found.length * 2);
+				found[n * 4] = x0;
+				found[n * 4 + 1] = y;
+				found[n * 4 + 2] = x;
+				found[n * 4 + 3] = y + 1;
+				openAt[x0] = n++;
+			}
+		}
+		boxes = Arrays.copyOf(found, n * 4);
+	}
+
+
+	/*
+	 * Lists each box in every bucket it overlaps.
+	 */
+	private void indexBoxes() {
+		int side = Math.max(grid.cols(), grid.rows());
+		bucketSize = Math.max(MIN_BUCKET_SIZE, (side + BUCKETS - 1) / BUCKETS);
+		bucketsX = Math.max(1, (grid.cols() + bucketSize - 1) / bucketSize);
+		bucketsY = Math.max(1, (grid.rows() + bucketSize - 1) / bucketSize);
+
+		bucketStart = new int[bucketsX * bucketsY + 1];
+		for (int pass = 0; pass < 2; pass++) {
+			int[] fill = pass == 0 ? null : Arrays.copyOf(bucketStart, bucketStart.length - 1);
+			for (int b = 0; b < boxes.length; b += 4) {
+				for (int by = boxes[b + 1] / bucketSize; by <= (boxes[b + 3] - 1) / bucketSize; by++) {
+					for (int bx = boxes[b] / bucketSize; bx <= (boxes[b + 2] - 1) / bucketSize; bx++) {
+						int k = by * bucketsX + bx;
+						if (pass == 0) bucketStart[k + 1]++;
+						else bucketBoxes[fill[k]++] = b;
+					}
+				}
+			}
+			if (pass == 0) {
+				for (int k = 0; k < bucketsX * bucketsY; k++)
+					bucketStart[k + 1] += bucketStart[k];
+				bucketBoxes = new int[bucketStart[bucketsX * bucketsY]];
+			}
+		}
+	}
+
+
+	/*
+	 * Collects the free lattice points at the convex corners of the blocked cells.  Such a
+	 * corner is always the corner of a box.
+	 */
+	private void findCorners() {
+		Map<Integer, Integer> vertexOf = new HashMap<>();
+		int[] xs = new int[64];
+		int[] ys = new int[64];
+		byte[] qs = new byte[64];
+		int n = 0;
+
+		for (int b = 0; b < boxes.length; b += 4) {
+			for (int corner = 0; corner < 4; corner++) {
+				int sx = (corner & 1) == 0 ? -1 : 1;		// direction out of the box
+				int sy = (corner & 2) == 0 ? -1 : 1;
+				int cx = sx < 0 ? boxes[b] : boxes[b + 2] - 1;
+				int cy = sy < 0 ? boxes[b + 1] : boxes[b + 3] - 1;
+				if (!grid.isFree(cx + sx, cy) || !grid.isFree(cx, cy + sy) || !grid.isFree(cx + sx, cy + sy)) continue;
+
+				// the corner point itself, or beside it at the top left where it is blocked
+				int[] at = sx < 0 && sy < 0
+						? new int[] { cx - 1, cy, cx, cy - 1 }
+						: new int[] { sx < 0 ? cx : cx + 1, sy < 0 ? cy : cy + 1 };
+				int quadrant = quadrant(-sx, -sy);
+				for (int i = 0; i < at.length; i += 2) {
+					int cell = grid.index(at[i], at[i + 1]);
+					Integer v = vertexOf.get(cell);
+					if (v == null) {
+						if (n == xs.length) {
+							xs = Arrays.copyOf(xs, n * 2);
+							ys = Arrays.copyOf(ys, n * 2);
+							qs = Arrays.copyOf(qs, n * 2);
+						}
+						v = n++;
+						vertexOf.put(cell, v);
+						xs[v] = at[i];
+						ys[v] = at[i + 1];
+					}
+					qs[v] |= 1 << quadrant;
+				}
+			}
+		}
+		vx = Arrays.copyOf(xs, n);
+		vy = Arrays.copyOf(ys, n);
+		quadrants = Arrays.copyOf(qs, n);
+	}
+
+
+	/*
+	 * Joins every two corners that see each other and may both be bent around on the way, one
+	 * corner per task in parallel.
+	 */
+	private void linkCorners() {
+		int n = vx.length;
+		int[][] later = new int[n][];		// the linked vertices after each vertex
+		IntStream.range(0, n).parallel().forEach(v -> {
+			int[] found = new int[16];
+			int m = 0;
+			for (int w = v + 1; w < n; w++) {
+				if (!taut(v, vx[w], vy[w]) || !taut(w, vx[v], vy[v])) continue;
+				if (!visible(vx[v], vy[v], vx[w], vy[w])) continue;
+				if (m == found.length) found = Arrays.copyOf(found, m * 2);
+				found[m++] = w;
+			}
+			later[v] = Arrays.copyOf(found, m);
+		});
+
+		edgeStart = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			edgeStart[v + 1] += later[v].length;
+			for (int w : later[v])
+				edgeStart[w + 1]++;
+		}
+		for (int v = 0; v < n; v++)
+			edgeStart[v + 1] += edgeStart[v];
+		edgeTo = new int[edgeStart[n]];
+		edgeLength = new double[edgeStart[n]];
+		int[] fill = Arrays.copyOf(edgeStart, n);
+		for (int v = 0; v < n; v++) {
+			for (int w : later[v]) {
+				double d = Math.hypot(vx[w] - vx[v], vy[w] - vy[v]);
+				edgeLength[fill[v]] = d;
+				edgeTo[fill[v]++] = w;
+				edgeLength[fill[w]] = d;
+				edgeTo[fill[w]++] = v;
+			}
+		}
+	}
+
+
+	private static int quadrant(int sx, int sy) {
+		return (sx > 0 ? 1 : 0) | (sy > 0 ? 2 : 0);
+	}
+
+
+	/*  --------------------------- QUERIES --------------------------------- */
+
+	/**
+	 * Tells whether a path could bend at a vertex on its way to or from a cell: not when the
+	 * cell lies strictly in the quadrant opposite every obstacle corner at the vertex, since
+	 * the path would then turn away from the obstacle rather than wrap around it.
+	 */
+	public boolean taut(int v, int cx, int cy) {
+		int dx = cx - vx[v];
+		int dy = cy - vy[v];
+		for (int q = 0; q < 4; q++) {
+			if ((quadrants[v] & 1 << q) == 0) continue;
+			int sx = (q & 1) == 0 ? -1 : 1;
+			int sy = (q & 2) == 0 ? -1 : 1;
+			if (dx * sx >= 0 || dy * sy >= 0) return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * @return true if the segment from cell (x0,y0) to cell (x1,y1) crosses free squares only,
+	 * as {@link LineOfSight#clear(OccupancyGrid, int, int, int, int)} would answer
+	 */
+	public boolean visible(int x0, int y0, int x1, int y1) {
+		if (x1 < x0) {		// the squares touched don't depend on the direction
+			int t = x0; x0 = x1; x1 = t;
+			t = y0; y0 = y1; y1 = t;
+		}
+		int dx = x1 - x0;
+		int dy = y1 - y0;
+
+		for (int bx = x0 / bucketSize; bx <= x1 / bucketSize; bx++) {
+			// the rows the segment spans over the bucket column, rounded outwards
+			int lo = Math.min(y0, y1);
+			int hi = Math.max(y0, y1);
+			if (dx > 0) {
+				long xa = Math.max(x0, bx * bucketSize) - x0;
+				long xb = Math.min(x1, (bx + 1) * bucketSize) - x0;
+				long ya = y0 + Math.floorDiv(dy * xa, dx);
+				long yb = y0 + Math.floorDiv(dy * xb, dx);
+				lo = (int) Math.min(ya, yb);
+				hi = (int) Math.max(ya, yb) + 1;
+			}
+			int by0 = Math.max(0, lo / bucketSize);
+			int by1 = Math.min(bucketsY - 1, hi / bucketSize);
+			for (int by = by0; by <= by1; by++) {
+				int k = by * bucketsX + bx;
+				for (int i = bucketStart[k]; i < bucketStart[k + 1]; i++) {
+					int b = bucketBoxes[i];
+					if (hits(x0, y0, dx, dy, boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3])) return false;
+				}
+			}
+		}
+		return true;
+	}
+
+
+	/*
+	 * Tells whether the segment from (x0,y0) by (dx,dy) has a point in the box [a0,a1) x
+	 * [b0,b1), by clipping its parameter against the box sides.  The parameter is scaled by
+	 * |dx| |dy| so every bound is a whole number, and doubled so an open bound can be kept
+	 * half a step inside: the segment hits the box when the lower bound left is not above the
+	 * upper one.
+	 */
+	private static boolean hits(int x0, int y0, int dx, int dy, int a0, int b0, int a1, int b1) {
+		long sx = dx == 0 ? 1 : Math.abs(dx);
+		long sy = dy == 0 ? 1 : Math.abs(dy);
+		long lo = 0;
+		long hi = 2 * sx * sy;
+
+		if (dx == 0) {
+			if (x0 < a0 || x0 >= a1) return false;
+		} else if (dx > 0) {
+			lo = Math.max(lo, 2 * (a0 - x0) * sy);
+			hi = Math.min(hi, 2 * (a1 - x0) * sy - 1);
+		} else {
+			lo = Math.max(lo, 2 * (x0 - a1) * sy + 1);
+			hi = Math.min(hi, 2 * (x0 - a0) * sy);
+		}
+		if (dy == 0) {
+			if (y0 < b0 || y0 >= b1) return false;
+		} else if (dy > 0) {
+			lo = Math.max(lo, 2 * (b0 - y0) * sx);
+			hi = Math.min(hi, 2 * (b1 - y0) * sx - 1);
+		} else {
+			lo = Math.max(lo, 2 * (y0 - b1) * sx + 1);
+			hi = Math.min(hi, 2 * (y0 - b0) * sx);
+		}
+		return lo <= hi;
+	}
+
+
+	/*  --------------------------- ACCESS FOR THE AGENT --------------------------------- */
+
+	int cellX(int v) {
+		return vx[v];
+	}
+
+	int cellY(int v) {
+		return vy[v];
+	}
+
+	int firstEdge(int v) {
+		return edgeStart[v];
+	}
+
+	int endEdge(int v) {
+		return edgeStart[v + 1];
+	}
+
+	int edgeTo(int e) {
+		return edgeTo[e];
+	}
+
+	double edgeLength(int e) {
+		return edgeLength[e];
+	}
+
+	OccupancyGrid grid() {
+		return grid;
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return the number of vertices, corners of the blocked area
+	 */
+	public int vertexCount() {
+		return vx.length;
+	}
+
+	/**
+	 * @return the number of edges, each counted once
+	 */
+	public int edgeCount() {
+		return edgeTo.length / 2;
+	}
+
+	/**
+	 * @return the number of boxes the blocked cells were cut into
+	 */
+	public int boxCount() {
+		return boxes.length / 4;
+	}
+}
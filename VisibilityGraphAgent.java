@@ -0,0 +1,218 @@
+package path.agent;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+
+/**
+ * An any-angle agent that searches the {@link VisibilityGraph} of the level instead of its
+ * cells.  The start and goal are joined to the corners they can see, and A* runs on the corners
+ * with straight line distances, so a query costs about the same whatever the resolution of the
+ * level and is cheapest on levels of a few large rectangles.  Paths are the shortest ones that
+ * bend at obstacle corners only (beside them at blocked top left corners, see the graph for
+ * what that costs) and, like those of {@link ThetaStarAgent}, list only the points where they
+ * turn.
+ * <p>
+ * The graph is built the first time the agent plans on a level and is reused, and rebuilt after
+ * obstacles change, afterwards.  The search tree holds the corners searched.  The start and goal
+ * must be lattice points.
+ */
+public class VisibilityGraphAgent extends PathAgent {
+
+	private static final byte UNSEEN = 0;
+	private static final byte OPEN = 1;
+	private static final byte CLOSED = 2;
+
+	private VisibilityGraph graph;
+
+	private double[] gval;
+
+	private int[] parent;		// -1 for the start
+
+	private byte[] status;
+
+	private int[] treeNode;
+
+	private boolean[] seesGoal;
+
+	private IndexedBinaryHeap open;
+
+	private int sightTests;		// visibility tests since they were last reported
+
+
+	public VisibilityGraphAgent(Level lvl) {
+		super(lvl);
+	}
+
+
+	/**
+	 * @return the visibility graph for the current level, building it if needed
+	 */
+	public VisibilityGraph getGraph() {
+		if (graph == null || graph.getLevel() != level) {
+			if (graph != null) graph.dispose();
+			graph = new VisibilityGraph(level);
+		}
+		graph.refresh();
+		return graph;
+	}
+
+
+	@Override
+	public List<Point> findPath() {
+		if (start == null || goal == null) {
+			return null;
+		}
+		if (!isReachable()) {
+			return null;	// walled off, known without searching
+		}
+
+		listener.phase("refresh");
+		VisibilityGraph g = getGraph();
+		OccupancyGrid grid = g.grid();
+		int s = grid.cellOf(start);
+		int t = grid.cellOf(goal);
+		if (s < 0 || t < 0 || !grid.isFree(s) || !grid.isFree(t)) return null;
+		int sx = grid.cellX(s);
+		int sy = grid.cellY(s);
+		int tx = grid.cellX(t);
+		int ty = grid.cellY(t);
+
+		listener.phase("prepare");
+		int n = g.vertexCount();
+		int source = n;		// the start and goal come after the corners
+		int target = n + 1;
+		prepare(n + 2);
+		sightTests = 0;
+		for (int v = 0; v < n; v++)
+			seesGoal[v] = g.taut(v, tx, ty) && sees(g, g.cellX(v), g.cellY(v), tx, ty);
+
+		gval[source] = 0;
+		parent[source] = -1;
+		status[source] = OPEN;
+		treeNode[source] = tree.addRoot(start.x, start.y);
+		open.insert(source, key(Math.hypot(tx - sx, ty - sy)));
+		listener.generated(1);
+		listener.phase("search");
+		int closed = 0;
+
+		while (!open.isEmpty()) {
+			int cur = open.poll();
+			status[cur] = CLOSED;
+			closed++;
+			if (shouldStop()) return null;	// cancelled or out of time
+			int cx = cur == source ? sx : cur == target ? tx : g.cellX(cur);
+			int cy = cur == source ? sy : cur == target ? ty : g.cellY(cur);
+			listener.expanded(cx * grid.stride(), cy * grid.stride());
+
+			if (cur == target) {
+				listener.phase("path");
+				path = pathFromParents(g, target);
+				return path;
+			}
+
+			int generated = 0;
+			if (cur == source) {
+				for (int v = 0; v < n; v++) {
+					if (g.taut(v, sx, sy) && sees(g, sx, sy, g.cellX(v), g.cellY(v)))
+						generated += relax(cur, v, Math.hypot(g.cellX(v) - sx, g.cellY(v) - sy), g.cellX(v), g.cellY(v), tx, ty);
+				}
+				if (sees(g, sx, sy, tx, ty))
+					generated += relax(cur, target, Math.hypot(tx - sx, ty - sy), tx, ty, tx, ty);
+			} else {
+				for (int e = g.firstEdge(cur); e < g.endEdge(cur); e++) {
+					int w = g.edgeTo(e);
+					generated += relax(cur, w, g.edgeLength(e), g.cellX(w), g.cellY(w), tx, ty);
+				}
+				if (seesGoal[cur])
+					generated += relax(cur, target, Math.hypot(tx - cx, ty - cy), tx, ty, tx, ty);
+			}
+
+			listener.validityChecked(sightTests);
+			sightTests = 0;
+			listener.generated(generated);
+			listener.frontierSize(open.size(), closed);
+		}
+		return null; // if null returned, no path is found
+	}
+
+
+	/*
+	 * Offers a vertex at cell (wx,wy) a route through another.
+	 *
+	 * @return 1 if the route was taken, 0 otherwise
+	 */
+	private int relax(int from, int w, double length, int wx, int wy, int tx, int ty) {
+		if (status[w] == CLOSED) return 0;
+		double gw = gval[from] + length;
+		if (status[w] == OPEN && gval[w] <= gw) return 0;
+
+		gval[w] = gw;
+		parent[w] = from;
+		int stride = graph.grid().stride();
+		treeNode[w] = tree.add(treeNode[from], wx * stride, wy * stride, SearchTree.NO_ACTION);
+		long k = key(gw + Math.hypot(tx - wx, ty - wy));
+		if (status[w] == OPEN) {
+			open.update(w, k);
+		} else {
+			status[w] = OPEN;
+			open.insert(w, k);
+		}
+		return 1;
+	}
+
+
+	private boolean sees(VisibilityGraph g, int x0, int y0, int x1, int y1) {
+		sightTests++;
+		return g.visible(x0, y0, x1, y1);
+	}
+
+
+	/*
+	 * Non-negative doubles order the same way as their bit patterns.
+	 */
+	private static long key(double f) {
+		return Double.doubleToLongBits(f);
+	}
+
+
+	private void prepare(int n) {
+		if (status == null || status.length != n) {
+			gval = new double[n];
+			parent = new int[n];
+			status = new byte[n];
+			treeNode = new int[n];
+			seesGoal = new boolean[n];
+			open = new IndexedBinaryHeap(n);
+		} else {
+			Arrays.fill(status, UNSEEN);
+			open.clear();
+		}
+	}
+
+
+	/*
+	 * The turning points from the start to the goal.
+	 */
+	private List<Point> pathFromParents(VisibilityGraph g, int target) {
+		List<Point> pth = new ArrayList<>();
+		int stride = g.grid().stride();
+		pth.add(new Point(goal));
+		for (int v = parent[target]; v >= 0 && v < target - 1; v = parent[v])
+			pth.add(new Point(g.cellX(v) * stride, g.cellY(v) * stride));
+		pth.add(new Point(start));
+		if (start.equals(goal)) pth.remove(1);
+		Collections.reverse(pth);
+		return pth;
+	}
+
+
+	public String toString() {
+		return "Visibility Graph Agent";
+	}
+}
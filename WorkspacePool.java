@@ -0,0 +1,93 @@
+package path.agent;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import path.level.Level;
+
+
+/**
+ * Hands out {@link SearchWorkspace}s, one per thread and level, so that back-to-back searches
+ * on the same level reuse the same arrays.  A workspace is created empty the first time a
+ * thread asks for one on a level and is sized by its first {@link SearchWorkspace#prepare}, and
+ * since its status marks are stamped with a generation, preparing it again costs nothing.
+ * <p>
+ * The arrays of a level are kept until it is released with {@link #release(Level)}, which
+ * should be done when the level is unloaded and no search on it is running.  Most callers use
+ * the {@link #shared()} pool.
+ */
+public final class WorkspacePool {
+
+	private static final WorkspacePool SHARED = new WorkspacePool();
+
+	private final Map<Level, Workspaces> levels = new ConcurrentHashMap<>();
+
+
+	/*
+	 * The workspaces of one level: one per thread, and a list of them all to release.
+	 */
+	private static final class Workspaces extends ThreadLocal<SearchWorkspace> {
+
+		final Queue<SearchWorkspace> all = new ConcurrentLinkedQueue<>();
+
+		@Override
+		protected SearchWorkspace initialValue() {
+			SearchWorkspace ws = new SearchWorkspace();
+			all.add(ws);
+			return ws;
+		}
+	}
+
+
+	/**
+	 * @return the pool the agents use
+	 */
+	public static WorkspacePool shared() {
+		return SHARED;
+	}
+
+
+	/**
+	 * @return the calling thread's workspace for a level, to be prepared before each search
+	 */
+	public SearchWorkspace get(Level lvl) {
+		return levels.computeIfAbsent(lvl, l -> new Workspaces()).get();
+	}
+
+
+	/**
+	 * Holds a workspace that a caller keeps to itself rather than one per thread, such as a
+	 * search that resumes where it stopped, so that releasing the level frees it with the rest.
+	 * Once the level is released the workspace is no longer held, and a caller that goes on
+	 * searching the level should hold a new one.
+	 *
+	 * @return the workspace
+	 */
+	public <W extends SearchWorkspace> W hold(Level lvl, W ws) {
+		levels.computeIfAbsent(lvl, l -> new Workspaces()).all.add(ws);
+		return ws;
+	}
+
+
+	/**
+	 * Frees the arrays of every thread's workspace for a level, and of those held for it.  A
+	 * thread that asks for one again gets a new one.
+	 */
+	public void release(Level lvl) {
+		Workspaces w = levels.remove(lvl);
+		if (w == null) return;
+		for (SearchWorkspace ws : w.all)
+			ws.release();
+	}
+
+
+	/**
+	 * @return the number of workspaces held for a level, over all threads and callers
+	 */
+	public int workspaces(Level lvl) {
+		Workspaces w = levels.get(lvl);
+		return w == null ? 0 : w.all.size();
+	}
+
+}
@@ -0,0 +1,78 @@
+package path.bench;
+import java.awt.Point;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import path.agent.PathAgent;
+import path.level.Level;
+
+/**
+ * Measures one findPath call per invocation for every agent across level sizes, obstacle
+ * densities and start/goal distances.  Each trial cycles through a fixed set of solvable
+ * queries so a single lucky query does not dominate.
+ * <p>
+ * Run with {@code java -jar target/benchmarks.jar AgentBenchmark -prof gc} to also report
+ * the allocation rate per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AgentBenchmark {
+
+	private static final int QUERIES = 16;
+
+	@Param({ "AstarAgent", "IndexedAstarAgent", "GreedyBestFirst", "BreadthFirstAgent",
+			"JumpPointAgent", "JumpPointAgent8", "BidirectionalBreadthFirstAgent",
+			"BidirectionalAstarAgent", "ConcurrentBidirectionalAstarAgent", "HierarchicalAgent" })
+	public String agent;
+
+	@Param({ "100", "300", "1000" })
+	public int cells;	// lattice points per side of the level
+
+	@Param({ "0.1", "0.3" })
+	public double density;	// fraction of blocked cells
+
+	@Param({ "0.1", "0.5", "0.9" })
+	public double distance;	// start/goal separation as a fraction of the level extent
+
+	private PathAgent theAgent;
+
+	private Point[][] queries;
+
+	private int next;
+
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() {
+		Level lvl = BenchmarkLevels.randomLevel(cells, density, 42L);
+		theAgent = BenchmarkLevels.agent(agent, lvl);
+		queries = BenchmarkLevels.queries(lvl, distance, QUERIES, 7L);
+	}
+
+
+	@Benchmark
+	public Object findPath() {
+		Point[] q = queries[next];
+		next = (next + 1) % QUERIES;
+
+		theAgent.clearPath();
+		theAgent.setStart(q[0]);
+		theAgent.setGoal(q[1]);
+		return theAgent.findPath();
+	}
+
+}
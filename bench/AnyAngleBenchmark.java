@@ -0,0 +1,94 @@
+package path.bench;
+import java.awt.Point;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import path.agent.PathAgent;
+import path.level.Level;
+
+/**
+ * Compares grid agents with the any-angle Theta* agents.  Besides the time per query it
+ * reports, per query, the number of waypoints in the path and its length in strides, which
+ * is what a client has to be sent and to steer along.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnyAngleBenchmark {
+
+	private static final int QUERIES = 16;
+
+	@Param({ "IndexedAstarAgent", "JumpPointAgent8", "ThetaStarAgent", "LazyThetaStarAgent" })
+	public String agent;
+
+	@Param({ "300" })
+	public int cells;
+
+	@Param({ "0.1", "0.3" })
+	public double density;
+
+	private PathAgent theAgent;
+
+	private Point[][] queries;
+
+	private int next;
+
+
+	/**
+	 * Path size and length over the queries run in an iteration.  JMH prints the totals; divide
+	 * by queries for the averages.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class PathShape {
+		public long queries;
+		public long waypoints;
+		public long strides;
+	}
+
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() {
+		Level lvl = BenchmarkLevels.randomLevel(cells, density, 42L);
+		theAgent = BenchmarkLevels.agent(agent, lvl);
+		queries = BenchmarkLevels.queries(lvl, 0.5, QUERIES, 7L);
+	}
+
+
+	@Benchmark
+	public Object findPath(PathShape shape) {
+		Point[] q = queries[next];
+		next = (next + 1) % QUERIES;
+
+		theAgent.clearPath();
+		theAgent.setStart(q[0]);
+		theAgent.setGoal(q[1]);
+		List<Point> path = theAgent.findPath();
+		if (path != null) {
+			double length = 0;
+			for (int i = 1; i < path.size(); i++)
+				length += path.get(i - 1).distance(path.get(i));
+			shape.queries++;
+			shape.waypoints += path.size();
+			shape.strides += Math.round(length / theAgent.getLevel().grid().stride());
+		}
+		return path;
+	}
+
+}
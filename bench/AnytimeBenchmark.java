@@ -0,0 +1,103 @@
+package path.bench;
+import java.awt.Point;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import path.agent.AnytimeAstarAgent;
+import path.agent.IndexedAstarAgent;
+import path.level.Level;
+
+/**
+ * Plans long queries on a large cluttered level under a time budget with the anytime agent, each query from
+ * scratch.  Besides the time per query it reports how many queries got a path within the
+ * budget and, over those, the cost of the path in thousandths of the optimal cost, so the
+ * quality bought by each budget can be read off.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnytimeBenchmark {
+
+	private static final int QUERIES = 16;
+
+	@Param({ "1", "4", "16", "0" })
+	public long budget;		// milliseconds, 0 for none
+
+	@Param({ "1000" })
+	public int cells;
+
+	private AnytimeAstarAgent agent;
+
+	private Point[][] queries;
+
+	private int[] optimal;
+
+	private int next;
+
+
+	/**
+	 * Totals over an iteration; divide by queries for the averages.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Quality {
+		public long queries;
+		public long found;
+		public long permille;		// sum over found paths of 1000 * cost / optimal cost
+	}
+
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() {
+		Level lvl = BenchmarkLevels.randomLevel(cells, 0.3, 42L);
+		agent = new AnytimeAstarAgent(lvl);
+		queries = BenchmarkLevels.queries(lvl, 0.9, QUERIES, 7L);
+
+		IndexedAstarAgent astar = new IndexedAstarAgent(lvl);
+		optimal = new int[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			astar.clearPath();
+			astar.setStart(queries[i][0]);
+			astar.setGoal(queries[i][1]);
+			optimal[i] = astar.findPath().size() - 1;
+		}
+	}
+
+
+	@Benchmark
+	public Object findPath(Quality quality) {
+		int i = next;
+		next = (next + 1) % QUERIES;
+
+		agent.reset();
+		agent.clearPath();
+		agent.setStart(queries[i][0]);
+		agent.setGoal(queries[i][1]);
+		agent.setTimeBudget(budget);
+		List<Point> path = agent.findPath();
+
+		quality.queries++;
+		if (path != null) {
+			quality.found++;
+			quality.permille += 1000L * (path.size() - 1) / Math.max(1, optimal[i]);
+		}
+		return path;
+	}
+
+}
@@ -0,0 +1,78 @@
+package path.bench;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import path.agent.BatchPlanner;
+import path.agent.PlanRequest;
+import path.level.Level;
+
+/**
+ * Measures how a batch of queries scales with the number of worker threads.  One invocation
+ * solves the whole batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchBenchmark {
+
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	@Param({ "256" })
+	public int batch;	// queries per invocation
+
+	@Param({ "300" })
+	public int cells;
+
+	@Param({ "0.2" })
+	public double density;
+
+	private ForkJoinPool pool;
+
+	private BatchPlanner planner;
+
+	private List<PlanRequest> requests;
+
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() {
+		Level lvl = BenchmarkLevels.randomLevel(cells, density, 42L);
+		pool = new ForkJoinPool(threads);
+		planner = new BatchPlanner(lvl, pool);
+		requests = new ArrayList<>();
+		for (Point[] q : BenchmarkLevels.queries(lvl, 0.5, batch, 7L))
+			requests.add(new PlanRequest(q[0], q[1]));
+	}
+
+
+	@TearDown(org.openjdk.jmh.annotations.Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+
+	@Benchmark
+	public Object plan() {
+		return planner.plan(requests);
+	}
+
+}
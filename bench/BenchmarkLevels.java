@@ -0,0 +1,260 @@
+package path.bench;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import path.PathFinderApp;
+import path.agent.AnytimeAstarAgent;
+import path.agent.AstarAgent;
+import path.agent.BidirectionalAstarAgent;
+import path.agent.BidirectionalBreadthFirstAgent;
+import path.agent.BreadthFirstAgent;
+import path.agent.FlowFieldAgent;
+import path.agent.GreedyBestFirst;
+import path.agent.HierarchicalAgent;
+import path.agent.IdaStarAgent;
+import path.agent.IndexedAstarAgent;
+import path.agent.JumpPointAgent;
+import path.agent.NavMeshAgent;
+import path.agent.PathAgent;
+import path.agent.SmaStarAgent;
+import path.agent.ThetaStarAgent;
+import path.agent.VisibilityGraphAgent;
+import path.agent.heuristic.LandmarkHeuristic;
+import path.level.Level;
+import path.level.LevelBuilder;
+import path.level.OccupancyGrid;
+
+/**
+ * Helpers used by the benchmarks to build reproducible random levels and mazes, pick solvable start/goal
+ * queries on them and instantiate agents by name.
+ */
+public final class BenchmarkLevels {
+
+	private BenchmarkLevels() {
+	}
+
+
+	/**
+	 * Creates the agent with the given simple class name.  Every agent we benchmark must be
+	 * listed here.
+	 */
+	public static PathAgent agent(String name, Level lvl) {
+		switch (name) {
+			case "AstarAgent": return new AstarAgent(lvl);
+			case "IndexedAstarAgent": return new IndexedAstarAgent(lvl);
+			case "IndexedAstarAgentALT": return withLandmarks(new IndexedAstarAgent(lvl));
+			case "AstarAgentALT": return withLandmarks(new AstarAgent(lvl));
+			case "AnytimeAstarAgent": return new AnytimeAstarAgent(lvl);
+			case "WeightedAstarAgent": return new AnytimeAstarAgent(lvl, AnytimeAstarAgent.DEFAULT_INITIAL_WEIGHT, 0.0);
+			case "IdaStarAgent": return new IdaStarAgent(lvl);
+			case "SmaStarAgent": return new SmaStarAgent(lvl);
+			case "GreedyBestFirst": return new GreedyBestFirst(lvl);
+			case "BreadthFirstAgent": return new BreadthFirstAgent(lvl);
+			case "JumpPointAgent": return new JumpPointAgent(lvl);
+			case "JumpPointAgent8": return new JumpPointAgent(lvl, true);
+			case "ThetaStarAgent": return new ThetaStarAgent(lvl);
+			case "LazyThetaStarAgent": return new ThetaStarAgent(lvl, true);
+			case "BidirectionalBreadthFirstAgent": return new BidirectionalBreadthFirstAgent(lvl);
+			case "BidirectionalAstarAgent": return new BidirectionalAstarAgent(lvl);
+			case "ConcurrentBidirectionalAstarAgent": return new BidirectionalAstarAgent(lvl, true);
+			case "HierarchicalAgent": return new HierarchicalAgent(lvl);
+			case "FlowFieldAgent": return new FlowFieldAgent(lvl);
+			case "VisibilityGraphAgent": return new VisibilityGraphAgent(lvl);
+			case "NavMeshAgent": return new NavMeshAgent(lvl);
+		}
+		throw new IllegalArgumentException("unknown agent " + name);
+	}
+
+
+	private static PathAgent withLandmarks(PathAgent agent) {
+		agent.setEstimator(new LandmarkHeuristic(agent.getLevel()));
+		return agent;
+	}
+
+
+	/**
+	 * Builds a square level of cells x cells lattice points and drops random rectangular
+	 * zones until roughly the requested fraction of the cells is blocked.
+	 *
+	 * @param cells lattice points per side
+	 * @param density target fraction of blocked cells in [0,1)
+	 * @param seed random seed, the same seed gives the same level
+	 */
+	public static Level randomLevel(int cells, double density, long seed) {
+
+		int stride = PathFinderApp.STRIDE;
+		int extent = cells * stride;
+		Random rnd = new Random(seed);
+
+		LevelBuilder builder = Level.builder().size(extent, extent);
+		long target = Math.round(density * cells * cells);
+		long covered = 0;
+		int maxSide = Math.max(2, cells / 10);
+
+		while (covered < target) {
+			int w = 1 + rnd.nextInt(maxSide);
+			int h = 1 + rnd.nextInt(maxSide);
+			int x = rnd.nextInt(cells);
+			int y = rnd.nextInt(cells);
+			builder.addZone(new Rectangle(x * stride, y * stride, w * stride, h * stride));
+			covered += (long) w * h;
+		}
+		return builder.build();
+	}
+
+
+	/**
+	 * Builds the level of {@link PathFinderApp}, nineteen rectangles on 1000 by 1000, with
+	 * every coordinate multiplied by a scale, so the same obstacles cover scale squared times
+	 * as many cells.
+	 */
+	public static Level demoLevel(int scale) {
+		int[][] zones = {
+			{ 0, 0, 20, 300 }, { 300, 0, 20, 100 }, { 310, 260, 20, 40 },
+			{ 0, 300, 120, 100 }, { 230, 300, 100, 100 }, { 230, 400, 200, 20 },
+			{ 230, 420, 50, 280 }, { 130, 500, 100, 200 },
+			{ 600, 0, 400, 50 }, { 600, 50, 20, 50 }, { 400, 100, 100, 200 },
+			{ 600, 200, 20, 100 }, { 520, 380, 80, 20 }, { 600, 300, 200, 100 },
+			{ 800, 250, 30, 200 }, { 300, 750, 150, 50 }, { 900, 450, 100, 550 },
+			{ 600, 750, 200, 50 }, { 800, 650, 30, 150 }
+		};
+		LevelBuilder builder = Level.builder().size(PathFinderApp.DEFAULT_FRAME_WIDTH * scale, PathFinderApp.DEFAULT_FRAME_HEIGHT * scale);
+		for (int[] z : zones)
+			builder.addZone(new Rectangle(z[0] * scale, z[1] * scale, z[2] * scale, z[3] * scale));
+		return builder.build();
+	}
+
+
+	/**
+	 * Builds a square maze of cells x cells lattice points: corridors three cells wide between
+	 * walls one cell thick, carved by a randomized depth first search, so every free cell is
+	 * reachable and there is exactly one route between any two corridors.
+	 *
+	 * @param cells lattice points per side
+	 * @param seed random seed, the same seed gives the same level
+	 */
+	public static Level mazeLevel(int cells, long seed) {
+
+		final int room = 4;		// corridor width plus one wall
+		int stride = PathFinderApp.STRIDE;
+		int m = Math.max(1, cells / room);
+		Random rnd = new Random(seed);
+
+		boolean[] east = new boolean[m * m];	// passage to the east neighbor
+		boolean[] south = new boolean[m * m];	// passage to the south neighbor
+		boolean[] seen = new boolean[m * m];
+		ArrayDeque<Integer> stack = new ArrayDeque<>();
+		seen[0] = true;
+		stack.push(0);
+		int[] options = new int[4];
+		while (!stack.isEmpty()) {
+			int c = stack.peek();
+			int cx = c % m;
+			int cy = c / m;
+			int n = 0;
+			if (cx > 0 && !seen[c - 1]) options[n++] = c - 1;
+			if (cx < m - 1 && !seen[c + 1]) options[n++] = c + 1;
+			if (cy > 0 && !seen[c - m]) options[n++] = c - m;
+			if (cy < m - 1 && !seen[c + m]) options[n++] = c + m;
+			if (n == 0) {
+				stack.pop();
+				continue;
+			}
+			int next = options[rnd.nextInt(n)];
+			if (next == c + 1) east[c] = true;
+			if (next == c - 1) east[next] = true;
+			if (next == c + m) south[c] = true;
+			if (next == c - m) south[next] = true;
+			seen[next] = true;
+			stack.push(next);
+		}
+
+		LevelBuilder builder = Level.builder().size(cells * stride, cells * stride);
+		for (int c = 0; c < m * m; c++) {
+			int x0 = (c % m) * room;
+			int y0 = (c / m) * room;
+			int wall = room - 1;
+			builder.addZone(new Rectangle((x0 + wall) * stride, (y0 + wall) * stride, stride, stride));
+			if (!east[c])
+				builder.addZone(new Rectangle((x0 + wall) * stride, y0 * stride, stride, wall * stride));
+			if (!south[c])
+				builder.addZone(new Rectangle(x0 * stride, (y0 + wall) * stride, wall * stride, stride));
+		}
+		return builder.build();
+	}
+
+
+	/**
+	 * Picks queries whose goal is reachable from the start and about the requested fraction
+	 * of the level's extent away (in Manhattan distance over cells).
+	 *
+	 * @return count pairs of points {start, goal}
+	 */
+	public static Point[][] queries(Level lvl, double distance, int count, long seed) {
+
+		OccupancyGrid grid = lvl.grid();
+		Random rnd = new Random(seed);
+		int want = (int) Math.round(distance * (grid.cols() + grid.rows() - 2));
+		int[] dist = new int[grid.size()];
+		Point[][] result = new Point[count][];
+
+		for (int q = 0; q < count; q++) {
+			int s = randomFreeCell(grid, rnd);
+			flood(grid, s, dist);
+
+			int best = -1;
+			int bestError = Integer.MAX_VALUE;
+			for (int tries = 0; tries < 4096; tries++) {
+				int t = rnd.nextInt(grid.size());
+				if (dist[t] < 0) continue;
+				int manhattan = Math.abs(grid.cellX(t) - grid.cellX(s)) + Math.abs(grid.cellY(t) - grid.cellY(s));
+				int error = Math.abs(manhattan - want);
+				if (error < bestError) {
+					best = t;
+					bestError = error;
+				}
+			}
+			if (best < 0) best = s;
+			result[q] = new Point[] { grid.pointOf(s), grid.pointOf(best) };
+		}
+		return result;
+	}
+
+
+	private static int randomFreeCell(OccupancyGrid grid, Random rnd) {
+		while (true) {
+			int c = rnd.nextInt(grid.size());
+			if (grid.isFree(c)) return c;
+		}
+	}
+
+
+	/*
+	 * Breadth first flood from a cell, dist is -1 for unreachable cells.
+	 */
+	private static void flood(OccupancyGrid grid, int from, int[] dist) {
+		java.util.Arrays.fill(dist, -1);
+		ArrayDeque<Integer> queue = new ArrayDeque<>();
+		dist[from] = 0;
+		queue.add(from);
+		int[] dx = { 0, 0, 1, -1 };
+		int[] dy = { -1, 1, 0, 0 };
+		while (!queue.isEmpty()) {
+			int c = queue.poll();
+			int cx = grid.cellX(c);
+			int cy = grid.cellY(c);
+			for (int a = 0; a < 4; a++) {
+				int nx = cx + dx[a];
+				int ny = cy + dy[a];
+				if (!grid.isFree(nx, ny)) continue;
+				int n = grid.index(nx, ny);
+				if (dist[n] >= 0) continue;
+				dist[n] = dist[c] + 1;
+				queue.add(n);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package path.bench;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import path.agent.CooperativePlanner;
+import path.agent.PlanRequest;
+import path.agent.PlanResult;
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+/**
+ * Moves a crowd of units, each to its own goal a short walk away, with the cooperative planner.
+ * One invocation plans the whole crowd until every unit has arrived (or got stuck), so the
+ * score divided by the number of units is the cost of one unit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CooperativeBenchmark {
+
+	@Param({ "10", "100", "1000", "4000" })
+	public int units;
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	@Param({ "300" })
+	public int cells;
+
+	private Level lvl;
+
+	private ForkJoinPool pool;
+
+	private CooperativePlanner planner;
+
+	private List<PlanRequest> crowd;
+
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() {
+		lvl = BenchmarkLevels.randomLevel(cells, 0.1, 42L);
+		pool = new ForkJoinPool(threads);
+		planner = new CooperativePlanner(lvl, CooperativePlanner.DEFAULT_WINDOW, pool);
+
+		// distinct starts and distinct goals, each goal within 40 cells of its start
+		OccupancyGrid grid = lvl.grid();
+		Random rnd = new Random(5L);
+		Set<Integer> starts = new HashSet<>();
+		Set<Integer> goals = new HashSet<>();
+		crowd = new ArrayList<>(units);
+		while (crowd.size() < units) {
+			int s = rnd.nextInt(grid.size());
+			int gx = grid.cellX(s) + rnd.nextInt(41) - 20;
+			int gy = grid.cellY(s) + rnd.nextInt(41) - 20;
+			if (!grid.isFree(s) || !grid.isFree(gx, gy)) continue;
+			int g = grid.index(gx, gy);
+			if (starts.contains(s) || goals.contains(g)) continue;
+			starts.add(s);
+			goals.add(g);
+			crowd.add(new PlanRequest(grid.pointOf(s), grid.pointOf(g)));
+		}
+	}
+
+
+	@TearDown(org.openjdk.jmh.annotations.Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+
+	@Benchmark
+	public int planCrowd() {
+		int arrived = 0;
+		for (PlanResult r : planner.plan(crowd))
+			if (r.isFound()) arrived++;
+		return arrived;
+	}
+
+}
@@ -0,0 +1,104 @@
+package path.bench;
+import java.awt.Point;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import path.agent.FlowFieldAgent;
+import path.agent.FlowFieldCache;
+import path.agent.IndexedAstarAgent;
+import path.level.Level;
+
+/**
+ * Plans a group of units to one shared goal, either with one A* search per unit or with a
+ * single flow field built for the occasion and followed by every unit.  One invocation plans
+ * the whole group, including the cost of building the field.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlowFieldBenchmark {
+
+	@Param({ "IndexedAstarAgent", "FlowFieldAgent" })
+	public String agent;
+
+	@Param({ "1", "10", "100", "1000" })
+	public int units;
+
+	@Param({ "300" })
+	public int cells;
+
+	private Level lvl;
+
+	private IndexedAstarAgent astar;
+
+	private Point[] starts;
+
+	private Point goal;
+
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() {
+		lvl = BenchmarkLevels.randomLevel(cells, 0.2, 42L);
+		astar = new IndexedAstarAgent(lvl);
+		Point[][] q = BenchmarkLevels.queries(lvl, 0.5, 1, 7L);
+		goal = q[0][1];
+
+		// units are scattered around the first query's start
+		Random rnd = new Random(3L);
+		starts = new Point[units];
+		for (int i = 0; i < units; i++) {
+			Point p;
+			do {
+				p = new Point(q[0][0].x + 10 * (rnd.nextInt(41) - 20), q[0][0].y + 10 * (rnd.nextInt(41) - 20));
+			} while (!lvl.isValid(p));
+			starts[i] = p;
+		}
+	}
+
+
+	@Benchmark
+	public int planGroup() {
+		int steps = 0;
+		if (agent.equals("FlowFieldAgent")) {
+			FlowFieldCache cache = new FlowFieldCache(lvl);
+			FlowFieldAgent unit = new FlowFieldAgent(cache);
+			unit.setGoal(goal);
+			for (Point s : starts) {
+				unit.clearPath();
+				unit.setStart(s);
+				steps += size(unit.findPath());
+			}
+			cache.dispose();
+		} else {
+			astar.setGoal(goal);
+			for (Point s : starts) {
+				astar.clearPath();
+				astar.setStart(s);
+				steps += size(astar.findPath());
+			}
+		}
+		return steps;
+	}
+
+
+	private static int size(List<Point> path) {
+		return path == null ? 0 : path.size();
+	}
+
+}
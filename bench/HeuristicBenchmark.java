@@ -0,0 +1,66 @@
+package path.bench;
+import java.awt.Point;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import path.agent.PathAgent;
+import path.level.Level;
+
+/**
+ * Compares the Manhattan and landmark (ALT) heuristics on mazes, where Manhattan knows nothing
+ * about the walls.  The landmark tables are built once per trial, outside the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HeuristicBenchmark {
+
+	private static final int QUERIES = 16;
+
+	@Param({ "IndexedAstarAgent", "IndexedAstarAgentALT", "AstarAgent", "AstarAgentALT" })
+	public String agent;
+
+	@Param({ "100", "300" })
+	public int cells;
+
+	private PathAgent theAgent;
+
+	private Point[][] queries;
+
+	private int next;
+
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() {
+		Level lvl = BenchmarkLevels.mazeLevel(cells, 42L);
+		theAgent = BenchmarkLevels.agent(agent, lvl);
+		queries = BenchmarkLevels.queries(lvl, 0.5, QUERIES, 7L);
+	}
+
+
+	@Benchmark
+	public Object findPath() {
+		Point[] q = queries[next];
+		next = (next + 1) % QUERIES;
+
+		theAgent.clearPath();
+		theAgent.setStart(q[0]);
+		theAgent.setGoal(q[1]);
+		return theAgent.findPath();
+	}
+
+}
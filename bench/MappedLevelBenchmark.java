@@ -0,0 +1,126 @@
+package path.bench;
+import java.awt.Point;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import path.PathFinderApp;
+import path.agent.AstarAgent;
+import path.level.Level;
+import path.level.MappedOccupancy;
+import path.level.Occupancy;
+
+/**
+ * Writes a level of {@code cells} by {@code cells} cells, cluttered with random blocks, to a
+ * tiled occupancy file once per trial, then times mapping the file and answering short
+ * queries with {@link AstarAgent} in random corners of the mapped level.  The file is written
+ * a tile at a time from a procedural source, so the level never exists on the heap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappedLevelBenchmark {
+
+	private static final int QUERIES = 64;
+
+	private static final int BLOCK = 8;		// cells on a side of a random block
+
+	@Param({ "20000" })
+	public int cells;
+
+	@Param({ "100" })
+	public int distance;		// cells between start and goal along each axis
+
+	private Path file;
+
+	private MappedOccupancy occupancy;
+
+	private AstarAgent agent;
+
+	private Point[][] queries;
+
+	private int next;
+
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() throws IOException {
+		int side = cells;
+		Occupancy source = new Occupancy() {
+			public boolean isFree(int cx, int cy) {
+				if (cx < 0 || cy < 0 || cx >= side || cy >= side) return false;
+				int h = (cx / BLOCK) * 0x9E3779B9 ^ (cy / BLOCK) * 0x85EBCA6B;
+				h ^= h >>> 15;
+				h *= 0x2C1B3C6D;
+				h ^= h >>> 12;
+				return Math.floorMod(h, 100) >= 15;
+			}
+			public int cols() { return side; }
+			public int rows() { return side; }
+			public int stride() { return PathFinderApp.STRIDE; }
+		};
+		file = Files.createTempFile("bench", ".occ");
+		MappedOccupancy.write(file, source);
+		occupancy = MappedOccupancy.open(file);
+		agent = new AstarAgent(new Level(occupancy));
+
+		Random rnd = new Random(7L);
+		queries = new Point[QUERIES][];
+		for (int i = 0; i < QUERIES; i++) {
+			Point s, t;
+			do {
+				int x = rnd.nextInt(side - distance);
+				int y = rnd.nextInt(side - distance);
+				s = new Point(x * PathFinderApp.STRIDE, y * PathFinderApp.STRIDE);
+				t = new Point((x + distance) * PathFinderApp.STRIDE, (y + distance) * PathFinderApp.STRIDE);
+			} while (!source.isFree(s.x / PathFinderApp.STRIDE, s.y / PathFinderApp.STRIDE)
+					|| !source.isFree(t.x / PathFinderApp.STRIDE, t.y / PathFinderApp.STRIDE));
+			queries[i] = new Point[] { s, t };
+		}
+	}
+
+
+	@TearDown(org.openjdk.jmh.annotations.Level.Trial)
+	public void tearDown() throws IOException {
+		occupancy.close();
+		Files.deleteIfExists(file);
+	}
+
+
+	@Benchmark
+	public boolean open() throws IOException {
+		try (MappedOccupancy occ = MappedOccupancy.open(file)) {
+			return occ.isFree(occ.cols() / 2, occ.rows() / 2);
+		}
+	}
+
+
+	@Benchmark
+	public List<Point> findPath() {
+		Point[] q = queries[next];
+		next = (next + 1) % QUERIES;
+		agent.clearPath();
+		agent.setStart(q[0]);
+		agent.setGoal(q[1]);
+		return agent.findPath();
+	}
+
+}
@@ -0,0 +1,95 @@
+package path.bench;
+import java.awt.Point;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import path.agent.IdaStarAgent;
+import path.agent.PathAgent;
+import path.agent.SmaStarAgent;
+import path.level.Level;
+
+/**
+ * Plans queries with the memory-bounded IDA* and SMA* agents under a node cap.  Besides the
+ * time per query it reports how many queries got a path and the peak number of nodes held, in
+ * thousandths of the cap, so the time bought by more memory can be read off.  Run with
+ * {@code -prof gc} to compare the allocation with {@code AgentBenchmark}'s A* agents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryBoundedBenchmark {
+
+	private static final int QUERIES = 16;
+
+	@Param({ "IdaStarAgent", "SmaStarAgent" })
+	public String agent;
+
+	@Param({ "4096", "65536" })
+	public int maxNodes;
+
+	@Param({ "150" })
+	public int cells;
+
+	private PathAgent pathAgent;
+
+	private Point[][] queries;
+
+	private int next;
+
+
+	/**
+	 * Totals over an iteration; divide by queries for the averages.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Memory {
+		public long queries;
+		public long found;
+		public long permille;		// sum over queries of 1000 * peak nodes / cap
+	}
+
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() {
+		Level lvl = BenchmarkLevels.randomLevel(cells, 0.2, 42L);
+		pathAgent = agent.equals("IdaStarAgent") ? new IdaStarAgent(lvl, maxNodes) : new SmaStarAgent(lvl, maxNodes);
+		queries = BenchmarkLevels.queries(lvl, 0.9, QUERIES, 7L);
+	}
+
+
+	@Benchmark
+	public Object findPath(Memory memory) {
+		Point[] q = queries[next];
+		next = (next + 1) % QUERIES;
+
+		pathAgent.clearPath();
+		pathAgent.setStart(q[0]);
+		pathAgent.setGoal(q[1]);
+		List<Point> path = pathAgent.findPath();
+
+		int peak = pathAgent instanceof IdaStarAgent
+				? ((IdaStarAgent) pathAgent).getPeakNodes()
+				: ((SmaStarAgent) pathAgent).getPeakNodes();
+		memory.queries++;
+		if (path != null) memory.found++;
+		memory.permille += 1000L * peak / maxNodes;
+		return path;
+	}
+
+}
@@ -0,0 +1,101 @@
+package path.bench;
+import java.awt.Point;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import path.agent.NavMesh;
+import path.agent.PathAgent;
+import path.level.Level;
+
+/**
+ * Plans queries on mostly open levels with the navigation mesh agent and with cell based
+ * agents, which expand every cell of an open area the mesh covers with one region.  Building
+ * the mesh, as done once offline, and loading it from a file are timed on their own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NavMeshBenchmark {
+
+	private static final int QUERIES = 16;
+
+	@Param({ "NavMeshAgent", "IndexedAstarAgent", "ThetaStarAgent" })
+	public String agent;
+
+	@Param({ "300", "1000" })
+	public int cells;
+
+	@Param({ "0.1" })
+	public double density;
+
+	private Level lvl;
+
+	private PathAgent theAgent;
+
+	private Point[][] queries;
+
+	private int next;
+
+	private Path meshFile;
+
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() throws IOException {
+		lvl = BenchmarkLevels.randomLevel(cells, density, 42L);
+		theAgent = BenchmarkLevels.agent(agent, lvl);
+		queries = BenchmarkLevels.queries(lvl, 0.5, QUERIES, 7L);
+		meshFile = Files.createTempFile("level", ".nav");
+		new NavMesh(lvl).save(meshFile);
+		findPath();
+	}
+
+
+	@TearDown(org.openjdk.jmh.annotations.Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(meshFile);
+	}
+
+
+	@Benchmark
+	public List<Point> findPath() {
+		Point[] q = queries[next];
+		next = (next + 1) % QUERIES;
+
+		theAgent.clearPath();
+		theAgent.setStart(q[0]);
+		theAgent.setGoal(q[1]);
+		return theAgent.findPath();
+	}
+
+
+	@Benchmark
+	public NavMesh buildMesh() {
+		return new NavMesh(lvl);
+	}
+
+
+	@Benchmark
+	public NavMesh loadMesh() throws IOException {
+		return NavMesh.load(meshFile, lvl);
+	}
+
+}
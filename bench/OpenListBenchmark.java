@@ -0,0 +1,107 @@
+package path.bench;
+import java.awt.Point;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import path.agent.OpenList;
+import path.agent.PathAgent;
+import path.level.Level;
+
+/**
+ * Compares the open lists: plans queries with the A* agent set to each, and runs each through
+ * the adds and polls of an A* search on a uniform-cost level (a child keeps the f of its parent
+ * or adds two steps to it) without the search around them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenListBenchmark {
+
+	private static final int QUERIES = 16;
+
+	private static final int POLLS = 100_000;
+
+	@Param({ "BINARY_HEAP", "PAIRING_HEAP", "BUCKET_QUEUE", "RADIX_HEAP" })
+	public String kind;
+
+	@Param({ "300" })
+	public int cells;
+
+	@Param({ "0.2" })
+	public double density;
+
+	private PathAgent theAgent;
+
+	private Point[][] queries;
+
+	private int next;
+
+	private OpenList open;
+
+	private int[] fOf;
+
+	private int[] gOf;
+
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() {
+		Level lvl = BenchmarkLevels.randomLevel(cells, density, 42L);
+		theAgent = BenchmarkLevels.agent("AstarAgent", lvl);
+		theAgent.setOpenListKind(OpenList.Kind.valueOf(kind));
+		queries = BenchmarkLevels.queries(lvl, 0.5, QUERIES, 7L);
+		open = OpenList.Kind.valueOf(kind).create();
+		fOf = new int[2 * POLLS + 1];
+		gOf = new int[2 * POLLS + 1];
+		findPath();
+	}
+
+
+	@Benchmark
+	public List<Point> findPath() {
+		Point[] q = queries[next];
+		next = (next + 1) % QUERIES;
+
+		theAgent.clearPath();
+		theAgent.setStart(q[0]);
+		theAgent.setGoal(q[1]);
+		return theAgent.findPath();
+	}
+
+
+	@Benchmark
+	public int addAndPoll() {
+		SplittableRandom rnd = new SplittableRandom(11L);
+		open.clear();
+		fOf[0] = 100;
+		open.add(0, 100, 0);
+		int items = 1;
+		int last = 0;
+		for (int i = 0; i < POLLS; i++) {
+			last = open.poll();
+			for (int c = 1 + rnd.nextInt(2); c > 0; c--) {
+				fOf[items] = fOf[last] + (rnd.nextBoolean() ? 0 : 2);
+				gOf[items] = gOf[last] + 1;
+				open.add(items, fOf[items], gOf[items]);
+				items++;
+			}
+		}
+		return last;
+	}
+
+}
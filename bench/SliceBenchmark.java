@@ -0,0 +1,108 @@
+package path.bench;
+import java.awt.Point;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import path.agent.IndexedAstarAgent;
+import path.agent.SliceScheduler;
+import path.agent.SlicedSearch;
+import path.level.Level;
+
+/**
+ * Times the frames of a game loop that keeps a number of long queries under way on a large
+ * level.  {@code slicedFrame} spends a frame budget on a {@link SliceScheduler}, topping its
+ * queue up as searches finish; {@code wholeFrame} answers one query per frame in one go, as a
+ * plain agent would.  Sampled times show the frame time distribution, whose tail is what the
+ * scheduler is meant to cut, and the counters how many queries each frame finished.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SliceBenchmark {
+
+	private static final int QUERIES = 64;
+
+	@Param({ "250", "1000" })
+	public long budget;		// microseconds per frame
+
+	@Param({ "16" })
+	public int searches;		// kept under way at once
+
+	@Param({ "1000" })
+	public int cells;
+
+	private Level level;
+
+	private Point[][] queries;
+
+	private SliceScheduler scheduler;
+
+	private IndexedAstarAgent agent;
+
+	private int next;
+
+
+	/**
+	 * Totals over an iteration.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Frames {
+		public long frames;
+		public long finished;
+	}
+
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() {
+		level = BenchmarkLevels.randomLevel(cells, 0.2, 42L);
+		queries = BenchmarkLevels.queries(level, 0.9, QUERIES, 7L);
+		scheduler = new SliceScheduler();
+		agent = new IndexedAstarAgent(level);
+	}
+
+
+	@Benchmark
+	public int slicedFrame(Frames counters) {
+		while (scheduler.pending() < searches) {
+			Point[] q = queries[next];
+			next = (next + 1) % QUERIES;
+			scheduler.submit(new SlicedSearch(level, q[0], q[1]));
+		}
+		int finished = scheduler.runFrame(budget);
+		counters.frames++;
+		counters.finished += finished;
+		return finished;
+	}
+
+
+	@Benchmark
+	public List<Point> wholeFrame(Frames counters) {
+		Point[] q = queries[next];
+		next = (next + 1) % QUERIES;
+		agent.clearPath();
+		agent.setStart(q[0]);
+		agent.setGoal(q[1]);
+		List<Point> path = agent.findPath();
+		counters.frames++;
+		counters.finished++;
+		return path;
+	}
+
+}
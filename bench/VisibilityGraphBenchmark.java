@@ -0,0 +1,75 @@
+package path.bench;
+import java.awt.Point;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import path.agent.PathAgent;
+import path.level.Level;
+
+/**
+ * Plans the same queries on the demo level drawn at a growing scale, to show that the
+ * visibility graph agent costs about the same per query whatever the number of cells, while
+ * the cell based agents slow down with it.  The graph is built during setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VisibilityGraphBenchmark {
+
+	private static final int QUERIES = 16;
+
+	@Param({ "VisibilityGraphAgent", "ThetaStarAgent", "IndexedAstarAgent" })
+	public String agent;
+
+	@Param({ "1", "2", "4" })
+	public int scale;
+
+	private PathAgent theAgent;
+
+	private Point[][] queries;
+
+	private int next;
+
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() {
+		Level lvl = BenchmarkLevels.demoLevel(scale);
+		theAgent = BenchmarkLevels.agent(agent, lvl);
+
+		// the same queries at every scale
+		queries = BenchmarkLevels.queries(BenchmarkLevels.demoLevel(1), 0.5, QUERIES, 7L);
+		for (Point[] q : queries) {
+			for (Point p : q)
+				p.setLocation(p.x * scale, p.y * scale);
+		}
+		findPath();
+	}
+
+
+	@Benchmark
+	public List<Point> findPath() {
+		Point[] q = queries[next];
+		next = (next + 1) % QUERIES;
+
+		theAgent.clearPath();
+		theAgent.setStart(q[0]);
+		theAgent.setGoal(q[1]);
+		return theAgent.findPath();
+	}
+
+}
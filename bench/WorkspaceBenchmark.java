@@ -0,0 +1,90 @@
+package path.bench;
+import java.awt.Point;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import path.agent.PathAgent;
+import path.agent.SearchWorkspace;
+import path.agent.WorkspacePool;
+import path.level.Level;
+import path.level.OccupancyGrid;
+
+/**
+ * Plans short queries back to back on large levels, where clearing grid-sized arrays between
+ * queries would cost more than the searches themselves.  The indexed agent reuses its pooled,
+ * generation-stamped workspace; the node based agent allocates its sets and nodes per query.
+ * Preparing a workspace for the next search is timed on its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorkspaceBenchmark {
+
+	private static final int QUERIES = 16;
+
+	@Param({ "IndexedAstarAgent", "AstarAgent" })
+	public String agent;
+
+	@Param({ "500", "2000" })
+	public int cells;
+
+	@Param({ "0.02" })
+	public double distance;
+
+	private PathAgent theAgent;
+
+	private Point[][] queries;
+
+	private int next;
+
+	private OccupancyGrid grid;
+
+	private SearchWorkspace workspace;
+
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void setUp() {
+		Level lvl = BenchmarkLevels.randomLevel(cells, 0.2, 42L);
+		theAgent = BenchmarkLevels.agent(agent, lvl);
+		queries = BenchmarkLevels.queries(lvl, distance, QUERIES, 7L);
+		grid = lvl.grid();
+		workspace = WorkspacePool.shared().get(lvl);
+		workspace.prepare(grid);
+		findPath();
+	}
+
+
+	@Benchmark
+	public List<Point> findPath() {
+		Point[] q = queries[next];
+		next = (next + 1) % QUERIES;
+
+		theAgent.clearPath();
+		theAgent.setStart(q[0]);
+		theAgent.setGoal(q[1]);
+		return theAgent.findPath();
+	}
+
+
+	@Benchmark
+	public SearchWorkspace prepare() {
+		workspace.prepare(grid);
+		return workspace;
+	}
+
+}